@@ -20,12 +20,37 @@
 package org.ardverk.dns;
 
 
+import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import javax.sql.DataSource;
+
+import org.apache.directory.server.core.EntrySource;
 import org.apache.directory.server.dns.protocol.DnsProtocolHandler;
+import org.apache.directory.server.dns.service.AccessControl;
+import org.apache.directory.server.dns.service.ResponsePolicy;
+import org.apache.directory.server.dns.service.SecondaryService;
+import org.apache.directory.server.dns.service.View;
+import org.apache.directory.server.dns.service.ViewSelector;
+import org.apache.directory.server.dns.store.CachingRecordStore;
 import org.apache.directory.server.dns.store.RecordStore;
-import org.apache.directory.server.dns.store.jndi.JndiRecordStoreImpl;
+import org.apache.directory.server.dns.store.directory.DirectoryRecordStore;
+import org.apache.directory.server.dns.store.jdbc.JdbcRecordStore;
+import org.apache.directory.server.dns.store.zone.Zone;
+import org.apache.directory.server.dns.store.zone.ZoneImageRecordStore;
+import org.apache.directory.server.dns.store.zone.ZoneJournal;
+import org.apache.directory.server.dns.store.zone.ZoneRecordStore;
+import org.apache.directory.server.dns.store.zone.ZoneRegistry;
 import org.apache.directory.server.protocol.shared.DirectoryBackedService;
+import org.apache.directory.server.protocol.shared.TimingWheel;
 import org.apache.directory.server.protocol.shared.transport.Transport;
 import org.apache.directory.server.protocol.shared.transport.UdpTransport;
 import org.apache.mina.core.service.IoAcceptor;
@@ -60,6 +85,76 @@ public class DnsServer extends DirectoryBackedService
     /** The default service name. */
     private static final String SERVICE_NAME_DEFAULT = "ApacheDS DNS Service";
 
+    /** The default time between two snapshots of the zones, in seconds. */
+    private static final long DEFAULT_SNAPSHOT_INTERVAL = 3600;
+
+    /** The default time a TCP connection may stay idle, in seconds. */
+    private static final long DEFAULT_IDLE_TIMEOUT = 30;
+
+    /** The default size of the cache of the answers of a database, in bytes. */
+    private static final long DEFAULT_CACHE_SIZE = 64L * 1024 * 1024;
+
+    /** The zones served, which can be replaced while the server runs */
+    private ZoneRegistry zoneRegistry = new ZoneRegistry();
+
+    /** The directory of the journal of dynamic updates, or null to not keep them */
+    private File journalDirectory;
+
+    /** The time between two snapshots of the zones, in seconds */
+    private long snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+
+    private ZoneJournal journal;
+
+    /** The directory of the compiled zone images to serve, or null to serve the zone registry */
+    private File zoneImageDirectory;
+
+    /** Whether to serve the zones from images outside of the heap */
+    private boolean offHeap;
+
+    /** The primary server of each secondary zone, by origin */
+    private Map<String, InetSocketAddress> secondaryZones = new LinkedHashMap<String, InetSocketAddress>();
+
+    private SecondaryService secondaryService;
+
+    /** The directory to serve the records of, or null to serve the zones */
+    private EntrySource entrySource;
+
+    private DirectoryRecordStore directoryStore;
+
+    /** The database to serve the records of, or null */
+    private DataSource dataSource;
+
+    /** The size of the cache of the answers of the database, in bytes */
+    private long cacheSize = DEFAULT_CACHE_SIZE;
+
+    private JdbcRecordStore jdbcStore;
+
+    /** The views other than the default one, with their networks */
+    private Map<View, String[]> views = new LinkedHashMap<View, String[]>();
+
+    /** The size of the cache of the answers of each view, in bytes, 0 for none */
+    private long viewCacheSize;
+
+    private ViewSelector viewSelector;
+
+    /** The clients allowed to query, transfer and update, or null to allow all */
+    private volatile AccessControl accessControl;
+
+    /** The blocklist queries are answered from before the store, or null for none */
+    private volatile ResponsePolicy responsePolicy;
+
+    /** The lane the zone transfers of all the transports run on */
+    private ExecutorService transferExecutor;
+
+    /** The lane the dynamic updates of all the transports run on */
+    private ExecutorService updateExecutor;
+
+    /** The time a TCP connection may stay idle, in seconds, 0 to leave them open */
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /** The timers closing the idle TCP connections of all the transports */
+    private TimingWheel idleTimers;
+
 
     /**
      * Creates a new instance of DnsConfiguration.
@@ -76,7 +171,100 @@ public class DnsServer extends DirectoryBackedService
      */
     public void start() throws IOException
     {
-        RecordStore store = new JndiRecordStoreImpl( getSearchBaseDn(), getSearchBaseDn(), getDirectoryService() );
+        RecordStore store;
+        EntrySource source = entrySource;
+
+        if ( source == null && getDirectoryService() instanceof EntrySource )
+        {
+            source = ( EntrySource ) getDirectoryService();
+        }
+
+        if ( source != null )
+        {
+            // the records are loaded once, then kept up to date with the directory
+            directoryStore = new DirectoryRecordStore( source, getSearchBaseDn(), isCatelogBased() );
+            directoryStore.load();
+            store = directoryStore;
+        }
+        else if ( dataSource != null )
+        {
+            // the database is only read for the answers which are not cached
+            jdbcStore = new JdbcRecordStore( dataSource );
+            jdbcStore.start();
+            store = new CachingRecordStore( jdbcStore, cacheSize );
+        }
+        else if ( zoneImageDirectory != null )
+        {
+            // compiled zones are mapped, not loaded, and cannot be updated
+            store = ZoneImageRecordStore.open( zoneImageDirectory );
+        }
+        else if ( offHeap )
+        {
+            if ( journalDirectory != null )
+            {
+                ZoneJournal recovered = new ZoneJournal( journalDirectory );
+
+                try
+                {
+                    recovered.recover( zoneRegistry );
+                }
+                finally
+                {
+                    recovered.close();
+                }
+            }
+
+            // the records are copied out of the heap, and the zones dropped from it
+            store = ZoneImageRecordStore.allocate( zoneRegistry.getZones() );
+            zoneRegistry.setZones( Collections.<Zone> emptyList() );
+        }
+        else
+        {
+            ZoneRecordStore zoneStore = new ZoneRecordStore( zoneRegistry );
+
+            if ( journalDirectory != null )
+            {
+                // the zones come back as the last dynamic updates left them
+                journal = new ZoneJournal( journalDirectory );
+                journal.recover( zoneRegistry );
+                journal.start( zoneRegistry, snapshotInterval, TimeUnit.SECONDS );
+                zoneStore.setJournal( journal );
+            }
+
+            store = zoneStore;
+        }
+
+        if ( !secondaryZones.isEmpty() && store instanceof ZoneRecordStore )
+        {
+            secondaryService = new SecondaryService( zoneRegistry );
+
+            for ( Map.Entry<String, InetSocketAddress> entry : secondaryZones.entrySet() )
+            {
+                secondaryService.addZone( entry.getKey(), entry.getValue() );
+            }
+
+            secondaryService.start();
+        }
+
+        if ( !views.isEmpty() )
+        {
+            // the clients in none of the networks of the views are answered as before
+            viewSelector = new ViewSelector( new View( "default", store ) );
+
+            for ( Map.Entry<View, String[]> view : views.entrySet() )
+            {
+                viewSelector.add( view.getKey(), view.getValue() );
+            }
+        }
+
+        transferExecutor = DnsProtocolHandler.getTransferLane();
+        updateExecutor = DnsProtocolHandler.getUpdateLane();
+
+        if ( idleTimeout > 0 )
+        {
+            idleTimers = new TimingWheel();
+            idleTimers.start();
+        }
 
         if ( ( transports == null ) || ( transports.size() == 0 ) )
         {
@@ -88,7 +276,7 @@ public class DnsServer extends DirectoryBackedService
             DatagramAcceptor acceptor = (DatagramAcceptor)transport.getAcceptor();
 
             // Set the handler
-            acceptor.setHandler( new DnsProtocolHandler( store ) );
+            acceptor.setHandler( createHandler( store ) );
     
             // Allow the port to be reused even if the socket is in TIME_WAIT state
             ((DatagramSessionConfig)acceptor.getSessionConfig()).setReuseAddress( true );
@@ -104,7 +292,7 @@ public class DnsServer extends DirectoryBackedService
                 IoAcceptor acceptor = transport.getAcceptor();
     
                 // Set the handler
-                acceptor.setHandler( new DnsProtocolHandler( store ) );
+                acceptor.setHandler( createHandler( store ) );
         
                 if ( transport instanceof UdpTransport )
                 {
@@ -133,6 +321,330 @@ public class DnsServer extends DirectoryBackedService
     }
 
 
+    private DnsProtocolHandler createHandler( RecordStore store )
+    {
+        DnsProtocolHandler handler = new DnsProtocolHandler( store, transferExecutor, updateExecutor );
+        handler.setSecondaryService( secondaryService );
+        handler.setViewSelector( viewSelector );
+        handler.setAccessControl( accessControl );
+        handler.setResponsePolicy( responsePolicy );
+        handler.setIdleTimeout( idleTimers, idleTimeout, TimeUnit.SECONDS );
+
+        return handler;
+    }
+
+
+    /**
+     * Returns the registry of the zones served.  Zones put in the registry
+     * are answered for from the next query on, without restarting the server.
+     *
+     * @return The zone registry.
+     */
+    public ZoneRegistry getZoneRegistry()
+    {
+        return zoneRegistry;
+    }
+
+
+    /**
+     * @param zoneRegistry The zone registry to set, before the server starts.
+     */
+    public void setZoneRegistry( ZoneRegistry zoneRegistry )
+    {
+        this.zoneRegistry = zoneRegistry;
+    }
+
+
+    /**
+     * @return The directory of the journal of dynamic updates, or null.
+     */
+    public File getJournalDirectory()
+    {
+        return journalDirectory;
+    }
+
+
+    /**
+     * @param journalDirectory The directory to keep the journal of dynamic
+     * updates and the zone snapshots in, before the server starts.
+     */
+    public void setJournalDirectory( File journalDirectory )
+    {
+        this.journalDirectory = journalDirectory;
+    }
+
+
+    /**
+     * @return The directory of the compiled zone images served, or null.
+     */
+    public File getZoneImageDirectory()
+    {
+        return zoneImageDirectory;
+    }
+
+
+    /**
+     * @param zoneImageDirectory The directory of the images compiled with
+     * ZoneCompiler to serve, in place of the zone registry, before the
+     * server starts.  The zones then cannot be updated while it runs.
+     */
+    public void setZoneImageDirectory( File zoneImageDirectory )
+    {
+        this.zoneImageDirectory = zoneImageDirectory;
+    }
+
+
+    /**
+     * @return Whether the zones are served from outside of the heap.
+     */
+    public boolean isOffHeap()
+    {
+        return offHeap;
+    }
+
+
+    /**
+     * @param offHeap Whether to compile the zones of the registry, and of
+     * the journal if there is one, into images outside of the heap when the
+     * server starts, and serve them from there.  The zones then cannot be
+     * updated while the server runs.
+     */
+    public void setOffHeap( boolean offHeap )
+    {
+        this.offHeap = offHeap;
+    }
+
+
+    /**
+     * @return The time between two snapshots of the zones, in seconds.
+     */
+    public long getSnapshotInterval()
+    {
+        return snapshotInterval;
+    }
+
+
+    /**
+     * @param snapshotInterval The time between two snapshots of the zones, in seconds.
+     */
+    public void setSnapshotInterval( long snapshotInterval )
+    {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+
+    /**
+     * @return The time a TCP connection may stay idle, in seconds.
+     */
+    public long getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+
+    /**
+     * @param idleTimeout The time a TCP connection may stay idle before it is
+     * closed, in seconds, or 0 to leave the connections open.
+     */
+    public void setIdleTimeout( long idleTimeout )
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+
+    /**
+     * Serves a zone as a secondary, transferred from a primary server and
+     * kept up to date with it.  Secondary zones are added before the server
+     * starts.
+     *
+     * @param origin the name of the zone apex
+     * @param primary the address of the primary server
+     */
+    public void addSecondaryZone( String origin, InetSocketAddress primary )
+    {
+        secondaryZones.put( origin, primary );
+    }
+
+
+    /**
+     * @return The primary server of each secondary zone, by origin.
+     */
+    public Map<String, InetSocketAddress> getSecondaryZones()
+    {
+        return secondaryZones;
+    }
+
+
+    /**
+     * @return The directory the records are served from, or null.
+     */
+    public EntrySource getEntrySource()
+    {
+        return entrySource;
+    }
+
+
+    /**
+     * @param entrySource The directory to serve the apacheDns records of,
+     * under the search base or the catalog there, in place of the zones.  If
+     * none is set and the directory service is one, it is used.
+     */
+    public void setEntrySource( EntrySource entrySource )
+    {
+        this.entrySource = entrySource;
+    }
+
+
+    /**
+     * @return The database the records are served from, or null.
+     */
+    public DataSource getDataSource()
+    {
+        return dataSource;
+    }
+
+
+    /**
+     * @param dataSource The database to serve the records of, in place of
+     * the zones, see JdbcRecordStore.  It should pool its connections.
+     */
+    public void setDataSource( DataSource dataSource )
+    {
+        this.dataSource = dataSource;
+    }
+
+
+    /**
+     * @return The size of the cache of the answers of the database, in bytes.
+     */
+    public long getCacheSize()
+    {
+        return cacheSize;
+    }
+
+
+    /**
+     * @param cacheSize The size of the cache of the answers of the database, in bytes.
+     */
+    public void setCacheSize( long cacheSize )
+    {
+        this.cacheSize = cacheSize;
+    }
+
+
+    /**
+     * Adds a view of split-horizon DNS: the clients of the networks given are
+     * answered from the store given, rather than the zones of the server.
+     * Views are added before the server starts.
+     *
+     * @param name the name of the view
+     * @param store the records of the view, such as a ZoneRecordStore of its zones
+     * @param networks the networks of the clients of the view, such as 10.0.0.0/8
+     */
+    public void addView( String name, RecordStore store, String... networks )
+    {
+        views.put( new View( name, store, viewCacheSize ), networks );
+    }
+
+
+    /**
+     * @return The size of the cache of the answers of each view, in bytes.
+     */
+    public long getViewCacheSize()
+    {
+        return viewCacheSize;
+    }
+
+
+    /**
+     * @param viewCacheSize The size of the cache of the answers of each view
+     * added from then on, in bytes, 0 for none, as for zones in memory.
+     */
+    public void setViewCacheSize( long viewCacheSize )
+    {
+        this.viewCacheSize = viewCacheSize;
+    }
+
+
+    /**
+     * @return The clients allowed to query, transfer and update, or null if all are.
+     */
+    public AccessControl getAccessControl()
+    {
+        return accessControl;
+    }
+
+
+    /**
+     * Sets the clients allowed to query, transfer and update.  When the
+     * server runs, the clients allowed are replaced on each
+     * transport, from its next request on.
+     *
+     * @param accessControl the clients allowed, or null to allow all
+     */
+    public void setAccessControl( AccessControl accessControl )
+    {
+        this.accessControl = accessControl;
+
+        for ( DnsProtocolHandler handler : getHandlers() )
+        {
+            handler.setAccessControl( accessControl );
+        }
+    }
+
+
+    /**
+     * @return The response policy, or null if there is none.
+     */
+    public ResponsePolicy getResponsePolicy()
+    {
+        return responsePolicy;
+    }
+
+
+    /**
+     * Sets the response policy, whose blocklist queries are answered from
+     * before the store.  When the server runs, the policy is replaced on
+     * each transport, from its next query on, so a reloaded blocklist is
+     * put in place by setting a new policy.
+     *
+     * @param responsePolicy the response policy, or null for none
+     */
+    public void setResponsePolicy( ResponsePolicy responsePolicy )
+    {
+        this.responsePolicy = responsePolicy;
+
+        for ( DnsProtocolHandler handler : getHandlers() )
+        {
+            handler.setResponsePolicy( responsePolicy );
+        }
+    }
+
+
+    /**
+     * Returns the handlers of the transports the server runs on.
+     */
+    private List<DnsProtocolHandler> getHandlers()
+    {
+        List<DnsProtocolHandler> handlers = new ArrayList<DnsProtocolHandler>();
+
+        if ( getTransports() != null )
+        {
+            for ( Transport transport : getTransports() )
+            {
+                IoAcceptor acceptor = transport.getAcceptor();
+
+                if ( acceptor != null && acceptor.getHandler() instanceof DnsProtocolHandler )
+                {
+                    handlers.add( ( DnsProtocolHandler ) acceptor.getHandler() );
+                }
+            }
+        }
+
+        return handlers;
+    }
+
+
     public void stop() {
         for ( Transport transport :getTransports() )
         {
@@ -144,6 +656,67 @@ public class DnsServer extends DirectoryBackedService
             }
         }
         
+        if ( idleTimers != null )
+        {
+            idleTimers.stop();
+            idleTimers = null;
+        }
+
+        if ( transferExecutor != null )
+        {
+            transferExecutor.shutdown();
+            transferExecutor = null;
+        }
+
+        if ( updateExecutor != null )
+        {
+            // the updates queued are still written to the journal before it closes
+            updateExecutor.shutdown();
+
+            try
+            {
+                updateExecutor.awaitTermination( 10, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            updateExecutor = null;
+        }
+
+        if ( secondaryService != null )
+        {
+            secondaryService.stop();
+            secondaryService = null;
+        }
+
+        if ( directoryStore != null )
+        {
+            directoryStore.close();
+            directoryStore = null;
+        }
+
+        if ( jdbcStore != null )
+        {
+            jdbcStore.stop();
+            jdbcStore = null;
+        }
+
+        if ( journal != null )
+        {
+            try
+            {
+                journal.close();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.error( "Could not close the zone journal", ioe );
+            }
+
+            journal = null;
+        }
+
         LOG.info( "DNS service stopped." );
         System.out.println( "DNS service stopped." );
     }
@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.core;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+
+/**
+ * An entry of the directory: its DN and its attributes, whose ids are case
+ * insensitive.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class DirectoryEntry
+{
+    /** The id of the attribute holding the object classes of an entry */
+    public static final String OBJECT_CLASS = "objectClass";
+
+    private final String dn;
+
+    private final Map<String, List<String>> attributes = new TreeMap<String, List<String>>(
+        String.CASE_INSENSITIVE_ORDER );
+
+
+    /**
+     * Creates a new instance of DirectoryEntry, without attributes.
+     *
+     * @param dn the DN of the entry
+     */
+    public DirectoryEntry( String dn )
+    {
+        this.dn = dn;
+    }
+
+
+    /**
+     * Creates a new instance of DirectoryEntry, with the attributes of another.
+     *
+     * @param entry the entry to copy
+     */
+    public DirectoryEntry( DirectoryEntry entry )
+    {
+        this.dn = entry.dn;
+        this.attributes.putAll( entry.attributes );
+    }
+
+
+    /**
+     * @return Returns the DN of the entry.
+     */
+    public String getDn()
+    {
+        return dn;
+    }
+
+
+    /**
+     * Returns the first value of an attribute.
+     *
+     * @param id the id of the attribute
+     * @return The value, or null if the entry does not have the attribute.
+     */
+    public String get( String id )
+    {
+        List<String> values = attributes.get( id );
+
+        return values == null || values.isEmpty() ? null : values.get( 0 );
+    }
+
+
+    /**
+     * Returns the values of an attribute.
+     *
+     * @param id the id of the attribute
+     * @return The values, empty if the entry does not have the attribute.
+     */
+    public List<String> getAll( String id )
+    {
+        List<String> values = attributes.get( id );
+
+        return values == null ? Collections.<String> emptyList() : values;
+    }
+
+
+    /**
+     * @return Returns the ids of the attributes of the entry.
+     */
+    public Set<String> getIds()
+    {
+        return Collections.unmodifiableSet( attributes.keySet() );
+    }
+
+
+    /**
+     * Sets the values of an attribute, replacing the ones it had.
+     *
+     * @param id the id of the attribute
+     * @param values the values, none to remove the attribute
+     * @return This entry.
+     */
+    public DirectoryEntry put( String id, String... values )
+    {
+        if ( values.length == 0 )
+        {
+            attributes.remove( id );
+        }
+        else
+        {
+            attributes.put( id, Collections.unmodifiableList( new ArrayList<String>( Arrays.asList( values ) ) ) );
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Tells whether the entry is of an object class.
+     *
+     * @param objectClass the object class
+     * @return true if one of the object classes of the entry is the one given
+     */
+    public boolean hasObjectClass( String objectClass )
+    {
+        for ( String value : getAll( OBJECT_CLASS ) )
+        {
+            if ( value.equalsIgnoreCase( objectClass ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return dn + " " + attributes;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.core;
+
+
+/**
+ * Told about the changes made to the entries under a DN, once they are made.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public interface DirectoryListener
+{
+    /**
+     * Called once an entry was added.
+     *
+     * @param entry the entry added
+     */
+    void entryAdded( DirectoryEntry entry );
+
+
+    /**
+     * Called once an entry was deleted.
+     *
+     * @param entry the entry deleted, as it was
+     */
+    void entryDeleted( DirectoryEntry entry );
+
+
+    /**
+     * Called once the attributes of an entry were changed.  A renamed entry
+     * is deleted, then added.
+     *
+     * @param oldEntry the entry as it was
+     * @param newEntry the entry as it is
+     */
+    void entryModified( DirectoryEntry oldEntry, DirectoryEntry newEntry );
+}
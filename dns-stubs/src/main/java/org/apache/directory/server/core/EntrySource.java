@@ -0,0 +1,62 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.core;
+
+
+/**
+ * The entries of a directory, as the protocol services which keep their own
+ * copy of them see it: searched a page at a time, then followed through the
+ * changes made to them.  A {@link DirectoryService} may be one.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public interface EntrySource
+{
+    /**
+     * Searches the entries of an object class under a DN, the DN included.
+     *
+     * @param baseDn the DN to search under
+     * @param objectClass the object class of the entries
+     * @param cookie the cookie of the previous page, or null for the first
+     * @param pageSize the most entries of a page
+     * @return The page of the entries found.
+     */
+    SearchPage search( String baseDn, String objectClass, String cookie, int pageSize );
+
+
+    /**
+     * Adds a listener told about the changes made to the entries under a
+     * DN, the DN included.
+     *
+     * @param baseDn the DN
+     * @param listener the listener
+     */
+    void addListener( String baseDn, DirectoryListener listener );
+
+
+    /**
+     * Removes a listener, from all the DNs it listens to.
+     *
+     * @param listener the listener
+     */
+    void removeListener( DirectoryListener listener );
+}
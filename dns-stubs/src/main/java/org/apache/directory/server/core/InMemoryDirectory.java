@@ -0,0 +1,196 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.core;
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+
+/**
+ * An {@link EntrySource} keeping its entries in memory, a stand-in for a
+ * directory where one is not at hand, such as in tests.  Listeners are told
+ * about the changes as they are made, on the thread making them.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class InMemoryDirectory implements EntrySource
+{
+    /** The entries, by normalized DN */
+    private final TreeMap<String, DirectoryEntry> entries = new TreeMap<String, DirectoryEntry>();
+
+    /** The listeners, with the normalized DNs they listen to */
+    private final Map<DirectoryListener, List<String>> listeners =
+        new LinkedHashMap<DirectoryListener, List<String>>();
+
+
+    public synchronized SearchPage search( String baseDn, String objectClass, String cookie, int pageSize )
+    {
+        String base = normalize( baseDn );
+        SortedMap<String, DirectoryEntry> next = cookie == null ? entries : entries.tailMap( cookie + '\0' );
+        List<DirectoryEntry> found = new ArrayList<DirectoryEntry>();
+
+        for ( Map.Entry<String, DirectoryEntry> entry : next.entrySet() )
+        {
+            if ( isUnder( entry.getKey(), base ) && entry.getValue().hasObjectClass( objectClass ) )
+            {
+                found.add( new DirectoryEntry( entry.getValue() ) );
+
+                if ( found.size() == pageSize )
+                {
+                    return new SearchPage( found, entry.getKey() );
+                }
+            }
+        }
+
+        return new SearchPage( found, null );
+    }
+
+
+    public synchronized void addListener( String baseDn, DirectoryListener listener )
+    {
+        List<String> bases = listeners.get( listener );
+
+        if ( bases == null )
+        {
+            bases = new ArrayList<String>();
+            listeners.put( listener, bases );
+        }
+
+        bases.add( normalize( baseDn ) );
+    }
+
+
+    public synchronized void removeListener( DirectoryListener listener )
+    {
+        listeners.remove( listener );
+    }
+
+
+    /**
+     * Adds an entry, or replaces the one with the same DN.
+     *
+     * @param entry the entry
+     */
+    public synchronized void add( DirectoryEntry entry )
+    {
+        String dn = normalize( entry.getDn() );
+        DirectoryEntry copy = new DirectoryEntry( entry );
+        DirectoryEntry old = entries.put( dn, copy );
+
+        for ( DirectoryListener listener : getListeners( dn ) )
+        {
+            if ( old == null )
+            {
+                listener.entryAdded( new DirectoryEntry( copy ) );
+            }
+            else
+            {
+                listener.entryModified( new DirectoryEntry( old ), new DirectoryEntry( copy ) );
+            }
+        }
+    }
+
+
+    /**
+     * Deletes an entry.
+     *
+     * @param dn the DN of the entry
+     * @return true if there was such an entry
+     */
+    public synchronized boolean delete( String dn )
+    {
+        String key = normalize( dn );
+        DirectoryEntry old = entries.remove( key );
+
+        if ( old == null )
+        {
+            return false;
+        }
+
+        for ( DirectoryListener listener : getListeners( key ) )
+        {
+            listener.entryDeleted( new DirectoryEntry( old ) );
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Returns an entry.
+     *
+     * @param dn the DN of the entry
+     * @return The entry, or null if there is none.
+     */
+    public synchronized DirectoryEntry lookup( String dn )
+    {
+        DirectoryEntry entry = entries.get( normalize( dn ) );
+
+        return entry == null ? null : new DirectoryEntry( entry );
+    }
+
+
+    private List<DirectoryListener> getListeners( String dn )
+    {
+        List<DirectoryListener> found = new ArrayList<DirectoryListener>();
+
+        for ( Map.Entry<DirectoryListener, List<String>> listener : listeners.entrySet() )
+        {
+            for ( String base : listener.getValue() )
+            {
+                if ( isUnder( dn, base ) )
+                {
+                    found.add( listener.getKey() );
+                    break;
+                }
+            }
+        }
+
+        return found;
+    }
+
+
+    /**
+     * Tells whether a DN is under another, or is the same.
+     *
+     * @param dn the normalized DN
+     * @param base the normalized DN of the base
+     */
+    private static boolean isUnder( String dn, String base )
+    {
+        return dn.equals( base ) || dn.endsWith( "," + base );
+    }
+
+
+    /**
+     * Returns a DN in lower case, without the blanks around its separators.
+     */
+    private static String normalize( String dn )
+    {
+        return dn.toLowerCase().replaceAll( "\\s*([,=+])\\s*", "$1" ).trim();
+    }
+}
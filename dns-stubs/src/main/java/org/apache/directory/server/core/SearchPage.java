@@ -0,0 +1,70 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.core;
+
+
+import java.util.List;
+
+
+/**
+ * A page of the entries found by a search, see {@link EntrySource}.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class SearchPage
+{
+    private final List<DirectoryEntry> entries;
+
+    private final String cookie;
+
+
+    /**
+     * Creates a new instance of SearchPage.
+     *
+     * @param entries the entries of the page
+     * @param cookie the cookie to ask for the next page, or null if this is the last
+     */
+    public SearchPage( List<DirectoryEntry> entries, String cookie )
+    {
+        this.entries = entries;
+        this.cookie = cookie;
+    }
+
+
+    /**
+     * @return Returns the entries of the page.
+     */
+    public List<DirectoryEntry> getEntries()
+    {
+        return entries;
+    }
+
+
+    /**
+     * @return Returns the cookie to ask for the next page, or null if this
+     * is the last.
+     */
+    public String getCookie()
+    {
+        return cookie;
+    }
+}
@@ -23,7 +23,7 @@ package org.apache.directory.server.dns.io.decoder;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,7 +38,7 @@ import org.apache.directory.server.dns.messages.RecordType;
 import org.apache.directory.server.dns.messages.ResourceRecord;
 import org.apache.directory.server.dns.messages.ResourceRecordImpl;
 import org.apache.directory.server.dns.messages.ResponseCode;
-import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.dns.store.DnsAttribute;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,20 +59,55 @@ public class DnsMessageDecoder
     private final Logger logger = LoggerFactory.getLogger( DnsMessageDecoder.class );
 
     /**
-     * A Hashed Adapter mapping record types to their encoders.
+     * The decoder used for every record type without a decoder of its own.
      */
-    private static final Map<RecordType, RecordDecoder> DEFAULT_DECODERS;
+    private static final RecordDecoder OPAQUE_DECODER = new OpaqueRecordDecoder();
+
+    /**
+     * The record decoders, indexed by the 16 bit record type code.  Codes
+     * beyond the end of the table use the {@link #OPAQUE_DECODER}.
+     */
+    private static final RecordDecoder[] DEFAULT_DECODERS;
 
     static
     {
-        Map<RecordType, RecordDecoder> map = new HashMap<RecordType, RecordDecoder>();
+        int max = 0;
 
-        map.put( RecordType.A, new AddressRecordDecoder() );
-        map.put( RecordType.NS, new NameServerRecordDecoder() );
-        map.put( RecordType.MX, new MailExchangeRecordDecoder() );
-        map.put( RecordType.AAAA, new IPv6RecordDecoder() );
+        for ( RecordType type : RecordType.values() )
+        {
+            if ( type != RecordType.UNKNOWN )
+            {
+                max = Math.max( max, type.convert() & 0xFFFF );
+            }
+        }
 
-        DEFAULT_DECODERS = Collections.unmodifiableMap( map );
+        RecordDecoder[] decoders = new RecordDecoder[max + 1];
+        Arrays.fill( decoders, OPAQUE_DECODER );
+
+        decoders[RecordType.A.convert()] = new AddressRecordDecoder();
+        decoders[RecordType.NS.convert()] = new NameServerRecordDecoder();
+        decoders[RecordType.CNAME.convert()] = new CanonicalNameRecordDecoder();
+        decoders[RecordType.SOA.convert()] = new StartOfAuthorityRecordDecoder();
+        decoders[RecordType.PTR.convert()] = new PointerRecordDecoder();
+        decoders[RecordType.MX.convert()] = new MailExchangeRecordDecoder();
+        decoders[RecordType.TXT.convert()] = new TextRecordDecoder();
+        decoders[RecordType.AAAA.convert()] = new IPv6RecordDecoder();
+        decoders[RecordType.SRV.convert()] = new ServerSelectionRecordDecoder();
+        decoders[RecordType.DNAME.convert()] = new DnameRecordDecoder();
+
+        // the other well known types with names in their RDATA, which may be compressed
+        RecordDecoder oneName = new ExpandingRecordDecoder( 0, 1 );
+        RecordDecoder twoNames = new ExpandingRecordDecoder( 0, 2 );
+        RecordDecoder preferenceAndName = new ExpandingRecordDecoder( 2, 1 );
+        decoders[RecordType.MB.convert()] = oneName;
+        decoders[RecordType.MG.convert()] = oneName;
+        decoders[RecordType.MR.convert()] = oneName;
+        decoders[RecordType.MINFO.convert()] = twoNames;
+        decoders[RecordType.RP.convert()] = twoNames;
+        decoders[RecordType.AFSDB.convert()] = preferenceAndName;
+        decoders[RecordType.RT.convert()] = preferenceAndName;
+
+        DEFAULT_DECODERS = decoders;
     }
 
 
@@ -106,8 +141,15 @@ public class DnsMessageDecoder
         short additionalCount = in.getShort();
 
         logger.debug( "decoding {} question records", questionCount );
+        int questionStart = in.position();
         modifier.setQuestionRecords( getQuestions( in, questionCount ) );
 
+        // keep the question section as received, so replies can echo it verbatim
+        byte[] questionBytes = new byte[in.position() - questionStart];
+        in.position( questionStart );
+        in.get( questionBytes );
+        modifier.setQuestionBytes( questionBytes );
+
         logger.debug( "decoding {} answer records", answerCount );
         modifier.setAnswerRecords( getRecords( in, answerCount ) );
 
@@ -127,31 +169,82 @@ public class DnsMessageDecoder
 
         for ( int ii = 0; ii < recordCount; ii++ )
         {
-            String domainName = getDomainName( byteBuffer );
-            RecordType recordType = RecordType.convert( byteBuffer.getShort() );
-            RecordClass recordClass = RecordClass.convert( byteBuffer.getShort() );
-
-            int timeToLive = byteBuffer.getInt();
-            short dataLength = byteBuffer.getShort();
-
-            Map<String, Object> attributes = decode( byteBuffer, recordType, dataLength );
-            records.add( new ResourceRecordImpl( domainName, recordType, recordClass, timeToLive, attributes ) );
+            records.add( getRecord( byteBuffer ) );
         }
 
         return records;
     }
 
 
-    private Map<String, Object> decode( IoBuffer byteBuffer, RecordType type, short length ) throws IOException
+    /**
+     * Decodes a single record in wire form.  Names compressed with pointers
+     * are only read right if the buffer holds the whole message.
+     *
+     * @param byteBuffer
+     * @return The record.
+     * @throws IOException if the RDATA cannot be decoded
+     */
+    public static ResourceRecord getRecord( IoBuffer byteBuffer ) throws IOException
     {
-        RecordDecoder recordDecoder = DEFAULT_DECODERS.get( type );
+        String domainName = getDomainName( byteBuffer );
+        int typeCode = byteBuffer.getUnsignedShort();
+        RecordType recordType = RecordType.convert( ( short ) typeCode );
+        RecordClass recordClass;
+        int payloadSize = 0;
 
-        if ( recordDecoder == null )
+        if ( recordType == RecordType.OPT )
         {
-            throw new IllegalArgumentException( I18n.err(I18n.ERR_600, type ) );
+            // the CLASS of an EDNS OPT record holds the UDP payload size
+            payloadSize = byteBuffer.getUnsignedShort();
+            recordClass = RecordClass.IN;
         }
+        else
+        {
+            recordClass = RecordClass.convert( byteBuffer.getShort() );
+        }
+
+        int timeToLive = byteBuffer.getInt();
+        short dataLength = byteBuffer.getShort();
+        int end = byteBuffer.position() + ( dataLength & 0xFFFF );
 
-        return recordDecoder.decode( byteBuffer, length );
+        Map<String, Object> attributes;
+
+        if ( dataLength == 0 )
+        {
+            // as in the prerequisites and deletions of RFC 2136 updates
+            attributes = new HashMap<String, Object>();
+        }
+        else
+        {
+            attributes = getDecoder( typeCode ).decode( byteBuffer, dataLength );
+        }
+
+        if ( recordType == RecordType.UNKNOWN )
+        {
+            attributes.put( DnsAttribute.TYPE, String.valueOf( typeCode ) );
+        }
+        else if ( recordType == RecordType.OPT )
+        {
+            attributes.put( DnsAttribute.UDP_PAYLOAD_SIZE, String.valueOf( payloadSize ) );
+        }
+
+        // Whatever the decoder made of the RDATA, the next record starts here
+        byteBuffer.position( end );
+
+        return new ResourceRecordImpl( domainName, recordType, recordClass, timeToLive, attributes );
+    }
+
+
+    /**
+     * Returns the decoder for a record type code.  Every code has one, those
+     * without a dedicated decoder are read as opaque RDATA.
+     *
+     * @param typeCode the unsigned 16 bit record type code
+     * @return the {@link RecordDecoder} for the code
+     */
+    static RecordDecoder getDecoder( int typeCode )
+    {
+        return typeCode < DEFAULT_DECODERS.length ? DEFAULT_DECODERS[typeCode] : OPAQUE_DECODER;
     }
 
 
@@ -163,10 +256,10 @@ public class DnsMessageDecoder
         {
             String domainName = getDomainName( byteBuffer );
 
-            RecordType recordType = RecordType.convert( byteBuffer.getShort() );
+            int typeCode = byteBuffer.getUnsignedShort();
             RecordClass recordClass = RecordClass.convert( byteBuffer.getShort() );
 
-            questions.add( new QuestionRecord( domainName, recordType, recordClass ) );
+            questions.add( new QuestionRecord( domainName, typeCode, recordClass ) );
         }
 
         return questions;
@@ -189,7 +282,7 @@ public class DnsMessageDecoder
         if ( isOffset( length ) )
         {
             int position = byteBuffer.getUnsigned();
-            int offset = length & ~( 0xc0 ) << 8;
+            int offset = ( length & 0x3f ) << 8;
             int originalPosition = byteBuffer.position();
             byteBuffer.position( position + offset );
 
@@ -0,0 +1,147 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.io.decoder;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.mina.core.buffer.IoBuffer;
+
+
+/**
+ * A decoder for the well known record types without a decoder of their own
+ * whose RDATA holds domain names, which the sender may have compressed:
+ * MB, MG, MR, MINFO and RP, and AFSDB and RT after a 16 bit preference.
+ * As RFC 3597 requires of them, the names are expanded, so that the RDATA
+ * is kept as opaque RDATA which no longer points into the message it came
+ * in, and can be written to another one.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ExpandingRecordDecoder implements RecordDecoder
+{
+    /** The most compression pointers followed in a name, against loops */
+    private static final int MAX_POINTERS = 128;
+
+    /** The number of octets before the first name */
+    private final int fixedLength;
+
+    /** The number of names after the fixed octets */
+    private final int nameCount;
+
+
+    /**
+     * Creates a new instance of ExpandingRecordDecoder.
+     *
+     * @param fixedLength the number of octets before the first name
+     * @param nameCount the number of names after the fixed octets
+     */
+    public ExpandingRecordDecoder( int fixedLength, int nameCount )
+    {
+        this.fixedLength = fixedLength;
+        this.nameCount = nameCount;
+    }
+
+
+    public Map<String, Object> decode( IoBuffer byteBuffer, short length ) throws IOException
+    {
+        // an expanded name is at most 255 octets
+        byte[] rdata = new byte[fixedLength + nameCount * 255];
+
+        if ( ( length & 0xFFFF ) < fixedLength )
+        {
+            throw new IOException( "RDATA of " + ( length & 0xFFFF ) + " octets is too short" );
+        }
+
+        byteBuffer.get( rdata, 0, fixedLength );
+        int position = fixedLength;
+
+        for ( int ii = 0; ii < nameCount; ii++ )
+        {
+            position = expandName( byteBuffer, rdata, position );
+        }
+
+        return OpaqueRecordDecoder.getAttributes( Arrays.copyOf( rdata, position ), position );
+    }
+
+
+    /**
+     * Copies a name into the RDATA without compression pointers, moving the
+     * buffer past the name as it is in the message.
+     *
+     * @return The position in the RDATA after the name.
+     */
+    private static int expandName( IoBuffer byteBuffer, byte[] rdata, int position ) throws IOException
+    {
+        int start = position;
+        int at = byteBuffer.position();
+        int end = -1;
+        int pointers = 0;
+
+        while ( true )
+        {
+            int length = byteBuffer.getUnsigned( at );
+
+            if ( DnsMessageDecoder.isOffset( length ) )
+            {
+                if ( end < 0 )
+                {
+                    end = at + 2;
+                }
+
+                if ( ++pointers > MAX_POINTERS )
+                {
+                    throw new IOException( "Compression pointer loop" );
+                }
+
+                at = ( ( length & 0x3F ) << 8 ) | byteBuffer.getUnsigned( at + 1 );
+                continue;
+            }
+
+            if ( ( length & 0xC0 ) != 0 || position + 1 + length - start > 255 )
+            {
+                throw new IOException( "Invalid domain name in RDATA" );
+            }
+
+            rdata[position++] = ( byte ) length;
+
+            if ( length == 0 )
+            {
+                at++;
+                break;
+            }
+
+            for ( int ii = 1; ii <= length; ii++ )
+            {
+                rdata[position++] = byteBuffer.get( at + ii );
+            }
+
+            at += 1 + length;
+        }
+
+        byteBuffer.position( end < 0 ? at : end );
+
+        return position;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.io.decoder;
+
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.mina.core.buffer.IoBuffer;
+
+
+/**
+ * A decoder for records of a type without a decoder of its own.  As described
+ * in RFC 3597, the RDATA of such records is kept as is, as a string of
+ * hexadecimal digits in the {@link DnsAttribute#RDATA} attribute, so that it
+ * can be passed through unchanged by the
+ * {@link org.apache.directory.server.dns.io.encoder.OpaqueRecordEncoder}.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class OpaqueRecordDecoder implements RecordDecoder
+{
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
+    public Map<String, Object> decode( IoBuffer byteBuffer, short length ) throws IOException
+    {
+        byte[] rdata = new byte[length & 0xFFFF];
+        byteBuffer.get( rdata );
+
+        return getAttributes( rdata, rdata.length );
+    }
+
+
+    /**
+     * Returns the attributes of opaque RDATA.
+     *
+     * @param rdata the RDATA octets
+     * @param length the number of octets of the RDATA
+     * @return The attributes, the RDATA as hexadecimal digits.
+     */
+    static Map<String, Object> getAttributes( byte[] rdata, int length )
+    {
+        char[] hex = new char[length * 2];
+
+        for ( int ii = 0; ii < length; ii++ )
+        {
+            int octet = rdata[ii] & 0xFF;
+            hex[ii * 2] = HEX_DIGITS[octet >>> 4];
+            hex[ii * 2 + 1] = HEX_DIGITS[octet & 0x0F];
+        }
+
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put( DnsAttribute.RDATA, new String( hex ) );
+        return map;
+    }
+}
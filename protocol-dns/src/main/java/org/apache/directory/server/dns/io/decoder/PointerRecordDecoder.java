@@ -18,34 +18,42 @@
  *  
  */
 
-package org.apache.directory.server.dns.io.encoder;
+package org.apache.directory.server.dns.io.decoder;
+
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.mina.core.buffer.IoBuffer;
 
 
 /**
- * 3.3.2. HINFO RDATA format
+ * A decoder for PTR records.  PTR records are encoded as per RFC-1035:
  * 
+ * <pre>
+ *   3.3.12. PTR RDATA format
+ *
  *     +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
- *     /                      CPU                      /
+ *     /                   PTRDNAME                    /
  *     +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
- *     /                       OS                      /
- *     +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
- * 
- * where:
- * 
- * CPU             A <character-string> which specifies the CPU type.
- * 
- * OS              A <character-string> which specifies the operating
- *                 system type.
- * 
- * Standard values for CPU and OS can be found in [RFC-1010].
- * 
- * HINFO records are used to acquire general information about a host.  The
- * main use is for protocols such as FTP that can use special procedures
- * when talking between machines or operating systems of the same type.
+ *
+ *   where:
+ *
+ *   PTRDNAME
+ *     A <domain-name> which points to some location in the domain name space.
+ * </pre>
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
- * @version $Rev: 501160 $, $Date: 2007-01-29 20:41:33 +0100 (Lun, 29 jan 2007) $
+ * @version $Rev$, $Date$
  */
-public class HostInformationRecordEncoder
+public class PointerRecordDecoder implements RecordDecoder
 {
+    public Map<String, Object> decode( IoBuffer byteBuffer, short length ) throws IOException
+    {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put( DnsAttribute.DOMAIN_NAME, DnsMessageDecoder.getDomainName( byteBuffer ) );
+        return map;
+    }
 }
@@ -0,0 +1,54 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.io.decoder;
+
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.mina.core.buffer.IoBuffer;
+
+
+/**
+ * A decoder for SRV records.  SRV records are encoded as per RFC-2782:
+ * 
+ * <pre>
+ *   Priority, Weight and Port are unsigned 16 bit integers in network byte
+ *   order, followed by the Target <domain-name>.
+ * </pre>
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ServerSelectionRecordDecoder implements RecordDecoder
+{
+    public Map<String, Object> decode( IoBuffer byteBuffer, short length ) throws IOException
+    {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put( DnsAttribute.SERVICE_PRIORITY, byteBuffer.getUnsignedShort() );
+        map.put( DnsAttribute.SERVICE_WEIGHT, byteBuffer.getUnsignedShort() );
+        map.put( DnsAttribute.SERVICE_PORT, byteBuffer.getUnsignedShort() );
+        map.put( DnsAttribute.DOMAIN_NAME, DnsMessageDecoder.getDomainName( byteBuffer ) );
+        return map;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.io.decoder;
+
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.mina.core.buffer.IoBuffer;
+
+
+/**
+ * A decoder for SOA records.  SOA records are encoded as per RFC-1035:
+ * 
+ * <pre>
+ *   3.3.13. SOA RDATA format
+ *
+ *     +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
+ *     /                     MNAME                     /
+ *     /                                               /
+ *     +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
+ *     /                     RNAME                     /
+ *     +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
+ *     |                    SERIAL                     |
+ *     |                                               |
+ *     +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
+ *     |                    REFRESH                    |
+ *     |                                               |
+ *     +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
+ *     |                     RETRY                     |
+ *     |                                               |
+ *     +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
+ *     |                    EXPIRE                     |
+ *     |                                               |
+ *     +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
+ *     |                    MINIMUM                    |
+ *     |                                               |
+ *     +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
+ * </pre>
+ * 
+ * SERIAL and MINIMUM are unsigned 32 bit values and are decoded as longs.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class StartOfAuthorityRecordDecoder implements RecordDecoder
+{
+    public Map<String, Object> decode( IoBuffer byteBuffer, short length ) throws IOException
+    {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put( DnsAttribute.SOA_M_NAME, DnsMessageDecoder.getDomainName( byteBuffer ) );
+        map.put( DnsAttribute.SOA_R_NAME, DnsMessageDecoder.getDomainName( byteBuffer ) );
+        map.put( DnsAttribute.SOA_SERIAL, byteBuffer.getUnsignedInt() );
+        map.put( DnsAttribute.SOA_REFRESH, byteBuffer.getInt() );
+        map.put( DnsAttribute.SOA_RETRY, byteBuffer.getInt() );
+        map.put( DnsAttribute.SOA_EXPIRE, byteBuffer.getInt() );
+        map.put( DnsAttribute.SOA_MINIMUM, byteBuffer.getUnsignedInt() );
+        return map;
+    }
+}
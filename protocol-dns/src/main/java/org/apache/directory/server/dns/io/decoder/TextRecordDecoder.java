@@ -0,0 +1,75 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.io.decoder;
+
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.mina.core.buffer.IoBuffer;
+
+
+/**
+ * A decoder for TXT records.  TXT records are encoded as per RFC-1035:
+ * 
+ * <pre>
+ *   3.3.14. TXT RDATA format
+ *
+ *     +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
+ *     /                   TXT-DATA                    /
+ *     +--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+--+
+ *
+ *   where:
+ *
+ *   TXT-DATA
+ *     One or more <character-string>s.
+ * </pre>
+ * 
+ * The character strings are joined into the single character string the
+ * apachedns schema holds for a TXT record.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class TextRecordDecoder implements RecordDecoder
+{
+    public Map<String, Object> decode( IoBuffer byteBuffer, short length ) throws IOException
+    {
+        int end = byteBuffer.position() + ( length & 0xFFFF );
+        StringBuilder text = new StringBuilder();
+
+        while ( byteBuffer.position() < end )
+        {
+            int stringLength = byteBuffer.getUnsigned();
+
+            for ( int ii = 0; ii < stringLength; ii++ )
+            {
+                text.append( ( char ) ( byteBuffer.get() & 0xFF ) );
+            }
+        }
+
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put( DnsAttribute.CHARACTER_STRING, text.toString() );
+        return map;
+    }
+}
@@ -21,8 +21,7 @@
 package org.apache.directory.server.dns.io.encoder;
 
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.io.IOException;
 
 import org.apache.directory.server.dns.messages.ResourceRecord;
 import org.apache.directory.server.dns.store.DnsAttribute;
@@ -53,16 +52,8 @@ import org.apache.mina.core.buffer.IoBuffer;
  */
 public class AddressRecordEncoder extends ResourceRecordEncoder
 {
-    protected void putResourceRecordData( IoBuffer byteBuffer, ResourceRecord record )
+    protected void putResourceRecordData( IoBuffer byteBuffer, ResourceRecord record ) throws IOException
     {
-        String ipAddress = record.get( DnsAttribute.IP_ADDRESS );
-
-        try
-        {
-            byteBuffer.put( InetAddress.getByName( ipAddress ).getAddress() );
-        }
-        catch ( UnknownHostException uhe )
-        {
-        }
+        byteBuffer.put( parseAddress( record.get( DnsAttribute.IP_ADDRESS ), 4 ) );
     }
 }
@@ -21,6 +21,11 @@
 package org.apache.directory.server.dns.io.encoder;
 
 
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.mina.core.buffer.IoBuffer;
+
+
 /**
  * 3. The DNAME Resource Record
  * 
@@ -66,6 +71,10 @@ package org.apache.directory.server.dns.io.encoder;
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  * @version $Rev: 501160 $, $Date: 2007-01-29 20:41:33 +0100 (Lun, 29 jan 2007) $
  */
-public class DnameRecordEncoder
+public class DnameRecordEncoder extends ResourceRecordEncoder
 {
+    protected void putResourceRecordData( IoBuffer byteBuffer, ResourceRecord record )
+    {
+        putDomainName( byteBuffer, record.get( DnsAttribute.DOMAIN_NAME ) );
+    }
 }
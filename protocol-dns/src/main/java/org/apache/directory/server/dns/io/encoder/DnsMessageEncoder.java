@@ -22,23 +22,13 @@ package org.apache.directory.server.dns.io.encoder;
 
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 import org.apache.directory.server.dns.messages.DnsMessage;
-import org.apache.directory.server.dns.messages.MessageType;
-import org.apache.directory.server.dns.messages.OpCode;
 import org.apache.directory.server.dns.messages.QuestionRecord;
 import org.apache.directory.server.dns.messages.RecordType;
 import org.apache.directory.server.dns.messages.ResourceRecord;
-import org.apache.directory.server.dns.messages.ResponseCode;
-import org.apache.directory.server.i18n.I18n;
 import org.apache.mina.core.buffer.IoBuffer;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 
 /**
@@ -52,28 +42,44 @@ import org.slf4j.LoggerFactory;
  */
 public class DnsMessageEncoder
 {
-    /** the log for this class */
-    private static final Logger log = LoggerFactory.getLogger( DnsMessageEncoder.class );
+    /**
+     * The encoder used for every record type without an encoder of its own.
+     */
+    private static final RecordEncoder OPAQUE_ENCODER = new OpaqueRecordEncoder();
 
     /**
-     * A Hashed Adapter mapping record types to their encoders.
+     * The record encoders, indexed by the 16 bit record type code.  Codes
+     * beyond the end of the table use the {@link #OPAQUE_ENCODER}.
      */
-    private static final Map<RecordType, RecordEncoder> DEFAULT_ENCODERS;
+    private static final RecordEncoder[] DEFAULT_ENCODERS;
 
     static
     {
-        Map<RecordType, RecordEncoder> map = new HashMap<RecordType, RecordEncoder>();
-
-        map.put( RecordType.SOA, new StartOfAuthorityRecordEncoder() );
-        map.put( RecordType.A, new AddressRecordEncoder() );
-        map.put( RecordType.NS, new NameServerRecordEncoder() );
-        map.put( RecordType.CNAME, new CanonicalNameRecordEncoder() );
-        map.put( RecordType.PTR, new PointerRecordEncoder() );
-        map.put( RecordType.MX, new MailExchangeRecordEncoder() );
-        map.put( RecordType.SRV, new ServerSelectionRecordEncoder() );
-        map.put( RecordType.TXT, new TextRecordEncoder() );
-
-        DEFAULT_ENCODERS = Collections.unmodifiableMap( map );
+        int max = 0;
+
+        for ( RecordType type : RecordType.values() )
+        {
+            if ( type != RecordType.UNKNOWN )
+            {
+                max = Math.max( max, type.convert() & 0xFFFF );
+            }
+        }
+
+        RecordEncoder[] encoders = new RecordEncoder[max + 1];
+        Arrays.fill( encoders, OPAQUE_ENCODER );
+
+        encoders[RecordType.SOA.convert()] = new StartOfAuthorityRecordEncoder();
+        encoders[RecordType.A.convert()] = new AddressRecordEncoder();
+        encoders[RecordType.NS.convert()] = new NameServerRecordEncoder();
+        encoders[RecordType.CNAME.convert()] = new CanonicalNameRecordEncoder();
+        encoders[RecordType.PTR.convert()] = new PointerRecordEncoder();
+        encoders[RecordType.MX.convert()] = new MailExchangeRecordEncoder();
+        encoders[RecordType.SRV.convert()] = new ServerSelectionRecordEncoder();
+        encoders[RecordType.TXT.convert()] = new TextRecordEncoder();
+        encoders[RecordType.AAAA.convert()] = new Inet6AddressRecordEncoder();
+        encoders[RecordType.DNAME.convert()] = new DnameRecordEncoder();
+
+        DEFAULT_ENCODERS = encoders;
     }
 
 
@@ -85,151 +91,116 @@ public class DnsMessageEncoder
      */
     public void encode( IoBuffer byteBuffer, DnsMessage message )
     {
-        byteBuffer.putShort( ( short ) message.getTransactionId() );
-
-        byte header = ( byte ) 0x00;
-        header |= encodeMessageType( message.getMessageType() );
-        header |= encodeOpCode( message.getOpCode() );
-        header |= encodeAuthoritativeAnswer( message.isAuthoritativeAnswer() );
-        header |= encodeTruncated( message.isTruncated() );
-        header |= encodeRecursionDesired( message.isRecursionDesired() );
-        byteBuffer.put( header );
-
-        header = ( byte ) 0x00;
-        header |= encodeRecursionAvailable( message.isRecursionAvailable() );
-        header |= encodeResponseCode( message.getResponseCode() );
-        byteBuffer.put( header );
-
-        byteBuffer
-            .putShort( ( short ) ( message.getQuestionRecords() != null ? message.getQuestionRecords().size() : 0 ) );
-        byteBuffer.putShort( ( short ) ( message.getAnswerRecords() != null ? message.getAnswerRecords().size() : 0 ) );
-        byteBuffer.putShort( ( short ) ( message.getAuthorityRecords() != null ? message.getAuthorityRecords().size()
-            : 0 ) );
-        byteBuffer.putShort( ( short ) ( message.getAdditionalRecords() != null ? message.getAdditionalRecords().size()
-            : 0 ) );
-
-        putQuestionRecords( byteBuffer, message.getQuestionRecords() );
-        putResourceRecords( byteBuffer, message.getAnswerRecords() );
-        putResourceRecords( byteBuffer, message.getAuthorityRecords() );
-        putResourceRecords( byteBuffer, message.getAdditionalRecords() );
+        encode( byteBuffer, message, DnsMessageWriter.MAX_LENGTH );
     }
 
 
-    private void putQuestionRecords( IoBuffer byteBuffer, List<QuestionRecord> questions )
+    /**
+     * Encodes the {@link DnsMessage} into the {@link ByteBuffer}, leaving out
+     * the records that would make it longer than maxLength and setting the TC
+     * bit if answer or authority records had to be left out.
+     *
+     * @param byteBuffer
+     * @param message
+     * @param maxLength
+     */
+    public void encode( IoBuffer byteBuffer, DnsMessage message, int maxLength )
     {
-        if ( questions == null )
-        {
-            return;
-        }
+        DnsMessageWriter writer = new DnsMessageWriter( byteBuffer );
+        writer.setMaxLength( maxLength );
 
-        QuestionRecordEncoder encoder = new QuestionRecordEncoder();
+        writer.putHeader( message.getTransactionId(), message.getMessageType(), message.getOpCode(), message
+            .isAuthoritativeAnswer(), message.isTruncated(), message.isRecursionDesired(), message
+            .isRecursionAvailable(), message.getResponseCode() );
 
-        Iterator<QuestionRecord> it = questions.iterator();
-
-        while ( it.hasNext() )
+        if ( message.getQuestionRecords() != null )
         {
-            QuestionRecord question = it.next();
-            encoder.put( byteBuffer, question );
+            for ( QuestionRecord question : message.getQuestionRecords() )
+            {
+                writer.putQuestion( question );
+            }
         }
-    }
 
-
-    private void putResourceRecords( IoBuffer byteBuffer, List<ResourceRecord> records )
-    {
-        if ( records == null )
+        if ( message.getAnswerRecords() != null )
         {
-            return;
+            writer.putAnswers( message.getAnswerRecords() );
         }
 
-        Iterator<ResourceRecord> it = records.iterator();
-
-        while ( it.hasNext() )
+        if ( message.getAuthorityRecords() != null )
         {
-            ResourceRecord record = it.next();
-
-            try
+            for ( ResourceRecord record : message.getAuthorityRecords() )
             {
-                put( byteBuffer, record );
-            }
-            catch ( IOException ioe )
-            {
-                log.error( ioe.getLocalizedMessage(), ioe );
+                writer.putAuthority( record );
             }
         }
-    }
-
-
-    private void put( IoBuffer byteBuffer, ResourceRecord record ) throws IOException
-    {
-        RecordType type = record.getRecordType();
-
-        RecordEncoder encoder = DEFAULT_ENCODERS.get( type );
 
-        if ( encoder == null )
+        if ( message.getAdditionalRecords() != null )
         {
-            throw new IOException( I18n.err( I18n.ERR_597, type ) );
+            for ( ResourceRecord record : message.getAdditionalRecords() )
+            {
+                writer.putAdditional( record );
+            }
         }
 
-        encoder.put( byteBuffer, record );
+        writer.finish();
     }
 
 
-    private byte encodeMessageType( MessageType messageType )
+    /**
+     * Encodes a single record in wire form, with its owner name written out
+     * in full, as records are stored outside of messages.
+     *
+     * @param byteBuffer
+     * @param record
+     * @throws IOException if the record cannot be encoded
+     */
+    public static void putRecord( IoBuffer byteBuffer, ResourceRecord record ) throws IOException
     {
-        byte oneBit = ( byte ) ( messageType.convert() & 0x01 );
-        return ( byte ) ( oneBit << 7 );
+        getEncoder( record.getRecordType() ).put( byteBuffer, record );
     }
 
 
-    private byte encodeOpCode( OpCode opCode )
+    /**
+     * Returns the RDATA of a record in wire form, which is how two records
+     * are told apart, whatever their attributes look like.
+     *
+     * @param record
+     * @return The RDATA octets.
+     * @throws IOException if the record cannot be encoded
+     */
+    public static byte[] getRecordData( ResourceRecord record ) throws IOException
     {
-        byte fourBits = ( byte ) ( opCode.convert() & 0x0F );
-        return ( byte ) ( fourBits << 3 );
-    }
+        IoBuffer buffer = IoBuffer.allocate( 64 );
+        buffer.setAutoExpand( true );
 
+        // the owner is written as a pointer, followed by the type, class, TTL and RDLENGTH
+        getEncoder( record.getRecordType() ).put( buffer, record, 0 );
+        buffer.flip();
+        buffer.position( 12 );
 
-    private byte encodeAuthoritativeAnswer( boolean authoritative )
-    {
-        if ( authoritative )
-        {
-            return ( byte ) ( ( byte ) 0x01 << 2 );
-        }
-        return ( byte ) 0;
-    }
-
+        byte[] recordData = new byte[buffer.remaining()];
+        buffer.get( recordData );
 
-    private byte encodeTruncated( boolean truncated )
-    {
-        if ( truncated )
-        {
-            return ( byte ) ( ( byte ) 0x01 << 1 );
-        }
-        return 0;
-    }
-
-
-    private byte encodeRecursionDesired( boolean recursionDesired )
-    {
-        if ( recursionDesired )
-        {
-            return ( byte ) 0x01;
-        }
-        return 0;
+        return recordData;
     }
 
 
-    private byte encodeRecursionAvailable( boolean recursionAvailable )
+    /**
+     * Returns the encoder for a record type.  Every type has one, those
+     * without a dedicated encoder are written as opaque RDATA.
+     *
+     * @param type the record type
+     * @return the {@link RecordEncoder} for the type
+     */
+    static RecordEncoder getEncoder( RecordType type )
     {
-        if ( recursionAvailable )
+        if ( type == RecordType.UNKNOWN )
         {
-            return ( byte ) ( ( byte ) 0x01 << 7 );
+            return OPAQUE_ENCODER;
         }
-        return 0;
-    }
 
+        int code = type.convert() & 0xFFFF;
 
-    private byte encodeResponseCode( ResponseCode responseCode )
-    {
-        return ( byte ) ( responseCode.convert() & 0x0F );
+        return code < DEFAULT_ENCODERS.length ? DEFAULT_ENCODERS[code] : OPAQUE_ENCODER;
     }
 }
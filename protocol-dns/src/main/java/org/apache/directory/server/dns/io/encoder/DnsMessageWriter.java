@@ -0,0 +1,560 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.io.encoder;
+
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Writes a DNS message straight into an {@link IoBuffer}, section by section,
+ * without a {@link org.apache.directory.server.dns.messages.DnsMessage} having
+ * to be built first.  The header is written with zero section counts, which
+ * are filled in by {@link #finish()} once all the records are written.<p>
+ * 
+ * The sections must be written in message order: the header, then the
+ * question, answer, authority and additional records.<p>
+ * 
+ * Records owned by the first question name have their owner name written as
+ * a compression pointer to that name in the question section.<p>
+ * 
+ * The message can be limited in length.  Answer and authority records that
+ * would overflow the limit are left out, along with everything after them,
+ * and the TC bit is set.  Additional records that do not fit are simply
+ * dropped, as RFC 2181 allows.  Records passed in as one collection are an
+ * RRset and are written whole or not at all.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class DnsMessageWriter
+{
+    /** the log for this class */
+    private static final Logger log = LoggerFactory.getLogger( DnsMessageWriter.class );
+
+    /** The offset of the question count in the header */
+    private static final int QUESTION_COUNT_OFFSET = 4;
+
+    /** The length of an EDNS OPT record with an empty RDATA and the root as owner */
+    public static final int EDNS_LENGTH = 11;
+
+    /** The largest message length, as it must fit a TCP length prefix */
+    public static final int MAX_LENGTH = 65535;
+
+    /** The offset of the flags byte holding the AA and TC bits in the header */
+    private static final int FLAGS_OFFSET = 2;
+
+    private final IoBuffer byteBuffer;
+
+    /** The position of the start of the message in the buffer */
+    private final int start;
+
+    private static final QuestionRecordEncoder QUESTION_ENCODER = new QuestionRecordEncoder();
+
+    private int questionCount;
+    private int answerCount;
+    private int authorityCount;
+    private int additionalCount;
+
+    private int maxLength = MAX_LENGTH;
+
+    /** Set once an answer or authority RRset did not fit */
+    private boolean truncated;
+
+    /** Set once an additional RRset did not fit */
+    private boolean additionalFull;
+
+    /** The first question name, which owner names are compressed against */
+    private String compressionName;
+
+    /** The offset of the first question name from the start of the message */
+    private int compressionOffset;
+
+
+    /**
+     * Creates a new instance of DnsMessageWriter writing a message at the
+     * current position of the buffer.
+     *
+     * @param byteBuffer
+     */
+    public DnsMessageWriter( IoBuffer byteBuffer )
+    {
+        this.byteBuffer = byteBuffer;
+        this.start = byteBuffer.position();
+    }
+
+
+    /**
+     * Sets the length the message must not exceed, 512 bytes for a plain UDP
+     * reply or the negotiated EDNS payload size.  The default is
+     * {@link #MAX_LENGTH}.
+     *
+     * @param maxLength
+     */
+    public void setMaxLength( int maxLength )
+    {
+        this.maxLength = Math.min( maxLength, MAX_LENGTH );
+    }
+
+
+    /**
+     * Returns whether records were left out because the message reached its
+     * maximum length.
+     *
+     * @return true if the TC bit will be set
+     */
+    public boolean isTruncated()
+    {
+        return truncated;
+    }
+
+
+    /**
+     * Writes the header, with all section counts set to zero.
+     *
+     * @param transactionId
+     * @param messageType
+     * @param opCode
+     * @param authoritativeAnswer
+     * @param truncated
+     * @param recursionDesired
+     * @param recursionAvailable
+     * @param responseCode
+     */
+    public void putHeader( int transactionId, MessageType messageType, OpCode opCode, boolean authoritativeAnswer,
+        boolean truncated, boolean recursionDesired, boolean recursionAvailable, ResponseCode responseCode )
+    {
+        byteBuffer.putShort( ( short ) transactionId );
+
+        byte header = ( byte ) 0x00;
+        header |= encodeMessageType( messageType );
+        header |= encodeOpCode( opCode );
+        header |= encodeAuthoritativeAnswer( authoritativeAnswer );
+        header |= encodeTruncated( truncated );
+        header |= encodeRecursionDesired( recursionDesired );
+        byteBuffer.put( header );
+
+        header = ( byte ) 0x00;
+        header |= encodeRecursionAvailable( recursionAvailable );
+        header |= encodeResponseCode( responseCode );
+        byteBuffer.put( header );
+
+        byteBuffer.putLong( 0L );
+    }
+
+
+    /**
+     * Sets the AA bit of the header already written, for when whether the
+     * answer is authoritative is only known once it has been looked up.
+     *
+     * @param authoritativeAnswer
+     */
+    public void setAuthoritativeAnswer( boolean authoritativeAnswer )
+    {
+        byte flags = byteBuffer.get( start + FLAGS_OFFSET );
+        flags = ( byte ) ( authoritativeAnswer ? flags | 0x04 : flags & ~0x04 );
+        byteBuffer.put( start + FLAGS_OFFSET, flags );
+    }
+
+
+    /**
+     * Sets the RCODE of the header already written, for when the answer
+     * turns out not to exist once it has been looked up.
+     *
+     * @param responseCode
+     */
+    public void setResponseCode( ResponseCode responseCode )
+    {
+        byte flags = byteBuffer.get( start + FLAGS_OFFSET + 1 );
+        flags = ( byte ) ( ( flags & ~0x0F ) | encodeResponseCode( responseCode ) );
+        byteBuffer.put( start + FLAGS_OFFSET + 1, flags );
+    }
+
+
+    /**
+     * Writes a question record.
+     *
+     * @param question
+     */
+    public void putQuestion( QuestionRecord question )
+    {
+        if ( compressionName == null )
+        {
+            setCompressionTarget( question );
+        }
+
+        QUESTION_ENCODER.put( byteBuffer, question );
+        questionCount++;
+    }
+
+
+    /**
+     * Writes a question section exactly as it was received, instead of
+     * encoding the question records again.  This keeps the letter case the
+     * client chose for the names.
+     *
+     * @param questionBytes the raw question section
+     * @param questions the question records decoded from the raw section
+     */
+    public void putQuestions( byte[] questionBytes, List<QuestionRecord> questions )
+    {
+        if ( compressionName == null && !questions.isEmpty() )
+        {
+            setCompressionTarget( questions.get( 0 ) );
+        }
+
+        byteBuffer.put( questionBytes );
+        questionCount += questions.size();
+    }
+
+
+    /**
+     * Writes a record into the answer section.
+     *
+     * @param record
+     */
+    public void putAnswer( ResourceRecord record )
+    {
+        if ( !truncated )
+        {
+            int mark = byteBuffer.position();
+
+            if ( putRecord( record ) && fits( mark, true ) )
+            {
+                answerCount++;
+            }
+        }
+    }
+
+
+    /**
+     * Writes a record into the answer section if the message has room for it.
+     * Unlike {@link #putAnswer(ResourceRecord)}, a record which does not fit
+     * does not truncate the message, as when records are spread over several
+     * messages.  A record which cannot be encoded is skipped.
+     *
+     * @param record
+     * @return false if the message has no room for the record.
+     */
+    public boolean offerAnswer( ResourceRecord record )
+    {
+        int mark = byteBuffer.position();
+
+        if ( !putRecord( record ) )
+        {
+            return true;
+        }
+
+        if ( byteBuffer.position() - start > maxLength )
+        {
+            byteBuffer.position( mark );
+            return false;
+        }
+
+        answerCount++;
+        return true;
+    }
+
+
+    /**
+     * Writes an RRset into the answer section.
+     *
+     * @param records
+     */
+    public void putAnswers( Collection<ResourceRecord> records )
+    {
+        answerCount += putRecordSet( records, true );
+    }
+
+
+    /**
+     * Writes a record into the authority section.
+     *
+     * @param record
+     */
+    public void putAuthority( ResourceRecord record )
+    {
+        if ( !truncated )
+        {
+            int mark = byteBuffer.position();
+
+            if ( putRecord( record ) && fits( mark, true ) )
+            {
+                authorityCount++;
+            }
+        }
+    }
+
+
+    /**
+     * Writes an RRset into the authority section.
+     *
+     * @param records
+     */
+    public void putAuthorities( Collection<ResourceRecord> records )
+    {
+        authorityCount += putRecordSet( records, true );
+    }
+
+
+    /**
+     * Writes records already in wire form into the authority section, whole
+     * or not at all, as an RRset.
+     *
+     * @param records the encoded records, which must not use compression
+     * @param count the number of records
+     */
+    public void putAuthorities( byte[] records, int count )
+    {
+        if ( !truncated )
+        {
+            int mark = byteBuffer.position();
+            byteBuffer.put( records );
+
+            if ( fits( mark, true ) )
+            {
+                authorityCount += count;
+            }
+        }
+    }
+
+
+    /**
+     * Writes a record into the additional section.
+     *
+     * @param record
+     */
+    public void putAdditional( ResourceRecord record )
+    {
+        if ( !truncated && !additionalFull )
+        {
+            int mark = byteBuffer.position();
+
+            if ( putRecord( record ) && fits( mark, false ) )
+            {
+                additionalCount++;
+            }
+        }
+    }
+
+
+    /**
+     * Writes an RRset into the additional section.
+     *
+     * @param records
+     */
+    public void putAdditionals( Collection<ResourceRecord> records )
+    {
+        additionalCount += putRecordSet( records, false );
+    }
+
+
+    /**
+     * Writes an EDNS OPT pseudo-record into the additional section.  It is
+     * written even past the maximum length, so callers reserve
+     * {@link #EDNS_LENGTH} bytes for it.
+     *
+     * @param udpPayloadSize the UDP payload size we can receive
+     */
+    public void putEdns( int udpPayloadSize )
+    {
+        byteBuffer.put( ( byte ) 0x00 );
+        byteBuffer.putShort( RecordType.OPT.convert() );
+        byteBuffer.putShort( ( short ) udpPayloadSize );
+        byteBuffer.putInt( 0 );
+        byteBuffer.putShort( ( short ) 0 );
+        additionalCount++;
+    }
+
+
+    /**
+     * Fills in the section counts of the header.  The buffer is left
+     * positioned at the end of the message.
+     */
+    public void finish()
+    {
+        int position = start + QUESTION_COUNT_OFFSET;
+        byteBuffer.putShort( position, ( short ) questionCount );
+        byteBuffer.putShort( position + 2, ( short ) answerCount );
+        byteBuffer.putShort( position + 4, ( short ) authorityCount );
+        byteBuffer.putShort( position + 6, ( short ) additionalCount );
+
+        if ( truncated )
+        {
+            byteBuffer.put( start + FLAGS_OFFSET, ( byte ) ( byteBuffer.get( start + FLAGS_OFFSET ) | 0x02 ) );
+        }
+    }
+
+
+    private int putRecordSet( Collection<ResourceRecord> records, boolean required )
+    {
+        if ( truncated || ( !required && additionalFull ) )
+        {
+            return 0;
+        }
+
+        int mark = byteBuffer.position();
+        int count = 0;
+
+        for ( ResourceRecord record : records )
+        {
+            if ( putRecord( record ) )
+            {
+                count++;
+            }
+        }
+
+        return fits( mark, required ) ? count : 0;
+    }
+
+
+    /**
+     * Checks the message is still within its maximum length, else rolls it
+     * back to the mark and stops the section from taking further records.
+     */
+    private boolean fits( int mark, boolean required )
+    {
+        if ( byteBuffer.position() - start <= maxLength )
+        {
+            return true;
+        }
+
+        byteBuffer.position( mark );
+
+        if ( required )
+        {
+            truncated = true;
+        }
+        else
+        {
+            additionalFull = true;
+        }
+
+        return false;
+    }
+
+
+    private void setCompressionTarget( QuestionRecord question )
+    {
+        compressionName = question.getDomainName();
+        compressionOffset = byteBuffer.position() - start;
+    }
+
+
+    private boolean putRecord( ResourceRecord record )
+    {
+        int position = byteBuffer.position();
+
+        try
+        {
+            RecordEncoder encoder = DnsMessageEncoder.getEncoder( record.getRecordType() );
+
+            if ( compressionName != null && compressionName.equalsIgnoreCase( record.getDomainName() ) )
+            {
+                encoder.put( byteBuffer, record, compressionOffset );
+            }
+            else
+            {
+                encoder.put( byteBuffer, record );
+            }
+
+            return true;
+        }
+        catch ( IOException ioe )
+        {
+            log.error( ioe.getLocalizedMessage(), ioe );
+            byteBuffer.position( position );
+            return false;
+        }
+    }
+
+
+    private byte encodeMessageType( MessageType messageType )
+    {
+        byte oneBit = ( byte ) ( messageType.convert() & 0x01 );
+        return ( byte ) ( oneBit << 7 );
+    }
+
+
+    private byte encodeOpCode( OpCode opCode )
+    {
+        byte fourBits = ( byte ) ( opCode.convert() & 0x0F );
+        return ( byte ) ( fourBits << 3 );
+    }
+
+
+    private byte encodeAuthoritativeAnswer( boolean authoritative )
+    {
+        if ( authoritative )
+        {
+            return ( byte ) ( ( byte ) 0x01 << 2 );
+        }
+        return ( byte ) 0;
+    }
+
+
+    private byte encodeTruncated( boolean truncated )
+    {
+        if ( truncated )
+        {
+            return ( byte ) ( ( byte ) 0x01 << 1 );
+        }
+        return 0;
+    }
+
+
+    private byte encodeRecursionDesired( boolean recursionDesired )
+    {
+        if ( recursionDesired )
+        {
+            return ( byte ) 0x01;
+        }
+        return 0;
+    }
+
+
+    private byte encodeRecursionAvailable( boolean recursionAvailable )
+    {
+        if ( recursionAvailable )
+        {
+            return ( byte ) ( ( byte ) 0x01 << 7 );
+        }
+        return 0;
+    }
+
+
+    private byte encodeResponseCode( ResponseCode responseCode )
+    {
+        return ( byte ) ( responseCode.convert() & 0x0F );
+    }
+}
@@ -21,6 +21,13 @@
 package org.apache.directory.server.dns.io.encoder;
 
 
+import java.io.IOException;
+
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.mina.core.buffer.IoBuffer;
+
+
 /**
  * 2. New resource record definition and domain
  * 
@@ -78,6 +85,10 @@ package org.apache.directory.server.dns.io.encoder;
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  * @version $Rev: 501160 $, $Date: 2007-01-29 20:41:33 +0100 (Lun, 29 jan 2007) $
  */
-public class Inet6AddressRecordEncoder
+public class Inet6AddressRecordEncoder extends ResourceRecordEncoder
 {
+    protected void putResourceRecordData( IoBuffer byteBuffer, ResourceRecord record ) throws IOException
+    {
+        byteBuffer.put( parseAddress( record.get( DnsAttribute.IP_ADDRESS ), 16 ) );
+    }
 }
@@ -0,0 +1,74 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.io.encoder;
+
+
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.mina.core.buffer.IoBuffer;
+
+
+/**
+ * An encoder for records whose RDATA is carried as is, as described in
+ * RFC 3597 for unknown RR types:
+ * 
+ * <pre>
+ * 4. Domain Name Compression
+ * 
+ *    RRs containing compression pointers in the RDATA part cannot be
+ *    treated transparently, as the compression pointers are only
+ *    meaningful within the context of a DNS message.  Transparently
+ *    copying the RDATA into a new DNS message would cause the compression
+ *    pointers to point at the corresponding location in the new message,
+ *    which now contains unrelated data.  This would cause the compressed
+ *    name to be corrupted.
+ * 
+ *    To avoid such corruption, servers MUST NOT compress domain names
+ *    embedded in the RDATA of types that are class-specific or not well-
+ *    known.
+ * </pre>
+ * 
+ * The RDATA is read from the {@link DnsAttribute#RDATA} attribute as a string
+ * of hexadecimal digits.  A record without that attribute is written with
+ * empty RDATA.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class OpaqueRecordEncoder extends ResourceRecordEncoder
+{
+    protected void putResourceRecordData( IoBuffer byteBuffer, ResourceRecord record )
+    {
+        String rdata = record.get( DnsAttribute.RDATA );
+
+        if ( rdata == null )
+        {
+            return;
+        }
+
+        for ( int ii = 0; ii + 1 < rdata.length(); ii += 2 )
+        {
+            int high = Character.digit( rdata.charAt( ii ), 16 );
+            int low = Character.digit( rdata.charAt( ii + 1 ), 16 );
+            byteBuffer.put( ( byte ) ( ( high << 4 ) | low ) );
+        }
+    }
+}
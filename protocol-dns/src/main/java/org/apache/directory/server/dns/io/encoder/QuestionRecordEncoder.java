@@ -23,7 +23,6 @@ package org.apache.directory.server.dns.io.encoder;
 
 import org.apache.directory.server.dns.messages.QuestionRecord;
 import org.apache.directory.server.dns.messages.RecordClass;
-import org.apache.directory.server.dns.messages.RecordType;
 import org.apache.mina.core.buffer.IoBuffer;
 
 
@@ -42,33 +41,20 @@ public class QuestionRecordEncoder
     public void put( IoBuffer out, QuestionRecord question )
     {
         encodeDomainName( out, question.getDomainName() );
-        encodeRecordType( out, question.getRecordType() );
+        encodeRecordType( out, question.getTypeCode() );
         encodeRecordClass( out, question.getRecordClass() );
     }
 
 
     private void encodeDomainName( IoBuffer byteBuffer, String domainName )
     {
-        String[] labels = domainName.split( "\\." );
-
-        for ( int ii = 0; ii < labels.length; ii++ )
-        {
-            byteBuffer.put( ( byte ) labels[ii].length() );
-
-            char[] characters = labels[ii].toCharArray();
-            for ( int jj = 0; jj < characters.length; jj++ )
-            {
-                byteBuffer.put( ( byte ) characters[jj] );
-            }
-        }
-
-        byteBuffer.put( ( byte ) 0x00 );
+        ResourceRecordEncoder.writeDomainName( byteBuffer, domainName );
     }
 
 
-    private void encodeRecordType( IoBuffer byteBuffer, RecordType recordType )
+    private void encodeRecordType( IoBuffer byteBuffer, int typeCode )
     {
-        byteBuffer.putShort( recordType.convert() );
+        byteBuffer.putShort( ( short ) typeCode );
     }
 
 
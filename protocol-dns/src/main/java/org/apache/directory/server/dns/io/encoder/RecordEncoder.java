@@ -41,4 +41,17 @@ public interface RecordEncoder
      * @throws IOException
      */
     public void put( IoBuffer buffer, ResourceRecord record ) throws IOException;
+
+
+    /**
+     * Encodes the {@link ResourceRecord} into the {@link ByteBuffer}, with the
+     * owner name written as a compression pointer to an earlier occurrence of
+     * the same name in the message.
+     *
+     * @param buffer
+     * @param record
+     * @param ownerOffset the offset of the owner name from the start of the message
+     * @throws IOException
+     */
+    public void put( IoBuffer buffer, ResourceRecord record, int ownerOffset ) throws IOException;
 }
@@ -22,10 +22,13 @@ package org.apache.directory.server.dns.io.encoder;
 
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 
 import org.apache.directory.server.dns.messages.RecordClass;
 import org.apache.directory.server.dns.messages.RecordType;
 import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.DnsAttribute;
 import org.apache.mina.core.buffer.IoBuffer;
 
 
@@ -38,7 +41,33 @@ public abstract class ResourceRecordEncoder implements RecordEncoder
     public void put( IoBuffer byteBuffer, ResourceRecord record ) throws IOException
     {
         putDomainName( byteBuffer, record.getDomainName() );
-        putRecordType( byteBuffer, record.getRecordType() );
+        putRecordBody( byteBuffer, record );
+    }
+
+
+    public void put( IoBuffer byteBuffer, ResourceRecord record, int ownerOffset ) throws IOException
+    {
+        byteBuffer.putShort( ( short ) ( 0xC000 | ownerOffset ) );
+        putRecordBody( byteBuffer, record );
+    }
+
+
+    /**
+     * Encodes everything that follows the owner name: the type, class, TTL
+     * and the length prefixed RDATA.
+     */
+    private void putRecordBody( IoBuffer byteBuffer, ResourceRecord record ) throws IOException
+    {
+        if ( record.getRecordType() == RecordType.UNKNOWN )
+        {
+            // RFC 3597 records keep their actual type code as an attribute
+            byteBuffer.putShort( ( short ) Integer.parseInt( record.get( DnsAttribute.TYPE ) ) );
+        }
+        else
+        {
+            putRecordType( byteBuffer, record.getRecordType() );
+        }
+
         putRecordClass( byteBuffer, record.getRecordClass() );
 
         byteBuffer.putInt( record.getTimeToLive() );
@@ -47,10 +76,10 @@ public abstract class ResourceRecordEncoder implements RecordEncoder
     }
 
 
-    protected abstract void putResourceRecordData( IoBuffer byteBuffer, ResourceRecord record );
+    protected abstract void putResourceRecordData( IoBuffer byteBuffer, ResourceRecord record ) throws IOException;
 
 
-    protected void putResourceRecord( IoBuffer byteBuffer, ResourceRecord record )
+    protected void putResourceRecord( IoBuffer byteBuffer, ResourceRecord record ) throws IOException
     {
         int startPosition = byteBuffer.position();
         byteBuffer.position( startPosition + 2 );
@@ -81,23 +110,142 @@ public abstract class ResourceRecordEncoder implements RecordEncoder
      */
     protected void putDomainName( IoBuffer byteBuffer, String domainName )
     {
-        String[] labels = domainName.split( "\\." );
+        writeDomainName( byteBuffer, domainName );
+    }
+
 
-        for ( int ii = 0; ii < labels.length; ii++ )
+    /**
+     * Writes a domain name as a series of labels, scanning the name for dots
+     * rather than splitting it.  A trailing dot is ignored.
+     * 
+     * @param byteBuffer the ByteBuffer to encode the domain name into
+     * @param domainName the domain name to encode
+     */
+    static void writeDomainName( IoBuffer byteBuffer, String domainName )
+    {
+        int length = domainName.length();
+        int labelStart = 0;
+
+        while ( labelStart < length )
         {
-            byteBuffer.put( ( byte ) labels[ii].length() );
+            int labelEnd = domainName.indexOf( '.', labelStart );
+
+            if ( labelEnd < 0 )
+            {
+                labelEnd = length;
+            }
+
+            byteBuffer.put( ( byte ) ( labelEnd - labelStart ) );
 
-            char[] characters = labels[ii].toCharArray();
-            for ( int jj = 0; jj < characters.length; jj++ )
+            for ( int ii = labelStart; ii < labelEnd; ii++ )
             {
-                byteBuffer.put( ( byte ) characters[jj] );
+                byteBuffer.put( ( byte ) domainName.charAt( ii ) );
             }
+
+            labelStart = labelEnd + 1;
         }
 
         byteBuffer.put( ( byte ) 0x00 );
     }
 
 
+    /**
+     * Parses the text of an address, which must be a literal one of the
+     * family given, so that it is never looked up as a host name.
+     *
+     * @param address the address, as in an A or AAAA record
+     * @param length 4 for an IPv4 address, 16 for an IPv6 one
+     * @return The octets of the address.
+     * @throws IOException if the address is missing or not a literal of the family
+     */
+    protected static byte[] parseAddress( String address, int length ) throws IOException
+    {
+        if ( address == null || address.length() == 0 )
+        {
+            throw new IOException( "Missing address" );
+        }
+
+        if ( length == 4 )
+        {
+            return parseInet4Address( address );
+        }
+
+        if ( address.indexOf( ':' ) < 0 )
+        {
+            throw new IOException( "Invalid address " + address );
+        }
+
+        byte[] octets;
+
+        try
+        {
+            // a name with a ':' is only ever parsed as an IPv6 literal
+            octets = InetAddress.getByName( address ).getAddress();
+        }
+        catch ( UnknownHostException uhe )
+        {
+            throw new IOException( "Invalid address " + address );
+        }
+
+        if ( octets.length == 4 )
+        {
+            // an IPv4 mapped address, which InetAddress gives as IPv4
+            byte[] mapped = new byte[16];
+            mapped[10] = ( byte ) 0xFF;
+            mapped[11] = ( byte ) 0xFF;
+            System.arraycopy( octets, 0, mapped, 12, 4 );
+            octets = mapped;
+        }
+
+        return octets;
+    }
+
+
+    /**
+     * Parses the four decimal numbers of an IPv4 address.
+     */
+    private static byte[] parseInet4Address( String address ) throws IOException
+    {
+        byte[] octets = new byte[4];
+        int octet = 0;
+        int value = 0;
+        int digits = 0;
+
+        for ( int ii = 0; ii <= address.length(); ii++ )
+        {
+            char c = ii < address.length() ? address.charAt( ii ) : '.';
+
+            if ( c == '.' )
+            {
+                if ( digits == 0 || value > 255 || octet == 4 )
+                {
+                    throw new IOException( "Invalid address " + address );
+                }
+
+                octets[octet++] = ( byte ) value;
+                value = 0;
+                digits = 0;
+            }
+            else if ( c >= '0' && c <= '9' && digits < 3 )
+            {
+                value = value * 10 + c - '0';
+                digits++;
+            }
+            else
+            {
+                throw new IOException( "Invalid address " + address );
+            }
+        }
+
+        if ( octet != 4 )
+        {
+            throw new IOException( "Invalid address " + address );
+        }
+
+        return octets;
+    }
+
+
     protected void putRecordType( IoBuffer byteBuffer, RecordType recordType )
     {
         byteBuffer.putShort( recordType.convert() );
@@ -73,6 +73,9 @@ public class DnsMessage
     private List<ResourceRecord> authorityRecords;
     private List<ResourceRecord> additionalRecords;
 
+    /** The question section as it was received, or null */
+    private byte[] questionBytes;
+
 
     /**
      * Creates a new instance of DnsMessage.
@@ -114,6 +117,24 @@ public class DnsMessage
     }
 
 
+    /**
+     * Creates a new instance of DnsMessage which also keeps the question
+     * section exactly as it was received, so that a reply can echo it back
+     * without re-encoding it.
+     */
+    public DnsMessage( int transactionId, MessageType messageType, OpCode opCode, boolean authoritativeAnswer,
+        boolean truncated, boolean recursionDesired, boolean recursionAvailable, boolean reserved,
+        boolean acceptNonAuthenticatedData, ResponseCode responseCode, List<QuestionRecord> question,
+        List<ResourceRecord> answer, List<ResourceRecord> authority, List<ResourceRecord> additional,
+        byte[] questionBytes )
+    {
+        this( transactionId, messageType, opCode, authoritativeAnswer, truncated, recursionDesired,
+            recursionAvailable, reserved, acceptNonAuthenticatedData, responseCode, question, answer, authority,
+            additional );
+        this.questionBytes = questionBytes;
+    }
+
+
     /**
      * @return Returns the acceptNonAuthenticatedData.
      */
@@ -195,6 +216,18 @@ public class DnsMessage
     }
 
 
+    /**
+     * Returns the question section as it was received on the wire, with the
+     * client's original letter case, or null if this message was not decoded.
+     *
+     * @return The raw question section.
+     */
+    public byte[] getQuestionBytes()
+    {
+        return questionBytes;
+    }
+
+
     /**
      * @return Returns the recursionDesired.
      */
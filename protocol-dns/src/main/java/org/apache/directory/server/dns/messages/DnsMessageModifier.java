@@ -69,6 +69,8 @@ public class DnsMessageModifier
     private List<ResourceRecord> authorityRecords;
     private List<ResourceRecord> additionalRecords;
 
+    private byte[] questionBytes;
+
 
     /**
      * Returns the {@link DnsMessage}.
@@ -79,7 +81,7 @@ public class DnsMessageModifier
     {
         return new DnsMessage( transactionId, messageType, opCode, authoritativeAnswer, truncated, recursionDesired,
             recursionAvailable, reserved, acceptNonAuthenticatedData, responseCode, questionRecords, answerRecords,
-            authorityRecords, additionalRecords );
+            authorityRecords, additionalRecords, questionBytes );
     }
 
 
@@ -155,6 +157,15 @@ public class DnsMessageModifier
     }
 
 
+    /**
+     * @param questionBytes The raw question section to set.
+     */
+    public void setQuestionBytes( byte[] questionBytes )
+    {
+        this.questionBytes = questionBytes;
+    }
+
+
     /**
      * @param recursionAvailable The recursionAvailable to set.
      */
@@ -63,6 +63,12 @@ public class QuestionRecord
      */
     private RecordType recordType;
 
+    /**
+     * The unsigned type code, which is all there is of types without a
+     * {@link RecordType} constant.
+     */
+    private int typeCode;
+
     /**
      * A two octet code that specifies the class.
      * For example, the CLASS field is IN for the Internet.
@@ -71,16 +77,43 @@ public class QuestionRecord
 
 
     /**
-     * Creates a new instance of QuestionRecord.
+     * Creates a new instance of QuestionRecord.  A question for a type
+     * without a {@link RecordType} constant is created from its type code,
+     * see {@link #QuestionRecord(String, int, RecordClass)}.
      *
      * @param domainName
-     * @param recordType
+     * @param recordType any type but {@link RecordType#UNKNOWN}
      * @param recordClass
+     * @throws IllegalArgumentException if the type is {@link RecordType#UNKNOWN}
      */
     public QuestionRecord( String domainName, RecordType recordType, RecordClass recordClass )
     {
+        if ( recordType == RecordType.UNKNOWN )
+        {
+            throw new IllegalArgumentException( "A question of an unknown type needs its type code" );
+        }
+
         this.domainName = domainName;
         this.recordType = recordType;
+        this.typeCode = recordType.convert() & 0xFFFF;
+        this.recordClass = recordClass;
+    }
+
+
+    /**
+     * Creates a new instance of QuestionRecord from the type code as
+     * received, which is kept for the types without a {@link RecordType}
+     * constant, those of {@link RecordType#UNKNOWN}.
+     *
+     * @param domainName
+     * @param typeCode the unsigned 16 bit type code
+     * @param recordClass
+     */
+    public QuestionRecord( String domainName, int typeCode, RecordClass recordClass )
+    {
+        this.domainName = domainName;
+        this.recordType = RecordType.convert( ( short ) typeCode );
+        this.typeCode = typeCode & 0xFFFF;
         this.recordClass = recordClass;
     }
 
@@ -109,6 +142,18 @@ public class QuestionRecord
     }
 
 
+    /**
+     * The type code of the query, also for the types without a
+     * {@link RecordType} constant.
+     * 
+     * @return The unsigned 16 bit type code.
+     */
+    public int getTypeCode()
+    {
+        return typeCode;
+    }
+
+
     /**
      * The class for this query.
      * For example, the class is IN for the Internet.
@@ -136,7 +181,7 @@ public class QuestionRecord
         }
         QuestionRecord rhs = ( QuestionRecord ) object;
         return new EqualsBuilder().append( this.domainName, rhs.domainName ).append( this.recordClass, rhs.recordClass )
-            .append( this.recordType, rhs.recordType ).isEquals();
+            .append( this.typeCode, rhs.typeCode ).isEquals();
     }
 
 
@@ -147,7 +192,7 @@ public class QuestionRecord
     public int hashCode()
     {
         return new HashCodeBuilder( 1493545107, 315848479 ).append( this.domainName ).append( this.recordClass )
-            .append( this.recordType ).toHashCode();
+            .append( this.typeCode ).toHashCode();
     }
 
 
@@ -51,7 +51,8 @@ public enum RecordClass implements EnumConverter<Short>
 
     private static ReverseEnumMap<Short, RecordClass> map = new ReverseEnumMap<Short, RecordClass>( RecordClass.class );
 
-    private final short value;
+    /** The boxed value, kept so that convert() does not allocate */
+    private final Short value;
 
 
     private RecordClass( int value )
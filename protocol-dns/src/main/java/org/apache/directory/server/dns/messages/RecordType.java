@@ -31,6 +31,16 @@ import org.apache.directory.server.dns.util.ReverseEnumMap;
  */
 public enum RecordType implements EnumConverter<Short>
 {
+    /**
+     * Any type code not listed here.  Records of such a type are handled as
+     * opaque RDATA as described in RFC 3597, with the actual type code carried
+     * in the {@link org.apache.directory.server.dns.store.DnsAttribute#TYPE}
+     * attribute, and questions keep theirs in {@link QuestionRecord#getTypeCode()}.
+     * UNKNOWN has no code of its own, so {@link #convert()} returns null for it;
+     * code which must write a type code takes it from the record or question.
+     */
+    UNKNOWN,
+
     /** Host address */
     A(1),
 
@@ -140,7 +150,7 @@ public enum RecordType implements EnumConverter<Short>
     KX(36),
 
     /** Certificate */
-    CERT(34),
+    CERT(37),
 
     /** IPv6 address (experimental) */
     A6(38),
@@ -190,9 +200,17 @@ public enum RecordType implements EnumConverter<Short>
     /** Request for all records */
     ANY(255);
 
-    private static ReverseEnumMap<Short, RecordType> map = new ReverseEnumMap<Short, RecordType>( RecordType.class );
+    private static ReverseEnumMap<Short, RecordType> map = new ReverseEnumMap<Short, RecordType>( RecordType.class,
+        UNKNOWN );
+
+    /** The boxed value, kept so that convert() does not allocate */
+    private final Short value;
 
-    private final short value;
+
+    private RecordType()
+    {
+        this.value = null;
+    }
 
 
     private RecordType( int value )
@@ -208,7 +226,8 @@ public enum RecordType implements EnumConverter<Short>
 
 
     /**
-     * Converts an ordinal value into a {@link RecordType}.
+     * Converts an ordinal value into a {@link RecordType}.  Values which have
+     * no constant of their own are converted to {@link #UNKNOWN}.
      *
      * @param value
      * @return The {@link RecordType}.
@@ -21,6 +21,7 @@
 package org.apache.directory.server.dns.messages;
 
 
+import java.net.InetAddress;
 import java.util.Map;
 
 
@@ -112,6 +113,31 @@ public class ResourceRecordImpl implements ResourceRecord
     }
 
 
+    /**
+     * Creates a copy of a record under another owner name, as when a record
+     * is synthesised from a wildcard.  The copy shares the attributes of the
+     * record.
+     *
+     * @param domainName the owner name of the copy
+     * @param record a {@link ResourceRecordImpl}
+     */
+    public ResourceRecordImpl( String domainName, ResourceRecord record )
+    {
+        if ( !( record instanceof ResourceRecordImpl ) )
+        {
+            throw new IllegalArgumentException( "Cannot copy record " + record );
+        }
+
+        ResourceRecordImpl that = ( ResourceRecordImpl ) record;
+
+        this.domainName = domainName;
+        this.recordType = that.recordType;
+        this.recordClass = that.recordClass;
+        this.timeToLive = that.timeToLive;
+        this.attributes = that.attributes;
+    }
+
+
     /**
      * @return Returns the domainName.
      */
@@ -153,7 +179,20 @@ public class ResourceRecordImpl implements ResourceRecord
      */
     public String get( String id )
     {
-        return ( String ) attributes.get( id.toLowerCase() );
+        Object value = attributes.get( id.toLowerCase() );
+
+        if ( value == null )
+        {
+            // The decoders key their attributes by the schema name as is
+            value = attributes.get( id );
+        }
+
+        if ( value instanceof InetAddress )
+        {
+            return ( ( InetAddress ) value ).getHostAddress();
+        }
+
+        return value == null ? null : value.toString();
     }
 
 
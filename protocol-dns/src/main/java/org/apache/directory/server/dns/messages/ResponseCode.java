@@ -47,7 +47,22 @@ public enum ResponseCode implements EnumConverter<Byte>
     NOT_IMPLEMENTED(4),
 
     /** The name server refuses to perform the specified operation for policy reasons. */
-    REFUSED(5);
+    REFUSED(5),
+
+    /** Some name that ought not to exist, does exist (RFC 2136). */
+    YXDOMAIN(6),
+
+    /** Some RRset that ought not to exist, does exist (RFC 2136). */
+    YXRRSET(7),
+
+    /** Some RRset that ought to exist, does not exist (RFC 2136). */
+    NXRRSET(8),
+
+    /** The server is not authoritative for the zone named in the Zone Section (RFC 2136). */
+    NOTAUTH(9),
+
+    /** A name used in the Prerequisite or Update Section is not within the zone (RFC 2136). */
+    NOTZONE(10);
 
     private static ReverseEnumMap<Byte, ResponseCode> map = new ReverseEnumMap<Byte, ResponseCode>( ResponseCode.class );
 
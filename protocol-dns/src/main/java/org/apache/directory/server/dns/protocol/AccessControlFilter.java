@@ -0,0 +1,212 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.protocol;
+
+
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.service.AccessControl;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Answers REFUSED the requests of the clients the {@link AccessControl} of a
+ * {@link DnsProtocolHandler} denies them, ahead of the codec, so that those
+ * requests are never decoded.  A request is checked from its header and
+ * question read in place, which allocates nothing unless it is refused, and
+ * the reply is a pre-encoded REFUSED header with the ID and flags of the
+ * request patched in.<p>
+ * 
+ * A datagram is a request.  Over TCP, the filter splits the stream into its
+ * length prefixed messages, holding a message back until it has all of it,
+ * and passes on the allowed ones as they came; the codec downstream sees
+ * the same stream, less the requests refused.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class AccessControlFilter extends IoFilterAdapter
+{
+    /** the log for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( AccessControlFilter.class );
+
+    /** The session attribute holding the start of a TCP message not all received yet */
+    private static final String PENDING_KEY = AccessControlFilter.class.getName() + ".pending";
+
+    /** The REFUSED reply to a denied request, prefixed with its length; the ID and flags are the request's */
+    private static final byte[] REFUSED_REPLY =
+        { 0, 12, 0, 0, ( byte ) 0x80, ResponseCode.REFUSED.convert(), 0, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final DnsProtocolHandler handler;
+
+
+    /**
+     * Creates a new instance of AccessControlFilter.
+     *
+     * @param handler the handler holding the access control in force
+     */
+    public AccessControlFilter( DnsProtocolHandler handler )
+    {
+        this.handler = handler;
+    }
+
+
+    public void messageReceived( NextFilter nextFilter, IoSession session, Object message ) throws Exception
+    {
+        if ( !( message instanceof IoBuffer ) )
+        {
+            nextFilter.messageReceived( session, message );
+        }
+        else if ( session.getTransportMetadata().isConnectionless() )
+        {
+            if ( !refuse( session, ( IoBuffer ) message ) )
+            {
+                nextFilter.messageReceived( session, message );
+            }
+        }
+        else
+        {
+            split( nextFilter, session, ( IoBuffer ) message );
+        }
+    }
+
+
+    /**
+     * Checks the TCP messages of a buffer received, passing on the allowed
+     * ones, and keeps the start of the last message if it is not all there.
+     */
+    private void split( NextFilter nextFilter, IoSession session, IoBuffer in )
+    {
+        IoBuffer pending = ( IoBuffer ) session.removeAttribute( PENDING_KEY );
+
+        if ( pending == null && handler.getAccessControl() == null )
+        {
+            nextFilter.messageReceived( session, in );
+            return;
+        }
+
+        if ( pending != null )
+        {
+            pending.put( in );
+            pending.flip();
+            in = pending;
+        }
+
+        // the start of the allowed messages not passed on yet
+        int start = in.position();
+
+        while ( in.remaining() >= 2 )
+        {
+            int position = in.position();
+            int end = position + 2 + in.getUnsignedShort( position );
+
+            if ( end > in.limit() )
+            {
+                break;
+            }
+
+            int limit = in.limit();
+            in.limit( end );
+            in.position( position + 2 );
+
+            boolean refused = refuse( session, in );
+
+            if ( refused )
+            {
+                pass( nextFilter, session, in, start, position );
+                start = end;
+            }
+
+            in.limit( limit );
+            in.position( end );
+        }
+
+        int end = in.position();
+
+        if ( in.hasRemaining() )
+        {
+            // held back until the rest of the message comes
+            IoBuffer rest = IoBuffer.allocate( Math.max( in.remaining(), 512 ), false );
+            rest.setAutoExpand( true );
+            rest.put( in );
+            session.setAttribute( PENDING_KEY, rest );
+        }
+
+        pass( nextFilter, session, in, start, end );
+    }
+
+
+    /**
+     * Passes on the messages between two positions of a buffer, as the
+     * buffer itself, narrowed to them; the codec copies what it keeps.
+     */
+    private static void pass( NextFilter nextFilter, IoSession session, IoBuffer in, int start, int end )
+    {
+        if ( start < end )
+        {
+            in.limit( end );
+            in.position( start );
+            nextFilter.messageReceived( session, in );
+        }
+    }
+
+
+    /**
+     * Answers a request REFUSED if the client is denied it.
+     *
+     * @param session the session of the client
+     * @param message the request, from its position to its limit, left as it was
+     * @return true if the request was refused, and must not be decoded.
+     */
+    private boolean refuse( IoSession session, IoBuffer message )
+    {
+        AccessControl control = handler.getAccessControl();
+        byte[] address = ( byte[] ) session.getAttribute( DnsProtocolHandler.ADDRESS_KEY );
+
+        if ( control == null || address == null || control.isAllowed( address, message ) )
+        {
+            return false;
+        }
+
+        LOG.debug( "{} REFUSED", session.getRemoteAddress() );
+
+        int start = message.position();
+        IoBuffer reply = IoBuffer.wrap( REFUSED_REPLY.clone() );
+
+        // the ID of the request, and its opcode and RD flag
+        reply.putShort( 2, message.getShort( start ) );
+        reply.put( 4, ( byte ) ( 0x80 | ( message.get( start + 2 ) & 0x79 ) ) );
+
+        if ( session.getTransportMetadata().isConnectionless() )
+        {
+            // no length prefix over UDP
+            reply.position( 2 );
+        }
+
+        // a buffer goes through the codec as it is
+        session.write( reply );
+
+        return true;
+    }
+}
@@ -21,18 +21,44 @@
 package org.apache.directory.server.dns.protocol;
 
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.apache.directory.server.dns.DnsException;
 import org.apache.directory.server.dns.messages.DnsMessage;
 import org.apache.directory.server.dns.messages.DnsMessageModifier;
 import org.apache.directory.server.dns.messages.MessageType;
 import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
 import org.apache.directory.server.dns.messages.ResourceRecord;
 import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.service.AccessControl;
 import org.apache.directory.server.dns.service.DnsContext;
 import org.apache.directory.server.dns.service.DomainNameService;
+import org.apache.directory.server.dns.service.DynamicUpdateService;
+import org.apache.directory.server.dns.service.ResponsePolicy;
+import org.apache.directory.server.dns.service.SecondaryService;
+import org.apache.directory.server.dns.service.ViewSelector;
+import org.apache.directory.server.dns.service.ZoneTransferService;
+import org.apache.directory.server.dns.store.AsyncRecordStore;
 import org.apache.directory.server.dns.store.RecordStore;
+import org.apache.directory.server.dns.store.zone.Zone;
+import org.apache.directory.server.protocol.shared.TimingWheel;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.WriteFuture;
 import org.apache.mina.core.service.IoHandler;
 import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.core.session.IoSession;
@@ -49,9 +75,57 @@ public class DnsProtocolHandler implements IoHandler
 {
     private static final Logger LOG = LoggerFactory.getLogger( DnsProtocolHandler.class );
 
+    /** The most zone transfers running at once */
+    private static final int MAX_TRANSFERS = 2;
+
+    /** The most zone transfers waiting for one of the running ones to end */
+    private static final int MAX_QUEUED_TRANSFERS = 8;
+
+    /** The most dynamic updates running at once */
+    private static final int MAX_UPDATES = 2;
+
+    /** The most dynamic updates waiting for one of the running ones to end */
+    private static final int MAX_QUEUED_UPDATES = 64;
+
+    /** The most messages of a transfer written to a session and not sent yet */
+    private static final int MAX_PENDING_WRITES = 4;
+
+    /** The session attribute holding the bytes of the remote address, got once per session */
+    static final String ADDRESS_KEY = DnsProtocolHandler.class.getName() + ".address";
+
+    /** The session attribute holding the idle timer of a TCP connection */
+    private static final String IDLE_TIMER_KEY = DnsProtocolHandler.class.getName() + ".idleTimer";
+
     private RecordStore store;
     private String contextKey = "context";
 
+    /** The lane the zone transfers run on, so that they never hold up queries */
+    private final ExecutorService transferExecutor;
+
+    /** The lane the dynamic updates run on, as they wait for their journal entry to reach the disk */
+    private final ExecutorService updateExecutor;
+
+    /** The secondary zones, which NOTIFY messages are about */
+    private SecondaryService secondaryService;
+
+    /** The views clients are answered from by their address, or null to answer all from the store */
+    private ViewSelector viewSelector;
+
+    /** The clients allowed each operation, or null to allow all */
+    private volatile AccessControl accessControl;
+
+    /** Refuses the requests of the clients denied them, before they are decoded */
+    private final AccessControlFilter accessControlFilter = new AccessControlFilter( this );
+
+    /** The blocklist queries are answered from before the store, or null for none */
+    private volatile ResponsePolicy policy;
+
+    /** The timers closing the idle TCP connections, or null to leave them open */
+    private TimingWheel idleTimers;
+
+    /** The time a TCP connection may stay idle, in milliseconds */
+    private long idleTimeout;
+
 
     /**
      * Creates a new instance of DnsProtocolHandler.
@@ -60,8 +134,162 @@ public class DnsProtocolHandler implements IoHandler
      * @param store
      */
     public DnsProtocolHandler(RecordStore store )
+    {
+        this( store, getTransferLane(), getUpdateLane() );
+    }
+
+
+    /**
+     * Creates a new instance of DnsProtocolHandler, running the zone
+     * transfers and dynamic updates on the given lanes.  A server handling
+     * several transports shares one pair of lanes between their handlers,
+     * so that the limits hold for the server as a whole, and shuts the
+     * lanes down when it stops.
+     *
+     * @param store
+     * @param transferExecutor the lane of the zone transfers, see {@link #getTransferLane()}
+     * @param updateExecutor the lane of the dynamic updates, see {@link #getUpdateLane()}
+     */
+    public DnsProtocolHandler( RecordStore store, ExecutorService transferExecutor, ExecutorService updateExecutor )
     {
         this.store = store;
+        this.transferExecutor = transferExecutor;
+        this.updateExecutor = updateExecutor;
+    }
+
+
+    /**
+     * Returns a new lane for zone transfers, which runs a couple of them at
+     * once and refuses those which cannot be queued.
+     *
+     * @return The transfer lane.
+     */
+    public static ExecutorService getTransferLane()
+    {
+        return getLane( "dns-transfer", MAX_TRANSFERS, MAX_QUEUED_TRANSFERS );
+    }
+
+
+    /**
+     * Returns a new lane for dynamic updates, which runs a couple of them at
+     * once and refuses those which cannot be queued.
+     *
+     * @return The update lane.
+     */
+    public static ExecutorService getUpdateLane()
+    {
+        return getLane( "dns-update", MAX_UPDATES, MAX_QUEUED_UPDATES );
+    }
+
+
+    /**
+     * Returns a bounded pool of daemon threads, which rejects the tasks
+     * coming once its queue is full.
+     */
+    private static ExecutorService getLane( final String name, int threads, int queued )
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>( queued ), new ThreadFactory()
+            {
+                public Thread newThread( Runnable runnable )
+                {
+                    Thread thread = new Thread( runnable, name );
+                    thread.setDaemon( true );
+
+                    return thread;
+                }
+            } );
+        executor.allowCoreThreadTimeOut( true );
+
+        return executor;
+    }
+
+
+    /**
+     * Sets the secondary zones, so that NOTIFY messages from their primary
+     * servers are answered.
+     *
+     * @param secondaryService
+     */
+    public void setSecondaryService( SecondaryService secondaryService )
+    {
+        this.secondaryService = secondaryService;
+    }
+
+
+    /**
+     * Sets the views, so that each client is answered, and its updates and
+     * transfers are made, from the store of its view rather than the store
+     * of the handler.
+     *
+     * @param viewSelector the views, or null to not use any
+     */
+    public void setViewSelector( ViewSelector viewSelector )
+    {
+        this.viewSelector = viewSelector;
+    }
+
+
+    /**
+     * Sets the clients allowed to query, transfer and update, in place of
+     * those allowed before, from the next request on.  Requests of the
+     * clients denied are answered REFUSED before they are decoded.
+     *
+     * @param accessControl the clients allowed, or null to allow all
+     */
+    public void setAccessControl( AccessControl accessControl )
+    {
+        this.accessControl = accessControl;
+    }
+
+
+    /**
+     * @return Returns the clients allowed each operation, or null if all are.
+     */
+    public AccessControl getAccessControl()
+    {
+        return accessControl;
+    }
+
+
+    /**
+     * Sets the response policy, in place of the one before, from the next
+     * query on.  The queries about the names of the policy are answered from
+     * it rather than the store.
+     *
+     * @param policy the response policy, or null for none
+     */
+    public void setResponsePolicy( ResponsePolicy policy )
+    {
+        this.policy = policy;
+    }
+
+
+    /**
+     * Closes the TCP connections which neither sent nor received anything
+     * for a while (RFC 7766, section 6.2.3), from the next connection on.
+     * The connections are timed on a wheel, which the handlers of a server
+     * share, so that each takes a single timer rather than a scan of all of
+     * them.
+     *
+     * @param idleTimers the wheel to time the connections on, or null to
+     * leave them open
+     * @param idleTimeout the time a connection may stay idle
+     * @param unit the unit of the timeout
+     */
+    public void setIdleTimeout( TimingWheel idleTimers, long idleTimeout, TimeUnit unit )
+    {
+        this.idleTimers = idleTimers;
+        this.idleTimeout = unit.toMillis( idleTimeout );
+    }
+
+
+    /**
+     * @return Returns the response policy, or null if there is none.
+     */
+    public ResponsePolicy getResponsePolicy()
+    {
+        return policy;
     }
 
 
@@ -72,6 +300,13 @@ public class DnsProtocolHandler implements IoHandler
             LOG.debug( "{} CREATED:  {}", session.getRemoteAddress(), session.getTransportMetadata() );
         }
 
+        if ( session.getRemoteAddress() instanceof InetSocketAddress
+            && ( ( InetSocketAddress ) session.getRemoteAddress() ).getAddress() != null )
+        {
+            session.setAttribute( ADDRESS_KEY, ( ( InetSocketAddress ) session.getRemoteAddress() ).getAddress()
+                .getAddress() );
+        }
+
         if ( session.getTransportMetadata().isConnectionless() )
         {
             session.getFilterChain().addFirst( "codec",
@@ -82,18 +317,67 @@ public class DnsProtocolHandler implements IoHandler
             session.getFilterChain().addFirst( "codec",
                 new ProtocolCodecFilter( DnsProtocolTcpCodecFactory.getInstance() ) );
         }
+
+        // ahead of the codec, so that the requests refused are never decoded
+        session.getFilterChain().addFirst( "accessControl", accessControlFilter );
     }
 
 
     public void sessionOpened( IoSession session )
     {
         LOG.debug( "{} OPENED", session.getRemoteAddress() );
+
+        if ( idleTimers != null && !session.getTransportMetadata().isConnectionless() )
+        {
+            scheduleIdleTimer( idleTimers, session, idleTimeout );
+        }
     }
 
 
     public void sessionClosed( IoSession session )
     {
         LOG.debug( "{} CLOSED", session.getRemoteAddress() );
+
+        TimingWheel.Timeout idleTimer = ( TimingWheel.Timeout ) session.removeAttribute( IDLE_TIMER_KEY );
+
+        if ( idleTimer != null )
+        {
+            idleTimer.cancel();
+        }
+    }
+
+
+    /**
+     * Schedules the check of a connection for idleness.  Rather than moving
+     * the timer with each message, the check looks at the last I/O of the
+     * connection when it runs, and schedules itself again for the rest of
+     * the timeout if there was some.
+     */
+    private void scheduleIdleTimer( final TimingWheel timers, final IoSession session, long delay )
+    {
+        final long timeout = idleTimeout;
+
+        session.setAttribute( IDLE_TIMER_KEY, timers.schedule( new Runnable()
+        {
+            public void run()
+            {
+                if ( !session.isConnected() )
+                {
+                    return;
+                }
+
+                long idle = System.currentTimeMillis() - session.getLastIoTime();
+
+                if ( idle < timeout )
+                {
+                    scheduleIdleTimer( timers, session, timeout - idle );
+                    return;
+                }
+
+                LOG.debug( "{} idle for {} ms, closing", session.getRemoteAddress(), idle );
+                session.close( true );
+            }
+        }, delay, TimeUnit.MILLISECONDS ) );
     }
 
 
@@ -110,51 +394,317 @@ public class DnsProtocolHandler implements IoHandler
     }
 
 
+    /**
+     * Returns the store of the view of a client, chosen from the bytes of
+     * its address kept with its session rather than from a copy per query.
+     */
+    private RecordStore getStore( IoSession session )
+    {
+        if ( viewSelector == null )
+        {
+            return store;
+        }
+
+        byte[] address = ( byte[] ) session.getAttribute( ADDRESS_KEY );
+
+        return address == null ? viewSelector.getDefaultView().getStore() : viewSelector.select( address ).getStore();
+    }
+
+
     public void messageReceived( IoSession session, Object message )
     {
         LOG.debug( "{} RCVD:  {}", session.getRemoteAddress(), message );
 
         try
         {
+            RecordStore selected = getStore( session );
             DnsContext dnsContext = new DnsContext();
-            dnsContext.setStore( store );
+            dnsContext.setStore( selected );
+            dnsContext.setPolicy( policy );
             session.setAttribute( getContextKey(), dnsContext );
 
-            DomainNameService.execute( dnsContext, (DnsMessage)message );
-
-            DnsMessage response = dnsContext.getReply();
+            DnsMessage request = ( DnsMessage ) message;
 
-            session.write( response );
+            if ( ZoneTransferService.isTransfer( request ) )
+            {
+                transfer( session, dnsContext, request );
+            }
+            else if ( request.getOpCode() == OpCode.QUERY && selected instanceof AsyncRecordStore )
+            {
+                query( session, request, ( AsyncRecordStore ) selected, dnsContext.getPolicy() );
+            }
+            else if ( request.getOpCode() == OpCode.QUERY )
+            {
+                List<Set<ResourceRecord>> answers = DomainNameService.lookup( selected, dnsContext.getPolicy(),
+                    request );
+                session.write( writeReply( session, request, answers ) );
+            }
+            else if ( request.getOpCode() == OpCode.UPDATE )
+            {
+                update( session, dnsContext, request );
+            }
+            else if ( request.getOpCode() == OpCode.NOTIFY && secondaryService != null )
+            {
+                InetSocketAddress source = ( InetSocketAddress ) session.getRemoteAddress();
+                secondaryService.execute( dnsContext, request, source.getAddress() );
+
+                write( session, request, dnsContext.getReply() );
+            }
+            else
+            {
+                DomainNameService.execute( dnsContext, request );
+
+                DnsMessage response = dnsContext.getReply();
+
+                write( session, request, response );
+            }
         }
         catch ( Exception e )
+        {
+            fail( session, ( DnsMessage ) message, e );
+        }
+    }
+
+
+    /**
+     * Answers a query from an asynchronous store once its lookups complete,
+     * on whichever thread completes them, so that no I/O thread waits for
+     * the store.
+     */
+    private void query( final IoSession session, final DnsMessage request, AsyncRecordStore asyncStore,
+        ResponsePolicy policy )
+    {
+        DomainNameService.lookup( asyncStore, policy, request ).whenComplete(
+            new BiConsumer<List<Set<ResourceRecord>>, Throwable>()
+            {
+                public void accept( List<Set<ResourceRecord>> answers, Throwable failure )
+                {
+                    if ( failure == null )
+                    {
+                        try
+                        {
+                            session.write( writeReply( session, request, answers ) );
+
+                            return;
+                        }
+                        catch ( Exception e )
+                        {
+                            failure = e;
+                        }
+                    }
+
+                    if ( failure instanceof CompletionException && failure.getCause() != null )
+                    {
+                        failure = failure.getCause();
+                    }
+
+                    fail( session, request, failure instanceof Exception ? ( Exception ) failure : new Exception(
+                        failure ) );
+                }
+            } );
+    }
+
+
+    /**
+     * Logs the failure to answer a request and answers with an error.
+     */
+    private void fail( IoSession session, DnsMessage request, Exception e )
+    {
+        if ( e instanceof DnsException )
+        {
+            // an answer rather than a failure, such as a name which does not exist
+            LOG.debug( "{} {}", session.getRemoteAddress(), e.getMessage() );
+        }
+        else
         {
             LOG.error( e.getLocalizedMessage(), e );
+        }
+
+        writeError( session, request, e );
+    }
 
-            DnsMessage request = ( DnsMessage ) message;
-            DnsException de = ( DnsException ) e;
 
-            DnsMessageModifier modifier = new DnsMessageModifier();
+    /**
+     * Runs a zone transfer on the transfer lane, apart from the threads
+     * processing the queries, and answers REFUSED when the lane is full.
+     */
+    private void transfer( final IoSession session, final DnsContext dnsContext, final DnsMessage request )
+        throws Exception
+    {
+        final boolean connectionless = session.getTransportMetadata().isConnectionless();
 
-            modifier.setTransactionId( request.getTransactionId() );
-            modifier.setMessageType( MessageType.RESPONSE );
-            modifier.setOpCode( OpCode.QUERY );
-            modifier.setAuthoritativeAnswer( false );
-            modifier.setTruncated( false );
-            modifier.setRecursionDesired( request.isRecursionDesired() );
-            modifier.setRecursionAvailable( false );
-            modifier.setReserved( false );
-            modifier.setAcceptNonAuthenticatedData( false );
-            modifier.setResponseCode( ResponseCode.convert( ( byte ) de.getResponseCode() ) );
-            modifier.setQuestionRecords( request.getQuestionRecords() );
-            modifier.setAnswerRecords( new ArrayList<ResourceRecord>() );
-            modifier.setAuthorityRecords( new ArrayList<ResourceRecord>() );
-            modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+        if ( connectionless )
+        {
+            // a single message at most, see ZoneTransferService
+            ZoneTransferService.transfer( dnsContext, request, new ZoneTransferService.MessageSink()
+            {
+                public void write( IoBuffer message )
+                {
+                    // no length prefix over UDP
+                    message.position( 2 );
+                    session.write( message );
+                }
+            }, true );
+
+            return;
+        }
 
-            session.write( modifier.getDnsMessage() );
+        try
+        {
+            transferExecutor.execute( new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        ZoneTransferService.transfer( dnsContext, request, new SessionSink( session ), false );
+                    }
+                    catch ( Exception e )
+                    {
+                        LOG.warn( "{} transfer failed: {}", session.getRemoteAddress(), e.getMessage() );
+
+                        writeError( session, request, e );
+                    }
+                }
+            } );
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            LOG.warn( "{} transfer refused, {} transfers running", session.getRemoteAddress(), MAX_TRANSFERS );
+
+            throw new DnsException( ResponseCode.REFUSED );
         }
     }
 
 
+    /**
+     * Runs a dynamic update on the update lane, so that waiting for its
+     * journal entry to reach the disk holds up no I/O thread, and answers
+     * REFUSED when the lane is full.  Updates of secondary zones are
+     * answered NOTAUTH.
+     */
+    private void update( final IoSession session, final DnsContext dnsContext, final DnsMessage request )
+        throws Exception
+    {
+        List<QuestionRecord> zoneSection = request.getQuestionRecords();
+
+        if ( secondaryService != null && zoneSection.size() == 1
+            && secondaryService.getZones().contains( Zone.toKey( zoneSection.get( 0 ).getDomainName() ) ) )
+        {
+            // a secondary zone only changes by transfers from its primary server
+            throw new DnsException( ResponseCode.NOTAUTH );
+        }
+
+        try
+        {
+            updateExecutor.execute( new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        DynamicUpdateService.execute( dnsContext, request );
+
+                        write( session, request, dnsContext.getReply() );
+                    }
+                    catch ( Exception e )
+                    {
+                        fail( session, request, e );
+                    }
+                }
+            } );
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            LOG.warn( "{} update refused, {} updates queued", session.getRemoteAddress(), MAX_QUEUED_UPDATES );
+
+            throw new DnsException( ResponseCode.REFUSED );
+        }
+    }
+
+
+    private void writeError( IoSession session, DnsMessage request, Exception e )
+    {
+        ResponseCode responseCode = ResponseCode.SERVER_FAILURE;
+
+        if ( e instanceof DnsException )
+        {
+            responseCode = ResponseCode.convert( ( byte ) ( ( DnsException ) e ).getResponseCode() );
+        }
+
+        DnsMessageModifier modifier = new DnsMessageModifier();
+
+        modifier.setTransactionId( request.getTransactionId() );
+        modifier.setMessageType( MessageType.RESPONSE );
+        modifier.setOpCode( request.getOpCode() );
+        modifier.setAuthoritativeAnswer( false );
+        modifier.setTruncated( false );
+        modifier.setRecursionDesired( request.isRecursionDesired() );
+        modifier.setRecursionAvailable( false );
+        modifier.setReserved( false );
+        modifier.setAcceptNonAuthenticatedData( false );
+        modifier.setResponseCode( responseCode );
+        modifier.setQuestionRecords( request.getQuestionRecords() );
+        modifier.setAnswerRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAuthorityRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+
+        write( session, request, modifier.getDnsMessage() );
+    }
+
+
+    /**
+     * Writes a reply to the session.  Over UDP the reply carries the payload
+     * size of the client that sent the request, as the session is shared
+     * with the other clients, see {@link UdpReply}.
+     */
+    private static void write( IoSession session, DnsMessage request, DnsMessage reply )
+    {
+        if ( session.getTransportMetadata().isConnectionless() )
+        {
+            session.write( new UdpReply( reply, DomainNameService.getUdpPayloadSize( request ) ) );
+        }
+        else
+        {
+            session.write( reply );
+        }
+    }
+
+
+    /**
+     * Writes the reply to a query into a new buffer, ready to be written to
+     * the session as is.  Over TCP the reply is prefixed with its length, as
+     * the codec would otherwise do.  Over UDP the reply is limited to the
+     * payload size the client can receive.
+     */
+    private IoBuffer writeReply( IoSession session, DnsMessage request, List<Set<ResourceRecord>> answers )
+        throws Exception
+    {
+        boolean connectionless = session.getTransportMetadata().isConnectionless();
+
+        IoBuffer buf = IoBuffer.allocate( 512 );
+        buf.setAutoExpand( true );
+
+        if ( !connectionless )
+        {
+            // make space for short length
+            buf.putShort( ( short ) 0 );
+        }
+
+        DomainNameService.write( request, answers, buf, connectionless );
+
+        if ( !connectionless )
+        {
+            // length is the data minus 2 bytes for the pre-pended length
+            buf.putShort( 0, ( short ) ( buf.position() - 2 ) );
+        }
+
+        buf.flip();
+
+        return buf;
+    }
+
+
     public void messageSent( IoSession session, Object message )
     {
         LOG.debug( "{} SENT:  {}", session.getRemoteAddress(), message );
@@ -165,4 +715,44 @@ public class DnsProtocolHandler implements IoHandler
     {
         return ( this.contextKey );
     }
+
+    /**
+     * Writes the messages of a transfer to a session, waiting for the client
+     * to take them once {@link DnsProtocolHandler#MAX_PENDING_WRITES} are
+     * pending, so that a slow client does not make the whole zone pile up in
+     * the write queue.
+     */
+    private static final class SessionSink implements ZoneTransferService.MessageSink
+    {
+        private final IoSession session;
+        private final Queue<WriteFuture> pending = new LinkedList<WriteFuture>();
+
+
+        SessionSink( IoSession session )
+        {
+            this.session = session;
+        }
+
+
+        public void write( IoBuffer message ) throws IOException
+        {
+            if ( !session.isConnected() )
+            {
+                throw new IOException( "The session was closed" );
+            }
+
+            pending.add( session.write( message ) );
+
+            if ( pending.size() > MAX_PENDING_WRITES )
+            {
+                WriteFuture future = pending.remove();
+                future.awaitUninterruptibly();
+
+                if ( !future.isWritten() )
+                {
+                    throw new IOException( "The client stopped reading" );
+                }
+            }
+        }
+    }
 }
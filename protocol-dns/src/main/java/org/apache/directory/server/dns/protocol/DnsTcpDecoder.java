@@ -84,9 +84,10 @@ public class DnsTcpDecoder extends CumulativeProtocolDecoder
             return false;
         }
 
-        in.getShort();
+        int length = in.getUnsignedShort();
 
-        out.write( decoder.decode( in ) );
+        // decode a slice, so that compression pointers are relative to the start of the message
+        out.write( decoder.decode( in.getSlice( length ) ) );
 
         return true;
     }
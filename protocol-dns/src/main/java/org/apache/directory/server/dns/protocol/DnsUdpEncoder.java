@@ -23,6 +23,7 @@ package org.apache.directory.server.dns.protocol;
 
 import org.apache.directory.server.dns.io.encoder.DnsMessageEncoder;
 import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.service.DomainNameService;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
@@ -31,7 +32,8 @@ import org.apache.mina.filter.codec.ProtocolEncoderOutput;
 
 /**
  * A ProtocolEncoder for use in the MINA framework that uses the 
- * DnsMessageEncoder to encode DnsMessages.
+ * DnsMessageEncoder to encode DnsMessages.  A {@link UdpReply} is limited to
+ * the payload size it carries, a bare DnsMessage to 512 bytes.
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  * @version $Rev: 725712 $, $Date: 2008-12-11 16:32:04 +0100 (Jeu, 11 déc 2008) $
@@ -43,8 +45,17 @@ public class DnsUdpEncoder extends ProtocolEncoderAdapter
 
     public void encode( IoSession session, Object message, ProtocolEncoderOutput out )
     {
-        IoBuffer buf = IoBuffer.allocate( 1024 );
-        encoder.encode( buf, ( DnsMessage ) message );
+        int maxLength = DomainNameService.DEFAULT_UDP_PAYLOAD_SIZE;
+
+        if ( message instanceof UdpReply )
+        {
+            maxLength = ( ( UdpReply ) message ).getPayloadSize();
+            message = ( ( UdpReply ) message ).getMessage();
+        }
+
+        IoBuffer buf = IoBuffer.allocate( maxLength );
+        buf.setAutoExpand( true );
+        encoder.encode( buf, ( DnsMessage ) message, maxLength );
 
         buf.flip();
 
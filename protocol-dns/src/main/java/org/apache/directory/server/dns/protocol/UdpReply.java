@@ -0,0 +1,79 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.protocol;
+
+
+import org.apache.directory.server.dns.messages.DnsMessage;
+
+
+/**
+ * A reply to a UDP request, along with the payload size of the client it
+ * goes to, which {@link DnsUdpEncoder} limits it to.  All the clients of a
+ * UDP port share a session, so the size travels with the reply rather than
+ * with the session.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+final class UdpReply
+{
+    private final DnsMessage message;
+
+    /** The UDP payload size the client advertised in its request */
+    private final int payloadSize;
+
+
+    /**
+     * Creates a new instance of UdpReply.
+     *
+     * @param message the reply
+     * @param payloadSize the UDP payload size of the client
+     */
+    UdpReply( DnsMessage message, int payloadSize )
+    {
+        this.message = message;
+        this.payloadSize = payloadSize;
+    }
+
+
+    /**
+     * @return Returns the reply.
+     */
+    DnsMessage getMessage()
+    {
+        return message;
+    }
+
+
+    /**
+     * @return Returns the UDP payload size of the client.
+     */
+    int getPayloadSize()
+    {
+        return payloadSize;
+    }
+
+
+    public String toString()
+    {
+        return message.toString();
+    }
+}
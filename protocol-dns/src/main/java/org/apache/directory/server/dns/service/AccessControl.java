@@ -0,0 +1,191 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.mina.core.buffer.IoBuffer;
+
+
+/**
+ * The clients allowed to query, to transfer zones and to update them.  A
+ * request is checked from its header, and the type of its question for a
+ * transfer, read in place from the message received, so that the requests
+ * of denied clients are never decoded.  Checking allocates nothing.<p>
+ * 
+ * AccessControl is immutable: to change the clients allowed, a new one is
+ * made and put in place of the old one.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class AccessControl
+{
+    /** The access control allowing every client everything */
+    public static final AccessControl ANY = new AccessControl( AccessList.ANY, AccessList.ANY, AccessList.ANY );
+
+    /** The length of the header of a message */
+    private static final int HEADER_LENGTH = 12;
+
+    private static final int UPDATE = OpCode.UPDATE.convert().intValue();
+
+    private static final int NOTIFY = OpCode.NOTIFY.convert().intValue();
+
+    private static final int QUERY = OpCode.QUERY.convert().intValue();
+
+    private static final int AXFR = RecordType.AXFR.convert().intValue();
+
+    private static final int IXFR = RecordType.IXFR.convert().intValue();
+
+    private final AccessList query;
+
+    private final AccessList transfer;
+
+    private final AccessList update;
+
+
+    /**
+     * Creates a new instance of AccessControl.
+     *
+     * @param query the clients allowed to query
+     * @param transfer the clients allowed to transfer zones, with AXFR or IXFR
+     * @param update the clients allowed to update zones
+     */
+    public AccessControl( AccessList query, AccessList transfer, AccessList update )
+    {
+        this.query = query;
+        this.transfer = transfer;
+        this.update = update;
+    }
+
+
+    /**
+     * Tells whether a client is allowed a request.  Requests too short to
+     * tell are allowed, to fail when decoded, and NOTIFY messages are left
+     * to the {@link SecondaryService}, which checks where they come from.
+     *
+     * @param address the address of the client, 4 bytes for IPv4 or 16 for IPv6
+     * @param message the request, from its position to its limit, left as it was
+     * @return true if the client is allowed the request.
+     */
+    public boolean isAllowed( byte[] address, IoBuffer message )
+    {
+        int start = message.position();
+
+        if ( message.remaining() < HEADER_LENGTH )
+        {
+            return true;
+        }
+
+        int opCode = ( message.get( start + 2 ) >>> 3 ) & 0x0F;
+
+        if ( opCode == UPDATE )
+        {
+            return update.isAllowed( address );
+        }
+
+        if ( opCode == NOTIFY )
+        {
+            return true;
+        }
+
+        if ( opCode == QUERY && isTransfer( message, start ) )
+        {
+            return transfer.isAllowed( address );
+        }
+
+        return query.isAllowed( address );
+    }
+
+
+    /**
+     * @return Returns the clients allowed to query.
+     */
+    public AccessList getQuery()
+    {
+        return query;
+    }
+
+
+    /**
+     * @return Returns the clients allowed to transfer zones.
+     */
+    public AccessList getTransfer()
+    {
+        return transfer;
+    }
+
+
+    /**
+     * @return Returns the clients allowed to update zones.
+     */
+    public AccessList getUpdate()
+    {
+        return update;
+    }
+
+
+    /**
+     * Tells whether a query is for a zone transfer, skipping the name of its
+     * question to read the type, as {@link ZoneTransferService#isTransfer} does
+     * once the query is decoded.
+     */
+    private static boolean isTransfer( IoBuffer message, int start )
+    {
+        if ( message.getUnsignedShort( start + 4 ) != 1 )
+        {
+            return false;
+        }
+
+        int position = start + HEADER_LENGTH;
+        int limit = message.limit();
+
+        while ( position < limit )
+        {
+            int length = message.getUnsigned( position );
+
+            if ( length == 0 )
+            {
+                position++;
+                break;
+            }
+
+            if ( ( length & 0xC0 ) != 0 )
+            {
+                // a pointer ends the name
+                position += 2;
+                break;
+            }
+
+            position += 1 + length;
+        }
+
+        if ( position + 2 > limit )
+        {
+            return false;
+        }
+
+        int type = message.getUnsignedShort( position );
+
+        return type == AXFR || type == IXFR;
+    }
+}
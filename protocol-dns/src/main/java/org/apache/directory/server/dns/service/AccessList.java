@@ -0,0 +1,92 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.net.InetAddress;
+
+import org.apache.directory.server.dns.util.AddressTrie;
+
+
+/**
+ * A list of the networks whose clients are allowed, or denied, an operation.
+ * A client is allowed or denied by the longest of the networks it is in,
+ * and denied if it is in none.  The list is compiled into an
+ * {@link AddressTrie} when created and never changed, so it may be shared
+ * by any number of threads.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class AccessList
+{
+    /** The list allowing every client */
+    public static final AccessList ANY = new AccessList( "0.0.0.0/0", "::/0" );
+
+    /** The list denying every client */
+    public static final AccessList NONE = new AccessList();
+
+    /** Whether the clients of each network are allowed */
+    private final AddressTrie<Boolean> networks = new AddressTrie<Boolean>();
+
+
+    /**
+     * Creates a new instance of AccessList.
+     *
+     * @param rules the networks allowed, such as 10.0.0.0/8 or fd00::/8, or
+     * denied when preceded by a '!', such as !10.1.0.0/16
+     * @throws IllegalArgumentException if a network is not valid
+     */
+    public AccessList( String... rules )
+    {
+        for ( String rule : rules )
+        {
+            String network = rule.trim();
+            boolean denied = network.startsWith( "!" );
+
+            networks.put( denied ? network.substring( 1 ) : network, !denied );
+        }
+    }
+
+
+    /**
+     * Tells whether a client is allowed.
+     *
+     * @param address the address of the client
+     * @return true if the longest network the client is in is allowed.
+     */
+    public boolean isAllowed( InetAddress address )
+    {
+        return isAllowed( address.getAddress() );
+    }
+
+
+    /**
+     * Tells whether a client is allowed, without allocating.
+     *
+     * @param address the address of the client, 4 bytes for IPv4 or 16 for IPv6
+     * @return true if the longest network the client is in is allowed.
+     */
+    public boolean isAllowed( byte[] address )
+    {
+        return networks.get( address ) == Boolean.TRUE;
+    }
+}
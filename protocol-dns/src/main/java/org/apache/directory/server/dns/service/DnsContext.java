@@ -38,8 +38,12 @@ public class DnsContext
     private static final long serialVersionUID = -5911142975867852436L;
 
     private RecordStore store;
+    private ResponsePolicy policy;
     private DnsMessage reply;
     private List<ResourceRecord> records = new ArrayList<ResourceRecord>();
+    private List<ResourceRecord> authorityRecords = new ArrayList<ResourceRecord>();
+    private List<ResourceRecord> additionalRecords = new ArrayList<ResourceRecord>();
+    private boolean authoritativeAnswer;
 
 
     /**
@@ -68,6 +72,61 @@ public class DnsContext
         this.records.addAll( resourceRecords );
     }
 
+
+    /**
+     * @return Returns the records for the authority section.
+     */
+    public List<ResourceRecord> getAuthorityRecords()
+    {
+        return authorityRecords;
+    }
+
+
+    /**
+     * @param resourceRecords The records for the authority section to add.
+     */
+    public void addAuthorityRecords( Collection<ResourceRecord> resourceRecords )
+    {
+        this.authorityRecords.addAll( resourceRecords );
+    }
+
+
+    /**
+     * @return Returns the records for the additional section.
+     */
+    public List<ResourceRecord> getAdditionalRecords()
+    {
+        return additionalRecords;
+    }
+
+
+    /**
+     * @param resourceRecords The records for the additional section to add.
+     */
+    public void addAdditionalRecords( Collection<ResourceRecord> resourceRecords )
+    {
+        this.additionalRecords.addAll( resourceRecords );
+    }
+
+
+    /**
+     * @return Returns whether the answer is authoritative.
+     */
+    public boolean isAuthoritativeAnswer()
+    {
+        return authoritativeAnswer;
+    }
+
+
+    /**
+     * @param authoritativeAnswer Whether the answer is authoritative.
+     */
+    public void setAuthoritativeAnswer( boolean authoritativeAnswer )
+    {
+        this.authoritativeAnswer = authoritativeAnswer;
+    }
+
+
     /**
      * @return Returns the reply.
      */
@@ -102,4 +161,23 @@ public class DnsContext
     {
         this.store = store;
     }
+
+
+    /**
+     * @return Returns the response policy, or null if there is none.
+     */
+    public ResponsePolicy getPolicy()
+    {
+        return policy;
+    }
+
+
+    /**
+     * @param policy The response policy answering for the names of its
+     * blocklist before the store is looked up, or null for none.
+     */
+    public void setPolicy( ResponsePolicy policy )
+    {
+        this.policy = policy;
+    }
 }
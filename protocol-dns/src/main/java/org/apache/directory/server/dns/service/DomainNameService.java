@@ -21,20 +21,31 @@ package org.apache.directory.server.dns.service;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.io.encoder.DnsMessageWriter;
 import org.apache.directory.server.dns.messages.DnsMessage;
 import org.apache.directory.server.dns.messages.DnsMessageModifier;
 import org.apache.directory.server.dns.messages.MessageType;
 import org.apache.directory.server.dns.messages.OpCode;
 import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordType;
 import org.apache.directory.server.dns.messages.ResourceRecord;
 import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.store.AsyncRecordStore;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
 import org.apache.directory.server.dns.store.RecordStore;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.mina.core.buffer.IoBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +61,12 @@ public class DomainNameService
     /** the log for this class */
     private static final Logger LOG = LoggerFactory.getLogger( DomainNameService.class );
 
+    /** The UDP payload size of clients without EDNS, as per RFC 1035 */
+    public static final int DEFAULT_UDP_PAYLOAD_SIZE = 512;
+
+    /** The largest UDP payload size we accept from EDNS clients, and advertise to them */
+    public static final int MAX_UDP_PAYLOAD_SIZE = 4096;
+
 
     /**
      * Creates a new instance of DomainNameService.
@@ -76,6 +93,393 @@ public class DomainNameService
         }
     }
     
+    /**
+     * Answers a query by writing the reply straight into a buffer, so no
+     * reply {@link DnsMessage} is built; {@link #execute} remains for callers
+     * that want the reply as an object.
+     *
+     * @param dnsContext
+     * @param request
+     * @param out the buffer to write the reply into, from its current position
+     * @param datagram true if the reply is sent over UDP, and so must fit the
+     * UDP payload size of the client
+     * @throws Exception if a question cannot be answered, in which case the
+     * content of the buffer is undefined
+     */
+    public static void write( DnsContext dnsContext, DnsMessage request, IoBuffer out, boolean datagram )
+        throws Exception
+    {
+        write( request, lookup( dnsContext.getStore(), dnsContext.getPolicy(), request ), out, datagram );
+    }
+
+
+    /**
+     * Looks up the answers to the questions of a query in a {@link RecordStore}.
+     * The answers are then written with {@link #write(DnsMessage, List, IoBuffer, boolean)}.
+     *
+     * @param store
+     * @param request
+     * @return The answers, in the order of the questions.
+     * @throws DnsException if a question cannot be answered
+     */
+    public static List<Set<ResourceRecord>> lookup( RecordStore store, DnsMessage request ) throws DnsException
+    {
+        return lookup( store, null, request );
+    }
+
+
+    /**
+     * Looks up the answers to the questions of a query, those about the names
+     * of a {@link ResponsePolicy} from the policy, and the others in a
+     * {@link RecordStore}.
+     *
+     * @param store
+     * @param policy the response policy, or null for none
+     * @param request
+     * @return The answers, in the order of the questions.
+     * @throws DnsException if a question cannot be answered
+     */
+    public static List<Set<ResourceRecord>> lookup( RecordStore store, ResponsePolicy policy, DnsMessage request )
+        throws DnsException
+    {
+        List<QuestionRecord> questions = request.getQuestionRecords();
+
+        if ( policy != null )
+        {
+            List<Set<ResourceRecord>> answers = new ArrayList<Set<ResourceRecord>>( questions.size() );
+            List<QuestionRecord> passed = new ArrayList<QuestionRecord>( questions.size() );
+
+            for ( QuestionRecord question : questions )
+            {
+                Set<ResourceRecord> answer = policy.apply( question );
+                answers.add( answer );
+
+                if ( answer == null )
+                {
+                    passed.add( question );
+                }
+            }
+
+            if ( passed.size() < questions.size() )
+            {
+                // the answers of the store fill in those the policy left
+                Iterator<Set<ResourceRecord>> looked = lookup( store, passed ).iterator();
+
+                for ( int ii = 0; ii < answers.size(); ii++ )
+                {
+                    if ( answers.get( ii ) == null )
+                    {
+                        answers.set( ii, looked.next() );
+                    }
+                }
+
+                return answers;
+            }
+        }
+
+        return lookup( store, questions );
+    }
+
+
+    private static List<Set<ResourceRecord>> lookup( RecordStore store, List<QuestionRecord> questions )
+        throws DnsException
+    {
+        if ( questions.isEmpty() )
+        {
+            return Collections.emptyList();
+        }
+
+        if ( questions.size() == 1 )
+        {
+            return Collections.singletonList( store.getRecords( questions.get( 0 ) ) );
+        }
+
+        return store.getRecords( questions );
+    }
+
+
+    /**
+     * Looks up the answers to the questions of a query in an
+     * {@link AsyncRecordStore}, all at once.  The answers are then written
+     * with {@link #write(DnsMessage, List, IoBuffer, boolean)}.
+     *
+     * @param store
+     * @param request
+     * @return The answers, in the order of the questions, once they all came.
+     */
+    public static CompletionStage<List<Set<ResourceRecord>>> lookup( AsyncRecordStore store, DnsMessage request )
+    {
+        return lookup( store, null, request );
+    }
+
+
+    /**
+     * Looks up the answers to the questions of a query, those about the names
+     * of a {@link ResponsePolicy} from the policy, and the others in an
+     * {@link AsyncRecordStore}, all at once.
+     *
+     * @param store
+     * @param policy the response policy, or null for none
+     * @param request
+     * @return The answers, in the order of the questions, once they all came.
+     */
+    public static CompletionStage<List<Set<ResourceRecord>>> lookup( AsyncRecordStore store, ResponsePolicy policy,
+        DnsMessage request )
+    {
+        List<QuestionRecord> questions = request.getQuestionRecords();
+
+        if ( questions.size() == 1 )
+        {
+            Set<ResourceRecord> answer = policy == null ? null : policy.apply( questions.get( 0 ) );
+
+            if ( answer != null )
+            {
+                return CompletableFuture.completedFuture( Collections.singletonList( answer ) );
+            }
+
+            return store.getRecordsAsync( questions.get( 0 ) ).thenApply(
+                new Function<Set<ResourceRecord>, List<Set<ResourceRecord>>>()
+                {
+                    public List<Set<ResourceRecord>> apply( Set<ResourceRecord> records )
+                    {
+                        return Collections.singletonList( records );
+                    }
+                } );
+        }
+
+        CompletionStage<List<Set<ResourceRecord>>> answers = CompletableFuture
+            .<List<Set<ResourceRecord>>> completedFuture( new ArrayList<Set<ResourceRecord>>( questions.size() ) );
+
+        for ( QuestionRecord question : questions )
+        {
+            Set<ResourceRecord> answer = policy == null ? null : policy.apply( question );
+            CompletionStage<Set<ResourceRecord>> records = answer != null ? CompletableFuture.completedFuture( answer )
+                : store.getRecordsAsync( question );
+
+            answers = answers.thenCombine( records,
+                new BiFunction<List<Set<ResourceRecord>>, Set<ResourceRecord>, List<Set<ResourceRecord>>>()
+                {
+                    public List<Set<ResourceRecord>> apply( List<Set<ResourceRecord>> list,
+                        Set<ResourceRecord> records )
+                    {
+                        list.add( records );
+
+                        return list;
+                    }
+                } );
+        }
+
+        return answers;
+    }
+
+
+    /**
+     * Writes the reply to a query into a buffer, from answers already looked
+     * up.
+     *
+     * @param request
+     * @param answers the records answering each question, in order
+     * @param out the buffer to write the reply into, from its current position
+     * @param datagram true if the reply is sent over UDP, and so must fit the
+     * UDP payload size of the client
+     * @throws Exception if a question cannot be answered, in which case the
+     * content of the buffer is undefined
+     */
+    public static void write( DnsMessage request, List<Set<ResourceRecord>> answers, IoBuffer out, boolean datagram )
+        throws Exception
+    {
+        if ( LOG.isDebugEnabled() )
+        {
+            monitorRequest( request );
+        }
+
+        List<QuestionRecord> questions = request.getQuestionRecords();
+
+        ResourceRecord edns = getEdns( request );
+
+        DnsMessageWriter writer = new DnsMessageWriter( out );
+        writer.setMaxLength( getMaxLength( edns, datagram ) );
+        writer.putHeader( request.getTransactionId(), MessageType.RESPONSE, OpCode.QUERY, false, false, request
+            .isRecursionDesired(), false, ResponseCode.NO_ERROR );
+
+        if ( request.getQuestionBytes() != null )
+        {
+            writer.putQuestions( request.getQuestionBytes(), questions );
+        }
+        else
+        {
+            for ( QuestionRecord question : questions )
+            {
+                writer.putQuestion( question );
+            }
+        }
+
+        List<RecordSet> authority = new ArrayList<RecordSet>();
+        List<RecordSet> additional = new ArrayList<RecordSet>();
+        RecordSet encoded = null;
+        boolean authoritative = !questions.isEmpty();
+
+        for ( Set<ResourceRecord> records : answers )
+        {
+            if ( isNameError( records ) )
+            {
+                if ( questions.size() > 1 )
+                {
+                    throw new DnsException( ResponseCode.NAME_ERROR );
+                }
+
+                // the commonest miss, random names, is answered without going through an exception
+                LOG.debug( "The domain name referenced in the query does not exist." );
+
+                writer.setResponseCode( ResponseCode.NAME_ERROR );
+
+                if ( !( records instanceof RecordSet ) )
+                {
+                    // the store cannot tell whether it is authoritative for the name
+                    authoritative = false;
+                    continue;
+                }
+            }
+
+            writer.putAnswers( records );
+
+            if ( records instanceof RecordSet )
+            {
+                RecordSet recordSet = ( RecordSet ) records;
+
+                if ( recordSet.getEncodedAuthority() != null )
+                {
+                    encoded = recordSet;
+                }
+                else
+                {
+                    authority.addAll( recordSet.getAuthorityRecordSets() );
+                }
+
+                additional.addAll( recordSet.getAdditionalRecordSets() );
+                authoritative &= recordSet.isAuthoritative();
+            }
+            else
+            {
+                authoritative = false;
+            }
+        }
+
+        writer.setAuthoritativeAnswer( authoritative );
+
+        if ( encoded != null )
+        {
+            putAuthorities( writer, encoded );
+        }
+
+        for ( RecordSet recordSet : authority )
+        {
+            writer.putAuthorities( recordSet );
+        }
+
+        for ( RecordSet recordSet : additional )
+        {
+            writer.putAdditionals( recordSet );
+        }
+
+        if ( edns != null )
+        {
+            writer.putEdns( MAX_UDP_PAYLOAD_SIZE );
+        }
+
+        writer.finish();
+    }
+
+
+    /**
+     * Copies the authority section an answer holds in wire form, as the
+     * name errors of a zone do, instead of encoding its records.
+     */
+    private static void putAuthorities( DnsMessageWriter writer, RecordSet recordSet )
+    {
+        int count = 0;
+
+        for ( RecordSet authority : recordSet.getAuthorityRecordSets() )
+        {
+            count += authority.size();
+        }
+
+        writer.putAuthorities( recordSet.getEncodedAuthority(), count );
+    }
+
+
+    /**
+     * Returns the EDNS OPT pseudo-record of a request, or null if the client
+     * does not support EDNS.
+     */
+    private static ResourceRecord getEdns( DnsMessage request )
+    {
+        List<ResourceRecord> additional = request.getAdditionalRecords();
+
+        if ( additional != null )
+        {
+            for ( ResourceRecord record : additional )
+            {
+                if ( record.getRecordType() == RecordType.OPT )
+                {
+                    return record;
+                }
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Returns the length the records of a reply must fit in, leaving room for
+     * the OPT record of an EDNS reply.  Over UDP this is 512 bytes, or the
+     * payload size the client advertised, capped at our own.
+     */
+    private static int getMaxLength( ResourceRecord edns, boolean datagram )
+    {
+        int maxLength = DnsMessageWriter.MAX_LENGTH;
+
+        if ( datagram )
+        {
+            maxLength = getUdpPayloadSize( edns );
+        }
+
+        if ( edns != null )
+        {
+            maxLength -= DnsMessageWriter.EDNS_LENGTH;
+        }
+
+        return maxLength;
+    }
+
+
+    /**
+     * Returns the size of the UDP replies a client can receive: 512 bytes, or
+     * the payload size it advertised with EDNS, capped at our own.
+     *
+     * @param request
+     * @return The UDP payload size of the client.
+     */
+    public static int getUdpPayloadSize( DnsMessage request )
+    {
+        return getUdpPayloadSize( getEdns( request ) );
+    }
+
+
+    private static int getUdpPayloadSize( ResourceRecord edns )
+    {
+        if ( edns == null )
+        {
+            return DEFAULT_UDP_PAYLOAD_SIZE;
+        }
+
+        int payloadSize = Integer.parseInt( edns.get( DnsAttribute.UDP_PAYLOAD_SIZE ) );
+
+        return Math.min( Math.max( payloadSize, DEFAULT_UDP_PAYLOAD_SIZE ), MAX_UDP_PAYLOAD_SIZE );
+    }
+
+
     private static void monitorRequest( DnsMessage request ) throws Exception
     {
         try
@@ -92,41 +496,65 @@ public class DomainNameService
 
     private static void getResourceRecords( DnsContext dnsContext, DnsMessage request ) throws Exception
     {
-        RecordStore store = dnsContext.getStore();
+        List<Set<ResourceRecord>> answers = lookup( dnsContext.getStore(), dnsContext.getPolicy(), request );
 
-        List<QuestionRecord> questions = request.getQuestionRecords();
+        Iterator<Set<ResourceRecord>> it = answers.iterator();
 
-        Iterator<QuestionRecord> it = questions.iterator();
+        boolean authoritative = it.hasNext();
 
         while ( it.hasNext() )
         {
-            dnsContext.addResourceRecords( getEntry( store, it.next() ) );
+            Set<ResourceRecord> records = it.next();
+
+            if ( isNameError( records ) )
+            {
+                LOG.debug( "The domain name referenced in the query does not exist." );
+
+                throw new DnsException( ResponseCode.NAME_ERROR );
+            }
+
+            dnsContext.addResourceRecords( records );
+
+            if ( records instanceof RecordSet )
+            {
+                RecordSet answer = ( RecordSet ) records;
+
+                for ( RecordSet recordSet : answer.getAuthorityRecordSets() )
+                {
+                    dnsContext.addAuthorityRecords( recordSet );
+                }
+
+                for ( RecordSet recordSet : answer.getAdditionalRecordSets() )
+                {
+                    dnsContext.addAdditionalRecords( recordSet );
+                }
+
+                authoritative &= answer.isAuthoritative();
+            }
+            else
+            {
+                authoritative = false;
+            }
         }
+
+        dnsContext.setAuthoritativeAnswer( authoritative );
     }
     
     
     /**
-     * Returns a set of {@link ResourceRecord}s from a {@link RecordStore}, given a DNS {@link QuestionRecord}.
-     *
-     * @param store
-     * @param question
-     * @return The set of {@link ResourceRecord}s.
-     * @throws DNSException
+     * Returns whether the records a store returned for a question make a
+     * name error, that is none at all, and neither a referral nor a NODATA
+     * answer for a name which exists.
      */
-    private static Set<ResourceRecord> getEntry( RecordStore store, QuestionRecord question ) throws DnsException
+    private static boolean isNameError( Set<ResourceRecord> records )
     {
-        Set<ResourceRecord> records = null;
-
-        records = store.getRecords( question );
-
-        if ( records == null || records.isEmpty() )
+        if ( records instanceof RecordSet
+            && ( ( ( RecordSet ) records ).isReferral() || ( ( RecordSet ) records ).isNoData() ) )
         {
-            LOG.debug( "The domain name referenced in the query does not exist." );
-
-            throw new DnsException( ResponseCode.NAME_ERROR );
+            return false;
         }
 
-        return records;
+        return records == null || records.isEmpty();
     }
     
     
@@ -161,7 +589,7 @@ public class DomainNameService
         modifier.setTransactionId( request.getTransactionId() );
         modifier.setMessageType( MessageType.RESPONSE );
         modifier.setOpCode( OpCode.QUERY );
-        modifier.setAuthoritativeAnswer( false );
+        modifier.setAuthoritativeAnswer( dnsContext.isAuthoritativeAnswer() );
         modifier.setTruncated( false );
         modifier.setRecursionDesired( request.isRecursionDesired() );
         modifier.setRecursionAvailable( false );
@@ -171,8 +599,8 @@ public class DomainNameService
         modifier.setQuestionRecords( request.getQuestionRecords() );
 
         modifier.setAnswerRecords( records );
-        modifier.setAuthorityRecords( new ArrayList<ResourceRecord>() );
-        modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAuthorityRecords( dnsContext.getAuthorityRecords() );
+        modifier.setAdditionalRecords( dnsContext.getAdditionalRecords() );
 
         dnsContext.setReply( modifier.getDnsMessage() );
     }
@@ -0,0 +1,494 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.DnsMessageModifier;
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResourceRecordModifier;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.directory.server.dns.store.RecordStore;
+import org.apache.directory.server.dns.store.zone.Zone;
+import org.apache.directory.server.dns.store.zone.ZoneChange;
+import org.apache.directory.server.dns.store.zone.ZoneJournal;
+import org.apache.directory.server.dns.store.zone.ZoneModifier;
+import org.apache.directory.server.dns.store.zone.ZoneRecordStore;
+import org.apache.directory.server.dns.store.zone.ZoneRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Applies dynamic updates (RFC 2136) to the zones of a {@link ZoneRecordStore}.<p>
+ * 
+ * An update is checked and applied against the current version of its zone,
+ * and the changed zone is derived from it with a {@link ZoneModifier}, which
+ * shares all the unchanged names with it.  The changed zone then replaces the
+ * zone in the {@link ZoneRegistry} with a compare-and-set, so queries never
+ * wait on an update and each sees either the whole update or none of it.  If
+ * another update got in first, the prerequisites are checked again against
+ * its result and the update is derived again.<p>
+ * 
+ * If the store has a {@link ZoneJournal}, each change is appended to it as
+ * it is published, and the reply only goes out once the change is on disk.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class DynamicUpdateService
+{
+    /** the log for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( DynamicUpdateService.class );
+
+
+    /**
+     * Applies an update request, and sets the reply to it in the context.
+     *
+     * @param dnsContext
+     * @param request
+     * @throws Exception
+     */
+    public static void execute( DnsContext dnsContext, DnsMessage request ) throws Exception
+    {
+        ResponseCode responseCode = ResponseCode.NO_ERROR;
+
+        try
+        {
+            update( dnsContext.getStore(), request );
+        }
+        catch ( DnsException de )
+        {
+            LOG.debug( "The update was not applied: {}", de.getMessage() );
+
+            responseCode = ResponseCode.convert( ( byte ) de.getResponseCode() );
+        }
+        catch ( IOException ioe )
+        {
+            LOG.error( "The update could not be applied", ioe );
+
+            responseCode = ResponseCode.SERVER_FAILURE;
+        }
+
+        DnsMessageModifier modifier = new DnsMessageModifier();
+
+        modifier.setTransactionId( request.getTransactionId() );
+        modifier.setMessageType( MessageType.RESPONSE );
+        modifier.setOpCode( OpCode.UPDATE );
+        modifier.setAuthoritativeAnswer( false );
+        modifier.setTruncated( false );
+        modifier.setRecursionDesired( false );
+        modifier.setRecursionAvailable( false );
+        modifier.setReserved( false );
+        modifier.setAcceptNonAuthenticatedData( false );
+        modifier.setResponseCode( responseCode );
+        modifier.setQuestionRecords( request.getQuestionRecords() );
+        modifier.setAnswerRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAuthorityRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+
+        dnsContext.setReply( modifier.getDnsMessage() );
+    }
+
+
+    private static void update( RecordStore store, DnsMessage request ) throws DnsException, IOException
+    {
+        if ( !( store instanceof ZoneRecordStore ) )
+        {
+            throw new DnsException( ResponseCode.NOT_IMPLEMENTED );
+        }
+
+        List<QuestionRecord> zoneSection = request.getQuestionRecords();
+
+        if ( zoneSection.size() != 1 || zoneSection.get( 0 ).getRecordType() != RecordType.SOA )
+        {
+            throw new DnsException( ResponseCode.FORMAT_ERROR );
+        }
+
+        String origin = Zone.toKey( zoneSection.get( 0 ).getDomainName() );
+        ZoneRegistry registry = ( ( ZoneRecordStore ) store ).getRegistry();
+
+        while ( true )
+        {
+            Zone zone = registry.getZone( origin );
+
+            if ( zone == null || !zone.getOrigin().equals( origin ) )
+            {
+                throw new DnsException( ResponseCode.NOTAUTH );
+            }
+
+            checkPrerequisites( zone, request.getAnswerRecords() );
+            checkUpdates( zone, request.getAuthorityRecords() );
+
+            ZoneModifier modifier = new ZoneModifier( zone );
+
+            if ( !applyUpdates( zone, modifier, request.getAuthorityRecords() ) )
+            {
+                return;
+            }
+
+            Zone updated = modifier.getZone();
+            ZoneJournal journal = ( ( ZoneRecordStore ) store ).getJournal();
+
+            if ( journal == null )
+            {
+                if ( registry.replace( zone, updated ) )
+                {
+                    LOG.debug( "Updated zone {}", origin );
+
+                    return;
+                }
+
+                continue;
+            }
+
+            ZoneChange change = modifier.getChange();
+            long sequence;
+
+            // the entries of a zone are journaled in the order its versions are published
+            synchronized ( journal.getLock( origin ) )
+            {
+                if ( !registry.replace( zone, updated ) )
+                {
+                    continue;
+                }
+
+                boolean appended = false;
+
+                try
+                {
+                    sequence = journal.append( change );
+                    appended = true;
+                }
+                finally
+                {
+                    // a change which is not journaled is taken back, so the client can retry it
+                    if ( !appended && !registry.replace( updated, zone ) )
+                    {
+                        LOG.warn( "Zone {} was replaced before its failed update could be taken back", origin );
+                    }
+                }
+            }
+
+            // the reply waits until the entry is on disk, which one flush does for concurrent updates
+            journal.sync( sequence );
+            LOG.debug( "Updated zone {}, journal entry {}", origin, sequence );
+
+            return;
+        }
+    }
+
+
+    /**
+     * Checks the prerequisites of an update against a zone (RFC 2136, section
+     * 3.2).
+     */
+    private static void checkPrerequisites( Zone zone, List<ResourceRecord> prerequisites ) throws DnsException,
+        IOException
+    {
+        Map<String, List<ResourceRecord>> recordSets = new HashMap<String, List<ResourceRecord>>();
+
+        for ( ResourceRecord record : prerequisites )
+        {
+            String name = Zone.toKey( record.getDomainName() );
+            RecordType type = record.getRecordType();
+
+            if ( !zone.contains( name ) )
+            {
+                throw new DnsException( ResponseCode.NOTZONE );
+            }
+
+            Map<Integer, RecordSet> types = zone.getRecordSets( name );
+            int typeCode = RecordSet.getTypeCode( record );
+
+            if ( record.getRecordClass() == RecordClass.ANY )
+            {
+                if ( type == RecordType.ANY ? types.isEmpty() : !types.containsKey( typeCode ) )
+                {
+                    throw new DnsException( type == RecordType.ANY ? ResponseCode.NAME_ERROR : ResponseCode.NXRRSET );
+                }
+            }
+            else if ( record.getRecordClass() == RecordClass.NONE )
+            {
+                if ( type == RecordType.ANY ? !types.isEmpty() : types.containsKey( typeCode ) )
+                {
+                    throw new DnsException( type == RecordType.ANY ? ResponseCode.YXDOMAIN : ResponseCode.YXRRSET );
+                }
+            }
+            else if ( record.getRecordClass() == RecordClass.IN )
+            {
+                String key = typeCode + " " + name;
+                List<ResourceRecord> recordSet = recordSets.get( key );
+
+                if ( recordSet == null )
+                {
+                    recordSet = new ArrayList<ResourceRecord>();
+                    recordSets.put( key, recordSet );
+                }
+
+                recordSet.add( record );
+            }
+            else
+            {
+                throw new DnsException( ResponseCode.FORMAT_ERROR );
+            }
+        }
+
+        // the RRsets which must exist with exactly the given data
+        for ( List<ResourceRecord> expected : recordSets.values() )
+        {
+            ResourceRecord first = expected.get( 0 );
+            RecordSet actual = zone.getRecordSet( Zone.toKey( first.getDomainName() ), RecordSet.getTypeCode( first ) );
+
+            if ( actual == null || !isSameData( expected, actual ) || !isSameData( actual, expected ) )
+            {
+                throw new DnsException( ResponseCode.NXRRSET );
+            }
+        }
+    }
+
+
+    /**
+     * Checks the update section before any of it is applied (RFC 2136,
+     * section 3.4.1).
+     */
+    private static void checkUpdates( Zone zone, List<ResourceRecord> updates ) throws DnsException
+    {
+        for ( ResourceRecord record : updates )
+        {
+            if ( !zone.contains( Zone.toKey( record.getDomainName() ) ) )
+            {
+                throw new DnsException( ResponseCode.NOTZONE );
+            }
+
+            RecordClass recordClass = record.getRecordClass();
+            RecordType type = record.getRecordType();
+
+            if ( recordClass == RecordClass.IN ? type == RecordType.ANY : recordClass != RecordClass.ANY
+                && recordClass != RecordClass.NONE )
+            {
+                throw new DnsException( ResponseCode.FORMAT_ERROR );
+            }
+
+            if ( recordClass == RecordClass.NONE && type == RecordType.ANY )
+            {
+                throw new DnsException( ResponseCode.FORMAT_ERROR );
+            }
+        }
+    }
+
+
+    /**
+     * Applies the update section to a modifier (RFC 2136, section 3.4.2).
+     * The additions the RFC has ignored are skipped: an SOA whose serial
+     * number is not newer than that of the zone, a CNAME for a name with
+     * other data, and other data for a name with a CNAME.
+     *
+     * @return true if the zone was changed.
+     */
+    private static boolean applyUpdates( Zone zone, ZoneModifier modifier, List<ResourceRecord> updates )
+        throws IOException
+    {
+        String origin = zone.getOrigin();
+        boolean changed = false;
+        boolean serialSet = false;
+
+        for ( ResourceRecord record : updates )
+        {
+            String name = Zone.toKey( record.getDomainName() );
+            RecordType type = record.getRecordType();
+            boolean apex = name.equals( origin );
+
+            if ( record.getRecordClass() == RecordClass.IN )
+            {
+                if ( type == RecordType.SOA )
+                {
+                    List<ResourceRecord> soa = modifier.getRecordSet( name, RecordType.SOA );
+
+                    // an SOA which would not move the serial number forward is ignored
+                    if ( apex && !soa.isEmpty() && ZoneTransferService.isNewer( getSerial( record ), getSerial( soa
+                        .get( 0 ) ) ) )
+                    {
+                        modifier.removeRecordSet( name, RecordType.SOA );
+                        modifier.add( record );
+                        changed = true;
+                        serialSet = true;
+                    }
+                }
+                else if ( type == RecordType.CNAME )
+                {
+                    Set<Integer> types = modifier.getTypeCodes( name );
+                    types.remove( RecordSet.getTypeCode( RecordType.CNAME ) );
+
+                    // a CNAME is ignored where the name has other data
+                    if ( types.isEmpty() )
+                    {
+                        modifier.removeRecordSet( name, RecordType.CNAME );
+                        modifier.add( record );
+                        changed = true;
+                    }
+                }
+                else if ( !modifier.getRecordSet( name, RecordType.CNAME ).isEmpty() )
+                {
+                    // other data is ignored where the name has a CNAME
+                    continue;
+                }
+                else if ( !modifier.contains( record ) )
+                {
+                    modifier.add( record );
+                    changed = true;
+                }
+            }
+            else if ( record.getRecordClass() == RecordClass.ANY )
+            {
+                Set<Integer> types = modifier.getTypeCodes( name );
+
+                if ( type != RecordType.ANY )
+                {
+                    types.retainAll( Collections.singleton( RecordSet.getTypeCode( record ) ) );
+                }
+
+                if ( apex )
+                {
+                    // the SOA and NS RRsets of the apex are never deleted
+                    types.remove( RecordSet.getTypeCode( RecordType.SOA ) );
+                    types.remove( RecordSet.getTypeCode( RecordType.NS ) );
+                }
+
+                for ( int typeCode : types )
+                {
+                    modifier.removeRecordSet( name, typeCode );
+                    changed = true;
+                }
+            }
+            else
+            {
+                if ( apex && type == RecordType.SOA )
+                {
+                    continue;
+                }
+
+                if ( apex && type == RecordType.NS && modifier.getRecordSet( name, RecordType.NS ).size() <= 1 )
+                {
+                    // the last NS record of the apex is never deleted
+                    continue;
+                }
+
+                changed |= modifier.remove( record );
+            }
+        }
+
+        if ( changed && !serialSet )
+        {
+            incrementSerial( modifier, origin );
+        }
+
+        return changed;
+    }
+
+
+    private static long getSerial( ResourceRecord soa )
+    {
+        return Long.parseLong( soa.get( DnsAttribute.SOA_SERIAL ) );
+    }
+
+
+    /**
+     * Increments the serial number of the SOA record at the apex, as RFC 2136
+     * section 3.6 asks for after a change.
+     */
+    private static void incrementSerial( ZoneModifier modifier, String origin )
+    {
+        List<ResourceRecord> soa = modifier.getRecordSet( origin, RecordType.SOA );
+
+        if ( soa.isEmpty() )
+        {
+            return;
+        }
+
+        ResourceRecord record = soa.get( 0 );
+        long serial = ( getSerial( record ) + 1 ) & 0xFFFFFFFFL;
+
+        ResourceRecordModifier soaModifier = new ResourceRecordModifier();
+        soaModifier.setDnsName( record.getDomainName() );
+        soaModifier.setDnsType( RecordType.SOA );
+        soaModifier.setDnsClass( record.getRecordClass() );
+        soaModifier.setDnsTtl( record.getTimeToLive() );
+
+        for ( String id : new String[]
+            { DnsAttribute.SOA_M_NAME, DnsAttribute.SOA_R_NAME, DnsAttribute.SOA_REFRESH, DnsAttribute.SOA_RETRY,
+                DnsAttribute.SOA_EXPIRE, DnsAttribute.SOA_MINIMUM } )
+        {
+            soaModifier.put( id, record.get( id ) );
+        }
+
+        soaModifier.put( DnsAttribute.SOA_SERIAL, Long.toString( serial ) );
+
+        modifier.removeRecordSet( origin, RecordType.SOA );
+        modifier.add( soaModifier.getEntry() );
+    }
+
+
+    /**
+     * Returns whether each record of a collection has the same RDATA as one
+     * of another.
+     */
+    private static boolean isSameData( Iterable<ResourceRecord> records, Iterable<ResourceRecord> others )
+        throws IOException
+    {
+        for ( ResourceRecord record : records )
+        {
+            boolean found = false;
+
+            for ( ResourceRecord other : others )
+            {
+                if ( ZoneModifier.isSameData( record, other ) )
+                {
+                    found = true;
+                    break;
+                }
+            }
+
+            if ( !found )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
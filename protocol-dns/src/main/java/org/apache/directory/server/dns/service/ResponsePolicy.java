@@ -0,0 +1,149 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResourceRecordImpl;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.directory.server.dns.util.NameSet;
+
+
+/**
+ * A response policy, as of a response policy zone: the names of a blocklist,
+ * which queries are answered for from the policy rather than the store.
+ * The names of a policy without addresses do not exist; those of a policy
+ * with the addresses of a walled garden have those addresses, and no
+ * records of other types, which is answered with NODATA: no error and no
+ * records.<p>
+ * 
+ * A policy is immutable: a new list of names is put in place by making a
+ * new policy to replace the old one.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ResponsePolicy
+{
+    /** The answer to the questions about a name which does not exist */
+    private static final RecordSet NAME_ERROR = new RecordSet( Collections.<ResourceRecord> emptyList(), Collections
+        .<RecordSet> emptyList(), Collections.<RecordSet> emptyList(), false );
+
+    /** The answer to the questions about a name of the walled garden for a type it has no records of */
+    private static final RecordSet NO_DATA = RecordSet.getNoData( Collections.<RecordSet> emptyList(), false );
+
+    private final NameSet names;
+
+    /** The records of the walled garden, with no owner name, which each answer copies */
+    private final List<ResourceRecord> garden = new ArrayList<ResourceRecord>();
+
+
+    /**
+     * Creates a new instance of ResponsePolicy answering that the names do
+     * not exist.
+     *
+     * @param names the names
+     */
+    public ResponsePolicy( NameSet names )
+    {
+        this.names = names;
+    }
+
+
+    /**
+     * Creates a new instance of ResponsePolicy answering the queries for
+     * the addresses of the names with those of a walled garden.
+     *
+     * @param names the names
+     * @param timeToLive the TTL of the addresses, in seconds
+     * @param addresses the addresses of the walled garden, IPv4 or IPv6
+     */
+    public ResponsePolicy( NameSet names, int timeToLive, InetAddress... addresses )
+    {
+        this.names = names;
+
+        for ( InetAddress address : addresses )
+        {
+            RecordType type = address instanceof Inet4Address ? RecordType.A : RecordType.AAAA;
+            Map<String, Object> attributes = new HashMap<String, Object>();
+            attributes.put( DnsAttribute.IP_ADDRESS, address.getHostAddress() );
+
+            garden.add( new ResourceRecordImpl( "", type, RecordClass.IN, timeToLive, attributes ) );
+        }
+    }
+
+
+    /**
+     * Answers a question from the policy, if the policy is about its name.
+     *
+     * @param question the question
+     * @return The answer, or null if the policy is not about the name, and
+     * the question is answered from the store.
+     */
+    public RecordSet apply( QuestionRecord question )
+    {
+        if ( !names.matches( question.getDomainName() ) )
+        {
+            return null;
+        }
+
+        RecordType type = question.getRecordType();
+        List<ResourceRecord> records = new ArrayList<ResourceRecord>( garden.size() );
+
+        for ( ResourceRecord record : garden )
+        {
+            if ( type == RecordType.ANY || question.getTypeCode() == RecordSet.getTypeCode( record ) )
+            {
+                records.add( new ResourceRecordImpl( question.getDomainName(), record ) );
+            }
+        }
+
+        if ( records.isEmpty() )
+        {
+            // the name exists in the walled garden, only not with this type
+            return garden.isEmpty() ? NAME_ERROR : NO_DATA;
+        }
+
+        return new RecordSet( records, Collections.<RecordSet> emptyList(), Collections.<RecordSet> emptyList(),
+            false );
+    }
+
+
+    /**
+     * @return Returns the names of the policy.
+     */
+    public NameSet getNames()
+    {
+        return names;
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.DnsMessageModifier;
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.directory.server.dns.store.zone.Zone;
+import org.apache.directory.server.dns.store.zone.ZoneChange;
+import org.apache.directory.server.dns.store.zone.ZoneModifier;
+import org.apache.directory.server.dns.store.zone.ZoneRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps secondary zones up to date with their primary servers.  A zone is
+ * refreshed when its SOA refresh interval runs out, or when the primary
+ * sends a NOTIFY message for it (RFC 1996).  A refresh asks the primary for
+ * its SOA record and, if the serial number moved, pulls the changes with
+ * IXFR, or the whole zone with AXFR when the primary cannot tell the
+ * changes.  The changes are applied to a new version of the zone, which then
+ * replaces the old one in the {@link ZoneRegistry} at once.  A zone whose
+ * primary server could not be reached for the SOA expire interval is taken
+ * out of the registry, so that the data it no longer vouches for is not
+ * served, until a transfer brings it back.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class SecondaryService
+{
+    /** the log for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( SecondaryService.class );
+
+    /** The time between two refreshes of a zone without an SOA record, in seconds */
+    private static final long DEFAULT_REFRESH = 3600;
+
+    /** The time between two attempts of a zone without an SOA record, in seconds */
+    private static final long DEFAULT_RETRY = 600;
+
+    /** The time a zone without an SOA record is served without being refreshed, in seconds */
+    private static final long DEFAULT_EXPIRE = 604800;
+
+    private final ZoneRegistry registry;
+
+    /** The primary server of each secondary zone, by origin */
+    private final ConcurrentMap<String, ZoneTransferClient> primaries =
+        new ConcurrentHashMap<String, ZoneTransferClient>();
+
+    /** The next refresh of each zone */
+    private final Map<String, ScheduledFuture<?>> refreshes = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+
+    /** The time each zone was last known to be up to date with its primary server, in milliseconds */
+    private final Map<String, Long> lastRefreshes = new ConcurrentHashMap<String, Long>();
+
+    private ScheduledExecutorService scheduler;
+
+
+    /**
+     * Creates a new instance of SecondaryService, putting the zones in a
+     * registry.
+     *
+     * @param registry
+     */
+    public SecondaryService( ZoneRegistry registry )
+    {
+        this.registry = registry;
+    }
+
+
+    /**
+     * Adds a secondary zone.
+     *
+     * @param origin the name of the zone apex
+     * @param primary the address of the primary server
+     */
+    public void addZone( String origin, InetSocketAddress primary )
+    {
+        primaries.put( Zone.toKey( origin ), new ZoneTransferClient( primary ) );
+    }
+
+
+    /**
+     * @return Returns the canonical names of the secondary zones.
+     */
+    public Set<String> getZones()
+    {
+        return Collections.unmodifiableSet( primaries.keySet() );
+    }
+
+
+    /**
+     * Starts refreshing the zones in the background, beginning right away.
+     */
+    public synchronized void start()
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+        {
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "dns-secondary" );
+                thread.setDaemon( true );
+
+                return thread;
+            }
+        } );
+
+        for ( String origin : primaries.keySet() )
+        {
+            // a zone loaded before the service started is as old as the start
+            if ( !lastRefreshes.containsKey( origin ) )
+            {
+                lastRefreshes.put( origin, System.currentTimeMillis() );
+            }
+
+            schedule( origin, 0 );
+        }
+    }
+
+
+    /**
+     * Stops refreshing the zones.
+     */
+    public synchronized void stop()
+    {
+        if ( scheduler != null )
+        {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+
+        refreshes.clear();
+    }
+
+
+    /**
+     * Answers a NOTIFY message, and refreshes the zone if it came from its
+     * primary server.
+     *
+     * @param dnsContext
+     * @param request
+     * @param source the address the message came from
+     */
+    public void execute( DnsContext dnsContext, DnsMessage request, InetAddress source )
+    {
+        ResponseCode responseCode = ResponseCode.NOTAUTH;
+        List<QuestionRecord> questions = request.getQuestionRecords();
+
+        if ( questions.size() == 1 && questions.get( 0 ).getRecordType() == RecordType.SOA )
+        {
+            String origin = Zone.toKey( questions.get( 0 ).getDomainName() );
+            ZoneTransferClient client = primaries.get( origin );
+
+            if ( client != null && client.getPrimary().getAddress().equals( source ) )
+            {
+                LOG.debug( "NOTIFY for {} from {}", origin, source );
+
+                schedule( origin, 0 );
+                responseCode = ResponseCode.NO_ERROR;
+            }
+            else
+            {
+                LOG.warn( "Ignoring a NOTIFY for {} from {}", origin, source );
+            }
+        }
+
+        DnsMessageModifier modifier = new DnsMessageModifier();
+
+        modifier.setTransactionId( request.getTransactionId() );
+        modifier.setMessageType( MessageType.RESPONSE );
+        modifier.setOpCode( OpCode.NOTIFY );
+        modifier.setAuthoritativeAnswer( responseCode == ResponseCode.NO_ERROR );
+        modifier.setTruncated( false );
+        modifier.setRecursionDesired( false );
+        modifier.setRecursionAvailable( false );
+        modifier.setReserved( false );
+        modifier.setAcceptNonAuthenticatedData( false );
+        modifier.setResponseCode( responseCode );
+        modifier.setQuestionRecords( questions );
+        modifier.setAnswerRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAuthorityRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+
+        dnsContext.setReply( modifier.getDnsMessage() );
+    }
+
+
+    /**
+     * Brings a zone up to date with its primary server.
+     *
+     * @param origin the canonical name of the zone apex
+     * @return true if the zone changed.
+     * @throws IOException if the primary cannot be reached or the transfer fails
+     */
+    public boolean refresh( String origin ) throws IOException
+    {
+        ZoneTransferClient client = primaries.get( origin );
+
+        if ( client == null )
+        {
+            throw new IllegalArgumentException( origin + " is not a secondary zone" );
+        }
+
+        Zone zone = registry.getZone( origin );
+        ResourceRecord soa = null;
+
+        if ( zone != null && zone.getOrigin().equals( origin ) )
+        {
+            RecordSet recordSet = zone.getRecordSet( origin, RecordType.SOA );
+            soa = recordSet == null || recordSet.isEmpty() ? null : recordSet.iterator().next();
+        }
+        else
+        {
+            zone = null;
+        }
+
+        if ( soa != null )
+        {
+            long serial = Long.parseLong( client.getSoa( origin ).get( DnsAttribute.SOA_SERIAL ) );
+
+            if ( !ZoneTransferService.isNewer( serial, zone.getSerial() ) )
+            {
+                lastRefreshes.put( origin, System.currentTimeMillis() );
+
+                return false;
+            }
+        }
+
+        List<ResourceRecord> records = client.transfer( origin, soa );
+
+        if ( records.size() < 2 )
+        {
+            return false;
+        }
+
+        ZoneModifier modifier;
+
+        if ( zone != null && ZoneTransferClient.isIncremental( records ) )
+        {
+            modifier = new ZoneModifier( zone );
+
+            for ( ZoneChange change : ZoneTransferClient.getChanges( origin, records ) )
+            {
+                modifier.apply( change );
+            }
+        }
+        else
+        {
+            // the closing SOA record is the same as the opening one
+            modifier = new ZoneModifier();
+            modifier.setOrigin( origin );
+            modifier.addAll( records.subList( 0, records.size() - 1 ) );
+        }
+
+        Zone updated = modifier.getZone();
+
+        // a zone loaded or changed meanwhile is not overwritten blindly, the transfer is tried again later
+        if ( zone == null ? registry.putIfAbsent( updated ) != null : !registry.replace( zone, updated ) )
+        {
+            throw new IOException( "The zone changed during its transfer" );
+        }
+
+        lastRefreshes.put( origin, System.currentTimeMillis() );
+
+        LOG.info( "Transferred {} from {}, serial {}", new Object[]
+            { origin, client.getPrimary(), updated.getSerial() } );
+
+        return true;
+    }
+
+
+    /**
+     * Takes a zone out of the registry if it was not refreshed within the
+     * expire interval of its SOA record (RFC 1035, section 3.3.13).  Its
+     * next successful refresh transfers it whole again.
+     *
+     * @param origin the canonical name of the zone apex
+     * @return true if the zone expired.
+     */
+    public boolean expire( String origin )
+    {
+        return expire( origin, System.currentTimeMillis() );
+    }
+
+
+    /**
+     * Takes a zone out of the registry if it had expired at the given time.
+     */
+    boolean expire( String origin, long now )
+    {
+        Long lastRefresh = lastRefreshes.get( origin );
+        Zone zone = registry.getZone( origin );
+
+        if ( lastRefresh == null || zone == null || !zone.getOrigin().equals( origin ) )
+        {
+            return false;
+        }
+
+        long expire = getTimer( origin, DnsAttribute.SOA_EXPIRE, DEFAULT_EXPIRE );
+
+        if ( now - lastRefresh <= TimeUnit.SECONDS.toMillis( expire ) )
+        {
+            return false;
+        }
+
+        registry.remove( origin );
+        lastRefreshes.remove( origin );
+        LOG.warn( "{} expired, {} could not be reached for {} seconds", new Object[]
+            { origin, primaries.get( origin ).getPrimary(), expire } );
+
+        return true;
+    }
+
+
+    /**
+     * Schedules the next refresh of a zone, in place of the one scheduled.
+     */
+    private synchronized void schedule( final String origin, long delay )
+    {
+        if ( scheduler == null )
+        {
+            return;
+        }
+
+        ScheduledFuture<?> previous = refreshes.remove( origin );
+
+        if ( previous != null )
+        {
+            previous.cancel( false );
+        }
+
+        refreshes.put( origin, scheduler.schedule( new Runnable()
+        {
+            public void run()
+            {
+                long next;
+
+                try
+                {
+                    refresh( origin );
+                    next = getTimer( origin, DnsAttribute.SOA_REFRESH, DEFAULT_REFRESH );
+                }
+                catch ( IOException ioe )
+                {
+                    LOG.warn( "Could not refresh {}: {}", origin, ioe.getMessage() );
+                    expire( origin );
+                    next = getTimer( origin, DnsAttribute.SOA_RETRY, DEFAULT_RETRY );
+                }
+                catch ( RuntimeException re )
+                {
+                    // such as a malformed reply; the zone must stay scheduled all the same
+                    LOG.error( "Could not refresh " + origin, re );
+                    expire( origin );
+                    next = getTimer( origin, DnsAttribute.SOA_RETRY, DEFAULT_RETRY );
+                }
+
+                schedule( origin, next );
+            }
+        }, delay, TimeUnit.SECONDS ) );
+    }
+
+
+    /**
+     * Returns a timer of the SOA record of a zone, in seconds.
+     */
+    private long getTimer( String origin, String id, long defaultValue )
+    {
+        Zone zone = registry.getZone( origin );
+        RecordSet soa = zone == null ? null : zone.getRecordSet( origin, RecordType.SOA );
+
+        if ( soa == null || soa.isEmpty() )
+        {
+            return defaultValue;
+        }
+
+        try
+        {
+            return Long.parseLong( soa.iterator().next().get( id ) );
+        }
+        catch ( NumberFormatException nfe )
+        {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import org.apache.directory.server.dns.store.CachingRecordStore;
+import org.apache.directory.server.dns.store.RecordStore;
+
+
+/**
+ * A view of split-horizon DNS: the records some clients are answered from,
+ * such as the internal zones for the clients of the internal network.  A
+ * view may keep the answers of a slow store in a cache of its own, so that
+ * no answer of a view is ever given in another.  See {@link ViewSelector}.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class View
+{
+    private final String name;
+
+    private final RecordStore store;
+
+
+    /**
+     * Creates a new instance of View, without a cache.
+     *
+     * @param name the name of the view
+     * @param store the records of the view
+     */
+    public View( String name, RecordStore store )
+    {
+        this( name, store, 0 );
+    }
+
+
+    /**
+     * Creates a new instance of View.
+     *
+     * @param name the name of the view
+     * @param store the records of the view
+     * @param cacheSize the size of the cache of the answers of the view, in
+     * bytes, 0 for none, as for zones in memory
+     */
+    public View( String name, RecordStore store, long cacheSize )
+    {
+        this.name = name;
+        this.store = cacheSize > 0 ? new CachingRecordStore( store, cacheSize ) : store;
+    }
+
+
+    /**
+     * @return Returns the name of the view.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+
+    /**
+     * @return Returns the records of the view, behind its cache if it has one.
+     */
+    public RecordStore getStore()
+    {
+        return store;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        return "View " + name;
+    }
+}
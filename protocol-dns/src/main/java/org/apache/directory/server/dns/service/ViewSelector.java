@@ -0,0 +1,161 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.directory.server.dns.util.AddressTrie;
+
+
+/**
+ * Chooses the {@link View} a client is answered from by its address: the
+ * view of the longest of the networks given which the address is in, or
+ * the default view if it is in none.  The networks are kept in an
+ * {@link AddressTrie}, so choosing takes a few steps whatever their number.
+ * Views are added before the selector is used.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ViewSelector
+{
+    private final View defaultView;
+
+    private final AddressTrie<View> networks = new AddressTrie<View>();
+
+    /** The views, by name */
+    private final Map<String, View> views = new LinkedHashMap<String, View>();
+
+
+    /**
+     * Creates a new instance of ViewSelector.
+     *
+     * @param defaultView the view of the clients in none of the networks
+     */
+    public ViewSelector( View defaultView )
+    {
+        this.defaultView = defaultView;
+        views.put( defaultView.getName(), defaultView );
+    }
+
+
+    /**
+     * Adds a view, for the clients of some networks.
+     *
+     * @param view the view
+     * @param networks the networks, as an IPv4 or IPv6 address and the
+     * length of the prefix, such as 10.0.0.0/8 or fd00::/8, or a single address
+     * @throws IllegalArgumentException if a network is not valid
+     */
+    public void add( View view, String... networks )
+    {
+        for ( String network : networks )
+        {
+            this.networks.put( network, view );
+        }
+
+        views.put( view.getName(), view );
+    }
+
+
+    /**
+     * Returns the view of a client.
+     *
+     * @param address the address of the client
+     * @return The view of the longest network the client is in, or the default view.
+     */
+    public View select( InetAddress address )
+    {
+        View view = networks.get( address );
+
+        return view == null ? defaultView : view;
+    }
+
+
+    /**
+     * Returns the view of a client from the bytes of its address, as kept
+     * with its session, which allocates nothing.
+     *
+     * @param address the address of the client, 4 bytes for IPv4 or 16 for IPv6
+     * @return The view of the longest network the client is in, or the default view.
+     */
+    public View select( byte[] address )
+    {
+        View view = networks.get( address );
+
+        return view == null ? defaultView : view;
+    }
+
+
+    /**
+     * Returns the view of a client, from the remote address of its session.
+     *
+     * @param address the address of the client
+     * @return The view of the longest network the client is in, or the
+     * default view, also if the address is not an IP one.
+     */
+    public View select( SocketAddress address )
+    {
+        if ( address instanceof InetSocketAddress && ( ( InetSocketAddress ) address ).getAddress() != null )
+        {
+            return select( ( ( InetSocketAddress ) address ).getAddress() );
+        }
+
+        return defaultView;
+    }
+
+
+    /**
+     * Returns a view.
+     *
+     * @param name the name of the view
+     * @return The view, or null if there is none of that name.
+     */
+    public View getView( String name )
+    {
+        return views.get( name );
+    }
+
+
+    /**
+     * @return Returns the views, the default one first.
+     */
+    public Collection<View> getViews()
+    {
+        return Collections.unmodifiableCollection( views.values() );
+    }
+
+
+    /**
+     * @return Returns the view of the clients in none of the networks.
+     */
+    public View getDefaultView()
+    {
+        return defaultView;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.server.dns.io.decoder.DnsMessageDecoder;
+import org.apache.directory.server.dns.io.encoder.DnsMessageEncoder;
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.DnsMessageModifier;
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.zone.ZoneChange;
+import org.apache.mina.core.buffer.IoBuffer;
+
+
+/**
+ * Pulls a zone from a primary server over TCP, as a secondary does: the
+ * SOA record first, to learn whether the zone changed, then the changes with
+ * IXFR (RFC 1995), or the whole zone with AXFR (RFC 5936).  The transfer
+ * reply is read message by message until the closing SOA record.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneTransferClient
+{
+    /** The time a read from the primary may take, in milliseconds */
+    private static final int TIMEOUT = 30000;
+
+    private final InetSocketAddress primary;
+
+    private int transactionId;
+
+
+    /**
+     * Creates a new instance of ZoneTransferClient.
+     *
+     * @param primary the address of the primary server
+     */
+    public ZoneTransferClient( InetSocketAddress primary )
+    {
+        this.primary = primary;
+    }
+
+
+    /**
+     * @return Returns the address of the primary server.
+     */
+    public InetSocketAddress getPrimary()
+    {
+        return primary;
+    }
+
+
+    /**
+     * Asks the primary for the SOA record of a zone.
+     *
+     * @param origin
+     * @return The SOA record.
+     * @throws IOException if the primary does not answer with one
+     */
+    public ResourceRecord getSoa( String origin ) throws IOException
+    {
+        List<ResourceRecord> records = request( origin, RecordType.SOA, null );
+
+        if ( records.isEmpty() || records.get( 0 ).getRecordType() != RecordType.SOA )
+        {
+            throw new IOException( "No SOA record for " + origin + " from " + primary );
+        }
+
+        return records.get( 0 );
+    }
+
+
+    /**
+     * Transfers a zone from the primary.  With the SOA record the secondary
+     * has, the transfer is incremental if the primary can serve it so.
+     *
+     * @param origin
+     * @param soa the SOA record of the zone the secondary has, or null
+     * @return The answer records of all the messages of the reply, in the
+     * form of RFC 1995: a single SOA record if the zone did not change, the
+     * difference sequences between two SOA records, or the whole zone.
+     * @throws IOException
+     */
+    public List<ResourceRecord> transfer( String origin, ResourceRecord soa ) throws IOException
+    {
+        return request( origin, soa == null ? RecordType.AXFR : RecordType.IXFR, soa );
+    }
+
+
+    /**
+     * Returns whether the records of a transfer are difference sequences,
+     * rather than the whole zone.
+     *
+     * @param records the answer records of a transfer
+     * @return true if the transfer is incremental.
+     */
+    public static boolean isIncremental( List<ResourceRecord> records )
+    {
+        return records.size() > 2 && records.get( 1 ).getRecordType() == RecordType.SOA;
+    }
+
+
+    /**
+     * Splits the records of an incremental transfer into the changes they
+     * make, each from an old SOA record to a new one.
+     *
+     * @param origin
+     * @param records the answer records of an incremental transfer
+     * @return The changes, in order.
+     */
+    public static List<ZoneChange> getChanges( String origin, List<ResourceRecord> records )
+    {
+        List<ZoneChange> changes = new ArrayList<ZoneChange>();
+        int ii = 1;
+
+        while ( ii < records.size() - 1 )
+        {
+            int added = next( records, ii );
+            int end = next( records, added );
+
+            changes.add( new ZoneChange( origin, 0, records.subList( ii, added ), records.subList( added, end ) ) );
+            ii = end;
+        }
+
+        return changes;
+    }
+
+
+    private List<ResourceRecord> request( String origin, RecordType type, ResourceRecord soa ) throws IOException
+    {
+        Socket socket = new Socket();
+
+        try
+        {
+            socket.connect( primary, TIMEOUT );
+            socket.setSoTimeout( TIMEOUT );
+
+            int id;
+
+            synchronized ( this )
+            {
+                id = transactionId = ( transactionId + 1 ) & 0xFFFF;
+            }
+
+            IoBuffer buffer = IoBuffer.allocate( 512 );
+            buffer.setAutoExpand( true );
+
+            // make space for short length
+            buffer.putShort( ( short ) 0 );
+            new DnsMessageEncoder().encode( buffer, getRequest( id, origin, type, soa ) );
+            buffer.putShort( 0, ( short ) ( buffer.position() - 2 ) );
+            buffer.flip();
+
+            OutputStream out = socket.getOutputStream();
+            out.write( buffer.array(), 0, buffer.limit() );
+            out.flush();
+
+            DataInputStream in = new DataInputStream( socket.getInputStream() );
+            List<ResourceRecord> records = new ArrayList<ResourceRecord>();
+
+            do
+            {
+                byte[] bytes = new byte[in.readUnsignedShort()];
+                in.readFully( bytes );
+
+                DnsMessage reply = new DnsMessageDecoder().decode( IoBuffer.wrap( bytes ) );
+
+                if ( reply.getTransactionId() != id )
+                {
+                    throw new IOException( "Unexpected reply from " + primary );
+                }
+
+                if ( reply.getResponseCode() != ResponseCode.NO_ERROR )
+                {
+                    throw new IOException( primary + " answered " + reply.getResponseCode() + " for " + type + " "
+                        + origin );
+                }
+
+                records.addAll( reply.getAnswerRecords() );
+            }
+            while ( type != RecordType.SOA && !isComplete( records, type ) );
+
+            return records;
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+
+    /**
+     * Returns whether the records of a transfer reach the closing SOA record.
+     */
+    static boolean isComplete( List<ResourceRecord> records, RecordType type )
+    {
+        if ( records.isEmpty() )
+        {
+            return false;
+        }
+
+        String serial = records.get( 0 ).get( DnsAttribute.SOA_SERIAL );
+
+        if ( records.size() == 1 )
+        {
+            // an IXFR reply saying the zone did not change
+            return type == RecordType.IXFR;
+        }
+
+        if ( !isIncremental( records ) )
+        {
+            ResourceRecord last = records.get( records.size() - 1 );
+
+            return last.getRecordType() == RecordType.SOA;
+        }
+
+        // old SOA, removed records, new SOA, added records, and over again up to the closing SOA
+        int ii = 1;
+
+        while ( ii < records.size() )
+        {
+            if ( ii == records.size() - 1 && serial.equals( records.get( ii ).get( DnsAttribute.SOA_SERIAL ) ) )
+            {
+                return true;
+            }
+
+            ii = next( records, next( records, ii ) );
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Returns the index of the SOA record after the one at an index, or the
+     * size of the list if there is none.
+     */
+    private static int next( List<ResourceRecord> records, int index )
+    {
+        for ( int ii = index + 1; ii < records.size(); ii++ )
+        {
+            if ( records.get( ii ).getRecordType() == RecordType.SOA )
+            {
+                return ii;
+            }
+        }
+
+        return records.size();
+    }
+
+
+    private static DnsMessage getRequest( int id, String origin, RecordType type, ResourceRecord soa )
+    {
+        DnsMessageModifier modifier = new DnsMessageModifier();
+        modifier.setTransactionId( id );
+        modifier.setMessageType( MessageType.QUERY );
+        modifier.setOpCode( OpCode.QUERY );
+        modifier.setResponseCode( ResponseCode.NO_ERROR );
+        modifier.setQuestionRecords( Collections.singletonList( new QuestionRecord( origin, type, RecordClass.IN ) ) );
+        modifier.setAnswerRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAuthorityRecords( soa == null ? new ArrayList<ResourceRecord>() : Collections.singletonList( soa ) );
+        modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+
+        return modifier.getDnsMessage();
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.io.encoder.DnsMessageWriter;
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.directory.server.dns.store.RecordStore;
+import org.apache.directory.server.dns.store.zone.Zone;
+import org.apache.directory.server.dns.store.zone.ZoneChange;
+import org.apache.directory.server.dns.store.zone.ZoneJournal;
+import org.apache.directory.server.dns.store.zone.ZoneRecordStore;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Answers zone transfer requests, AXFR (RFC 5936) and IXFR (RFC 1995), from
+ * the zones of a {@link ZoneRecordStore}.<p>
+ * 
+ * The reply is streamed as a series of messages, each filled up to
+ * {@link #MESSAGE_LENGTH} and handed to a {@link MessageSink} as soon as it
+ * is full.  The records are read straight from the zone version the transfer
+ * started with, so the transfer is consistent and no copy of the zone is
+ * made.  An incremental transfer is served from the {@link ZoneJournal}, and
+ * falls back to a full transfer when the journal does not go back to the
+ * serial number of the client.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneTransferService
+{
+    /** the log for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( ZoneTransferService.class );
+
+    /** The length the messages of a transfer are filled up to */
+    public static final int MESSAGE_LENGTH = 16384;
+
+    /**
+     * Receives the messages of a transfer, each in a buffer ready to write to
+     * a TCP session, length prefix included.
+     */
+    public interface MessageSink
+    {
+        /**
+         * Writes a message of the transfer.  It may block, to slow the
+         * transfer down to the pace of the client.
+         *
+         * @param message
+         * @throws IOException if the transfer must stop
+         */
+        void write( IoBuffer message ) throws IOException;
+    }
+
+
+    /**
+     * Returns whether a request asks for a zone transfer.
+     *
+     * @param request
+     * @return true if the question is for AXFR or IXFR.
+     */
+    public static boolean isTransfer( DnsMessage request )
+    {
+        List<QuestionRecord> questions = request.getQuestionRecords();
+
+        if ( request.getOpCode() != OpCode.QUERY || questions == null || questions.size() != 1 )
+        {
+            return false;
+        }
+
+        RecordType type = questions.get( 0 ).getRecordType();
+
+        return type == RecordType.AXFR || type == RecordType.IXFR;
+    }
+
+
+    /**
+     * Streams the reply to a transfer request.  Over UDP, only an IXFR
+     * request is answered, with the SOA record of the zone, which tells the
+     * client to try again over TCP if it is behind.
+     *
+     * @param dnsContext
+     * @param request
+     * @param sink
+     * @param datagram true if the request came over UDP
+     * @throws DnsException if the transfer is refused
+     * @throws IOException if the sink fails
+     */
+    public static void transfer( DnsContext dnsContext, DnsMessage request, MessageSink sink, boolean datagram )
+        throws DnsException, IOException
+    {
+        RecordStore store = dnsContext.getStore();
+
+        if ( !( store instanceof ZoneRecordStore ) )
+        {
+            throw new DnsException( ResponseCode.NOT_IMPLEMENTED );
+        }
+
+        QuestionRecord question = request.getQuestionRecords().get( 0 );
+        String origin = Zone.toKey( question.getDomainName() );
+        Zone zone = ( ( ZoneRecordStore ) store ).getZone( origin );
+
+        if ( zone == null || !zone.getOrigin().equals( origin ) )
+        {
+            throw new DnsException( ResponseCode.NOTAUTH );
+        }
+
+        RecordSet soa = zone.getRecordSet( origin, RecordType.SOA );
+
+        if ( soa == null || soa.isEmpty() )
+        {
+            throw new DnsException( ResponseCode.SERVER_FAILURE );
+        }
+
+        ResourceRecord currentSoa = soa.iterator().next();
+        MessageStream out = new MessageStream( request, sink );
+
+        if ( question.getRecordType() == RecordType.IXFR )
+        {
+            long clientSerial = getClientSerial( request );
+
+            if ( datagram || clientSerial >= 0 && !isNewer( zone.getSerial(), clientSerial ) )
+            {
+                // up to date, or over UDP: the SOA alone
+                out.put( currentSoa );
+                out.flush();
+
+                return;
+            }
+
+            List<ZoneChange> changes = getChanges( ( ( ZoneRecordStore ) store ).getJournal(), origin,
+                clientSerial, zone.getSerial() );
+
+            if ( changes != null )
+            {
+                LOG.debug( "Incremental transfer of {} from {}", origin, clientSerial );
+
+                out.put( currentSoa );
+
+                for ( ZoneChange change : changes )
+                {
+                    putAll( out, change.getRemoved() );
+                    putAll( out, change.getAdded() );
+                }
+
+                out.put( currentSoa );
+                out.flush();
+
+                return;
+            }
+        }
+        else if ( datagram )
+        {
+            throw new DnsException( ResponseCode.REFUSED );
+        }
+
+        LOG.debug( "Full transfer of {}", origin );
+
+        out.put( currentSoa );
+
+        for ( String name : zone.getNames() )
+        {
+            if ( !zone.contains( name ) )
+            {
+                // out of zone glue
+                continue;
+            }
+
+            for ( Map.Entry<Integer, RecordSet> entry : zone.getRecordSets( name ).entrySet() )
+            {
+                if ( entry.getKey() != RecordSet.getTypeCode( RecordType.SOA ) || !name.equals( origin ) )
+                {
+                    putAll( out, entry.getValue() );
+                }
+            }
+        }
+
+        out.put( currentSoa );
+        out.flush();
+    }
+
+
+    /**
+     * Returns the changes leading from a serial number to another, or null if
+     * the journal does not have all of them.
+     */
+    private static List<ZoneChange> getChanges( ZoneJournal journal, String origin, long fromSerial, long toSerial )
+        throws IOException
+    {
+        if ( journal == null || fromSerial < 0 )
+        {
+            return null;
+        }
+
+        List<ZoneChange> journaled = journal.getChanges( origin );
+
+        if ( journaled == null )
+        {
+            return null;
+        }
+
+        List<ZoneChange> changes = new ArrayList<ZoneChange>();
+        long serial = fromSerial;
+
+        for ( ZoneChange change : journaled )
+        {
+            if ( change.getFromSerial() == serial )
+            {
+                changes.add( change );
+                serial = change.getToSerial();
+            }
+            else if ( !changes.isEmpty() )
+            {
+                // a change which did not move the serial number cannot be told apart
+                return null;
+            }
+        }
+
+        return serial == toSerial && !changes.isEmpty() ? changes : null;
+    }
+
+
+    /**
+     * Returns the serial number of the SOA record of the authority section
+     * of an IXFR request, or -1 if there is none.
+     */
+    private static long getClientSerial( DnsMessage request )
+    {
+        if ( request.getAuthorityRecords() != null )
+        {
+            for ( ResourceRecord record : request.getAuthorityRecords() )
+            {
+                if ( record.getRecordType() == RecordType.SOA && record.get( DnsAttribute.SOA_SERIAL ) != null )
+                {
+                    return Long.parseLong( record.get( DnsAttribute.SOA_SERIAL ) );
+                }
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Returns whether a serial number is newer than another, in the serial
+     * number arithmetic of RFC 1982.
+     */
+    public static boolean isNewer( long serial, long other )
+    {
+        long distance = ( serial - other ) & 0xFFFFFFFFL;
+
+        return distance != 0 && distance < 0x80000000L;
+    }
+
+
+    private static void putAll( MessageStream out, Iterable<ResourceRecord> records ) throws IOException
+    {
+        for ( ResourceRecord record : records )
+        {
+            out.put( record );
+        }
+    }
+
+    /**
+     * Spreads records over as many messages as they take.
+     */
+    private static final class MessageStream
+    {
+        private final DnsMessage request;
+        private final MessageSink sink;
+
+        private IoBuffer buffer;
+        private DnsMessageWriter writer;
+        private boolean first = true;
+        private boolean empty;
+
+
+        MessageStream( DnsMessage request, MessageSink sink )
+        {
+            this.request = request;
+            this.sink = sink;
+        }
+
+
+        void put( ResourceRecord record ) throws IOException
+        {
+            if ( writer == null )
+            {
+                start();
+            }
+
+            if ( writer.offerAnswer( record ) )
+            {
+                empty = false;
+                return;
+            }
+
+            if ( !empty )
+            {
+                flush();
+                start();
+
+                if ( writer.offerAnswer( record ) )
+                {
+                    empty = false;
+                    return;
+                }
+            }
+
+            // a record larger than a message of the usual length
+            writer.setMaxLength( DnsMessageWriter.MAX_LENGTH );
+            writer.offerAnswer( record );
+            empty = false;
+        }
+
+
+        void flush() throws IOException
+        {
+            if ( writer != null )
+            {
+                writer.finish();
+                buffer.putShort( 0, ( short ) ( buffer.position() - 2 ) );
+                buffer.flip();
+
+                sink.write( buffer );
+
+                writer = null;
+                first = false;
+            }
+        }
+
+
+        private void start()
+        {
+            buffer = IoBuffer.allocate( MESSAGE_LENGTH + 2 );
+            buffer.setAutoExpand( true );
+
+            // make space for short length
+            buffer.putShort( ( short ) 0 );
+
+            writer = new DnsMessageWriter( buffer );
+            writer.putHeader( request.getTransactionId(), MessageType.RESPONSE, OpCode.QUERY, true, false, request
+                .isRecursionDesired(), false, ResponseCode.NO_ERROR );
+
+            // the question goes in the first message only
+            if ( first )
+            {
+                if ( request.getQuestionBytes() != null )
+                {
+                    writer.putQuestions( request.getQuestionBytes(), request.getQuestionRecords() );
+                }
+                else
+                {
+                    writer.putQuestion( request.getQuestionRecords().get( 0 ) );
+                }
+            }
+
+            writer.setMaxLength( MESSAGE_LENGTH );
+            empty = true;
+        }
+    }
+}
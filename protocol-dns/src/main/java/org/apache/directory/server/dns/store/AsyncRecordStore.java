@@ -0,0 +1,58 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store;
+
+
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+
+
+/**
+ * A {@link RecordStore} which can look records up without blocking the
+ * calling thread, for backends doing I/O.  The DNS protocol handler answers
+ * queries from such a store from the completion of the lookup, so that one
+ * I/O thread can have any number of lookups in flight.  The synchronous
+ * {@link #getRecords(QuestionRecord)} remains for the rarer requests, such
+ * as zone transfers.<p>
+ * 
+ * Stores which never block need not implement this interface: they are
+ * asked synchronously, at no extra cost.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public interface AsyncRecordStore extends RecordStore
+{
+    /**
+     * Looks up the {@link ResourceRecord}s answering a DNS {@link QuestionRecord}.
+     * The stage completes exceptionally with the accurate {@link DnsException}
+     * if something bad happens.
+     * 
+     * @param question
+     * @return The stage of the set of {@link ResourceRecord}s, which may be
+     * completed by any thread.
+     */
+    public CompletionStage<Set<ResourceRecord>> getRecordsAsync( QuestionRecord question );
+}
@@ -0,0 +1,587 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.util.FrequencySketch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A {@link RecordStore} keeping the answers of a slower store for as long as
+ * their records live, by the smallest of their TTLs.  Answers that a name
+ * does not exist are kept for {@link #getNegativeTimeToLive()}, failures are
+ * not kept at all.<p>
+ * 
+ * The cache is split into shards, each with its own lock and its share of
+ * the size, which is bounded by an estimate of the bytes the answers take
+ * rather than by their number.  Within a shard the least recently used
+ * answer is the one to go, but a new answer only takes its place if it was
+ * asked for more often lately, as estimated by a {@link FrequencySketch}:
+ * this TinyLFU admission keeps a burst of one-off names from flushing the
+ * popular ones.  A popular answer asked for in the last fifth of its life is
+ * looked up again in the background, so that it does not expire under load.
+ * Refreshes run on the {@link AsyncRecordStore} itself, or on an executor
+ * over a synchronous store; without an executor they are not done.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class CachingRecordStore implements AsyncRecordStore
+{
+    /** the log for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( CachingRecordStore.class );
+
+    /** The number of shards, a power of two */
+    private static final int SHARDS = 16;
+
+    /** The estimated bytes of an answer, without its records */
+    static final int ENTRY_BYTES = 128;
+
+    /** The estimated bytes of a record, without its name */
+    static final int RECORD_BYTES = 192;
+
+    /** The estimated bytes of an answer, to size the frequency sketches */
+    private static final int AVERAGE_ENTRY_BYTES = 512;
+
+    /** The lowest estimated frequency of an answer refreshed ahead of its expiry */
+    private static final int HOT_FREQUENCY = 3;
+
+    /** The default time answers that a name does not exist are kept, in seconds */
+    private static final int DEFAULT_NEGATIVE_TIME_TO_LIVE = 60;
+
+    private final RecordStore store;
+
+    private final Executor refreshExecutor;
+
+    private final Shard[] shards = new Shard[SHARDS];
+
+    /** The time answers that a name does not exist are kept, in seconds */
+    private volatile int negativeTimeToLive = DEFAULT_NEGATIVE_TIME_TO_LIVE;
+
+
+    /**
+     * Creates a new instance of CachingRecordStore, which refreshes answers
+     * only if the store is an {@link AsyncRecordStore}.
+     *
+     * @param store the store to cache the answers of
+     * @param maxBytes the estimated size the answers may take
+     */
+    public CachingRecordStore( RecordStore store, long maxBytes )
+    {
+        this( store, maxBytes, null );
+    }
+
+
+    /**
+     * Creates a new instance of CachingRecordStore.
+     *
+     * @param store the store to cache the answers of
+     * @param maxBytes the estimated size the answers may take
+     * @param refreshExecutor the executor to refresh the answers of a
+     * synchronous store on, or null
+     */
+    public CachingRecordStore( RecordStore store, long maxBytes, Executor refreshExecutor )
+    {
+        this.store = store;
+        this.refreshExecutor = refreshExecutor;
+
+        for ( int ii = 0; ii < SHARDS; ii++ )
+        {
+            shards[ii] = new Shard( maxBytes / SHARDS );
+        }
+    }
+
+
+    public Set<ResourceRecord> getRecords( QuestionRecord question ) throws DnsException
+    {
+        String key = getKey( question );
+        Shard shard = getShard( key );
+        Entry entry = shard.get( key, now() );
+
+        if ( entry != null )
+        {
+            refreshAhead( shard, key, question, entry );
+
+            return entry.records;
+        }
+
+        Set<ResourceRecord> records = store.getRecords( question );
+        shard.put( key, newEntry( key, records ), now() );
+
+        return records;
+    }
+
+
+    /**
+     * Answers the questions whose answers are kept, and looks the others up
+     * in the store all at once.
+     */
+    public List<Set<ResourceRecord>> getRecords( Collection<QuestionRecord> questions ) throws DnsException
+    {
+        List<Set<ResourceRecord>> answers = new ArrayList<Set<ResourceRecord>>( questions.size() );
+        List<QuestionRecord> misses = new ArrayList<QuestionRecord>();
+        List<Integer> missed = new ArrayList<Integer>();
+        long now = now();
+
+        for ( QuestionRecord question : questions )
+        {
+            String key = getKey( question );
+            Shard shard = getShard( key );
+            Entry entry = shard.get( key, now );
+
+            if ( entry != null )
+            {
+                refreshAhead( shard, key, question, entry );
+                answers.add( entry.records );
+            }
+            else
+            {
+                missed.add( answers.size() );
+                misses.add( question );
+                answers.add( null );
+            }
+        }
+
+        if ( !misses.isEmpty() )
+        {
+            List<Set<ResourceRecord>> found = store.getRecords( misses );
+
+            for ( int ii = 0; ii < misses.size(); ii++ )
+            {
+                String key = getKey( misses.get( ii ) );
+                getShard( key ).put( key, newEntry( key, found.get( ii ) ), now() );
+                answers.set( missed.get( ii ), found.get( ii ) );
+            }
+        }
+
+        return answers;
+    }
+
+
+    public CompletionStage<Set<ResourceRecord>> getRecordsAsync( final QuestionRecord question )
+    {
+        if ( !( store instanceof AsyncRecordStore ) )
+        {
+            try
+            {
+                return CompletableFuture.completedFuture( getRecords( question ) );
+            }
+            catch ( DnsException de )
+            {
+                CompletableFuture<Set<ResourceRecord>> failed = new CompletableFuture<Set<ResourceRecord>>();
+                failed.completeExceptionally( de );
+
+                return failed;
+            }
+        }
+
+        final String key = getKey( question );
+        final Shard shard = getShard( key );
+        Entry entry = shard.get( key, now() );
+
+        if ( entry != null )
+        {
+            refreshAhead( shard, key, question, entry );
+
+            return CompletableFuture.completedFuture( entry.records );
+        }
+
+        return ( ( AsyncRecordStore ) store ).getRecordsAsync( question ).thenApply(
+            new Function<Set<ResourceRecord>, Set<ResourceRecord>>()
+            {
+                public Set<ResourceRecord> apply( Set<ResourceRecord> records )
+                {
+                    shard.put( key, newEntry( key, records ), now() );
+
+                    return records;
+                }
+            } );
+    }
+
+
+    /**
+     * @return Returns the time answers that a name does not exist are kept,
+     * in seconds.
+     */
+    public int getNegativeTimeToLive()
+    {
+        return negativeTimeToLive;
+    }
+
+
+    /**
+     * @param negativeTimeToLive The time answers that a name does not exist
+     * are kept, in seconds, 0 to not keep them.
+     */
+    public void setNegativeTimeToLive( int negativeTimeToLive )
+    {
+        this.negativeTimeToLive = negativeTimeToLive;
+    }
+
+
+    /**
+     * @return Returns the estimated bytes the answers kept take.
+     */
+    public long getSize()
+    {
+        long size = 0;
+
+        for ( Shard shard : shards )
+        {
+            size += shard.getBytes();
+        }
+
+        return size;
+    }
+
+
+    /**
+     * Drops all the answers kept, such as once the store changed.
+     */
+    public void clear()
+    {
+        for ( Shard shard : shards )
+        {
+            shard.clear();
+        }
+    }
+
+
+    /**
+     * @return Returns the store the answers come from.
+     */
+    public RecordStore getStore()
+    {
+        return store;
+    }
+
+
+    /**
+     * Returns the current time, in milliseconds.
+     */
+    long now()
+    {
+        return System.currentTimeMillis();
+    }
+
+
+    /**
+     * Looks a popular answer up again in the background, once it is in the
+     * last fifth of its life, unless it is being already.
+     */
+    private void refreshAhead( final Shard shard, final String key, final QuestionRecord question, Entry entry )
+    {
+        if ( now() < entry.refreshAt || !shard.isHot( key ) || !entry.refreshing.compareAndSet( false, true ) )
+        {
+            return;
+        }
+
+        if ( store instanceof AsyncRecordStore )
+        {
+            ( ( AsyncRecordStore ) store ).getRecordsAsync( question ).whenComplete(
+                new BiConsumer<Set<ResourceRecord>, Throwable>()
+                {
+                    public void accept( Set<ResourceRecord> records, Throwable failure )
+                    {
+                        refreshed( shard, key, records, failure );
+                    }
+                } );
+        }
+        else if ( refreshExecutor != null )
+        {
+            try
+            {
+                refreshExecutor.execute( new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            refreshed( shard, key, store.getRecords( question ), null );
+                        }
+                        catch ( Exception e )
+                        {
+                            refreshed( shard, key, null, e );
+                        }
+                    }
+                } );
+            }
+            catch ( RejectedExecutionException ree )
+            {
+                entry.refreshing.set( false );
+            }
+        }
+    }
+
+
+    private void refreshed( Shard shard, String key, Set<ResourceRecord> records, Throwable failure )
+    {
+        if ( failure == null )
+        {
+            shard.put( key, newEntry( key, records ), now() );
+        }
+        else
+        {
+            // the answer kept lives on until it expires
+            LOG.debug( "Could not refresh {}: {}", key, failure.getMessage() );
+        }
+    }
+
+
+    private Entry newEntry( String key, Set<ResourceRecord> records )
+    {
+        long timeToLive = negativeTimeToLive;
+
+        if ( records != null && !records.isEmpty() )
+        {
+            timeToLive = Integer.MAX_VALUE;
+
+            for ( ResourceRecord record : records )
+            {
+                timeToLive = Math.min( timeToLive, Math.max( record.getTimeToLive(), 0 ) );
+            }
+        }
+
+        long created = now();
+
+        return new Entry( records, created + timeToLive * 1000, created + timeToLive * 800, weigh( key, records ) );
+    }
+
+
+    private Shard getShard( String key )
+    {
+        int hash = key.hashCode();
+
+        return shards[( hash ^ ( hash >>> 16 ) ) & ( SHARDS - 1 )];
+    }
+
+
+    private static String getKey( QuestionRecord question )
+    {
+        return question.getTypeCode() + " " + question.getRecordClass().name() + ' '
+            + question.getDomainName().toLowerCase();
+    }
+
+
+    /**
+     * Estimates the bytes an answer takes, with the RRsets linked to it.
+     */
+    static int weigh( String key, Set<ResourceRecord> records )
+    {
+        int weight = ENTRY_BYTES + 2 * key.length();
+
+        if ( records != null )
+        {
+            weight += weigh( records );
+        }
+
+        if ( records instanceof RecordSet )
+        {
+            weight += weigh( ( ( RecordSet ) records ).getAuthorityRecordSets() );
+            weight += weigh( ( ( RecordSet ) records ).getAdditionalRecordSets() );
+        }
+
+        return weight;
+    }
+
+
+    private static int weigh( List<RecordSet> recordSets )
+    {
+        int weight = 0;
+
+        for ( RecordSet recordSet : recordSets )
+        {
+            weight += weigh( recordSet );
+        }
+
+        return weight;
+    }
+
+
+    private static int weigh( Set<ResourceRecord> records )
+    {
+        int weight = 0;
+
+        for ( ResourceRecord record : records )
+        {
+            weight += RECORD_BYTES + 2 * record.getDomainName().length();
+        }
+
+        return weight;
+    }
+
+
+    /**
+     * An answer kept, which never changes but for being refreshed.
+     */
+    private static final class Entry
+    {
+        /** The records, null or empty if the name does not exist */
+        final Set<ResourceRecord> records;
+
+        final long expires;
+
+        /** The time from which the answer is refreshed, if it is popular */
+        final long refreshAt;
+
+        final int weight;
+
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+
+        Entry( Set<ResourceRecord> records, long expires, long refreshAt, int weight )
+        {
+            this.records = records;
+            this.expires = expires;
+            this.refreshAt = refreshAt;
+            this.weight = weight;
+        }
+    }
+
+
+    /**
+     * A share of the cache, with its own lock.  The answers are kept in the
+     * order they were last used, least recently first.
+     */
+    private static final class Shard
+    {
+        private final long maxBytes;
+
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true );
+
+        private final FrequencySketch sketch;
+
+        private long bytes;
+
+
+        Shard( long maxBytes )
+        {
+            this.maxBytes = maxBytes;
+            this.sketch = new FrequencySketch( ( int ) Math.min( maxBytes / AVERAGE_ENTRY_BYTES, 1 << 24 ) );
+        }
+
+
+        /**
+         * Returns the answer kept for a key, counting that it was asked for.
+         */
+        synchronized Entry get( String key, long now )
+        {
+            sketch.increment( key.hashCode() );
+            Entry entry = entries.get( key );
+
+            if ( entry != null && entry.expires <= now )
+            {
+                entries.remove( key );
+                bytes -= entry.weight;
+
+                return null;
+            }
+
+            return entry;
+        }
+
+
+        synchronized boolean isHot( String key )
+        {
+            return sketch.frequency( key.hashCode() ) >= HOT_FREQUENCY;
+        }
+
+
+        /**
+         * Keeps an answer, unless making room for it would drop an answer
+         * more popular than it.  An answer already kept is always replaced,
+         * and expired answers always make room.
+         */
+        synchronized void put( String key, Entry entry, long now )
+        {
+            if ( entry.weight > maxBytes || entry.expires <= entry.refreshAt )
+            {
+                // too large, or not to be kept at all
+                return;
+            }
+
+            Entry old = entries.remove( key );
+
+            if ( old != null )
+            {
+                bytes -= old.weight;
+            }
+
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            boolean admitted = old != null;
+
+            while ( bytes + entry.weight > maxBytes && it.hasNext() )
+            {
+                Map.Entry<String, Entry> victim = it.next();
+
+                if ( !admitted && victim.getValue().expires > now )
+                {
+                    // the least recently used answer decides whether the new one is worth it
+                    if ( sketch.frequency( key.hashCode() ) <= sketch.frequency( victim.getKey().hashCode() ) )
+                    {
+                        return;
+                    }
+
+                    admitted = true;
+                }
+
+                it.remove();
+                bytes -= victim.getValue().weight;
+            }
+
+            entries.put( key, entry );
+            bytes += entry.weight;
+        }
+
+
+        synchronized long getBytes()
+        {
+            return bytes;
+        }
+
+
+        synchronized void clear()
+        {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store;
+
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+
+
+/**
+ * A {@link RecordStore} which asks another store only once for the same
+ * question at a time.  The first lookup of a name, type and class goes to
+ * the store, and identical lookups arriving while it runs wait for its
+ * answer instead of asking again, so a burst of queries for a popular name
+ * costs the store a single lookup.  Answers are not kept once the lookup is
+ * over; the next one asks the store again.<p>
+ * 
+ * Over an {@link AsyncRecordStore}, the waiting lookups hold no thread.  Over
+ * a synchronous store, the asynchronous lookups run on the calling thread,
+ * and the stages returned must not be completed by the callers.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class CoalescingRecordStore implements AsyncRecordStore
+{
+    private final RecordStore store;
+
+    /** The lookups running, by type, class and name */
+    private final ConcurrentMap<String, CompletableFuture<Set<ResourceRecord>>> lookups =
+        new ConcurrentHashMap<String, CompletableFuture<Set<ResourceRecord>>>();
+
+
+    /**
+     * Creates a new instance of CoalescingRecordStore.
+     *
+     * @param store the store to ask, asynchronously if it can be
+     */
+    public CoalescingRecordStore( RecordStore store )
+    {
+        this.store = store;
+    }
+
+
+    public Set<ResourceRecord> getRecords( QuestionRecord question ) throws DnsException
+    {
+        String key = getKey( question );
+        CompletableFuture<Set<ResourceRecord>> lookup = new CompletableFuture<Set<ResourceRecord>>();
+        CompletableFuture<Set<ResourceRecord>> running = lookups.putIfAbsent( key, lookup );
+
+        if ( running != null )
+        {
+            return await( running );
+        }
+
+        try
+        {
+            Set<ResourceRecord> records = store.getRecords( question );
+
+            // later lookups ask the store again
+            lookups.remove( key, lookup );
+            lookup.complete( records );
+
+            return records;
+        }
+        catch ( Throwable t )
+        {
+            lookups.remove( key, lookup );
+            lookup.completeExceptionally( t );
+
+            throw t;
+        }
+    }
+
+
+    public CompletionStage<Set<ResourceRecord>> getRecordsAsync( QuestionRecord question )
+    {
+        if ( !( store instanceof AsyncRecordStore ) )
+        {
+            try
+            {
+                return CompletableFuture.completedFuture( getRecords( question ) );
+            }
+            catch ( DnsException de )
+            {
+                CompletableFuture<Set<ResourceRecord>> failed = new CompletableFuture<Set<ResourceRecord>>();
+                failed.completeExceptionally( de );
+
+                return failed;
+            }
+        }
+
+        final String key = getKey( question );
+        final CompletableFuture<Set<ResourceRecord>> lookup = new CompletableFuture<Set<ResourceRecord>>();
+        CompletableFuture<Set<ResourceRecord>> running = lookups.putIfAbsent( key, lookup );
+
+        if ( running != null )
+        {
+            return running;
+        }
+
+        ( ( AsyncRecordStore ) store ).getRecordsAsync( question ).whenComplete(
+            new BiConsumer<Set<ResourceRecord>, Throwable>()
+            {
+                public void accept( Set<ResourceRecord> records, Throwable failure )
+                {
+                    // later lookups ask the store again
+                    lookups.remove( key, lookup );
+
+                    if ( failure == null )
+                    {
+                        lookup.complete( records );
+                    }
+                    else
+                    {
+                        lookup.completeExceptionally( failure );
+                    }
+                }
+            } );
+
+        return lookup;
+    }
+
+
+    /**
+     * @return Returns the store asked.
+     */
+    public RecordStore getStore()
+    {
+        return store;
+    }
+
+
+    /**
+     * @return Returns the number of lookups running.
+     */
+    public int getLookupCount()
+    {
+        return lookups.size();
+    }
+
+
+    /**
+     * Waits for the answer of a lookup another thread runs.
+     */
+    private static Set<ResourceRecord> await( CompletableFuture<Set<ResourceRecord>> lookup ) throws DnsException
+    {
+        try
+        {
+            return lookup.get();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new DnsException( ResponseCode.SERVER_FAILURE );
+        }
+        catch ( ExecutionException ee )
+        {
+            Throwable cause = ee.getCause();
+
+            if ( cause instanceof DnsException )
+            {
+                throw ( DnsException ) cause;
+            }
+
+            if ( cause instanceof RuntimeException )
+            {
+                throw ( RuntimeException ) cause;
+            }
+
+            throw new DnsException( ResponseCode.SERVER_FAILURE );
+        }
+    }
+
+
+    private static String getKey( QuestionRecord question )
+    {
+        return question.getTypeCode() + " " + question.getRecordClass().name() + ' '
+            + question.getDomainName().toLowerCase();
+    }
+}
@@ -89,4 +89,16 @@ public class DnsAttribute
 
     /** the apachedns schema apacheDnsServicePort */
     public static final String SERVICE_PORT = "apacheDnsServicePort";
+
+    /**
+     * The RDATA of a record handled as an unknown type, as per RFC 3597.  The
+     * value is the RDATA octets written as a string of hexadecimal digits.
+     */
+    public static final String RDATA = "apacheDnsRdata";
+
+    /**
+     * The requestor's UDP payload size carried in the CLASS field of an EDNS
+     * OPT pseudo-record, as per RFC 6891.
+     */
+    public static final String UDP_PAYLOAD_SIZE = "apacheDnsUdpPayloadSize";
 }
@@ -0,0 +1,116 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store;
+
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+
+
+/**
+ * An {@link AsyncRecordStore} over a {@link RecordStore} which blocks, such
+ * as one reading a directory, running its lookups on an {@link Executor} so
+ * that they do not hold up the I/O threads.  The executor bounds how many
+ * lookups block at once; a lookup it rejects fails with SERVFAIL.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ExecutorRecordStore implements AsyncRecordStore
+{
+    private final RecordStore store;
+
+    private final Executor executor;
+
+
+    /**
+     * Creates a new instance of ExecutorRecordStore.
+     *
+     * @param store the store which blocks
+     * @param executor the executor to run its lookups on
+     */
+    public ExecutorRecordStore( RecordStore store, Executor executor )
+    {
+        this.store = store;
+        this.executor = executor;
+    }
+
+
+    public Set<ResourceRecord> getRecords( QuestionRecord question ) throws DnsException
+    {
+        return store.getRecords( question );
+    }
+
+
+    public List<Set<ResourceRecord>> getRecords( Collection<QuestionRecord> questions ) throws DnsException
+    {
+        return store.getRecords( questions );
+    }
+
+
+    public CompletionStage<Set<ResourceRecord>> getRecordsAsync( final QuestionRecord question )
+    {
+        final CompletableFuture<Set<ResourceRecord>> future = new CompletableFuture<Set<ResourceRecord>>();
+
+        try
+        {
+            executor.execute( new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        future.complete( store.getRecords( question ) );
+                    }
+                    catch ( Throwable t )
+                    {
+                        future.completeExceptionally( t );
+                    }
+                }
+            } );
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            future.completeExceptionally( new DnsException( ResponseCode.SERVER_FAILURE ) );
+        }
+
+        return future;
+    }
+
+
+    /**
+     * @return Returns the store which blocks.
+     */
+    public RecordStore getStore()
+    {
+        return store;
+    }
+}
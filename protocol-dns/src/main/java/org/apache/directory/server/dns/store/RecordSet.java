@@ -0,0 +1,323 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store;
+
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+
+
+/**
+ * An RRset as returned by a {@link RecordStore}, carrying along the records a
+ * reply should put in its authority and additional sections, such as the
+ * addresses of the mail exchangers of an MX RRset, and whether the reply is
+ * authoritative.  Stores which can resolve these links when
+ * they load their data return RecordSets, so that building a reply needs no
+ * further lookups.  The set cannot be modified.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class RecordSet extends AbstractSet<ResourceRecord>
+{
+    private final List<ResourceRecord> records;
+
+    private final List<RecordSet> authorityRecordSets;
+
+    private final List<RecordSet> additionalRecordSets;
+
+    private final boolean authoritative;
+
+    private final boolean noData;
+
+    private final boolean nameError;
+
+    /** The authority section in wire form, or null to encode it with each reply */
+    private final byte[] encodedAuthority;
+
+
+    /**
+     * Creates a new instance of RecordSet without additional records.
+     *
+     * @param records
+     */
+    public RecordSet( Collection<ResourceRecord> records )
+    {
+        this( records, Collections.<RecordSet> emptyList() );
+    }
+
+
+    /**
+     * Creates a new instance of RecordSet.
+     *
+     * @param records
+     * @param additionalRecordSets the RRsets for the additional section
+     */
+    public RecordSet( Collection<ResourceRecord> records, List<RecordSet> additionalRecordSets )
+    {
+        this( records, Collections.<RecordSet> emptyList(), additionalRecordSets, true );
+    }
+
+
+    /**
+     * Creates a new instance of RecordSet.
+     *
+     * @param records
+     * @param authorityRecordSets the RRsets for the authority section
+     * @param additionalRecordSets the RRsets for the additional section
+     * @param authoritative whether the answer comes from a zone the server
+     * is authoritative for
+     */
+    public RecordSet( Collection<ResourceRecord> records, List<RecordSet> authorityRecordSets,
+        List<RecordSet> additionalRecordSets, boolean authoritative )
+    {
+        this( records, authorityRecordSets, additionalRecordSets, authoritative, false, false, null );
+    }
+
+
+    private RecordSet( Collection<ResourceRecord> records, List<RecordSet> authorityRecordSets,
+        List<RecordSet> additionalRecordSets, boolean authoritative, boolean noData, boolean nameError,
+        byte[] encodedAuthority )
+    {
+        this.records = Collections.unmodifiableList( new ArrayList<ResourceRecord>( records ) );
+        this.authorityRecordSets = Collections.unmodifiableList( authorityRecordSets );
+        this.additionalRecordSets = Collections.unmodifiableList( additionalRecordSets );
+        this.authoritative = authoritative;
+        this.noData = noData;
+        this.nameError = nameError;
+        this.encodedAuthority = encodedAuthority;
+    }
+
+
+    /**
+     * Returns a referral to a delegated zone: an empty, non-authoritative
+     * answer with the NS RRset of the zone cut in the authority section, and
+     * the glue of the name servers in the additional section.
+     *
+     * @param nameServers the NS RRset of the zone cut
+     * @return The referral.
+     */
+    public static RecordSet getReferral( RecordSet nameServers )
+    {
+        return new RecordSet( Collections.<ResourceRecord> emptyList(), Collections.singletonList( nameServers ),
+            nameServers.getAdditionalRecordSets(), false );
+    }
+
+
+    /**
+     * Returns the answer for a name which exists but has no records of the
+     * type asked for: an empty, authoritative answer, which makes a NOERROR
+     * reply rather than a name error.
+     *
+     * @param authorityRecordSets the RRsets for the authority section, the
+     * SOA RRset of the zone as per RFC 2308
+     * @return The NODATA answer.
+     */
+    public static RecordSet getNoData( List<RecordSet> authorityRecordSets )
+    {
+        return getNoData( authorityRecordSets, true );
+    }
+
+
+    /**
+     * Returns the answer for a name which exists but has no records of the
+     * type asked for, as {@link #getNoData(List)} does, authoritative or not.
+     *
+     * @param authorityRecordSets the RRsets for the authority section
+     * @param authoritative whether the answer comes from a zone the server
+     * is authoritative for
+     * @return The NODATA answer.
+     */
+    public static RecordSet getNoData( List<RecordSet> authorityRecordSets, boolean authoritative )
+    {
+        return new RecordSet( Collections.<ResourceRecord> emptyList(), authorityRecordSets, Collections
+            .<RecordSet> emptyList(), authoritative, true, false, null );
+    }
+
+
+    /**
+     * Returns the answer for a name which does not exist in a zone the
+     * server is authoritative for: an empty, authoritative answer, which
+     * makes an authoritative NXDOMAIN reply.
+     *
+     * @param authorityRecordSets the RRsets for the authority section, the
+     * SOA RRset of the zone as per RFC 2308
+     * @return The name error answer.
+     */
+    public static RecordSet getNameError( List<RecordSet> authorityRecordSets )
+    {
+        return getNameError( authorityRecordSets, null );
+    }
+
+
+    /**
+     * Returns the answer for a name which does not exist, as
+     * {@link #getNameError(List)} does, along with its authority section
+     * already in wire form.  Random names make for the commonest answer
+     * there is; a reply copies these octets instead of encoding it.
+     *
+     * @param authorityRecordSets the RRsets for the authority section
+     * @param encodedAuthority the records of the RRsets in wire form, with
+     * no compressed names
+     * @return The name error answer.
+     */
+    public static RecordSet getNameError( List<RecordSet> authorityRecordSets, byte[] encodedAuthority )
+    {
+        return new RecordSet( Collections.<ResourceRecord> emptyList(), authorityRecordSets, Collections
+            .<RecordSet> emptyList(), true, false, true, encodedAuthority );
+    }
+
+
+    /**
+     * Returns the type code of a record, also for the records of a type
+     * without a {@link RecordType} constant, which keep theirs in the
+     * {@link DnsAttribute#TYPE} attribute (RFC 3597).
+     *
+     * @param record
+     * @return The unsigned 16 bit type code.
+     */
+    public static int getTypeCode( ResourceRecord record )
+    {
+        if ( record.getRecordType() == RecordType.UNKNOWN )
+        {
+            return Integer.parseInt( record.get( DnsAttribute.TYPE ) ) & 0xFFFF;
+        }
+
+        return record.getRecordType().convert() & 0xFFFF;
+    }
+
+
+    /**
+     * Returns the type code of a {@link RecordType}, as RRsets are keyed by.
+     * {@link RecordType#UNKNOWN} stands for no type in particular, so its
+     * code, -1, matches no RRset.
+     *
+     * @param type
+     * @return The unsigned 16 bit type code, or -1.
+     */
+    public static int getTypeCode( RecordType type )
+    {
+        return type == RecordType.UNKNOWN ? -1 : type.convert() & 0xFFFF;
+    }
+
+
+    /**
+     * Returns the RRsets a reply with this RRset as its answer should put in
+     * its authority section.
+     *
+     * @return The authority RRsets, possibly empty.
+     */
+    public List<RecordSet> getAuthorityRecordSets()
+    {
+        return authorityRecordSets;
+    }
+
+
+    /**
+     * Returns the records of the authority section in wire form, if they
+     * were encoded beforehand.  The octets must not be changed.
+     *
+     * @return The encoded authority section, or null.
+     */
+    public byte[] getEncodedAuthority()
+    {
+        return encodedAuthority;
+    }
+
+
+    /**
+     * Returns whether this answer is authoritative, that is whether the reply
+     * carrying it may set the AA bit.  Referrals are not.
+     *
+     * @return true if the answer is authoritative.
+     */
+    public boolean isAuthoritative()
+    {
+        return authoritative;
+    }
+
+
+    /**
+     * Returns whether this is a referral, an answer with no records but an
+     * authority section.
+     *
+     * @return true if this is a referral.
+     */
+    public boolean isReferral()
+    {
+        return records.isEmpty() && !authorityRecordSets.isEmpty() && !noData && !nameError;
+    }
+
+
+    /**
+     * Returns whether this answers a name which exists but has no records of
+     * the type asked for, see {@link #getNoData(List)}.
+     *
+     * @return true if this is a NODATA answer.
+     */
+    public boolean isNoData()
+    {
+        return noData;
+    }
+
+
+    /**
+     * Returns whether this answers a name which does not exist, see
+     * {@link #getNameError(List)}.
+     *
+     * @return true if this is a name error answer.
+     */
+    public boolean isNameError()
+    {
+        return nameError;
+    }
+
+
+    /**
+     * Returns the RRsets a reply with this RRset as its answer should put in
+     * its additional section.
+     *
+     * @return The additional RRsets, possibly empty.
+     */
+    public List<RecordSet> getAdditionalRecordSets()
+    {
+        return additionalRecordSets;
+    }
+
+
+    public Iterator<ResourceRecord> iterator()
+    {
+        return records.iterator();
+    }
+
+
+    public int size()
+    {
+        return records.size();
+    }
+}
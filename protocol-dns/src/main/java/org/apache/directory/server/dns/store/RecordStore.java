@@ -20,6 +20,9 @@
 package org.apache.directory.server.dns.store;
 
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.directory.server.dns.DnsException;
@@ -43,4 +46,28 @@ public interface RecordStore
      * @throws DnsException
      */
     public Set<ResourceRecord> getRecords( QuestionRecord question ) throws DnsException;
+
+
+    /**
+     * Returns the {@link ResourceRecord}s answering each of a batch of
+     * {@link QuestionRecord}s, such as those of a query or of a tool checking
+     * zones.  Stores which look many questions up at once for less than one
+     * at a time, in a single pass over an index or a single round trip,
+     * override this; by default the questions are looked up in turn.
+     *
+     * @param questions
+     * @return The sets of {@link ResourceRecord}s, in the order of the questions.
+     * @throws DnsException if a question cannot be answered
+     */
+    public default List<Set<ResourceRecord>> getRecords( Collection<QuestionRecord> questions ) throws DnsException
+    {
+        List<Set<ResourceRecord>> answers = new ArrayList<Set<ResourceRecord>>( questions.size() );
+
+        for ( QuestionRecord question : questions )
+        {
+            answers.add( getRecords( question ) );
+        }
+
+        return answers;
+    }
 }
@@ -0,0 +1,659 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.directory;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.directory.server.core.DirectoryEntry;
+import org.apache.directory.server.core.DirectoryListener;
+import org.apache.directory.server.core.EntrySource;
+import org.apache.directory.server.core.SearchPage;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResourceRecordModifier;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.directory.server.dns.store.RecordStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A {@link RecordStore} answering from the apacheDns records of a directory,
+ * which it loads at once, a page at a time, then keeps up to date through
+ * the changes the directory tells it about.  Queries never reach the
+ * directory.<p>
+ * 
+ * The records are the entries under the search base or, if the store is
+ * catalog based, under the base DNs of the apacheCatalogEntry entries there,
+ * in which case the names of the records are relative to the zone of their
+ * catalog entry.  Each entry is a record, whose type, class, TTL and data are
+ * those of its apacheDns attributes.  Changes told while the records load
+ * are applied once they are.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class DirectoryRecordStore implements RecordStore
+{
+    /** the log for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( DirectoryRecordStore.class );
+
+    /** The object class of the records */
+    public static final String RECORD_OBJECT_CLASS = "apacheDnsAbstractRecord";
+
+    /** The object class of the catalog entries */
+    public static final String CATALOG_OBJECT_CLASS = "apacheCatalogEntry";
+
+    /** The name of the zone of a catalog entry */
+    public static final String CATALOG_NAME = "apacheCatalogEntryName";
+
+    /** The base DN of the records of a catalog entry */
+    public static final String CATALOG_BASE_DN = "apacheCatalogEntryBaseDn";
+
+    /** The default number of entries asked for at once */
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /** The TTL of the records without one, in seconds */
+    private static final int DEFAULT_TIME_TO_LIVE = 86400;
+
+    private final EntrySource source;
+
+    private final String searchBaseDn;
+
+    private final boolean catalogBased;
+
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    /** The records, by lower case name; the lists are never changed once put */
+    private final Map<String, List<ResourceRecord>> records = new ConcurrentHashMap<String, List<ResourceRecord>>();
+
+    /** The record of each entry, by normalized DN */
+    private final Map<String, ResourceRecord> entries = new HashMap<String, ResourceRecord>();
+
+    /** The zones, by the normalized base DN of their records, null if not catalog based */
+    private final Map<String, String> zones = new HashMap<String, String>();
+
+    /** The normalized DNs the record listener listens to */
+    private final Set<String> listened = new HashSet<String>();
+
+    /** The loads going on */
+    private int loading;
+
+    /** The changes told while loading, applied in turn once all are loaded */
+    private final List<Runnable> backlog = new ArrayList<Runnable>();
+
+    private final DirectoryListener recordListener = new DirectoryListener()
+    {
+        public void entryAdded( final DirectoryEntry entry )
+        {
+            change( new Runnable()
+            {
+                public void run()
+                {
+                    put( entry );
+                }
+            } );
+        }
+
+
+        public void entryDeleted( final DirectoryEntry entry )
+        {
+            change( new Runnable()
+            {
+                public void run()
+                {
+                    remove( normalize( entry.getDn() ) );
+                }
+            } );
+        }
+
+
+        public void entryModified( final DirectoryEntry oldEntry, final DirectoryEntry newEntry )
+        {
+            change( new Runnable()
+            {
+                public void run()
+                {
+                    remove( normalize( oldEntry.getDn() ) );
+                    put( newEntry );
+                }
+            } );
+        }
+    };
+
+    private final DirectoryListener catalogListener = new DirectoryListener()
+    {
+        public void entryAdded( DirectoryEntry entry )
+        {
+            loadZone( entry );
+        }
+
+
+        public void entryDeleted( DirectoryEntry entry )
+        {
+            removeZone( entry );
+        }
+
+
+        public void entryModified( DirectoryEntry oldEntry, DirectoryEntry newEntry )
+        {
+            removeZone( oldEntry );
+            loadZone( newEntry );
+        }
+    };
+
+
+    /**
+     * Creates a new instance of DirectoryRecordStore, empty until loaded.
+     *
+     * @param source the entries of the directory
+     * @param searchBaseDn the DN the records, or the catalog entries, are under
+     * @param catalogBased true if the search base holds catalog entries
+     */
+    public DirectoryRecordStore( EntrySource source, String searchBaseDn, boolean catalogBased )
+    {
+        this.source = source;
+        this.searchBaseDn = searchBaseDn;
+        this.catalogBased = catalogBased;
+    }
+
+
+    /**
+     * Loads the records of the directory, and starts following the changes
+     * made to them.
+     */
+    public void load()
+    {
+        if ( !catalogBased )
+        {
+            load( searchBaseDn, null );
+            return;
+        }
+
+        source.addListener( searchBaseDn, catalogListener );
+        String cookie = null;
+
+        do
+        {
+            SearchPage page = source.search( searchBaseDn, CATALOG_OBJECT_CLASS, cookie, pageSize );
+
+            for ( DirectoryEntry entry : page.getEntries() )
+            {
+                loadZone( entry );
+            }
+
+            cookie = page.getCookie();
+        }
+        while ( cookie != null );
+    }
+
+
+    /**
+     * Stops following the changes made to the records.
+     */
+    public void close()
+    {
+        source.removeListener( catalogListener );
+        source.removeListener( recordListener );
+    }
+
+
+    public Set<ResourceRecord> getRecords( QuestionRecord question )
+    {
+        List<ResourceRecord> named = records.get( toKey( question.getDomainName() ) );
+
+        if ( named == null )
+        {
+            return null;
+        }
+
+        boolean any = question.getRecordType() == RecordType.ANY;
+        int typeCode = question.getTypeCode();
+        RecordClass recordClass = question.getRecordClass();
+        List<ResourceRecord> found = new ArrayList<ResourceRecord>();
+
+        for ( ResourceRecord record : named )
+        {
+            if ( ( any || typeCode == RecordSet.getTypeCode( record ) )
+                && ( recordClass == RecordClass.ANY || recordClass == record.getRecordClass() ) )
+            {
+                found.add( record );
+            }
+        }
+
+        if ( found.isEmpty() )
+        {
+            // the name exists, so the answer is NODATA rather than a name error
+            return RecordSet.getNoData( getAuthority( toKey( question.getDomainName() ) ) );
+        }
+
+        // records of the same name and type are equal, a set would keep one of them
+        return new RecordSet( found );
+    }
+
+
+    /**
+     * Returns the authority section of a NODATA answer: the SOA RRset of the
+     * closest name above a name which has one (RFC 2308, section 2.2).
+     */
+    private List<RecordSet> getAuthority( String name )
+    {
+        while ( true )
+        {
+            List<ResourceRecord> named = records.get( name );
+            List<ResourceRecord> soa = new ArrayList<ResourceRecord>();
+
+            if ( named != null )
+            {
+                for ( ResourceRecord record : named )
+                {
+                    if ( record.getRecordType() == RecordType.SOA )
+                    {
+                        soa.add( record );
+                    }
+                }
+            }
+
+            if ( !soa.isEmpty() )
+            {
+                return Collections.singletonList( new RecordSet( soa ) );
+            }
+
+            if ( name.length() == 0 )
+            {
+                return Collections.emptyList();
+            }
+
+            int dot = name.indexOf( '.' );
+            name = dot < 0 ? "" : name.substring( dot + 1 );
+        }
+    }
+
+
+    /**
+     * @return Returns the number of records.
+     */
+    public synchronized int getRecordCount()
+    {
+        return entries.size();
+    }
+
+
+    /**
+     * @return Returns the number of entries asked for at once.
+     */
+    public int getPageSize()
+    {
+        return pageSize;
+    }
+
+
+    /**
+     * @param pageSize The number of entries to ask for at once.
+     */
+    public void setPageSize( int pageSize )
+    {
+        this.pageSize = pageSize;
+    }
+
+
+    /**
+     * Loads the records of a catalog entry.
+     */
+    private void loadZone( DirectoryEntry entry )
+    {
+        String zone = entry.get( CATALOG_NAME );
+        String baseDn = entry.get( CATALOG_BASE_DN );
+
+        if ( zone == null || baseDn == null )
+        {
+            LOG.warn( "Ignoring the catalog entry {}, without a zone or a base DN", entry.getDn() );
+            return;
+        }
+
+        load( baseDn, toKey( zone ) );
+    }
+
+
+    /**
+     * Drops the records of a catalog entry.
+     */
+    private synchronized void removeZone( DirectoryEntry entry )
+    {
+        String baseDn = entry.get( CATALOG_BASE_DN );
+
+        if ( baseDn == null || zones.remove( normalize( baseDn ) ) == null )
+        {
+            return;
+        }
+
+        for ( String dn : new ArrayList<String>( entries.keySet() ) )
+        {
+            if ( getZoneBase( dn ) == null )
+            {
+                remove( dn );
+            }
+        }
+    }
+
+
+    /**
+     * Loads the records under a DN a page at a time, holding back the
+     * changes told meanwhile.  The directory is not called holding the
+     * lock, which its listeners take.
+     */
+    private void load( String baseDn, String zone )
+    {
+        String base = normalize( baseDn );
+        boolean listen;
+
+        synchronized ( this )
+        {
+            loading++;
+            zones.put( base, zone );
+            listen = listened.add( base );
+        }
+
+        if ( listen )
+        {
+            // before searching, so that no change goes missing
+            source.addListener( baseDn, recordListener );
+        }
+
+        try
+        {
+            String cookie = null;
+
+            do
+            {
+                SearchPage page = source.search( baseDn, RECORD_OBJECT_CLASS, cookie, pageSize );
+
+                synchronized ( this )
+                {
+                    for ( DirectoryEntry entry : page.getEntries() )
+                    {
+                        put( entry );
+                    }
+                }
+
+                cookie = page.getCookie();
+            }
+            while ( cookie != null );
+        }
+        finally
+        {
+            synchronized ( this )
+            {
+                if ( --loading == 0 )
+                {
+                    for ( Runnable change : backlog )
+                    {
+                        change.run();
+                    }
+
+                    backlog.clear();
+                }
+            }
+        }
+
+        LOG.debug( "Loaded the records under {}", baseDn );
+    }
+
+
+    /**
+     * Applies a change now, or once the records are loaded.
+     */
+    private synchronized void change( Runnable change )
+    {
+        if ( loading > 0 )
+        {
+            backlog.add( change );
+        }
+        else
+        {
+            change.run();
+        }
+    }
+
+
+    /**
+     * Indexes the record of an entry, in place of the one it had.
+     */
+    private void put( DirectoryEntry entry )
+    {
+        String dn = normalize( entry.getDn() );
+        String base = getZoneBase( dn );
+
+        if ( base == null || !entry.hasObjectClass( RECORD_OBJECT_CLASS ) )
+        {
+            return;
+        }
+
+        ResourceRecord record = toRecord( entry, zones.get( base ) );
+        remove( dn );
+
+        if ( record != null )
+        {
+            entries.put( dn, record );
+            index( record, true );
+        }
+    }
+
+
+    private void remove( String dn )
+    {
+        ResourceRecord record = entries.remove( dn );
+
+        if ( record != null )
+        {
+            index( record, false );
+        }
+    }
+
+
+    /**
+     * Adds a record to, or removes it from, the records of its name, which
+     * are replaced rather than changed since queries read them unlocked.
+     */
+    private void index( ResourceRecord record, boolean add )
+    {
+        String name = toKey( record.getDomainName() );
+        List<ResourceRecord> named = records.get( name );
+        List<ResourceRecord> updated = named == null ? new ArrayList<ResourceRecord>()
+            : new ArrayList<ResourceRecord>( named );
+
+        if ( add )
+        {
+            updated.add( record );
+        }
+        else
+        {
+            for ( int ii = 0; ii < updated.size(); ii++ )
+            {
+                // the very record, as those of the same name and type are equal
+                if ( updated.get( ii ) == record )
+                {
+                    updated.remove( ii );
+                    break;
+                }
+            }
+        }
+
+        if ( updated.isEmpty() )
+        {
+            records.remove( name );
+        }
+        else
+        {
+            records.put( name, Collections.unmodifiableList( updated ) );
+        }
+    }
+
+
+    /**
+     * Returns the base DN of the records a DN is under, the longest if
+     * several are.
+     *
+     * @return The normalized base DN, or null if the DN is under none.
+     */
+    private String getZoneBase( String dn )
+    {
+        String found = null;
+
+        for ( String base : zones.keySet() )
+        {
+            if ( ( dn.equals( base ) || dn.endsWith( "," + base ) )
+                && ( found == null || base.length() > found.length() ) )
+            {
+                found = base;
+            }
+        }
+
+        return found;
+    }
+
+
+    /**
+     * Returns the record of an entry.
+     *
+     * @param zone the zone the name of the record is relative to, or null
+     * @return The record, or null if the entry is not a valid record.
+     */
+    static ResourceRecord toRecord( DirectoryEntry entry, String zone )
+    {
+        String name = entry.get( DnsAttribute.NAME );
+        String type = entry.get( DnsAttribute.TYPE );
+
+        if ( name == null || type == null )
+        {
+            LOG.warn( "Ignoring the record {}, without a name or a type", entry.getDn() );
+            return null;
+        }
+
+        name = toKey( name );
+
+        if ( zone != null && !name.equals( zone ) && !name.endsWith( "." + zone ) )
+        {
+            name = name.length() == 0 || name.equals( "@" ) ? zone : name + "." + zone;
+        }
+
+        ResourceRecordModifier modifier = new ResourceRecordModifier();
+        modifier.setDnsName( name );
+
+        try
+        {
+            modifier.setDnsType( getType( type, modifier ) );
+            String recordClass = entry.get( DnsAttribute.CLASS );
+            modifier.setDnsClass( recordClass == null ? RecordClass.IN : RecordClass.valueOf( recordClass
+                .toUpperCase() ) );
+            String ttl = entry.get( DnsAttribute.TTL );
+            modifier.setDnsTtl( ttl == null ? DEFAULT_TIME_TO_LIVE : Integer.parseInt( ttl ) );
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            // NumberFormatException included
+            LOG.warn( "Ignoring the record {}: {}", entry.getDn(), iae.getMessage() );
+            return null;
+        }
+
+        for ( String id : entry.getIds() )
+        {
+            if ( id.regionMatches( true, 0, "apacheDns", 0, 9 ) && !id.equalsIgnoreCase( DnsAttribute.NAME )
+                && !id.equalsIgnoreCase( DnsAttribute.TYPE ) && !id.equalsIgnoreCase( DnsAttribute.CLASS )
+                && !id.equalsIgnoreCase( DnsAttribute.TTL ) )
+            {
+                modifier.put( id, entry.get( id ) );
+            }
+        }
+
+        return modifier.getEntry();
+    }
+
+
+    /**
+     * Returns the type of a record by its mnemonic, or by its code in the
+     * generic form of RFC 3597, section 5, such as TYPE64, in which case a
+     * code without a {@link RecordType} constant is kept in the record.
+     *
+     * @throws IllegalArgumentException if there is no such type
+     */
+    private static RecordType getType( String type, ResourceRecordModifier modifier )
+    {
+        if ( !type.regionMatches( true, 0, "TYPE", 0, 4 ) )
+        {
+            RecordType recordType = RecordType.valueOf( type.toUpperCase() );
+
+            if ( recordType == RecordType.UNKNOWN )
+            {
+                throw new IllegalArgumentException( "A record of an unknown type needs its type code" );
+            }
+
+            return recordType;
+        }
+
+        int typeCode = Integer.parseInt( type.substring( 4 ) );
+
+        if ( typeCode < 0 || typeCode > 0xFFFF )
+        {
+            throw new IllegalArgumentException( "Invalid type code " + typeCode );
+        }
+
+        RecordType recordType = RecordType.convert( ( short ) typeCode );
+
+        if ( recordType == RecordType.UNKNOWN )
+        {
+            modifier.put( DnsAttribute.TYPE, String.valueOf( typeCode ) );
+        }
+
+        return recordType;
+    }
+
+
+    /**
+     * Returns a name in lower case, without its trailing dot.
+     */
+    private static String toKey( String name )
+    {
+        name = name.toLowerCase().trim();
+
+        return name.endsWith( "." ) ? name.substring( 0, name.length() - 1 ) : name;
+    }
+
+
+    /**
+     * Returns a DN in lower case, without the blanks around its separators.
+     */
+    private static String normalize( String dn )
+    {
+        return dn.toLowerCase().replaceAll( "\\s*([,=+])\\s*", "$1" ).trim();
+    }
+}
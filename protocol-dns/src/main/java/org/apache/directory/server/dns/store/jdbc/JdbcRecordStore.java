@@ -0,0 +1,788 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.jdbc;
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResourceRecordModifier;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.store.AsyncRecordStore;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An {@link AsyncRecordStore} answering from the records of a database,
+ * kept in two tables:
+ * <pre>
+ * CREATE TABLE dns_record ( id BIGINT PRIMARY KEY, name VARCHAR(255) NOT NULL,
+ *     type VARCHAR(16) NOT NULL, class VARCHAR(8), ttl INTEGER );
+ * CREATE INDEX dns_record_name ON dns_record ( name );
+ * CREATE TABLE dns_attribute ( record_id BIGINT NOT NULL, attribute VARCHAR(64) NOT NULL,
+ *     value VARCHAR(4000) NOT NULL );
+ * </pre>
+ * The names are in lower case, without their trailing dot, the types and
+ * classes are mnemonics, IN if there is none, and the attributes those of
+ * the records, such as apacheDnsIpAddress; see {@link
+ * org.apache.directory.server.dns.store.DnsAttribute}.<p>
+ * 
+ * A fixed number of workers read the database, each holding a connection
+ * from the {@link DataSource}: however many lookups there are, there are
+ * never more connections.  A worker takes the lookups waiting, and those
+ * coming within a short window, up to a batch, and reads the records of all
+ * their names at once with an <code>IN</code> query.  The batches are padded
+ * to a few sizes, and each worker keeps the statement of each size prepared
+ * on its connection, so that a query is prepared once per worker rather than
+ * once per batch.  A worker gives its connection back, and takes another,
+ * once a query failed on it.  The store is meant to be behind a
+ * {@link org.apache.directory.server.dns.store.CachingRecordStore}.<p>
+ * 
+ * A name with records, but none of the type asked for, is answered NODATA.
+ * The store reads only the names asked for, so the answer carries no SOA
+ * record for negative caching (RFC 2308); the cache in front of the store
+ * keeps it for its negative TTL.  The types without a mnemonic are written
+ * in the generic form of RFC 3597, such as TYPE64.<p>
+ * 
+ * The lookups wait in a bounded queue: once the database falls that far
+ * behind, further lookups fail at once with SERVFAIL rather than piling up.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class JdbcRecordStore implements AsyncRecordStore
+{
+    /** the log for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( JdbcRecordStore.class );
+
+    /** The default number of workers, and so of connections */
+    private static final int DEFAULT_WORKERS = 4;
+
+    /** The default most names read at once */
+    private static final int DEFAULT_BATCH_SIZE = 64;
+
+    /** The default time a worker waits for more lookups, in microseconds */
+    private static final long DEFAULT_WINDOW = 1000L;
+
+    /** The default most lookups waiting for a worker */
+    private static final int DEFAULT_MAX_QUEUED = 4096;
+
+    /** The TTL of the records without one, in seconds */
+    private static final int DEFAULT_TIME_TO_LIVE = 86400;
+
+    private final DataSource dataSource;
+
+    private final int workerCount;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private long window = DEFAULT_WINDOW;
+
+    private int maxQueued = DEFAULT_MAX_QUEUED;
+
+    /** The query for each size of batch, by the power of two of the size */
+    private String[] queries;
+
+    /** The lookups waiting for a worker, created when the store starts */
+    private BlockingQueue<Lookup> lookups;
+
+    private final List<Thread> workers = new ArrayList<Thread>();
+
+    private volatile boolean running;
+
+    private final AtomicLong queryCount = new AtomicLong();
+
+
+    /**
+     * Creates a new instance of JdbcRecordStore.
+     *
+     * @param dataSource the database
+     */
+    public JdbcRecordStore( DataSource dataSource )
+    {
+        this( dataSource, DEFAULT_WORKERS );
+    }
+
+
+    /**
+     * Creates a new instance of JdbcRecordStore.
+     *
+     * @param dataSource the database, which should pool its connections
+     * @param workerCount the number of workers, the most connections used at once
+     */
+    public JdbcRecordStore( DataSource dataSource, int workerCount )
+    {
+        this.dataSource = dataSource;
+        this.workerCount = workerCount;
+    }
+
+
+    /**
+     * Starts the workers.
+     */
+    public synchronized void start()
+    {
+        if ( running )
+        {
+            return;
+        }
+
+        int powers = 1;
+
+        while ( ( 1 << ( powers - 1 ) ) < batchSize )
+        {
+            powers++;
+        }
+
+        queries = new String[powers];
+
+        for ( int ii = 0; ii < powers; ii++ )
+        {
+            queries[ii] = getQuery( 1 << ii );
+        }
+
+        lookups = new LinkedBlockingQueue<Lookup>( maxQueued );
+        running = true;
+
+        for ( int ii = 0; ii < workerCount; ii++ )
+        {
+            Thread worker = new Thread( new Runnable()
+            {
+                public void run()
+                {
+                    work();
+                }
+            }, "dns-jdbc-" + ii );
+            worker.setDaemon( true );
+            worker.start();
+            workers.add( worker );
+        }
+    }
+
+
+    /**
+     * Stops the workers.  The lookups waiting fail.
+     */
+    public synchronized void stop()
+    {
+        running = false;
+
+        for ( Thread worker : workers )
+        {
+            worker.interrupt();
+        }
+
+        for ( Thread worker : workers )
+        {
+            try
+            {
+                worker.join();
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        workers.clear();
+
+        if ( lookups != null )
+        {
+            List<Lookup> left = new ArrayList<Lookup>();
+            lookups.drainTo( left );
+            fail( left );
+        }
+    }
+
+
+    public Set<ResourceRecord> getRecords( QuestionRecord question ) throws DnsException
+    {
+        return await( getRecordsAsync( question ) );
+    }
+
+
+    /**
+     * Hands all the questions over to the workers at once, so that they are
+     * read in as few queries as the batches allow.
+     */
+    public List<Set<ResourceRecord>> getRecords( Collection<QuestionRecord> questions ) throws DnsException
+    {
+        List<CompletionStage<Set<ResourceRecord>>> pending = new ArrayList<CompletionStage<Set<ResourceRecord>>>(
+            questions.size() );
+
+        for ( QuestionRecord question : questions )
+        {
+            pending.add( getRecordsAsync( question ) );
+        }
+
+        List<Set<ResourceRecord>> answers = new ArrayList<Set<ResourceRecord>>( questions.size() );
+
+        for ( CompletionStage<Set<ResourceRecord>> lookup : pending )
+        {
+            answers.add( await( lookup ) );
+        }
+
+        return answers;
+    }
+
+
+    public CompletionStage<Set<ResourceRecord>> getRecordsAsync( QuestionRecord question )
+    {
+        Lookup lookup = new Lookup( question );
+
+        if ( !running )
+        {
+            lookup.completeExceptionally( new DnsException( ResponseCode.SERVER_FAILURE ) );
+
+            return lookup;
+        }
+
+        if ( !lookups.offer( lookup ) )
+        {
+            LOG.warn( "{} lookups waiting already, refusing {}", maxQueued, question );
+            lookup.completeExceptionally( new DnsException( ResponseCode.SERVER_FAILURE ) );
+
+            return lookup;
+        }
+
+        // the workers may have stopped meanwhile
+        if ( !running && lookups.remove( lookup ) )
+        {
+            lookup.completeExceptionally( new DnsException( ResponseCode.SERVER_FAILURE ) );
+        }
+
+        return lookup;
+    }
+
+
+    /**
+     * @return Returns the most names read at once.
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+
+    /**
+     * @param batchSize The most names to read at once, set before the store
+     * starts.
+     */
+    public void setBatchSize( int batchSize )
+    {
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * @return Returns the time a worker waits for more lookups, in microseconds.
+     */
+    public long getWindow()
+    {
+        return window;
+    }
+
+
+    /**
+     * @param window The time a worker waits for more lookups before reading
+     * the database, in microseconds, 0 to only take those waiting already.
+     */
+    public void setWindow( long window )
+    {
+        this.window = window;
+    }
+
+
+    /**
+     * @return Returns the most lookups waiting for a worker.
+     */
+    public int getMaxQueued()
+    {
+        return maxQueued;
+    }
+
+
+    /**
+     * @param maxQueued The most lookups waiting for a worker, past which
+     * lookups fail at once, set before the store starts.
+     */
+    public void setMaxQueued( int maxQueued )
+    {
+        this.maxQueued = maxQueued;
+    }
+
+
+    /**
+     * @return Returns the number of queries made to the database.
+     */
+    public long getQueryCount()
+    {
+        return queryCount.get();
+    }
+
+
+    /**
+     * Takes batches of lookups and answers them, until stopped.
+     */
+    private void work()
+    {
+        List<Lookup> batch = new ArrayList<Lookup>();
+        Reader reader = new Reader();
+
+        while ( running )
+        {
+            try
+            {
+                batch.add( lookups.take() );
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos( window );
+
+                while ( batch.size() < batchSize )
+                {
+                    long wait = deadline - System.nanoTime();
+                    Lookup lookup = wait > 0 ? lookups.poll( wait, TimeUnit.NANOSECONDS ) : lookups.poll();
+
+                    if ( lookup == null )
+                    {
+                        break;
+                    }
+
+                    batch.add( lookup );
+                }
+            }
+            catch ( InterruptedException ie )
+            {
+                // stopping
+            }
+
+            if ( !batch.isEmpty() )
+            {
+                answer( reader, batch );
+                batch.clear();
+            }
+        }
+
+        reader.close();
+    }
+
+
+    /**
+     * Reads the records of the names of a batch of lookups, and answers them.
+     */
+    private void answer( Reader reader, List<Lookup> batch )
+    {
+        try
+        {
+            Map<String, List<ResourceRecord>> records = new HashMap<String, List<ResourceRecord>>();
+
+            for ( Lookup lookup : batch )
+            {
+                records.put( toKey( lookup.question.getDomainName() ), null );
+            }
+
+            reader.read( records );
+            complete( batch, records );
+        }
+        catch ( SQLException sqle )
+        {
+            LOG.error( "Could not read the records of {} lookups", batch.size(), sqle );
+            reader.close();
+            fail( batch );
+        }
+        catch ( RuntimeException re )
+        {
+            // neither a bug nor a driver failing unexpectedly may kill the worker and leave the batch waiting
+            LOG.error( "Could not answer {} lookups", batch.size(), re );
+            reader.close();
+            fail( batch );
+        }
+    }
+
+
+    /**
+     * Answers a batch of lookups from the records read for their names.
+     */
+    private static void complete( List<Lookup> batch, Map<String, List<ResourceRecord>> records )
+    {
+        for ( Lookup lookup : batch )
+        {
+            List<ResourceRecord> named = records.get( toKey( lookup.question.getDomainName() ) );
+
+            if ( named == null )
+            {
+                lookup.complete( null );
+                continue;
+            }
+
+            boolean any = lookup.question.getRecordType() == RecordType.ANY;
+            int typeCode = lookup.question.getTypeCode();
+            RecordClass recordClass = lookup.question.getRecordClass();
+            List<ResourceRecord> found = new ArrayList<ResourceRecord>();
+
+            for ( ResourceRecord record : named )
+            {
+                if ( ( any || typeCode == RecordSet.getTypeCode( record ) )
+                    && ( recordClass == RecordClass.ANY || recordClass == record.getRecordClass() ) )
+                {
+                    found.add( record );
+                }
+            }
+
+            if ( found.isEmpty() )
+            {
+                // the name exists, so the answer is NODATA rather than a name error
+                lookup.complete( RecordSet.getNoData( Collections.<RecordSet> emptyList() ) );
+                continue;
+            }
+
+            // records of the same name and type are equal, a set would keep one of them
+            lookup.complete( new RecordSet( found ) );
+        }
+    }
+
+
+    /**
+     * Reads the records of a result, one row per attribute of each, in the
+     * order of their ids.
+     */
+    private static void read( ResultSet resultSet, Map<String, List<ResourceRecord>> records ) throws SQLException
+    {
+        Map<Long, ResourceRecordModifier> modifiers = new LinkedHashMap<Long, ResourceRecordModifier>();
+        Map<Long, String> names = new HashMap<Long, String>();
+
+        while ( resultSet.next() )
+        {
+            long id = resultSet.getLong( 1 );
+            ResourceRecordModifier modifier = modifiers.get( id );
+
+            if ( modifier == null && !names.containsKey( id ) )
+            {
+                modifier = getModifier( resultSet );
+                names.put( id, toKey( resultSet.getString( 2 ) ) );
+
+                if ( modifier != null )
+                {
+                    modifiers.put( id, modifier );
+                }
+            }
+
+            String attribute = resultSet.getString( 6 );
+            String value = resultSet.getString( 7 );
+
+            if ( modifier != null && attribute != null && value != null )
+            {
+                modifier.put( attribute, value );
+            }
+        }
+
+        for ( Map.Entry<Long, ResourceRecordModifier> modifier : modifiers.entrySet() )
+        {
+            String name = names.get( modifier.getKey() );
+            List<ResourceRecord> named = records.get( name );
+
+            if ( named == null )
+            {
+                named = new ArrayList<ResourceRecord>();
+                records.put( name, named );
+            }
+
+            named.add( modifier.getValue().getEntry() );
+        }
+    }
+
+
+    /**
+     * Returns the modifier of the record of a row.
+     *
+     * @return The modifier, or null if the record is not valid.
+     */
+    private static ResourceRecordModifier getModifier( ResultSet resultSet ) throws SQLException
+    {
+        ResourceRecordModifier modifier = new ResourceRecordModifier();
+        modifier.setDnsName( toKey( resultSet.getString( 2 ) ) );
+
+        try
+        {
+            modifier.setDnsType( getType( resultSet.getString( 3 ), modifier ) );
+            String recordClass = resultSet.getString( 4 );
+            modifier.setDnsClass( recordClass == null ? RecordClass.IN : RecordClass.valueOf( recordClass
+                .toUpperCase() ) );
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            LOG.warn( "Ignoring the record {}: {}", resultSet.getLong( 1 ), iae.getMessage() );
+
+            return null;
+        }
+
+        int ttl = resultSet.getInt( 5 );
+        modifier.setDnsTtl( resultSet.wasNull() ? DEFAULT_TIME_TO_LIVE : ttl );
+
+        return modifier;
+    }
+
+
+    /**
+     * Returns the type of a record by its mnemonic, or by its code in the
+     * generic form of RFC 3597, section 5, such as TYPE64, in which case a
+     * code without a {@link RecordType} constant is kept in the record.
+     *
+     * @throws IllegalArgumentException if there is no such type
+     */
+    private static RecordType getType( String type, ResourceRecordModifier modifier )
+    {
+        if ( !type.regionMatches( true, 0, "TYPE", 0, 4 ) )
+        {
+            RecordType recordType = RecordType.valueOf( type.toUpperCase() );
+
+            if ( recordType == RecordType.UNKNOWN )
+            {
+                throw new IllegalArgumentException( "A record of an unknown type needs its type code" );
+            }
+
+            return recordType;
+        }
+
+        int typeCode = Integer.parseInt( type.substring( 4 ) );
+
+        if ( typeCode < 0 || typeCode > 0xFFFF )
+        {
+            throw new IllegalArgumentException( "Invalid type code " + typeCode );
+        }
+
+        RecordType recordType = RecordType.convert( ( short ) typeCode );
+
+        if ( recordType == RecordType.UNKNOWN )
+        {
+            modifier.put( DnsAttribute.TYPE, String.valueOf( typeCode ) );
+        }
+
+        return recordType;
+    }
+
+
+    /**
+     * Waits for a lookup to complete.
+     */
+    private static Set<ResourceRecord> await( CompletionStage<Set<ResourceRecord>> lookup ) throws DnsException
+    {
+        try
+        {
+            return lookup.toCompletableFuture().get();
+        }
+        catch ( ExecutionException ee )
+        {
+            if ( ee.getCause() instanceof DnsException )
+            {
+                throw ( DnsException ) ee.getCause();
+            }
+
+            throw new DnsException( ResponseCode.SERVER_FAILURE );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new DnsException( ResponseCode.SERVER_FAILURE );
+        }
+    }
+
+
+    private static void fail( List<Lookup> lookups )
+    {
+        for ( Lookup lookup : lookups )
+        {
+            lookup.completeExceptionally( new DnsException( ResponseCode.SERVER_FAILURE ) );
+        }
+    }
+
+
+    /**
+     * Returns the query of the records of a number of names.
+     */
+    private static String getQuery( int size )
+    {
+        StringBuilder query = new StringBuilder();
+        query.append( "SELECT r.id, r.name, r.type, r.class, r.ttl, a.attribute, a.value " );
+        query.append( "FROM dns_record r LEFT OUTER JOIN dns_attribute a ON a.record_id = r.id " );
+        query.append( "WHERE r.name IN (?" );
+
+        for ( int ii = 1; ii < size; ii++ )
+        {
+            query.append( ", ?" );
+        }
+
+        return query.append( ") ORDER BY r.id" ).toString();
+    }
+
+
+    /**
+     * Returns a name in lower case, without its trailing dot.
+     */
+    private static String toKey( String name )
+    {
+        name = name.toLowerCase();
+
+        return name.endsWith( "." ) ? name.substring( 0, name.length() - 1 ) : name;
+    }
+
+
+    /**
+     * The connection of a worker, held from one batch to the next along with
+     * the statements prepared on it, one per size of batch.
+     */
+    private final class Reader
+    {
+        private Connection connection;
+
+        /** The statement of each size of batch, prepared on first use */
+        private final PreparedStatement[] statements = new PreparedStatement[queries.length];
+
+
+        /**
+         * Reads the records of names.
+         *
+         * @param records the records of each name, filled in, left null if
+         * the name has none
+         */
+        void read( Map<String, List<ResourceRecord>> records ) throws SQLException
+        {
+            List<String> names = new ArrayList<String>( records.keySet() );
+            int power = 0;
+
+            while ( ( 1 << power ) < names.size() )
+            {
+                power++;
+            }
+
+            if ( connection == null )
+            {
+                connection = dataSource.getConnection();
+            }
+
+            if ( statements[power] == null )
+            {
+                statements[power] = connection.prepareStatement( queries[power] );
+            }
+
+            PreparedStatement statement = statements[power];
+
+            for ( int ii = 0; ii < 1 << power; ii++ )
+            {
+                // padded with the last name, to reuse the statement
+                statement.setString( ii + 1, names.get( Math.min( ii, names.size() - 1 ) ) );
+            }
+
+            queryCount.incrementAndGet();
+            ResultSet resultSet = statement.executeQuery();
+
+            try
+            {
+                JdbcRecordStore.read( resultSet, records );
+            }
+            finally
+            {
+                resultSet.close();
+            }
+        }
+
+
+        /**
+         * Closes the statements and gives the connection back, once the
+         * worker stops or a query failed on the connection.
+         */
+        void close()
+        {
+            for ( int ii = 0; ii < statements.length; ii++ )
+            {
+                if ( statements[ii] != null )
+                {
+                    try
+                    {
+                        statements[ii].close();
+                    }
+                    catch ( SQLException sqle )
+                    {
+                        LOG.warn( "Could not close a statement: {}", sqle.getMessage() );
+                    }
+
+                    statements[ii] = null;
+                }
+            }
+
+            if ( connection != null )
+            {
+                try
+                {
+                    connection.close();
+                }
+                catch ( SQLException sqle )
+                {
+                    LOG.warn( "Could not close a connection: {}", sqle.getMessage() );
+                }
+
+                connection = null;
+            }
+        }
+    }
+
+
+    /**
+     * A lookup waiting for a worker.
+     */
+    private static final class Lookup extends CompletableFuture<Set<ResourceRecord>>
+    {
+        private final QuestionRecord question;
+
+
+        Lookup( QuestionRecord question )
+        {
+            this.question = question;
+        }
+    }
+}
@@ -7,6 +7,9 @@ import org.apache.directory.server.dns.messages.QuestionRecord;
 import org.apache.directory.server.dns.messages.ResourceRecord;
 import org.apache.directory.server.dns.store.RecordStore;
 
+/**
+ * @deprecated Use {@link org.apache.directory.server.dns.store.directory.DirectoryRecordStore}
+ */
 @Deprecated
 public class JndiRecordStoreImpl implements RecordStore {
 
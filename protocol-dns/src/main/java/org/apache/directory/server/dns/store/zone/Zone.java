@@ -0,0 +1,645 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.directory.server.dns.io.encoder.DnsMessageEncoder;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResourceRecordImpl;
+import org.apache.directory.server.dns.messages.ResourceRecordModifier;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.directory.server.dns.util.BloomFilter;
+import org.apache.directory.server.dns.util.PersistentHashMap;
+import org.apache.mina.core.buffer.IoBuffer;
+
+
+/**
+ * An immutable, in-memory DNS zone: the RRsets of every name at or below the
+ * zone origin, indexed by name and type code.  Zones are built with a
+ * {@link ZoneModifier}, which also resolves the links from NS, MX and SRV
+ * RRsets to the address records of their targets, so that lookups never have
+ * to.  The indexes are {@link PersistentHashMap}s, so a modifier can derive
+ * a changed zone from this one at the cost of the change, sharing everything
+ * else, while queries go on reading this one.<p>
+ * 
+ * {@link #resolve(String, RecordType)} answers a query the way an
+ * authoritative server does within the zone: it follows CNAME and DNAME
+ * records and synthesises records from wildcards.  Answers which took more
+ * than an exact match are cached with the zone, so they cost no more than a
+ * direct one once they have been resolved.  Names at or below a zone cut,
+ * a name other than the apex owning NS records, are answered with a
+ * referral to the delegated zone.  A {@link BloomFilter} of the names tells
+ * most names which do not exist with a few hash probes, so that queries for
+ * random names cost next to nothing.<p>
+ * 
+ * Names are looked up in their canonical form, in lower case and without a
+ * trailing dot, as returned by {@link #toKey(String)}.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class Zone
+{
+    /** The most CNAME and DNAME records followed for one query, which also stops loops */
+    static final int MAX_CHAIN_LENGTH = 8;
+
+    /** The most resolved answers cached, so random names cannot exhaust the heap */
+    static final int MAX_RESOLVED = 10000;
+
+    static final Integer CNAME = RecordSet.getTypeCode( RecordType.CNAME );
+
+    static final Integer DNAME = RecordSet.getTypeCode( RecordType.DNAME );
+
+    static final int ANY = RecordSet.getTypeCode( RecordType.ANY );
+
+    /** The canonical name of the zone apex */
+    private final String origin;
+
+    /** The RRsets of each name of the zone, by type code, including empty non-terminals */
+    final PersistentHashMap<String, Map<Integer, RecordSet>> names;
+
+    /** The number of names directly below each name having any */
+    final PersistentHashMap<String, Integer> children;
+
+    /** The referrals to the delegated zones, by the name of their zone cut */
+    final PersistentHashMap<String, RecordSet> referrals;
+
+    /** The names owning NS, MX or SRV records pointing to each name */
+    final PersistentHashMap<String, Set<String>> referrers;
+
+    /** The names of the zone and their ancestors, and maybe a few names removed since */
+    final BloomFilter filter;
+
+    /** The names owning a DNAME record or having a wildcard child, which answer for names below them */
+    final PersistentHashMap<String, Boolean> synthesisers;
+
+    /** The answer for the names which exist without records of the type asked for */
+    private final RecordSet noData;
+
+    /** The answer for the names which do not exist */
+    private final RecordSet nameError;
+
+    /** The answers which were chased or synthesised, by type and name */
+    private final ConcurrentMap<String, RecordSet> resolved = new ConcurrentHashMap<String, RecordSet>();
+
+
+    /**
+     * Creates a new instance of Zone.  Use a {@link ZoneModifier}.
+     */
+    Zone( String origin, PersistentHashMap<String, Map<Integer, RecordSet>> names,
+        PersistentHashMap<String, Integer> children, PersistentHashMap<String, RecordSet> referrals,
+        PersistentHashMap<String, Set<String>> referrers, BloomFilter filter,
+        PersistentHashMap<String, Boolean> synthesisers )
+    {
+        this.origin = origin;
+        this.names = names;
+        this.children = children;
+        this.referrals = referrals;
+        this.referrers = referrers;
+        this.filter = filter;
+        this.synthesisers = synthesisers;
+
+        List<RecordSet> authority = getAuthority( getRecordSet( origin, RecordType.SOA ) );
+        this.noData = RecordSet.getNoData( authority );
+        this.nameError = getNameError( authority );
+    }
+
+
+    /**
+     * @return Returns the canonical name of the zone apex.
+     */
+    public String getOrigin()
+    {
+        return origin;
+    }
+
+
+    /**
+     * Returns the serial number of the zone, from the SOA record at its apex.
+     *
+     * @return The serial number, or -1 if the zone has no SOA record.
+     */
+    public long getSerial()
+    {
+        RecordSet soa = getRecordSet( origin, RecordType.SOA );
+
+        if ( soa == null || soa.isEmpty() )
+        {
+            return -1;
+        }
+
+        return Long.parseLong( soa.iterator().next().get( DnsAttribute.SOA_SERIAL ) );
+    }
+
+
+    /**
+     * Returns the RRset of a name, or null if the name has none of that type.
+     *
+     * @param name the canonical name
+     * @param type
+     * @return The {@link RecordSet}, or null.
+     */
+    public RecordSet getRecordSet( String name, RecordType type )
+    {
+        return getRecordSet( name, RecordSet.getTypeCode( type ) );
+    }
+
+
+    /**
+     * Returns the RRset of a name, or null if the name has none of that type.
+     *
+     * @param name the canonical name
+     * @param typeCode the type code, also of a type without a {@link RecordType} constant
+     * @return The {@link RecordSet}, or null.
+     */
+    public RecordSet getRecordSet( String name, int typeCode )
+    {
+        Map<Integer, RecordSet> recordSets = names.get( name );
+
+        return recordSets == null ? null : recordSets.get( typeCode );
+    }
+
+
+    /**
+     * Answers a query for a name of this zone.  CNAME records are followed
+     * to the RRset of the name they point to as long as it is in this zone,
+     * and so are DNAME records above the name.  A name which does not exist
+     * is answered from the wildcard of its closest encloser, if there is
+     * one.  The answer holds all the records of the chain, in order.  ANY
+     * is answered with all the RRsets of the name.
+     *
+     * @param name the canonical name
+     * @param type
+     * @return The answer, an empty {@link RecordSet#isNoData() NODATA}
+     * answer if the name exists without records of the type nor a CNAME, or
+     * null if the name does not exist.
+     */
+    public RecordSet resolve( String name, RecordType type )
+    {
+        return resolve( name, RecordSet.getTypeCode( type ) );
+    }
+
+
+    /**
+     * Answers a query for a name of this zone, see
+     * {@link #resolve(String, RecordType)}.
+     *
+     * @param name the canonical name
+     * @param typeCode the type code, also of a type without a {@link RecordType} constant
+     * @return The answer, NODATA, or null if the name does not exist.
+     */
+    public RecordSet resolve( String name, int typeCode )
+    {
+        if ( !referrals.isEmpty() )
+        {
+            RecordSet referral = getReferral( name );
+
+            if ( referral != null )
+            {
+                return referral;
+            }
+        }
+
+        if ( !filter.mightContain( name ) && !isSynthesised( name ) )
+        {
+            // the name does not exist, and no wildcard nor DNAME record answers for it
+            return null;
+        }
+
+        Map<Integer, RecordSet> recordSets = names.get( name );
+
+        if ( recordSets != null )
+        {
+            RecordSet recordSet = getAnswer( recordSets, typeCode );
+
+            if ( recordSet != null && typeCode != ANY )
+            {
+                return recordSet;
+            }
+
+            if ( recordSet == null && !recordSets.containsKey( CNAME ) )
+            {
+                return noData;
+            }
+        }
+
+        String key = typeCode + " " + name;
+        RecordSet recordSet = resolved.get( key );
+
+        if ( recordSet == null )
+        {
+            recordSet = chase( name, typeCode );
+
+            if ( recordSet != null && resolved.size() < MAX_RESOLVED )
+            {
+                resolved.putIfAbsent( key, recordSet );
+            }
+        }
+
+        return recordSet;
+    }
+
+
+    /**
+     * Returns the answer for the names which do not exist in this zone, the
+     * empty authoritative answer carrying the SOA RRset of the zone.
+     *
+     * @return The name error answer.
+     */
+    public RecordSet getNameError()
+    {
+        return nameError;
+    }
+
+
+    /**
+     * Returns the referral for a name at or below a zone cut.  The name is
+     * walked up once to the apex, and the cut nearest the apex wins, as any
+     * data below it is only glue for the delegated zone.
+     *
+     * @param name the canonical name
+     * @return The referral, or null if the name is not delegated.
+     */
+    public RecordSet getReferral( String name )
+    {
+        RecordSet referral = null;
+
+        while ( name.length() > origin.length() )
+        {
+            RecordSet cut = referrals.get( name );
+
+            if ( cut != null )
+            {
+                referral = cut;
+            }
+
+            name = getParent( name );
+        }
+
+        return referral;
+    }
+
+
+    /**
+     * Returns the closest encloser of a name of this zone: the name itself if
+     * it exists, else its nearest existing ancestor.  As empty non-terminals
+     * exist, this is at worst the zone origin.
+     *
+     * @param name the canonical name
+     * @return The closest encloser.
+     */
+    public String getClosestEncloser( String name )
+    {
+        while ( !names.containsKey( name ) && name.length() > origin.length() )
+        {
+            name = getParent( name );
+        }
+
+        return name;
+    }
+
+
+    /**
+     * Returns whether a wildcard or DNAME record may answer for a name which
+     * does not exist, being on the path from the name up to the apex.
+     */
+    private boolean isSynthesised( String name )
+    {
+        if ( synthesisers.isEmpty() )
+        {
+            return false;
+        }
+
+        while ( name.length() > origin.length() )
+        {
+            name = getParent( name );
+
+            if ( synthesisers.containsKey( name ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private RecordSet chase( String name, int typeCode )
+    {
+        List<ResourceRecord> answer = new ArrayList<ResourceRecord>();
+        List<RecordSet> additional = Collections.emptyList();
+        boolean exists = false;
+
+        for ( int ii = 0; ii < MAX_CHAIN_LENGTH && contains( name ); ii++ )
+        {
+            if ( ii > 0 && !referrals.isEmpty() && getReferral( name ) != null )
+            {
+                // the chain leads into a delegated zone, the client follows it from here
+                break;
+            }
+
+            Map<Integer, RecordSet> recordSets = names.get( name );
+            boolean wildcard = false;
+
+            if ( recordSets == null )
+            {
+                String encloser = getClosestEncloser( name );
+                RecordSet dname = names.get( encloser ).get( DNAME );
+
+                if ( dname != null )
+                {
+                    // the name is below a DNAME, substitute its suffix
+                    ResourceRecord record = dname.iterator().next();
+                    String target = name.substring( 0, name.length() - encloser.length() )
+                        + toKey( record.get( DnsAttribute.DOMAIN_NAME ) );
+
+                    answer.addAll( dname );
+                    answer.add( getCanonicalName( name, target, record.getTimeToLive() ) );
+                    name = target;
+                    continue;
+                }
+
+                recordSets = names.get( "*." + encloser );
+
+                if ( recordSets == null )
+                {
+                    break;
+                }
+
+                wildcard = true;
+            }
+
+            exists = true;
+            RecordSet recordSet = getAnswer( recordSets, typeCode );
+
+            if ( recordSet != null )
+            {
+                addAll( answer, recordSet, wildcard ? name : null );
+                additional = recordSet.getAdditionalRecordSets();
+                break;
+            }
+
+            RecordSet cname = recordSets.get( CNAME );
+
+            if ( cname == null )
+            {
+                break;
+            }
+
+            addAll( answer, cname, wildcard ? name : null );
+            name = toKey( cname.iterator().next().get( DnsAttribute.DOMAIN_NAME ) );
+        }
+
+        if ( answer.isEmpty() )
+        {
+            // a wildcard matching the name makes it exist, see RFC 4592
+            return exists ? noData : null;
+        }
+
+        return new RecordSet( answer, additional );
+    }
+
+
+    /**
+     * Returns the RRset of a type among the RRsets of a name, or all of them
+     * together for ANY, or null if there are none.
+     */
+    private static RecordSet getAnswer( Map<Integer, RecordSet> recordSets, int typeCode )
+    {
+        if ( typeCode != ANY )
+        {
+            return recordSets.get( typeCode );
+        }
+
+        if ( recordSets.size() <= 1 )
+        {
+            return recordSets.isEmpty() ? null : recordSets.values().iterator().next();
+        }
+
+        List<ResourceRecord> records = new ArrayList<ResourceRecord>();
+        List<RecordSet> additional = new ArrayList<RecordSet>();
+
+        for ( RecordSet recordSet : recordSets.values() )
+        {
+            records.addAll( recordSet );
+            additional.addAll( recordSet.getAdditionalRecordSets() );
+        }
+
+        return new RecordSet( records, additional );
+    }
+
+
+    /**
+     * Returns the authority section of the negative answers of a zone, its
+     * SOA RRset, so that resolvers can cache them as per RFC 2308.
+     *
+     * @param soa the SOA RRset of the zone, or null
+     * @return The authority RRsets.
+     */
+    static List<RecordSet> getAuthority( RecordSet soa )
+    {
+        return soa == null ? Collections.<RecordSet> emptyList() : Collections.singletonList( soa );
+    }
+
+
+    /**
+     * Returns the answer for the names which do not exist in a zone, with its
+     * authority section encoded once, so that name error replies copy it
+     * instead of encoding the SOA record each time.
+     *
+     * @param authority the authority section, see {@link #getAuthority(RecordSet)}
+     * @return The name error answer.
+     */
+    static RecordSet getNameError( List<RecordSet> authority )
+    {
+        IoBuffer encoded = IoBuffer.allocate( 256, false ).setAutoExpand( true );
+
+        try
+        {
+            for ( RecordSet recordSet : authority )
+            {
+                for ( ResourceRecord record : recordSet )
+                {
+                    DnsMessageEncoder.putRecord( encoded, record );
+                }
+            }
+        }
+        catch ( IOException ioe )
+        {
+            // each reply tries again, and logs why it fails
+            return RecordSet.getNameError( authority );
+        }
+
+        encoded.flip();
+
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get( bytes );
+
+        return RecordSet.getNameError( authority, bytes );
+    }
+
+
+    /**
+     * Adds the records of an RRset to an answer, under another owner name if
+     * they come from a wildcard.
+     */
+    static void addAll( List<ResourceRecord> answer, RecordSet recordSet, String owner )
+    {
+        for ( ResourceRecord record : recordSet )
+        {
+            answer.add( owner == null ? record : new ResourceRecordImpl( owner, record ) );
+        }
+    }
+
+
+    /**
+     * Returns the CNAME record synthesised from a DNAME, as per RFC 6672.
+     */
+    static ResourceRecord getCanonicalName( String name, String target, int timeToLive )
+    {
+        ResourceRecordModifier modifier = new ResourceRecordModifier();
+        modifier.setDnsName( name );
+        modifier.setDnsType( RecordType.CNAME );
+        modifier.setDnsClass( RecordClass.IN );
+        modifier.setDnsTtl( timeToLive );
+        modifier.put( DnsAttribute.DOMAIN_NAME, target );
+
+        return modifier.getEntry();
+    }
+
+
+    /**
+     * Returns all the RRsets of a name, by type code.
+     *
+     * @param name the canonical name
+     * @return The RRsets, empty if the name does not exist.
+     */
+    public Map<Integer, RecordSet> getRecordSets( String name )
+    {
+        Map<Integer, RecordSet> recordSets = names.get( name );
+
+        return recordSets == null ? Collections.<Integer, RecordSet> emptyMap() : recordSets;
+    }
+
+
+    /**
+     * Returns the names of this zone, including the empty non-terminals and
+     * the names of out of zone glue, in no particular order.
+     *
+     * @return The canonical names, which will not change.
+     */
+    public Set<String> getNames()
+    {
+        return Collections.unmodifiableSet( names.keySet() );
+    }
+
+
+    /**
+     * Returns whether a name exists in this zone, owning records or being an
+     * empty non-terminal.
+     *
+     * @param name the canonical name
+     * @return true if the name exists.
+     */
+    public boolean hasName( String name )
+    {
+        return names.containsKey( name );
+    }
+
+
+    /**
+     * Returns whether a name is the origin of this zone or below it.
+     *
+     * @param name the canonical name
+     * @return true if the name belongs in this zone.
+     */
+    public boolean contains( String name )
+    {
+        return isSubdomain( name, origin );
+    }
+
+
+    public String toString()
+    {
+        return "Zone[" + origin + ", " + names.size() + " names]";
+    }
+
+
+    /**
+     * Returns the canonical form of a domain name, in lower case and without
+     * a trailing dot.
+     *
+     * @param domainName
+     * @return The canonical name.
+     */
+    public static String toKey( String domainName )
+    {
+        int length = domainName.length();
+
+        if ( length > 0 && domainName.charAt( length - 1 ) == '.' )
+        {
+            domainName = domainName.substring( 0, length - 1 );
+        }
+
+        return domainName.toLowerCase();
+    }
+
+
+    /**
+     * Returns the parent of a canonical name, the root, an empty name, being
+     * the parent of the names of a single label.
+     */
+    static String getParent( String name )
+    {
+        int dot = name.indexOf( '.' );
+
+        return dot < 0 ? "" : name.substring( dot + 1 );
+    }
+
+
+    /**
+     * Returns whether a canonical name is equal to, or below, another.  The
+     * root, an empty name, is above every name.
+     */
+    static boolean isSubdomain( String name, String parent )
+    {
+        if ( parent.length() == 0 || name.equals( parent ) )
+        {
+            return true;
+        }
+
+        int start = name.length() - parent.length() - 1;
+
+        return start > 0 && name.charAt( start ) == '.' && name.endsWith( parent );
+    }
+}
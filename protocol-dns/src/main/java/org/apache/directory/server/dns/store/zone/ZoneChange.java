@@ -0,0 +1,153 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.DnsAttribute;
+
+
+/**
+ * A change of a zone, as the records it removed and the records it added.
+ * When the change moved the serial number, the old SOA record comes first
+ * among the removed records and the new one first among the added records,
+ * which is the form of a difference sequence of an IXFR reply (RFC 1995).<p>
+ * 
+ * Applying a change removes and adds records by their data, so applying it
+ * again to a zone which already has it does not change the zone.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneChange
+{
+    private final String origin;
+
+    /** The position of the change in the journal, or 0 if not journaled */
+    private final long sequence;
+
+    private final List<ResourceRecord> removed;
+
+    private final List<ResourceRecord> added;
+
+
+    /**
+     * Creates a new instance of ZoneChange.
+     *
+     * @param origin the canonical name of the zone apex
+     * @param sequence the position of the change in the journal
+     * @param removed the records removed
+     * @param added the records added
+     */
+    public ZoneChange( String origin, long sequence, List<ResourceRecord> removed, List<ResourceRecord> added )
+    {
+        this.origin = origin;
+        this.sequence = sequence;
+        this.removed = Collections.unmodifiableList( removed );
+        this.added = Collections.unmodifiableList( added );
+    }
+
+
+    /**
+     * @return Returns the canonical name of the zone apex.
+     */
+    public String getOrigin()
+    {
+        return origin;
+    }
+
+
+    /**
+     * @return Returns the position of the change in the journal.
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+
+    /**
+     * @return Returns the records removed.
+     */
+    public List<ResourceRecord> getRemoved()
+    {
+        return removed;
+    }
+
+
+    /**
+     * @return Returns the records added.
+     */
+    public List<ResourceRecord> getAdded()
+    {
+        return added;
+    }
+
+
+    /**
+     * @return Returns the serial number of the zone before the change, or -1
+     * if the change did not move it.
+     */
+    public long getFromSerial()
+    {
+        return getSerial( removed );
+    }
+
+
+    /**
+     * @return Returns the serial number of the zone after the change, or -1
+     * if the change did not move it.
+     */
+    public long getToSerial()
+    {
+        return getSerial( added );
+    }
+
+
+    /**
+     * @return Returns true if the change neither removes nor adds a record.
+     */
+    public boolean isEmpty()
+    {
+        return removed.isEmpty() && added.isEmpty();
+    }
+
+
+    public String toString()
+    {
+        return "ZoneChange[" + origin + ", " + sequence + ", -" + removed.size() + " +" + added.size() + "]";
+    }
+
+
+    private static long getSerial( List<ResourceRecord> records )
+    {
+        if ( records.isEmpty() || records.get( 0 ).getRecordType() != RecordType.SOA )
+        {
+            return -1;
+        }
+
+        return Long.parseLong( records.get( 0 ).get( DnsAttribute.SOA_SERIAL ) );
+    }
+}
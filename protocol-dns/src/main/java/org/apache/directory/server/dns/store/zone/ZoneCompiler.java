@@ -0,0 +1,461 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.server.dns.io.encoder.DnsMessageEncoder;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.mina.core.buffer.IoBuffer;
+
+
+/**
+ * Compiles a {@link Zone} into the binary image a {@link ZoneImage} serves
+ * from.  The image is built once, offline, and never changes afterwards.
+ * It is laid out as follows, all integers in network order:
+ * <pre>
+ * header     magic, version, name count, hash slot count, index of the origin
+ * name table the 64 bit offset of each name entry, sorted by name
+ * hash index open addressing slots holding a name index plus one, 0 if free
+ * entries    for each name: its length and UTF-8 octets, the index of the
+ *            zone cut it is at or below or -1, the RRset count, then each
+ *            RRset: its type, the name and type of each of its additional
+ *            RRsets, its record count, its length and its records in wire form
+ * </pre>
+ * 
+ * A first pass lays the entries out, so the image is then written front to
+ * back, straight into a file or into buffers of exactly the right size.
+ * Images are written to files, to be mapped by any number of processes, or
+ * kept in memory outside of the heap, see {@link #compile(Zone, boolean)}.
+ * An image may be larger than a single buffer can be; it is then held in
+ * several, each {@link #CHUNK_SIZE} octets but the last.
+ * {@link #main(String[])} compiles the zones kept in a {@link ZoneJournal}
+ * directory, one image per zone.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneCompiler
+{
+    /** The first octets of an image, "DNZI" */
+    static final int MAGIC = 0x444E5A49;
+
+    static final int VERSION = 2;
+
+    static final int HEADER_LENGTH = 20;
+
+    /** The size of the buffers an image is held in, and mapped by */
+    public static final int CHUNK_SIZE = 1 << 30;
+
+    /** The file name extension of the images */
+    public static final String EXTENSION = ".zimg";
+
+    static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private final Zone zone;
+
+    /** The names of the zone, sorted */
+    private final List<String> names;
+
+    private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+    /** The offset of each name entry */
+    private final long[] entries;
+
+    /** The name index plus one held in each hash slot */
+    private final int[] slots;
+
+    /** The length of the whole image */
+    private final long length;
+
+    /** The records of an RRset, encoded one RRset at a time */
+    private final IoBuffer scratch = IoBuffer.allocate( 1024, false ).setAutoExpand( true );
+
+
+    /**
+     * Compiles a zone into an image file, replacing the file at once if it
+     * exists.
+     *
+     * @param zone
+     * @param file
+     * @throws IOException if a record cannot be encoded or the file written
+     */
+    public static void compile( Zone zone, File file ) throws IOException
+    {
+        File temporary = new File( file.getPath() + ".tmp" );
+        FileOutputStream out = new FileOutputStream( temporary );
+
+        try
+        {
+            DataOutputStream data = new DataOutputStream( new BufferedOutputStream( out, 65536 ) );
+            new ZoneCompiler( zone ).write( data );
+            data.flush();
+            out.getFD().sync();
+        }
+        finally
+        {
+            out.close();
+        }
+
+        Files.move( temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE );
+    }
+
+
+    /**
+     * Compiles a zone into an image in memory.  A direct image lives outside
+     * of the heap, so the garbage collector never has to go through its
+     * records, however many there are.
+     *
+     * @param zone
+     * @param direct whether to allocate the image outside of the heap
+     * @return The image, in buffers of {@link #CHUNK_SIZE} octets but the
+     * last, exactly as large as they need to be.
+     * @throws IOException if a record cannot be encoded
+     */
+    public static ByteBuffer[] compile( Zone zone, boolean direct ) throws IOException
+    {
+        return compile( zone, direct, CHUNK_SIZE );
+    }
+
+
+    static ByteBuffer[] compile( Zone zone, boolean direct, int chunkSize ) throws IOException
+    {
+        ZoneCompiler compiler = new ZoneCompiler( zone );
+        ByteBuffer[] chunks = new ByteBuffer[( int ) ( ( compiler.length + chunkSize - 1 ) / chunkSize )];
+
+        for ( int ii = 0; ii < chunks.length; ii++ )
+        {
+            int size = ( int ) Math.min( chunkSize, compiler.length - ( long ) ii * chunkSize );
+            chunks[ii] = direct ? ByteBuffer.allocateDirect( size ) : ByteBuffer.allocate( size );
+        }
+
+        compiler.write( new DataOutputStream( new ChunkOutputStream( chunks ) ) );
+
+        for ( ByteBuffer chunk : chunks )
+        {
+            chunk.flip();
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Lays a zone out, measuring each of its entries.
+     */
+    private ZoneCompiler( Zone zone ) throws IOException
+    {
+        this.zone = zone;
+
+        names = new ArrayList<String>( zone.getNames() );
+        Collections.sort( names );
+
+        for ( int ii = 0; ii < names.size(); ii++ )
+        {
+            indexes.put( names.get( ii ), ii );
+        }
+
+        int slotCount = 2;
+
+        while ( slotCount < names.size() * 2 )
+        {
+            slotCount <<= 1;
+        }
+
+        slots = new int[slotCount];
+        entries = new long[names.size()];
+
+        long position = HEADER_LENGTH + 8L * names.size() + 4L * slotCount;
+
+        for ( int ii = 0; ii < names.size(); ii++ )
+        {
+            byte[] key = names.get( ii ).getBytes( UTF_8 );
+            int slot = hash( key, 0, key.length ) & ( slotCount - 1 );
+
+            while ( slots[slot] != 0 )
+            {
+                slot = ( slot + 1 ) & ( slotCount - 1 );
+            }
+
+            slots[slot] = ii + 1;
+            entries[ii] = position;
+            position += 2 + key.length + 4 + 2;
+
+            for ( RecordSet recordSet : zone.getRecordSets( names.get( ii ) ).values() )
+            {
+                position += 2 + 2 + 6 * getAdditional( recordSet ).size() + 2 + 4 + encode( recordSet );
+            }
+        }
+
+        length = position;
+    }
+
+
+    /**
+     * Writes the image out, front to back.
+     */
+    private void write( DataOutputStream out ) throws IOException
+    {
+        Integer origin = indexes.get( zone.getOrigin() );
+
+        out.writeInt( MAGIC );
+        out.writeInt( VERSION );
+        out.writeInt( names.size() );
+        out.writeInt( slots.length );
+        out.writeInt( origin == null ? -1 : origin );
+
+        for ( long entry : entries )
+        {
+            out.writeLong( entry );
+        }
+
+        for ( int slot : slots )
+        {
+            out.writeInt( slot );
+        }
+
+        for ( String name : names )
+        {
+            byte[] key = name.getBytes( UTF_8 );
+
+            out.writeShort( key.length );
+            out.write( key );
+            out.writeInt( getCut( name ) );
+
+            Map<Integer, RecordSet> recordSets = zone.getRecordSets( name );
+            out.writeShort( recordSets.size() );
+
+            for ( Map.Entry<Integer, RecordSet> entry : recordSets.entrySet() )
+            {
+                RecordSet recordSet = entry.getValue();
+                List<RecordSet> additional = getAdditional( recordSet );
+
+                out.writeShort( entry.getKey() );
+                out.writeShort( additional.size() );
+
+                for ( RecordSet additionalRecordSet : additional )
+                {
+                    out.writeInt( indexes.get( getName( additionalRecordSet ) ) );
+                    out.writeShort( RecordSet.getTypeCode( additionalRecordSet.iterator().next() ) );
+                }
+
+                int recordLength = encode( recordSet );
+
+                out.writeShort( recordSet.size() );
+                out.writeInt( recordLength );
+                out.write( scratch.array(), scratch.arrayOffset(), recordLength );
+            }
+        }
+
+        out.flush();
+    }
+
+
+    /**
+     * Compiles the zones kept in a journal directory into images.
+     *
+     * @param args the journal directory and the directory to write the images to
+     * @throws IOException
+     */
+    public static void main( String[] args ) throws IOException
+    {
+        if ( args.length != 2 )
+        {
+            System.err.println( "Usage: ZoneCompiler <journal directory> <image directory>" );
+            System.exit( 1 );
+        }
+
+        ZoneRegistry registry = new ZoneRegistry();
+        ZoneJournal journal = new ZoneJournal( new File( args[0] ) );
+
+        try
+        {
+            journal.recover( registry );
+        }
+        finally
+        {
+            journal.close();
+        }
+
+        File directory = new File( args[1] );
+        directory.mkdirs();
+
+        for ( Zone zone : registry.getZones() )
+        {
+            String fileName = zone.getOrigin().length() == 0 ? "root" : zone.getOrigin();
+            compile( zone, new File( directory, fileName + EXTENSION ) );
+
+            System.out.println( "Compiled " + zone );
+        }
+    }
+
+
+    /**
+     * The 32 bit FNV-1a hash of the octets of a name, as used by the hash
+     * index.
+     */
+    static int hash( byte[] key, int offset, int length )
+    {
+        int hash = 0x811C9DC5;
+
+        for ( int ii = offset; ii < offset + length; ii++ )
+        {
+            hash ^= key[ii] & 0xFF;
+            hash *= 0x01000193;
+        }
+
+        return hash;
+    }
+
+
+    /**
+     * Returns the index of the zone cut a name is at or below, or -1.
+     */
+    private int getCut( String name )
+    {
+        if ( !zone.contains( name ) )
+        {
+            return -1;
+        }
+
+        RecordSet referral = zone.getReferral( name );
+
+        if ( referral == null )
+        {
+            return -1;
+        }
+
+        RecordSet nameServers = referral.getAuthorityRecordSets().get( 0 );
+
+        return indexes.get( Zone.toKey( nameServers.iterator().next().getDomainName() ) );
+    }
+
+
+    /**
+     * Returns the additional RRsets of an RRset which the image holds.
+     */
+    private List<RecordSet> getAdditional( RecordSet recordSet )
+    {
+        List<RecordSet> additional = new ArrayList<RecordSet>();
+
+        for ( RecordSet additionalRecordSet : recordSet.getAdditionalRecordSets() )
+        {
+            if ( !additionalRecordSet.isEmpty() && indexes.containsKey( getName( additionalRecordSet ) ) )
+            {
+                additional.add( additionalRecordSet );
+            }
+        }
+
+        return additional;
+    }
+
+
+    /**
+     * Encodes the records of an RRset into the scratch buffer.
+     *
+     * @return The length of the records in wire form.
+     */
+    private int encode( RecordSet recordSet ) throws IOException
+    {
+        scratch.clear();
+
+        for ( ResourceRecord record : recordSet )
+        {
+            DnsMessageEncoder.putRecord( scratch, record );
+        }
+
+        return scratch.position();
+    }
+
+
+    private static String getName( RecordSet recordSet )
+    {
+        return Zone.toKey( recordSet.iterator().next().getDomainName() );
+    }
+
+
+    /**
+     * Writes into the buffers of an image in memory, one after the other.
+     */
+    private static class ChunkOutputStream extends OutputStream
+    {
+        private final ByteBuffer[] chunks;
+
+        private int current;
+
+
+        ChunkOutputStream( ByteBuffer[] chunks )
+        {
+            this.chunks = chunks;
+        }
+
+
+        public void write( int b ) throws IOException
+        {
+            getChunk().put( ( byte ) b );
+        }
+
+
+        public void write( byte[] bytes, int offset, int length ) throws IOException
+        {
+            while ( length > 0 )
+            {
+                ByteBuffer chunk = getChunk();
+                int count = Math.min( length, chunk.remaining() );
+
+                chunk.put( bytes, offset, count );
+                offset += count;
+                length -= count;
+            }
+        }
+
+
+        private ByteBuffer getChunk() throws IOException
+        {
+            while ( current < chunks.length && !chunks[current].hasRemaining() )
+            {
+                current++;
+            }
+
+            if ( current == chunks.length )
+            {
+                throw new IOException( "The zone changed while it was compiled" );
+            }
+
+            return chunks[current];
+        }
+    }
+}
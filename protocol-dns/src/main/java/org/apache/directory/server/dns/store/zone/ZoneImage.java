@@ -0,0 +1,662 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.server.dns.io.decoder.DnsMessageDecoder;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.mina.core.buffer.IoBuffer;
+
+
+/**
+ * A zone served straight from an image compiled by {@link ZoneCompiler},
+ * mapped into memory.  Opening an image reads nothing but its header, the
+ * records stay outside of the heap in their wire form, and the pages of the
+ * file are shared by every process mapping it.  A name is found through the
+ * hash index of the image, and only the RRset asked for is decoded.  An
+ * image larger than a single buffer can be is held and mapped in several,
+ * see {@link ZoneCompiler#CHUNK_SIZE}.<p>
+ * 
+ * {@link #resolve(String, RecordType)} answers the way
+ * {@link Zone#resolve(String, RecordType)} does, without caching what it
+ * resolved.  The image never changes; a new version of the zone is a new
+ * image.  Instances are safe to share between threads.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneImage
+{
+    private static final int NS = RecordSet.getTypeCode( RecordType.NS );
+
+    private static final int SOA = RecordSet.getTypeCode( RecordType.SOA );
+
+    /** The buffers holding the image, only ever read with absolute gets */
+    private final ByteBuffer[] chunks;
+
+    /** The number of bits of an offset within a buffer */
+    private final int chunkShift;
+
+    private final long chunkMask;
+
+    /** The length of the whole image */
+    private final long length;
+
+    private final int nameCount;
+
+    private final int slots;
+
+    /** The position of the hash index */
+    private final long hashIndex;
+
+    /** The canonical name of the zone apex */
+    private final String origin;
+
+    /** The answer for the names which exist without records of the type asked for */
+    private final RecordSet noData;
+
+    /** The answer for the names which do not exist */
+    private final RecordSet nameError;
+
+
+    /**
+     * Creates a new instance of ZoneImage over an image in memory.
+     *
+     * @param chunks the buffers holding the image, as written by
+     * {@link ZoneCompiler}, all of the same power of two size but the last
+     * @throws IOException if the image is not a valid one
+     */
+    public ZoneImage( ByteBuffer... chunks ) throws IOException
+    {
+        this.chunks = chunks;
+
+        long total = 0;
+
+        for ( ByteBuffer chunk : chunks )
+        {
+            total += chunk.limit();
+        }
+
+        length = total;
+        chunkShift = chunks.length > 1 ? Integer.numberOfTrailingZeros( chunks[0].limit() ) : 31;
+        chunkMask = ( 1L << chunkShift ) - 1;
+
+        for ( int ii = 0; ii < chunks.length - 1; ii++ )
+        {
+            if ( chunks[ii].limit() != 1L << chunkShift )
+            {
+                throw new IOException( "Zone image buffers of uneven sizes" );
+            }
+        }
+
+        if ( length < ZoneCompiler.HEADER_LENGTH || getInt( 0 ) != ZoneCompiler.MAGIC )
+        {
+            throw new IOException( "Not a zone image" );
+        }
+
+        if ( getInt( 4 ) != ZoneCompiler.VERSION )
+        {
+            throw new IOException( "Unsupported zone image version " + getInt( 4 ) );
+        }
+
+        nameCount = getInt( 8 );
+        slots = getInt( 12 );
+        hashIndex = ZoneCompiler.HEADER_LENGTH + 8L * nameCount;
+
+        int originIndex = getInt( 16 );
+
+        if ( nameCount < 0 || Integer.bitCount( slots ) != 1 || originIndex < 0 || originIndex >= nameCount
+            || hashIndex + 4L * slots > length )
+        {
+            throw new IOException( "Corrupt zone image" );
+        }
+
+        origin = getName( originIndex );
+
+        List<RecordSet> authority = Zone.getAuthority( getRecordSet( originIndex, SOA ) );
+        noData = RecordSet.getNoData( authority );
+        nameError = Zone.getNameError( authority );
+    }
+
+
+    /**
+     * Maps an image file into memory, in pieces of
+     * {@link ZoneCompiler#CHUNK_SIZE} octets.
+     *
+     * @param file
+     * @return The zone image.
+     * @throws IOException if the file cannot be read or is not a valid image
+     */
+    public static ZoneImage open( File file ) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+
+        try
+        {
+            long fileLength = raf.length();
+            ByteBuffer[] chunks = new ByteBuffer[( int ) Math.max( 1,
+                ( fileLength + ZoneCompiler.CHUNK_SIZE - 1 ) / ZoneCompiler.CHUNK_SIZE )];
+
+            for ( int ii = 0; ii < chunks.length; ii++ )
+            {
+                long position = ( long ) ii * ZoneCompiler.CHUNK_SIZE;
+
+                // the mappings outlive the file
+                chunks[ii] = raf.getChannel().map( FileChannel.MapMode.READ_ONLY, position,
+                    Math.min( ZoneCompiler.CHUNK_SIZE, fileLength - position ) );
+            }
+
+            return new ZoneImage( chunks );
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+
+    /**
+     * @return Returns the canonical name of the zone apex.
+     */
+    public String getOrigin()
+    {
+        return origin;
+    }
+
+
+    /**
+     * @return Returns the number of names in the image, including the empty
+     * non-terminals and the names of out of zone glue.
+     */
+    public int getNameCount()
+    {
+        return nameCount;
+    }
+
+
+    /**
+     * Returns the serial number of the zone, from the SOA record at its apex.
+     *
+     * @return The serial number, or -1 if the zone has no SOA record.
+     * @throws IOException if the image is corrupt
+     */
+    public long getSerial() throws IOException
+    {
+        RecordSet soa = getRecordSet( origin, RecordType.SOA );
+
+        if ( soa == null || soa.isEmpty() )
+        {
+            return -1;
+        }
+
+        return Long.parseLong( soa.iterator().next().get( DnsAttribute.SOA_SERIAL ) );
+    }
+
+
+    /**
+     * Returns whether a name exists in this zone, owning records or being an
+     * empty non-terminal.
+     *
+     * @param name the canonical name
+     * @return true if the name exists.
+     */
+    public boolean hasName( String name )
+    {
+        return find( name ) >= 0;
+    }
+
+
+    /**
+     * Returns whether a name is the origin of this zone or below it.
+     *
+     * @param name the canonical name
+     * @return true if the name belongs in this zone.
+     */
+    public boolean contains( String name )
+    {
+        return Zone.isSubdomain( name, origin );
+    }
+
+
+    /**
+     * Returns the RRset of a name, or null if the name has none of that type.
+     *
+     * @param name the canonical name
+     * @param type
+     * @return The {@link RecordSet}, or null.
+     * @throws IOException if the image is corrupt
+     */
+    public RecordSet getRecordSet( String name, RecordType type ) throws IOException
+    {
+        return getRecordSet( name, RecordSet.getTypeCode( type ) );
+    }
+
+
+    /**
+     * Returns the RRset of a name, or null if the name has none of that type.
+     *
+     * @param name the canonical name
+     * @param typeCode the type code, also of a type without a {@link RecordType} constant
+     * @return The {@link RecordSet}, or null.
+     * @throws IOException if the image is corrupt
+     */
+    public RecordSet getRecordSet( String name, int typeCode ) throws IOException
+    {
+        int index = find( name );
+
+        return index < 0 ? null : getRecordSet( index, typeCode );
+    }
+
+
+    /**
+     * Returns the answer for the names which do not exist in this zone, the
+     * empty authoritative answer carrying the SOA RRset of the zone.
+     *
+     * @return The name error answer.
+     */
+    public RecordSet getNameError()
+    {
+        return nameError;
+    }
+
+
+    /**
+     * Answers a query for a name of this zone, following CNAME and DNAME
+     * records, synthesising records from wildcards and referring names at or
+     * below a zone cut to the delegated zone.
+     *
+     * @param name the canonical name
+     * @param type
+     * @return The answer, an empty NODATA answer if the name exists without
+     * records of the type nor a CNAME, or null if the name does not exist.
+     * @throws IOException if the image is corrupt
+     * @see Zone#resolve(String, RecordType)
+     */
+    public RecordSet resolve( String name, RecordType type ) throws IOException
+    {
+        return resolve( name, RecordSet.getTypeCode( type ) );
+    }
+
+
+    /**
+     * Answers a query for a name of this zone, see
+     * {@link #resolve(String, RecordType)}.
+     *
+     * @param name the canonical name
+     * @param typeCode the type code, also of a type without a {@link RecordType} constant
+     * @return The answer, NODATA, or null if the name does not exist.
+     * @throws IOException if the image is corrupt
+     */
+    public RecordSet resolve( String name, int typeCode ) throws IOException
+    {
+        List<ResourceRecord> answer = new ArrayList<ResourceRecord>();
+        List<RecordSet> additional = Collections.emptyList();
+        boolean exists = false;
+
+        for ( int ii = 0; ii < Zone.MAX_CHAIN_LENGTH && contains( name ); ii++ )
+        {
+            int index = find( name );
+            int encloser = index >= 0 ? index : getClosestEncloser( name );
+
+            if ( encloser < 0 )
+            {
+                break;
+            }
+
+            int cut = getCut( encloser );
+
+            if ( cut >= 0 )
+            {
+                if ( ii == 0 )
+                {
+                    return RecordSet.getReferral( getRecordSet( cut, NS ) );
+                }
+
+                // the chain leads into a delegated zone, the client follows it from here
+                break;
+            }
+
+            boolean wildcard = false;
+
+            if ( index < 0 )
+            {
+                RecordSet dname = getRecordSet( encloser, Zone.DNAME );
+
+                if ( dname != null )
+                {
+                    // the name is below a DNAME, substitute its suffix
+                    ResourceRecord record = dname.iterator().next();
+                    String target = name.substring( 0, name.length() - getName( encloser ).length() )
+                        + Zone.toKey( record.get( DnsAttribute.DOMAIN_NAME ) );
+
+                    answer.addAll( dname );
+                    answer.add( Zone.getCanonicalName( name, target, record.getTimeToLive() ) );
+                    name = target;
+                    continue;
+                }
+
+                index = find( "*." + getName( encloser ) );
+
+                if ( index < 0 )
+                {
+                    break;
+                }
+
+                wildcard = true;
+            }
+
+            exists = true;
+            RecordSet recordSet = getRecordSet( index, typeCode );
+
+            if ( recordSet != null )
+            {
+                if ( answer.isEmpty() && !wildcard )
+                {
+                    return recordSet;
+                }
+
+                Zone.addAll( answer, recordSet, wildcard ? name : null );
+                additional = recordSet.getAdditionalRecordSets();
+                break;
+            }
+
+            RecordSet cname = getRecordSet( index, Zone.CNAME );
+
+            if ( cname == null )
+            {
+                break;
+            }
+
+            Zone.addAll( answer, cname, wildcard ? name : null );
+            name = Zone.toKey( cname.iterator().next().get( DnsAttribute.DOMAIN_NAME ) );
+        }
+
+        if ( answer.isEmpty() )
+        {
+            return exists ? noData : null;
+        }
+
+        return new RecordSet( answer, additional );
+    }
+
+
+    public String toString()
+    {
+        return "ZoneImage[" + origin + ", " + nameCount + " names]";
+    }
+
+
+    /**
+     * Returns the index of a name, or -1 if it is not in the image.  The
+     * octets of the name are compared in place, so probing decodes nothing.
+     */
+    int find( String name )
+    {
+        byte[] key = name.getBytes( ZoneCompiler.UTF_8 );
+        int slot = ZoneCompiler.hash( key, 0, key.length ) & ( slots - 1 );
+
+        for ( int probes = 0; probes < slots; probes++ )
+        {
+            int index = getInt( hashIndex + 4L * slot ) - 1;
+
+            if ( index < 0 )
+            {
+                return -1;
+            }
+
+            if ( matches( getEntry( index ), key ) )
+            {
+                return index;
+            }
+
+            slot = ( slot + 1 ) & ( slots - 1 );
+        }
+
+        return -1;
+    }
+
+
+    private boolean matches( long entry, byte[] key )
+    {
+        if ( getShort( entry ) != key.length )
+        {
+            return false;
+        }
+
+        for ( int ii = 0; ii < key.length; ii++ )
+        {
+            if ( get( entry + 2 + ii ) != key[ii] )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Returns the nearest existing ancestor of a name which does not exist,
+     * or -1 if not even the origin exists.
+     */
+    private int getClosestEncloser( String name )
+    {
+        while ( name.length() > origin.length() )
+        {
+            name = Zone.getParent( name );
+
+            int index = find( name );
+
+            if ( index >= 0 )
+            {
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+
+    private long getEntry( int index )
+    {
+        return getLong( ZoneCompiler.HEADER_LENGTH + 8L * index );
+    }
+
+
+    private String getName( int index )
+    {
+        long entry = getEntry( index );
+        byte[] key = new byte[getShort( entry )];
+
+        get( entry + 2, key );
+
+        return new String( key, ZoneCompiler.UTF_8 );
+    }
+
+
+    /**
+     * Returns the index of the zone cut a name is at or below, or -1.
+     */
+    private int getCut( int index )
+    {
+        long entry = getEntry( index );
+
+        return getInt( entry + 2 + getShort( entry ) );
+    }
+
+
+    /**
+     * Decodes the RRset of a type of a name, with its additional RRsets, or
+     * all of them together for ANY.
+     */
+    private RecordSet getRecordSet( int index, int typeCode ) throws IOException
+    {
+        List<ResourceRecord> allRecords = null;
+        List<RecordSet> allAdditional = null;
+
+        if ( typeCode == Zone.ANY )
+        {
+            allRecords = new ArrayList<ResourceRecord>();
+            allAdditional = new ArrayList<RecordSet>();
+        }
+
+        long entry = getEntry( index );
+        long position = entry + 2 + getShort( entry ) + 4;
+        int count = getShort( position );
+        position += 2;
+
+        for ( int ii = 0; ii < count; ii++ )
+        {
+            int recordType = getShort( position );
+            int additionalCount = getShort( position + 2 );
+            long additionalStart = position + 4;
+
+            position = additionalStart + 6 * additionalCount;
+
+            int recordCount = getShort( position );
+            int length = getInt( position + 2 );
+
+            position += 6;
+
+            if ( recordType == typeCode || typeCode == Zone.ANY )
+            {
+                List<RecordSet> additional = new ArrayList<RecordSet>( additionalCount );
+
+                for ( int jj = 0; jj < additionalCount; jj++ )
+                {
+                    long at = additionalStart + 6 * jj;
+                    RecordSet additionalRecordSet = getRecordSet( getInt( at ), getShort( at + 4 ) );
+
+                    if ( additionalRecordSet != null )
+                    {
+                        additional.add( additionalRecordSet );
+                    }
+                }
+
+                if ( typeCode != Zone.ANY )
+                {
+                    return new RecordSet( getRecords( position, length, recordCount ), additional );
+                }
+
+                // ANY is answered with all the RRsets of the name
+                allRecords.addAll( getRecords( position, length, recordCount ) );
+                allAdditional.addAll( additional );
+            }
+
+            position += length;
+        }
+
+        return allRecords == null || allRecords.isEmpty() ? null : new RecordSet( allRecords, allAdditional );
+    }
+
+
+    private List<ResourceRecord> getRecords( long position, int length, int recordCount ) throws IOException
+    {
+        IoBuffer in;
+
+        if ( ( position >>> chunkShift ) == ( ( position + length - 1 ) >>> chunkShift ) )
+        {
+            ByteBuffer slice = chunks[( int ) ( position >>> chunkShift )].duplicate();
+            int offset = ( int ) ( position & chunkMask );
+
+            slice.limit( offset + length );
+            slice.position( offset );
+            in = IoBuffer.wrap( slice.slice() );
+        }
+        else
+        {
+            // the records straddle two buffers
+            byte[] records = new byte[length];
+            get( position, records );
+            in = IoBuffer.wrap( records );
+        }
+
+        List<ResourceRecord> records = new ArrayList<ResourceRecord>( recordCount );
+
+        for ( int ii = 0; ii < recordCount; ii++ )
+        {
+            records.add( DnsMessageDecoder.getRecord( in ) );
+        }
+
+        return records;
+    }
+
+
+    private byte get( long position )
+    {
+        if ( position < 0 || position >= length )
+        {
+            throw new IndexOutOfBoundsException( "Corrupt zone image" );
+        }
+
+        return chunks[( int ) ( position >>> chunkShift )].get( ( int ) ( position & chunkMask ) );
+    }
+
+
+    private void get( long position, byte[] bytes )
+    {
+        for ( int ii = 0; ii < bytes.length; ii++ )
+        {
+            bytes[ii] = get( position + ii );
+        }
+    }
+
+
+    /**
+     * Returns the unsigned 16 bit integer at a position.
+     */
+    private int getShort( long position )
+    {
+        return ( ( get( position ) & 0xFF ) << 8 ) | ( get( position + 1 ) & 0xFF );
+    }
+
+
+    private int getInt( long position )
+    {
+        ByteBuffer chunk = chunks[( int ) ( position >>> chunkShift )];
+        int offset = ( int ) ( position & chunkMask );
+
+        if ( offset + 4 <= chunk.limit() )
+        {
+            return chunk.getInt( offset );
+        }
+
+        return ( getShort( position ) << 16 ) | getShort( position + 2 );
+    }
+
+
+    private long getLong( long position )
+    {
+        return ( ( long ) getInt( position ) << 32 ) | ( getInt( position + 4 ) & 0xFFFFFFFFL );
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.directory.server.dns.store.RecordStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A {@link RecordStore} answering from compiled {@link ZoneImage}s, either
+ * mapped from files or allocated outside of the heap.  The zones are
+ * read-only: they are changed by compiling new images, with
+ * {@link ZoneCompiler}, and opening a new store over them.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneImageRecordStore implements RecordStore
+{
+    /** the log for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( ZoneImageRecordStore.class );
+
+    /** The images, by the canonical name of their origin */
+    private final Map<String, ZoneImage> images = new HashMap<String, ZoneImage>();
+
+
+    /**
+     * Creates a new instance of ZoneImageRecordStore.
+     *
+     * @param images
+     */
+    public ZoneImageRecordStore( Collection<ZoneImage> images )
+    {
+        for ( ZoneImage image : images )
+        {
+            this.images.put( image.getOrigin(), image );
+        }
+    }
+
+
+    /**
+     * Opens all the images of a directory.
+     *
+     * @param directory
+     * @return The record store.
+     * @throws IOException if one of the images cannot be read
+     */
+    public static ZoneImageRecordStore open( File directory ) throws IOException
+    {
+        File[] files = directory.listFiles( new FileFilter()
+        {
+            public boolean accept( File file )
+            {
+                return file.isFile() && file.getName().endsWith( ZoneCompiler.EXTENSION );
+            }
+        } );
+
+        if ( files == null )
+        {
+            throw new IOException( "Cannot list " + directory );
+        }
+
+        Collection<ZoneImage> images = new ArrayList<ZoneImage>();
+
+        for ( File file : files )
+        {
+            ZoneImage image = ZoneImage.open( file );
+            images.add( image );
+
+            LOG.info( "Mapped {} from {}", image, file );
+        }
+
+        return new ZoneImageRecordStore( images );
+    }
+
+
+    /**
+     * Compiles zones into images outside of the heap.  Once the zones are
+     * dropped, the heap holds none of their records, and the garbage
+     * collector has as little to do with a zone of millions of names as
+     * with an empty one.
+     *
+     * @param zones
+     * @return The record store.
+     * @throws IOException if a record cannot be encoded
+     */
+    public static ZoneImageRecordStore allocate( Collection<Zone> zones ) throws IOException
+    {
+        Collection<ZoneImage> images = new ArrayList<ZoneImage>();
+
+        for ( Zone zone : zones )
+        {
+            ZoneImage image = new ZoneImage( ZoneCompiler.compile( zone, true ) );
+            images.add( image );
+
+            LOG.info( "Allocated {} outside of the heap", image );
+        }
+
+        return new ZoneImageRecordStore( images );
+    }
+
+
+    public Set<ResourceRecord> getRecords( QuestionRecord question ) throws DnsException
+    {
+        String name = Zone.toKey( question.getDomainName() );
+        ZoneImage image = getImage( name );
+
+        if ( image == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            RecordSet answer = image.resolve( name, question.getTypeCode() );
+
+            return answer == null ? image.getNameError() : answer;
+        }
+        catch ( IOException ioe )
+        {
+            LOG.error( "Could not read " + image, ioe );
+
+            throw new DnsException( ResponseCode.SERVER_FAILURE );
+        }
+    }
+
+
+    /**
+     * Returns the image of the zone a name belongs in, the one with the
+     * longest origin the name is equal to or below.
+     *
+     * @param name the canonical name
+     * @return The {@link ZoneImage}, or null if the name is in none of the zones.
+     */
+    public ZoneImage getImage( String name )
+    {
+        while ( true )
+        {
+            ZoneImage image = images.get( name );
+
+            if ( image != null )
+            {
+                return image;
+            }
+
+            if ( name.length() == 0 )
+            {
+                return null;
+            }
+
+            name = Zone.getParent( name );
+        }
+    }
+
+
+    /**
+     * @return Returns the images, which will not change.
+     */
+    public Collection<ZoneImage> getImages()
+    {
+        return Collections.unmodifiableCollection( images.values() );
+    }
+}
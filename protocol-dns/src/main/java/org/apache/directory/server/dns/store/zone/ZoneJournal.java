@@ -0,0 +1,975 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.directory.server.dns.io.decoder.DnsMessageDecoder;
+import org.apache.directory.server.dns.io.encoder.DnsMessageEncoder;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A write-ahead journal of the changes made to zones, with snapshots of the
+ * zones, so that dynamic updates survive a restart.<p>
+ * 
+ * The journal is a series of append-only segment files.  Each entry holds a
+ * {@link ZoneChange} in wire form, behind its length and a CRC32 checksum, so
+ * a torn write at the tail is found and cut off on recovery.  Appending only
+ * writes the entry; {@link #sync(long)} makes it durable, and one force of
+ * the file covers every entry appended before it, so concurrent updates
+ * share their disk flushes (group commit).  A segment which grows past
+ * {@link #setSegmentSize(long) the segment size} is rolled over to a new one.<p>
+ * 
+ * A snapshot holds every record of every zone, along with the last journal
+ * entry it includes for each zone.  Taking one rolls the journal over to a
+ * new segment, so the older segments and snapshots can be deleted once it is
+ * written.  {@link #recover(ZoneRegistry)} reads the latest snapshot and
+ * replays the journal entries after it, streaming the files so that their
+ * size is not bounded by what can be mapped at once.  Replaying an entry the snapshot
+ * already holds does no harm, as changes are applied by record data.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneJournal
+{
+    private static final Logger LOG = LoggerFactory.getLogger( ZoneJournal.class );
+
+    private static final String SEGMENT_PREFIX = "journal-";
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    /** "DNSS" */
+    private static final int SNAPSHOT_MAGIC = 0x444E5353;
+
+    private static final int SNAPSHOT_VERSION = 2;
+
+    /** The size past which a segment is rolled over */
+    private static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /** The length and checksum in front of each entry */
+    private static final int ENTRY_HEADER_LENGTH = 8;
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private final File directory;
+
+    /** The locks ordering the changes of each zone with their journal entries */
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    /** Taken before this journal, when the segment is flushed or swapped */
+    private final Object syncLock = new Object();
+
+    /** The segment being appended to, or null if the journal is closed */
+    private FileChannel channel;
+
+    /** The sequence number of the last entry appended */
+    private long lastSequence;
+
+    /** The sequence number of the last entry on disk */
+    private volatile long syncedSequence;
+
+    private volatile long segmentSize = DEFAULT_SEGMENT_SIZE;
+
+    private ScheduledExecutorService scheduler;
+
+
+    /**
+     * Creates a new instance of ZoneJournal, keeping its files in a
+     * directory.  Call {@link #recover(ZoneRegistry)} before appending.
+     *
+     * @param directory
+     */
+    public ZoneJournal( File directory )
+    {
+        this.directory = directory;
+    }
+
+
+    /**
+     * @param segmentSize The size past which a segment is rolled over to a
+     * new one, 64 MB by default.
+     */
+    public void setSegmentSize( long segmentSize )
+    {
+        this.segmentSize = segmentSize;
+    }
+
+
+    /**
+     * Returns the lock to hold while a change of a zone is published and
+     * appended, so that the order of the entries of a zone is the order of
+     * its versions.
+     *
+     * @param origin the canonical name of the zone apex
+     * @return The lock.
+     */
+    public Object getLock( String origin )
+    {
+        Object lock = locks.get( origin );
+
+        if ( lock == null )
+        {
+            Object newLock = new Object();
+            lock = locks.putIfAbsent( origin, newLock );
+
+            if ( lock == null )
+            {
+                lock = newLock;
+            }
+        }
+
+        return lock;
+    }
+
+
+    /**
+     * Puts the zones of the latest snapshot in a registry, replacing the
+     * zones with the same origin, and applies the journal entries written
+     * after it.  The journal is then open for appending.
+     *
+     * @param registry
+     * @throws IOException
+     */
+    public void recover( ZoneRegistry registry ) throws IOException
+    {
+        if ( !directory.isDirectory() && !directory.mkdirs() )
+        {
+            throw new IOException( "Cannot create the journal directory " + directory );
+        }
+
+        Map<String, Long> snapshotSequences = new HashMap<String, Long>();
+        long sequence = 0;
+        File[] snapshots = list( SNAPSHOT_PREFIX );
+
+        for ( int ii = snapshots.length - 1; ii >= 0; ii-- )
+        {
+            try
+            {
+                sequence = readSnapshot( snapshots[ii], registry, snapshotSequences );
+                break;
+            }
+            catch ( IOException ioe )
+            {
+                LOG.warn( "Skipping the snapshot " + snapshots[ii], ioe );
+            }
+        }
+
+        Map<String, ZoneModifier> modifiers = new HashMap<String, ZoneModifier>();
+        File[] segments = list( SEGMENT_PREFIX );
+
+        for ( File segment : segments )
+        {
+            for ( ZoneChange change : read( segment, true ) )
+            {
+                sequence = Math.max( sequence, change.getSequence() );
+                replay( change, registry, snapshotSequences, modifiers );
+            }
+        }
+
+        for ( ZoneModifier modifier : modifiers.values() )
+        {
+            registry.put( modifier.getZone() );
+        }
+
+        File segment = segments.length == 0 ? getFile( SEGMENT_PREFIX, sequence + 1 ) : segments[segments.length - 1];
+
+        synchronized ( syncLock )
+        {
+            synchronized ( this )
+            {
+                channel = open( segment );
+                lastSequence = sequence;
+                syncedSequence = sequence;
+            }
+        }
+
+        LOG.info( "Recovered {} zones up to journal entry {}", registry.getZones().size(), sequence );
+    }
+
+
+    /**
+     * Appends a change to the journal.  The change is not durable until
+     * {@link #sync(long)} is called for it.
+     *
+     * @param change
+     * @return The sequence number of the entry.
+     * @throws IOException
+     */
+    public long append( ZoneChange change ) throws IOException
+    {
+        IoBuffer payload = IoBuffer.allocate( 256 );
+        payload.setAutoExpand( true );
+        payload.putLong( 0 );
+        putString( payload, change.getOrigin() );
+        putRecords( payload, change.getRemoved() );
+        putRecords( payload, change.getAdded() );
+        payload.flip();
+
+        ByteBuffer entry = ByteBuffer.allocate( ENTRY_HEADER_LENGTH + payload.remaining() );
+        long sequence;
+
+        synchronized ( this )
+        {
+            if ( channel == null )
+            {
+                throw new IOException( "The journal is closed" );
+            }
+
+            sequence = lastSequence + 1;
+            payload.putLong( 0, sequence );
+
+            CRC32 crc = new CRC32();
+            crc.update( payload.array(), 0, payload.remaining() );
+
+            entry.putInt( payload.remaining() );
+            entry.putInt( ( int ) crc.getValue() );
+            entry.put( payload.buf() );
+            entry.flip();
+
+            long position = channel.position();
+
+            try
+            {
+                while ( entry.hasRemaining() )
+                {
+                    channel.write( entry );
+                }
+            }
+            catch ( IOException ioe )
+            {
+                // cut the partial entry off, so that the next ones can be read back
+                channel.truncate( position );
+                channel.position( position );
+
+                throw ioe;
+            }
+
+            lastSequence = sequence;
+
+            if ( channel.position() < segmentSize )
+            {
+                return sequence;
+            }
+        }
+
+        synchronized ( syncLock )
+        {
+            synchronized ( this )
+            {
+                // another append may have rolled the segment over meanwhile
+                if ( channel != null && channel.position() >= segmentSize )
+                {
+                    swap();
+                }
+            }
+        }
+
+        return sequence;
+    }
+
+
+    /**
+     * Waits until an entry is on disk.  One flush covers all the entries
+     * appended so far, so threads calling this together mostly find their
+     * entry already flushed by another.
+     *
+     * @param sequence the sequence number of the entry
+     * @throws IOException
+     */
+    public void sync( long sequence ) throws IOException
+    {
+        if ( sequence <= syncedSequence )
+        {
+            return;
+        }
+
+        synchronized ( syncLock )
+        {
+            if ( sequence <= syncedSequence )
+            {
+                return;
+            }
+
+            FileChannel segment;
+            long appended;
+
+            synchronized ( this )
+            {
+                if ( channel == null )
+                {
+                    throw new IOException( "The journal is closed" );
+                }
+
+                segment = channel;
+                appended = lastSequence;
+            }
+
+            segment.force( false );
+            syncedSequence = appended;
+        }
+    }
+
+
+    /**
+     * Writes a snapshot of the zones of a registry, then deletes the journal
+     * segments and the snapshots it makes useless.
+     *
+     * @param registry
+     * @throws IOException
+     */
+    public void snapshot( ZoneRegistry registry ) throws IOException
+    {
+        long sequence = roll();
+
+        List<Zone> zones = new ArrayList<Zone>();
+        List<Long> sequences = new ArrayList<Long>();
+
+        for ( Zone zone : registry.getZones() )
+        {
+            String origin = zone.getOrigin();
+
+            // no change of the zone is published between the two reads
+            synchronized ( getLock( origin ) )
+            {
+                zone = registry.getZone( origin );
+
+                synchronized ( this )
+                {
+                    sequences.add( lastSequence );
+                }
+            }
+
+            zones.add( zone );
+        }
+
+        File file = getFile( SNAPSHOT_PREFIX, sequence );
+        File temporary = new File( directory, file.getName() + ".tmp" );
+        FileOutputStream fos = new FileOutputStream( temporary );
+
+        try
+        {
+            CheckedOutputStream cos = new CheckedOutputStream( new BufferedOutputStream( fos, 65536 ), new CRC32() );
+            DataOutputStream out = new DataOutputStream( cos );
+            IoBuffer buffer = IoBuffer.allocate( 256 );
+            buffer.setAutoExpand( true );
+
+            out.writeInt( SNAPSHOT_MAGIC );
+            out.writeInt( SNAPSHOT_VERSION );
+            out.writeLong( sequence );
+            out.writeInt( zones.size() );
+
+            for ( int ii = 0; ii < zones.size(); ii++ )
+            {
+                Zone zone = zones.get( ii );
+                byte[] origin = zone.getOrigin().getBytes( UTF_8 );
+                out.writeShort( origin.length );
+                out.write( origin );
+                out.writeLong( sequences.get( ii ) );
+                out.writeInt( getRecordCount( zone ) );
+
+                for ( Map<Integer, RecordSet> recordSets : zone.names.values() )
+                {
+                    for ( RecordSet recordSet : recordSets.values() )
+                    {
+                        for ( ResourceRecord record : recordSet )
+                        {
+                            buffer.clear();
+                            DnsMessageEncoder.putRecord( buffer, record );
+                            buffer.flip();
+                            out.writeInt( buffer.limit() );
+                            out.write( buffer.array(), 0, buffer.limit() );
+                        }
+                    }
+                }
+            }
+
+            out.flush();
+            out.writeInt( ( int ) cos.getChecksum().getValue() );
+            out.flush();
+            fos.getFD().sync();
+        }
+        finally
+        {
+            fos.close();
+        }
+
+        Files.move( temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE );
+
+        // the files the snapshot supersedes go only once its name is on disk too
+        syncDirectory();
+
+        for ( File snapshot : list( SNAPSHOT_PREFIX ) )
+        {
+            if ( getSequence( snapshot ) < sequence )
+            {
+                delete( snapshot );
+            }
+        }
+
+        for ( File segment : list( SEGMENT_PREFIX ) )
+        {
+            if ( getSequence( segment ) <= sequence )
+            {
+                delete( segment );
+            }
+        }
+
+        LOG.info( "Wrote the snapshot {}", file );
+    }
+
+
+    /**
+     * Starts taking snapshots of the zones of a registry in the background.
+     *
+     * @param registry
+     * @param period the time between two snapshots
+     * @param unit the unit of the period
+     */
+    public synchronized void start( final ZoneRegistry registry, long period, TimeUnit unit )
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+        {
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "zone-snapshot" );
+                thread.setDaemon( true );
+
+                return thread;
+            }
+        } );
+
+        scheduler.scheduleWithFixedDelay( new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    snapshot( registry );
+                }
+                catch ( IOException ioe )
+                {
+                    LOG.error( "Could not write a zone snapshot", ioe );
+                }
+            }
+        }, period, period, unit );
+    }
+
+
+    /**
+     * Stops the snapshots and closes the journal, flushing it first.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException
+    {
+        synchronized ( this )
+        {
+            if ( scheduler != null )
+            {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+
+        synchronized ( syncLock )
+        {
+            synchronized ( this )
+            {
+                if ( channel != null )
+                {
+                    channel.force( false );
+                    channel.close();
+                    channel = null;
+                    syncedSequence = lastSequence;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Reads the changes of a zone still in the journal, in order.  A snapshot
+     * may delete segments meanwhile, in which case the changes are not all
+     * there any more.
+     *
+     * @param origin the canonical name of the zone apex
+     * @return The changes, or null if a segment went away while reading.
+     * @throws IOException
+     */
+    public List<ZoneChange> getChanges( String origin ) throws IOException
+    {
+        List<ZoneChange> changes = new ArrayList<ZoneChange>();
+
+        try
+        {
+            for ( File segment : list( SEGMENT_PREFIX ) )
+            {
+                for ( ZoneChange change : read( segment, false ) )
+                {
+                    if ( change.getOrigin().equals( origin ) )
+                    {
+                        changes.add( change );
+                    }
+                }
+            }
+        }
+        catch ( FileNotFoundException fnfe )
+        {
+            return null;
+        }
+
+        return changes;
+    }
+
+
+    /**
+     * Flushes the segment being appended to and starts a new one.
+     *
+     * @return The sequence number of the last entry of the old segment.
+     */
+    private long roll() throws IOException
+    {
+        synchronized ( syncLock )
+        {
+            synchronized ( this )
+            {
+                if ( channel == null )
+                {
+                    throw new IOException( "The journal is closed" );
+                }
+
+                swap();
+
+                return lastSequence;
+            }
+        }
+    }
+
+
+    /**
+     * Flushes the segment being appended to and starts a new one, holding
+     * the sync lock and this journal.
+     */
+    private void swap() throws IOException
+    {
+        channel.force( false );
+        channel.close();
+        syncedSequence = lastSequence;
+
+        // the journal stays closed if the new segment cannot be opened
+        channel = null;
+        channel = open( getFile( SEGMENT_PREFIX, lastSequence + 1 ) );
+
+        // the entries forced into the new segment are only found again if its name is on disk
+        syncDirectory();
+    }
+
+
+    /**
+     * Forces the entries of the journal directory to disk, so that files
+     * created or renamed in it survive a crash.  Not every platform can open
+     * a directory, in which case this does nothing.
+     */
+    private void syncDirectory()
+    {
+        FileChannel directoryChannel;
+
+        try
+        {
+            directoryChannel = FileChannel.open( directory.toPath(), StandardOpenOption.READ );
+        }
+        catch ( IOException ioe )
+        {
+            LOG.debug( "Cannot open the journal directory to sync it", ioe );
+
+            return;
+        }
+
+        try
+        {
+            directoryChannel.force( true );
+        }
+        catch ( IOException ioe )
+        {
+            LOG.debug( "Cannot sync the journal directory", ioe );
+        }
+        finally
+        {
+            try
+            {
+                directoryChannel.close();
+            }
+            catch ( IOException ioe )
+            {
+                // nothing was written through it
+            }
+        }
+    }
+
+
+    private long readSnapshot( File file, ZoneRegistry registry, Map<String, Long> sequences ) throws IOException
+    {
+        long length = file.length();
+        CheckedInputStream cis = new CheckedInputStream( new BufferedInputStream( new FileInputStream( file ),
+            65536 ), new CRC32() );
+        DataInputStream in = new DataInputStream( cis );
+
+        try
+        {
+            if ( length < 24 || in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION )
+            {
+                throw new IOException( "Not a zone snapshot" );
+            }
+
+            long sequence = in.readLong();
+            int zoneCount = in.readInt();
+            Map<String, Long> zoneSequences = new HashMap<String, Long>();
+            List<Zone> zones = new ArrayList<Zone>();
+            byte[] record = new byte[256];
+
+            for ( int ii = 0; ii < zoneCount; ii++ )
+            {
+                ZoneModifier modifier = new ZoneModifier();
+                byte[] origin = new byte[in.readUnsignedShort()];
+                in.readFully( origin );
+                modifier.setOrigin( new String( origin, UTF_8 ) );
+                zoneSequences.put( new String( origin, UTF_8 ), in.readLong() );
+
+                for ( int jj = in.readInt(); jj > 0; jj-- )
+                {
+                    int recordLength = in.readInt();
+
+                    if ( recordLength < 0 || recordLength > length )
+                    {
+                        throw new IOException( "The snapshot is corrupt" );
+                    }
+
+                    if ( record.length < recordLength )
+                    {
+                        record = new byte[recordLength];
+                    }
+
+                    in.readFully( record, 0, recordLength );
+                    modifier.add( DnsMessageDecoder.getRecord( IoBuffer.wrap( record, 0, recordLength ) ) );
+                }
+
+                zones.add( modifier.getZone() );
+            }
+
+            int checksum = ( int ) cis.getChecksum().getValue();
+
+            if ( in.readInt() != checksum || in.read() >= 0 )
+            {
+                throw new IOException( "The snapshot is corrupt" );
+            }
+
+            // only a whole snapshot is used
+            for ( Zone zone : zones )
+            {
+                registry.put( zone );
+            }
+
+            sequences.putAll( zoneSequences );
+
+            return sequence;
+        }
+        catch ( RuntimeException re )
+        {
+            throw new IOException( "The snapshot is corrupt", re );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Applies an entry to the zones of a registry, through modifiers, unless
+     * the snapshot holds it already.
+     */
+    private static void replay( ZoneChange change, ZoneRegistry registry, Map<String, Long> snapshotSequences,
+        Map<String, ZoneModifier> modifiers ) throws IOException
+    {
+        String origin = change.getOrigin();
+        Long snapshotSequence = snapshotSequences.get( origin );
+
+        if ( snapshotSequence != null && change.getSequence() <= snapshotSequence )
+        {
+            return;
+        }
+
+        ZoneModifier modifier = modifiers.get( origin );
+
+        if ( modifier == null )
+        {
+            Zone zone = registry.getZone( origin );
+
+            if ( zone == null || !zone.getOrigin().equals( origin ) )
+            {
+                LOG.warn( "Skipping journal entry {} of the unknown zone {}", change.getSequence(), origin );
+                return;
+            }
+
+            modifier = new ZoneModifier( zone );
+            modifiers.put( origin, modifier );
+        }
+
+        modifier.apply( change );
+    }
+
+
+    /**
+     * Reads the entries of a segment up to its end, or up to the first one
+     * torn or corrupt.  On recovery, that entry is cut off along with
+     * everything after it; otherwise it may be an entry being appended.
+     */
+    private static List<ZoneChange> read( File segment, boolean repair ) throws IOException
+    {
+        List<ZoneChange> changes = new ArrayList<ZoneChange>();
+        RandomAccessFile raf = new RandomAccessFile( segment, repair ? "rw" : "r" );
+
+        try
+        {
+            long length = raf.length();
+            DataInputStream in = new DataInputStream( new BufferedInputStream( Channels.newInputStream( raf
+                .getChannel() ), 65536 ) );
+            CRC32 crc = new CRC32();
+            byte[] payload = new byte[256];
+            long position = 0;
+
+            while ( position < length )
+            {
+                if ( length - position < ENTRY_HEADER_LENGTH )
+                {
+                    truncate( raf, segment, position, repair );
+                    break;
+                }
+
+                int entryLength = in.readInt();
+                int checksum = in.readInt();
+
+                if ( entryLength < 8 || entryLength > length - position - ENTRY_HEADER_LENGTH )
+                {
+                    truncate( raf, segment, position, repair );
+                    break;
+                }
+
+                if ( payload.length < entryLength )
+                {
+                    payload = new byte[entryLength];
+                }
+
+                in.readFully( payload, 0, entryLength );
+                crc.reset();
+                crc.update( payload, 0, entryLength );
+
+                if ( ( int ) crc.getValue() != checksum )
+                {
+                    truncate( raf, segment, position, repair );
+                    break;
+                }
+
+                position += ENTRY_HEADER_LENGTH + entryLength;
+
+                IoBuffer entry = IoBuffer.wrap( payload, 0, entryLength );
+                long sequence = entry.getLong();
+                String origin = getString( entry );
+                List<ResourceRecord> removed = getRecords( entry );
+                List<ResourceRecord> added = getRecords( entry );
+                changes.add( new ZoneChange( origin, sequence, removed, added ) );
+            }
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        return changes;
+    }
+
+
+    private static void truncate( RandomAccessFile raf, File segment, long length, boolean repair )
+        throws IOException
+    {
+        if ( repair )
+        {
+            LOG.warn( "Cutting the journal segment {} off at {}, after a torn entry", segment, length );
+
+            raf.setLength( length );
+        }
+    }
+
+
+    private static FileChannel open( File segment ) throws IOException
+    {
+        FileChannel segmentChannel = new RandomAccessFile( segment, "rw" ).getChannel();
+        segmentChannel.position( segmentChannel.size() );
+
+        return segmentChannel;
+    }
+
+
+    /**
+     * Returns the files of a kind, in the order of their sequence numbers.
+     */
+    private File[] list( String prefix )
+    {
+        File[] files = directory.listFiles();
+        List<File> matching = new ArrayList<File>();
+
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                if ( file.getName().startsWith( prefix ) && !file.getName().endsWith( ".tmp" ) )
+                {
+                    matching.add( file );
+                }
+            }
+        }
+
+        File[] sorted = matching.toArray( new File[matching.size()] );
+
+        // the sequence numbers are zero padded, so the names sort in their order
+        Arrays.sort( sorted );
+
+        return sorted;
+    }
+
+
+    private File getFile( String prefix, long sequence )
+    {
+        return new File( directory, prefix + String.format( "%016x", sequence ) );
+    }
+
+
+    private static long getSequence( File file )
+    {
+        String name = file.getName();
+
+        return Long.parseLong( name.substring( name.indexOf( '-' ) + 1 ), 16 );
+    }
+
+
+    private static void delete( File file )
+    {
+        if ( !file.delete() )
+        {
+            LOG.warn( "Could not delete {}", file );
+        }
+    }
+
+
+    private static int getRecordCount( Zone zone )
+    {
+        int count = 0;
+
+        for ( Map<Integer, RecordSet> recordSets : zone.names.values() )
+        {
+            for ( RecordSet recordSet : recordSets.values() )
+            {
+                count += recordSet.size();
+            }
+        }
+
+        return count;
+    }
+
+
+    private static void putRecords( IoBuffer out, List<ResourceRecord> records ) throws IOException
+    {
+        out.putInt( records.size() );
+
+        for ( ResourceRecord record : records )
+        {
+            DnsMessageEncoder.putRecord( out, record );
+        }
+    }
+
+
+    private static List<ResourceRecord> getRecords( IoBuffer in ) throws IOException
+    {
+        int count = in.getInt();
+        List<ResourceRecord> records = new ArrayList<ResourceRecord>( count );
+
+        for ( int ii = 0; ii < count; ii++ )
+        {
+            records.add( DnsMessageDecoder.getRecord( in ) );
+        }
+
+        return records;
+    }
+
+
+    private static void putString( IoBuffer out, String string )
+    {
+        byte[] bytes = string.getBytes( UTF_8 );
+        out.putShort( ( short ) bytes.length );
+        out.put( bytes );
+    }
+
+
+    private static String getString( IoBuffer in )
+    {
+        byte[] bytes = new byte[in.getUnsignedShort()];
+        in.get( bytes );
+
+        return new String( bytes, UTF_8 );
+    }
+}
@@ -0,0 +1,848 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.directory.server.dns.io.encoder.DnsMessageEncoder;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.directory.server.dns.util.BloomFilter;
+import org.apache.directory.server.dns.util.PersistentHashMap;
+
+
+/**
+ * Builds a {@link Zone}, either from scratch or as a change of an existing
+ * zone.  Building the zone groups the records into RRsets and links each NS,
+ * MX and SRV RRset to the A and AAAA RRsets of its targets, which replies put
+ * in their additional section (RFC 1035, section 3.3).<p>
+ * 
+ * A modifier created from a zone starts with the records of that zone, and
+ * the zone it builds shares all the names which were not changed with it.
+ * Only the changed names, their ancestors and the RRsets linked to them are
+ * built again, so applying a small change to a large zone is cheap.  The
+ * original zone is left untouched.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneModifier
+{
+    private static final Integer A = RecordSet.getTypeCode( RecordType.A );
+
+    private static final Integer AAAA = RecordSet.getTypeCode( RecordType.AAAA );
+
+    private static final Integer NS = RecordSet.getTypeCode( RecordType.NS );
+
+    private static final Integer SOA = RecordSet.getTypeCode( RecordType.SOA );
+
+    /** The types of the RRsets linked to the addresses of their targets */
+    private static final Integer[] LINKED_TYPES =
+        { NS, RecordSet.getTypeCode( RecordType.MX ), RecordSet.getTypeCode( RecordType.SRV ) };
+
+    private String origin;
+
+    /** The zone the changes apply to, or null for a new zone */
+    private Zone base;
+
+    /** The whole new content of each name changed, by type code */
+    private final Map<String, Map<Integer, List<ResourceRecord>>> changes =
+        new HashMap<String, Map<Integer, List<ResourceRecord>>>();
+
+
+    /**
+     * Creates a new instance of ZoneModifier, for a new zone.
+     */
+    public ZoneModifier()
+    {
+    }
+
+
+    /**
+     * Creates a new instance of ZoneModifier, for a change of a zone.
+     *
+     * @param base the zone to change
+     */
+    public ZoneModifier( Zone base )
+    {
+        this.base = base;
+        this.origin = base.getOrigin();
+    }
+
+
+    /**
+     * Returns the {@link Zone} built by this {@link ZoneModifier}.
+     *
+     * @return The {@link Zone}.
+     */
+    public Zone getZone()
+    {
+        String apex = Zone.toKey( origin );
+
+        PersistentHashMap<String, Map<Integer, RecordSet>> names;
+        PersistentHashMap<String, Integer> children;
+        PersistentHashMap<String, RecordSet> referrals;
+        PersistentHashMap<String, Set<String>> referrers;
+
+        if ( base == null )
+        {
+            names = PersistentHashMap.<String, Map<Integer, RecordSet>> empty().plus( apex,
+                Collections.<Integer, RecordSet> emptyMap() );
+            children = PersistentHashMap.empty();
+            referrals = PersistentHashMap.empty();
+            referrers = PersistentHashMap.empty();
+        }
+        else
+        {
+            names = base.names;
+            children = base.children;
+            referrals = base.referrals;
+            referrers = base.referrers;
+        }
+
+        Indexes indexes = new Indexes( apex, names, children, referrals, referrers );
+        Set<String> relink = new HashSet<String>();
+
+        // the address RRsets first, as the linked RRsets refer to them
+        for ( Map.Entry<String, Map<Integer, List<ResourceRecord>>> entry : changes.entrySet() )
+        {
+            String name = entry.getKey();
+            Map<Integer, RecordSet> recordSets = new TreeMap<Integer, RecordSet>();
+
+            for ( Map.Entry<Integer, List<ResourceRecord>> typeEntry : entry.getValue().entrySet() )
+            {
+                if ( !typeEntry.getValue().isEmpty() && !hasAdditionalSection( typeEntry.getKey() ) )
+                {
+                    recordSets.put( typeEntry.getKey(), new RecordSet( typeEntry.getValue() ) );
+                }
+            }
+
+            indexes.setRecordSets( name, recordSets, hasLinks( entry.getValue() ) );
+
+            // the RRsets of the name itself and those pointing to it
+            relink.add( name );
+            Set<String> owners = indexes.referrers.get( name );
+
+            if ( owners != null )
+            {
+                relink.addAll( owners );
+            }
+        }
+
+        for ( String name : relink )
+        {
+            indexes.link( name, changes.get( name ) );
+        }
+
+        BloomFilter filter;
+
+        if ( base == null || base.filter.isFull() )
+        {
+            // with room for the names to come
+            filter = new BloomFilter( indexes.names.size() * 2 );
+
+            for ( String name : indexes.names.keySet() )
+            {
+                filter.add( name );
+            }
+        }
+        else
+        {
+            // sharing the shards no name was added to; the names removed are
+            // left in, which only costs a lookup when they are asked for
+            filter = base.filter.copy();
+
+            for ( String name : changes.keySet() )
+            {
+                addAncestors( filter, name, apex );
+            }
+        }
+
+        PersistentHashMap<String, Boolean> synthesisers = base == null ? PersistentHashMap
+            .<String, Boolean> empty() : base.synthesisers;
+
+        for ( String name : changes.keySet() )
+        {
+            synthesisers = setSynthesiser( synthesisers, indexes.names, name );
+
+            if ( name.startsWith( "*." ) )
+            {
+                synthesisers = setSynthesiser( synthesisers, indexes.names, name.substring( 2 ) );
+            }
+        }
+
+        return new Zone( apex, indexes.names, indexes.children, indexes.referrals, indexes.referrers, filter,
+            synthesisers );
+    }
+
+
+    /**
+     * Adds a name to a filter, along with its ancestors in the zone, which
+     * may be new empty non-terminals.
+     */
+    private static void addAncestors( BloomFilter filter, String name, String apex )
+    {
+        filter.add( name );
+
+        while ( name.length() > apex.length() && Zone.isSubdomain( name, apex ) )
+        {
+            name = Zone.getParent( name );
+            filter.add( name );
+        }
+    }
+
+
+    /**
+     * Adds a name to the names answering for names below them which do not
+     * exist, if it owns a DNAME record or has a wildcard child, else removes
+     * it.
+     */
+    private static PersistentHashMap<String, Boolean> setSynthesiser( PersistentHashMap<String, Boolean> synthesisers,
+        Map<String, Map<Integer, RecordSet>> names, String name )
+    {
+        Map<Integer, RecordSet> recordSets = names.get( name );
+
+        if ( names.containsKey( "*." + name ) || ( recordSets != null && recordSets.containsKey( Zone.DNAME ) ) )
+        {
+            return synthesisers.containsKey( name ) ? synthesisers : synthesisers.plus( name, Boolean.TRUE );
+        }
+
+        return synthesisers.containsKey( name ) ? synthesisers.minus( name ) : synthesisers;
+    }
+
+
+    /**
+     * @param origin The name of the zone apex to set.
+     */
+    public void setOrigin( String origin )
+    {
+        this.origin = origin;
+    }
+
+
+    /**
+     * Adds a record to the zone.
+     *
+     * @param record The record to add.
+     */
+    public void add( ResourceRecord record )
+    {
+        getRecords( Zone.toKey( record.getDomainName() ), RecordSet.getTypeCode( record ) ).add( record );
+    }
+
+
+    /**
+     * Adds records to the zone.
+     *
+     * @param records The records to add.
+     */
+    public void addAll( Collection<ResourceRecord> records )
+    {
+        for ( ResourceRecord record : records )
+        {
+            add( record );
+        }
+    }
+
+
+    /**
+     * Removes the records of the zone with the same owner, type and RDATA as
+     * a record.
+     *
+     * @param record The record to remove.
+     * @return true if a record was removed.
+     * @throws IOException if the RDATA of a record cannot be encoded
+     */
+    public boolean remove( ResourceRecord record ) throws IOException
+    {
+        List<ResourceRecord> records = getRecords( Zone.toKey( record.getDomainName() ), RecordSet
+            .getTypeCode( record ) );
+        boolean removed = false;
+
+        for ( Iterator<ResourceRecord> it = records.iterator(); it.hasNext(); )
+        {
+            if ( isSameData( it.next(), record ) )
+            {
+                it.remove();
+                removed = true;
+            }
+        }
+
+        return removed;
+    }
+
+
+    /**
+     * Removes an RRset.
+     *
+     * @param name
+     * @param type
+     */
+    public void removeRecordSet( String name, RecordType type )
+    {
+        removeRecordSet( name, RecordSet.getTypeCode( type ) );
+    }
+
+
+    /**
+     * Removes an RRset.
+     *
+     * @param name
+     * @param typeCode the type code, also of a type without a {@link RecordType} constant
+     */
+    public void removeRecordSet( String name, int typeCode )
+    {
+        getRecords( Zone.toKey( name ), typeCode ).clear();
+    }
+
+
+    /**
+     * Removes all the RRsets of a name.
+     *
+     * @param name
+     */
+    public void removeName( String name )
+    {
+        for ( List<ResourceRecord> records : getTypes( Zone.toKey( name ) ).values() )
+        {
+            records.clear();
+        }
+    }
+
+
+    /**
+     * Applies a change, as read back from a journal.  Records already removed
+     * or added are skipped, so a change may be applied more than once.
+     *
+     * @param change
+     * @throws IOException if the RDATA of a record cannot be encoded
+     */
+    public void apply( ZoneChange change ) throws IOException
+    {
+        for ( ResourceRecord record : change.getRemoved() )
+        {
+            remove( record );
+        }
+
+        for ( ResourceRecord record : change.getAdded() )
+        {
+            if ( !contains( record ) )
+            {
+                add( record );
+            }
+        }
+    }
+
+
+    /**
+     * Returns the change made so far to the zone this modifier started from,
+     * as the records removed and the records added.
+     *
+     * @return The {@link ZoneChange}, which is not journaled yet.
+     * @throws IOException if the RDATA of a record cannot be encoded
+     */
+    public ZoneChange getChange() throws IOException
+    {
+        List<ResourceRecord> removed = new ArrayList<ResourceRecord>();
+        List<ResourceRecord> added = new ArrayList<ResourceRecord>();
+
+        for ( Map.Entry<String, Map<Integer, List<ResourceRecord>>> entry : changes.entrySet() )
+        {
+            Map<Integer, RecordSet> before = base == null ? Collections.<Integer, RecordSet> emptyMap() : base
+                .getRecordSets( entry.getKey() );
+
+            for ( Map.Entry<Integer, List<ResourceRecord>> typeEntry : entry.getValue().entrySet() )
+            {
+                Collection<ResourceRecord> old = before.get( typeEntry.getKey() );
+
+                if ( old == null )
+                {
+                    old = Collections.emptyList();
+                }
+
+                // the SOA records go first, as in an IXFR difference sequence
+                int index = typeEntry.getKey().equals( SOA ) ? 0 : -1;
+                addMissing( removed, old, typeEntry.getValue(), index );
+                addMissing( added, typeEntry.getValue(), old, index );
+            }
+        }
+
+        return new ZoneChange( Zone.toKey( origin ), 0, removed, added );
+    }
+
+
+    /**
+     * Returns whether the zone has a record with the same owner, type and
+     * RDATA as a record, with the changes made so far.
+     *
+     * @param record
+     * @return true if the zone has the record.
+     * @throws IOException if the RDATA of a record cannot be encoded
+     */
+    public boolean contains( ResourceRecord record ) throws IOException
+    {
+        List<ResourceRecord> records = getRecords( Zone.toKey( record.getDomainName() ), RecordSet
+            .getTypeCode( record ) );
+
+        for ( ResourceRecord other : records )
+        {
+            if ( isSameData( other, record ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Returns the records of an RRset as they stand with the changes made so
+     * far.
+     *
+     * @param name
+     * @param type
+     * @return The records, which must not be modified.
+     */
+    public List<ResourceRecord> getRecordSet( String name, RecordType type )
+    {
+        return getRecordSet( name, RecordSet.getTypeCode( type ) );
+    }
+
+
+    /**
+     * Returns the records of an RRset as they stand with the changes made so
+     * far.
+     *
+     * @param name
+     * @param typeCode the type code, also of a type without a {@link RecordType} constant
+     * @return The records, which must not be modified.
+     */
+    public List<ResourceRecord> getRecordSet( String name, int typeCode )
+    {
+        return Collections.unmodifiableList( getRecords( Zone.toKey( name ), typeCode ) );
+    }
+
+
+    /**
+     * Returns the type codes of the RRsets of a name as they stand with the
+     * changes made so far.
+     *
+     * @param name
+     * @return The type codes, in ascending order.
+     */
+    public Set<Integer> getTypeCodes( String name )
+    {
+        Set<Integer> typeCodes = new TreeSet<Integer>();
+
+        for ( Map.Entry<Integer, List<ResourceRecord>> entry : getTypes( Zone.toKey( name ) ).entrySet() )
+        {
+            if ( !entry.getValue().isEmpty() )
+            {
+                typeCodes.add( entry.getKey() );
+            }
+        }
+
+        return typeCodes;
+    }
+
+
+    /**
+     * Returns whether two records of the same type carry the same RDATA.
+     *
+     * @param record1
+     * @param record2
+     * @return true if the RDATA of the records is the same.
+     * @throws IOException if the RDATA of a record cannot be encoded
+     */
+    public static boolean isSameData( ResourceRecord record1, ResourceRecord record2 ) throws IOException
+    {
+        return Arrays.equals( DnsMessageEncoder.getRecordData( record1 ), DnsMessageEncoder.getRecordData( record2 ) );
+    }
+
+
+    /**
+     * Returns whether answers of a type call for the addresses of the names
+     * they point to in the additional section.
+     */
+    static boolean hasAdditionalSection( int typeCode )
+    {
+        for ( Integer linked : LINKED_TYPES )
+        {
+            if ( linked == typeCode )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Adds the records of a collection which another one does not have, at an
+     * index of a list or at its end.
+     */
+    private static void addMissing( List<ResourceRecord> list, Collection<ResourceRecord> records,
+        Collection<ResourceRecord> others, int index ) throws IOException
+    {
+        for ( ResourceRecord record : records )
+        {
+            boolean found = false;
+
+            for ( ResourceRecord other : others )
+            {
+                if ( isSameData( record, other ) )
+                {
+                    found = true;
+                    break;
+                }
+            }
+
+            if ( !found )
+            {
+                if ( index < 0 )
+                {
+                    list.add( record );
+                }
+                else
+                {
+                    list.add( index++, record );
+                }
+            }
+        }
+    }
+
+
+    private static boolean hasLinks( Map<Integer, List<ResourceRecord>> types )
+    {
+        for ( Map.Entry<Integer, List<ResourceRecord>> entry : types.entrySet() )
+        {
+            if ( !entry.getValue().isEmpty() && hasAdditionalSection( entry.getKey() ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private List<ResourceRecord> getRecords( String name, int typeCode )
+    {
+        Map<Integer, List<ResourceRecord>> types = getTypes( name );
+        List<ResourceRecord> records = types.get( typeCode );
+
+        if ( records == null )
+        {
+            records = new ArrayList<ResourceRecord>();
+            types.put( typeCode, records );
+        }
+
+        return records;
+    }
+
+
+    /**
+     * Returns the changeable content of a name, starting from the base zone.
+     */
+    private Map<Integer, List<ResourceRecord>> getTypes( String name )
+    {
+        Map<Integer, List<ResourceRecord>> types = changes.get( name );
+
+        if ( types == null )
+        {
+            types = new TreeMap<Integer, List<ResourceRecord>>();
+
+            if ( base != null )
+            {
+                for ( Map.Entry<Integer, RecordSet> entry : base.getRecordSets( name ).entrySet() )
+                {
+                    types.put( entry.getKey(), new ArrayList<ResourceRecord>( entry.getValue() ) );
+                }
+            }
+
+            changes.put( name, types );
+        }
+
+        return types;
+    }
+
+    /**
+     * The indexes of the zone being built, starting from those of the base.
+     */
+    private static final class Indexes
+    {
+        private final String apex;
+        private PersistentHashMap<String, Map<Integer, RecordSet>> names;
+        private PersistentHashMap<String, Integer> children;
+        private PersistentHashMap<String, RecordSet> referrals;
+        private PersistentHashMap<String, Set<String>> referrers;
+
+
+        Indexes( String apex, PersistentHashMap<String, Map<Integer, RecordSet>> names,
+            PersistentHashMap<String, Integer> children, PersistentHashMap<String, RecordSet> referrals,
+            PersistentHashMap<String, Set<String>> referrers )
+        {
+            this.apex = apex;
+            this.names = names;
+            this.children = children;
+            this.referrals = referrals;
+            this.referrers = referrers;
+        }
+
+
+        /**
+         * Sets the unlinked RRsets of a name, adding the name and its missing
+         * ancestors, or removing the name and its ancestors left empty.
+         */
+        void setRecordSets( String name, Map<Integer, RecordSet> recordSets, boolean hasLinks )
+        {
+            boolean exists = names.containsKey( name );
+
+            if ( !recordSets.isEmpty() || hasLinks || children.containsKey( name ) || name.equals( apex ) )
+            {
+                names = names.plus( name, recordSets );
+
+                if ( !exists )
+                {
+                    addParents( name );
+                }
+            }
+            else if ( exists )
+            {
+                names = names.minus( name );
+                removeParents( name );
+            }
+        }
+
+
+        /**
+         * Builds the linked RRsets of a name again, along with the referral
+         * of a zone cut and the links back from the targets.
+         *
+         * @param name
+         * @param types the new content of the name, or null if unchanged
+         */
+        void link( String name, Map<Integer, List<ResourceRecord>> types )
+        {
+            Map<Integer, RecordSet> recordSets = names.get( name );
+            Set<String> oldTargets = new HashSet<String>();
+            Set<String> newTargets = new HashSet<String>();
+
+            if ( recordSets == null )
+            {
+                // the name was removed, only its links are left to remove
+                recordSets = Collections.emptyMap();
+            }
+
+            Map<Integer, RecordSet> linked = new TreeMap<Integer, RecordSet>();
+
+            for ( Map.Entry<Integer, RecordSet> entry : recordSets.entrySet() )
+            {
+                if ( !hasAdditionalSection( entry.getKey() ) )
+                {
+                    linked.put( entry.getKey(), entry.getValue() );
+                }
+                else
+                {
+                    oldTargets.addAll( getTargets( entry.getValue() ) );
+                }
+            }
+
+            for ( Integer type : LINKED_TYPES )
+            {
+                Collection<ResourceRecord> records = null;
+
+                if ( types != null )
+                {
+                    records = types.get( type );
+                }
+                else if ( recordSets.containsKey( type ) )
+                {
+                    records = recordSets.get( type );
+                }
+
+                if ( records != null && !records.isEmpty() )
+                {
+                    Set<String> targets = getTargets( records );
+                    newTargets.addAll( targets );
+                    linked.put( type, new RecordSet( records, getAddresses( targets ) ) );
+                }
+            }
+
+            if ( names.containsKey( name ) )
+            {
+                names = names.plus( name, linked );
+            }
+
+            setReferrers( name, oldTargets, newTargets );
+
+            RecordSet nameServers = linked.get( NS );
+
+            if ( nameServers != null && !name.equals( apex ) && Zone.isSubdomain( name, apex ) )
+            {
+                referrals = referrals.plus( name, RecordSet.getReferral( nameServers ) );
+            }
+            else
+            {
+                referrals = referrals.minus( name );
+            }
+        }
+
+
+        private void addParents( String name )
+        {
+            while ( Zone.isSubdomain( name, apex ) && !name.equals( apex ) )
+            {
+                String parent = Zone.getParent( name );
+                Integer count = children.get( parent );
+                children = children.plus( parent, count == null ? 1 : count + 1 );
+
+                if ( names.containsKey( parent ) )
+                {
+                    return;
+                }
+
+                // an empty non-terminal
+                names = names.plus( parent, Collections.<Integer, RecordSet> emptyMap() );
+                name = parent;
+            }
+        }
+
+
+        private void removeParents( String name )
+        {
+            while ( Zone.isSubdomain( name, apex ) && !name.equals( apex ) )
+            {
+                String parent = Zone.getParent( name );
+                int count = children.get( parent ) - 1;
+
+                if ( count > 0 )
+                {
+                    children = children.plus( parent, count );
+                    return;
+                }
+
+                children = children.minus( parent );
+
+                if ( parent.equals( apex ) || !names.get( parent ).isEmpty() )
+                {
+                    return;
+                }
+
+                // an empty non-terminal left without children
+                names = names.minus( parent );
+                name = parent;
+            }
+        }
+
+
+        private void setReferrers( String name, Set<String> oldTargets, Set<String> newTargets )
+        {
+            for ( String target : oldTargets )
+            {
+                if ( !newTargets.contains( target ) )
+                {
+                    Set<String> owners = new HashSet<String>( referrers.get( target ) );
+                    owners.remove( name );
+                    referrers = owners.isEmpty() ? referrers.minus( target ) : referrers.plus( target, Collections
+                        .unmodifiableSet( owners ) );
+                }
+            }
+
+            for ( String target : newTargets )
+            {
+                if ( !oldTargets.contains( target ) )
+                {
+                    Set<String> owners = referrers.get( target );
+                    owners = owners == null ? new HashSet<String>() : new HashSet<String>( owners );
+                    owners.add( name );
+                    referrers = referrers.plus( target, Collections.unmodifiableSet( owners ) );
+                }
+            }
+        }
+
+
+        /**
+         * Returns the A and AAAA RRsets of targets, as far as they are in the
+         * zone or its glue.
+         */
+        private List<RecordSet> getAddresses( Set<String> targets )
+        {
+            List<RecordSet> addresses = new ArrayList<RecordSet>();
+
+            for ( String target : targets )
+            {
+                Map<Integer, RecordSet> recordSets = names.get( target );
+
+                if ( recordSets != null )
+                {
+                    if ( recordSets.containsKey( A ) )
+                    {
+                        addresses.add( recordSets.get( A ) );
+                    }
+
+                    if ( recordSets.containsKey( AAAA ) )
+                    {
+                        addresses.add( recordSets.get( AAAA ) );
+                    }
+                }
+            }
+
+            return addresses;
+        }
+
+
+        private static Set<String> getTargets( Collection<ResourceRecord> records )
+        {
+            Set<String> targets = new LinkedHashSet<String>();
+
+            for ( ResourceRecord record : records )
+            {
+                String target = record.get( DnsAttribute.DOMAIN_NAME );
+
+                if ( target != null )
+                {
+                    targets.add( Zone.toKey( target ) );
+                }
+            }
+
+            return targets;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import java.util.Collection;
+import java.util.Set;
+
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.directory.server.dns.store.RecordStore;
+
+
+/**
+ * A {@link RecordStore} answering from in-memory {@link Zone}s.  The records
+ * it returns are {@link RecordSet}s, linked to the records for the additional
+ * section of the reply.  CNAME, DNAME and wildcard records are resolved
+ * within the zone, see {@link Zone#resolve(String, RecordType)}.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneRecordStore implements RecordStore
+{
+    private final ZoneRegistry registry;
+
+    /** The journal of the dynamic updates, or null if they are not kept */
+    private ZoneJournal journal;
+
+
+    /**
+     * Creates a new instance of ZoneRecordStore answering from the zones of
+     * a registry, as they are at the time of each query.
+     *
+     * @param registry
+     */
+    public ZoneRecordStore( ZoneRegistry registry )
+    {
+        this.registry = registry;
+    }
+
+
+    /**
+     * Creates a new instance of ZoneRecordStore answering from fixed zones.
+     *
+     * @param zones
+     */
+    public ZoneRecordStore( Collection<Zone> zones )
+    {
+        this.registry = new ZoneRegistry();
+        this.registry.setZones( zones );
+    }
+
+
+    public Set<ResourceRecord> getRecords( QuestionRecord question ) throws DnsException
+    {
+        String name = Zone.toKey( question.getDomainName() );
+        Zone zone = registry.getZone( name );
+
+        if ( zone == null )
+        {
+            return null;
+        }
+
+        RecordSet answer = zone.resolve( name, question.getTypeCode() );
+
+        return answer == null ? zone.getNameError() : answer;
+    }
+
+
+    /**
+     * Returns the zone a name belongs in.
+     *
+     * @param name the canonical name
+     * @return The {@link Zone}, or null if the name is in none of the zones.
+     * @see ZoneRegistry#getZone(String)
+     */
+    public Zone getZone( String name )
+    {
+        return registry.getZone( name );
+    }
+
+
+    /**
+     * @return Returns the registry of the zones.
+     */
+    public ZoneRegistry getRegistry()
+    {
+        return registry;
+    }
+
+
+    /**
+     * @return Returns the journal dynamic updates are written to, or null.
+     */
+    public ZoneJournal getJournal()
+    {
+        return journal;
+    }
+
+
+    /**
+     * @param journal The journal to write dynamic updates to, already recovered.
+     */
+    public void setJournal( ZoneJournal journal )
+    {
+        this.journal = journal;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * The set of zones a server answers for.  The zones are held in an immutable
+ * map published through an {@link AtomicReference}: adding, replacing or
+ * removing a zone copies the map and swaps the copy in with a single
+ * compare-and-set.  A reload builds the new {@link Zone} off to the side and
+ * then puts it, so readers never take a lock nor see a half loaded zone.  A
+ * query keeps the snapshot it started with; the replaced zone is reclaimed
+ * by the garbage collector once the last query using it is done.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneRegistry
+{
+    /** The zones, by origin */
+    private final AtomicReference<Map<String, Zone>> zones = new AtomicReference<Map<String, Zone>>(
+        Collections.<String, Zone> emptyMap() );
+
+
+    /**
+     * Returns the zone a name belongs in, the one with the longest origin the
+     * name is equal to or below.
+     *
+     * @param name the canonical name
+     * @return The {@link Zone}, or null if the name is in none of the zones.
+     */
+    public Zone getZone( String name )
+    {
+        Map<String, Zone> snapshot = zones.get();
+
+        while ( true )
+        {
+            Zone zone = snapshot.get( name );
+
+            if ( zone != null )
+            {
+                return zone;
+            }
+
+            if ( name.length() == 0 )
+            {
+                return null;
+            }
+
+            name = Zone.getParent( name );
+        }
+    }
+
+
+    /**
+     * Returns the current zones.
+     *
+     * @return The zones, which will not change.
+     */
+    public Collection<Zone> getZones()
+    {
+        return zones.get().values();
+    }
+
+
+    /**
+     * Adds a zone, or replaces the zone with the same origin.
+     *
+     * @param zone
+     * @return The zone replaced, or null.
+     */
+    public Zone put( Zone zone )
+    {
+        while ( true )
+        {
+            Map<String, Zone> snapshot = zones.get();
+            Map<String, Zone> copy = new HashMap<String, Zone>( snapshot );
+            Zone replaced = copy.put( zone.getOrigin(), zone );
+
+            if ( zones.compareAndSet( snapshot, Collections.unmodifiableMap( copy ) ) )
+            {
+                return replaced;
+            }
+        }
+    }
+
+
+    /**
+     * Adds a zone, unless there is one with the same origin already.
+     *
+     * @param zone
+     * @return The zone with the same origin, or null if the zone was added.
+     */
+    public Zone putIfAbsent( Zone zone )
+    {
+        while ( true )
+        {
+            Map<String, Zone> snapshot = zones.get();
+            Zone present = snapshot.get( zone.getOrigin() );
+
+            if ( present != null )
+            {
+                return present;
+            }
+
+            Map<String, Zone> copy = new HashMap<String, Zone>( snapshot );
+            copy.put( zone.getOrigin(), zone );
+
+            if ( zones.compareAndSet( snapshot, Collections.unmodifiableMap( copy ) ) )
+            {
+                return null;
+            }
+        }
+    }
+
+
+    /**
+     * Replaces a zone with a newer version of it, unless it was replaced or
+     * removed meanwhile.  Changes derived from a zone commit through here, so
+     * that a concurrent change is never lost: the loser builds its change
+     * again on top of the winner.
+     *
+     * @param expected the zone the change was derived from
+     * @param zone the changed zone
+     * @return true if the zone was replaced.
+     */
+    public boolean replace( Zone expected, Zone zone )
+    {
+        while ( true )
+        {
+            Map<String, Zone> snapshot = zones.get();
+
+            if ( snapshot.get( expected.getOrigin() ) != expected )
+            {
+                return false;
+            }
+
+            Map<String, Zone> copy = new HashMap<String, Zone>( snapshot );
+            copy.put( zone.getOrigin(), zone );
+
+            if ( zones.compareAndSet( snapshot, Collections.unmodifiableMap( copy ) ) )
+            {
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     * Replaces all the zones at once.
+     *
+     * @param zones
+     */
+    public void setZones( Collection<Zone> zones )
+    {
+        Map<String, Zone> copy = new HashMap<String, Zone>();
+
+        for ( Zone zone : zones )
+        {
+            copy.put( zone.getOrigin(), zone );
+        }
+
+        this.zones.set( Collections.unmodifiableMap( copy ) );
+    }
+
+
+    /**
+     * Removes a zone.
+     *
+     * @param origin the name of the zone apex
+     * @return The zone removed, or null.
+     */
+    public Zone remove( String origin )
+    {
+        origin = Zone.toKey( origin );
+
+        while ( true )
+        {
+            Map<String, Zone> snapshot = zones.get();
+
+            if ( !snapshot.containsKey( origin ) )
+            {
+                return null;
+            }
+
+            Map<String, Zone> copy = new HashMap<String, Zone>( snapshot );
+            Zone removed = copy.remove( origin );
+
+            if ( zones.compareAndSet( snapshot, Collections.unmodifiableMap( copy ) ) )
+            {
+                return removed;
+            }
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.util;
+
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+
+/**
+ * A map from IP address prefixes to values, finding the value of the
+ * longest prefix of an address.  The prefixes are kept in a compressed
+ * binary trie, one for IPv4 and one for IPv6: a node is only kept where
+ * prefixes fork or end, so a lookup goes through at most as many nodes as
+ * there are nested prefixes, and compares a few bytes at each.<p>
+ * 
+ * The trie is not thread safe while it is changed; it is meant to be built,
+ * then only read.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class AddressTrie<V>
+{
+    /** The root of the IPv4 prefixes */
+    private Node<V> root4;
+
+    /** The root of the IPv6 prefixes */
+    private Node<V> root6;
+
+    private int size;
+
+
+    /**
+     * Maps a prefix to a value, in place of the value it had.
+     *
+     * @param address the address of the prefix, the bits after the prefix ignored
+     * @param prefixLength the number of bits of the prefix
+     * @param value the value
+     */
+    public void put( InetAddress address, int prefixLength, V value )
+    {
+        byte[] key = address.getAddress();
+
+        if ( prefixLength < 0 || prefixLength > key.length * 8 )
+        {
+            throw new IllegalArgumentException( "Invalid prefix length " + prefixLength + " for " + address );
+        }
+
+        mask( key, prefixLength );
+        Node<V> root = key.length == 4 ? root4 : root6;
+        root = put( root, key, prefixLength, value );
+
+        if ( key.length == 4 )
+        {
+            root4 = root;
+        }
+        else
+        {
+            root6 = root;
+        }
+    }
+
+
+    /**
+     * Maps a network to a value, in place of the value it had.
+     *
+     * @param network an IPv4 or IPv6 address and the length of the prefix,
+     * such as 10.0.0.0/8 or fd00::/8, or a single address
+     * @param value the value
+     * @throws IllegalArgumentException if the network is not valid
+     */
+    public void put( String network, V value )
+    {
+        int slash = network.indexOf( '/' );
+        InetAddress address = parse( ( slash < 0 ? network : network.substring( 0, slash ) ).trim() );
+        int length = address.getAddress().length * 8;
+
+        if ( slash >= 0 )
+        {
+            try
+            {
+                length = Integer.parseInt( network.substring( slash + 1 ).trim() );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                throw new IllegalArgumentException( "Invalid network " + network );
+            }
+        }
+
+        put( address, length, value );
+    }
+
+
+    /**
+     * Returns the value of the longest prefix of an address.
+     *
+     * @param address the address
+     * @return The value, or null if no prefix matches the address.
+     */
+    public V get( InetAddress address )
+    {
+        return get( address.getAddress() );
+    }
+
+
+    /**
+     * Returns the value of the longest prefix of an address given as bytes,
+     * which allocates nothing, for addresses looked up often.
+     *
+     * @param key the address, 4 bytes for IPv4 or 16 for IPv6
+     * @return The value, or null if no prefix matches the address.
+     */
+    public V get( byte[] key )
+    {
+        Node<V> node = key.length == 4 ? root4 : root6;
+        V found = null;
+
+        while ( node != null && matches( node, key ) )
+        {
+            if ( node.hasValue )
+            {
+                found = node.value;
+            }
+
+            if ( node.length == key.length * 8 )
+            {
+                break;
+            }
+
+            node = node.children[bitAt( key, node.length )];
+        }
+
+        return found;
+    }
+
+
+    /**
+     * @return Returns the number of prefixes.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * Adds a prefix under a node, returning the node to put in its place.
+     */
+    private Node<V> put( Node<V> node, byte[] key, int length, V value )
+    {
+        if ( node == null )
+        {
+            size++;
+
+            return new Node<V>( key, length, value, true );
+        }
+
+        int common = commonLength( node.key, key, Math.min( node.length, length ) );
+
+        if ( common == node.length )
+        {
+            if ( length == node.length )
+            {
+                if ( !node.hasValue )
+                {
+                    size++;
+                }
+
+                node.value = value;
+                node.hasValue = true;
+            }
+            else
+            {
+                int bit = bitAt( key, node.length );
+                node.children[bit] = put( node.children[bit], key, length, value );
+            }
+
+            return node;
+        }
+
+        // the node forks, or ends, within the prefix of the node
+        size++;
+        Node<V> parent;
+
+        if ( common == length )
+        {
+            parent = new Node<V>( key, length, value, true );
+        }
+        else
+        {
+            byte[] forkKey = key.clone();
+            mask( forkKey, common );
+            parent = new Node<V>( forkKey, common, null, false );
+            parent.children[bitAt( key, common )] = new Node<V>( key, length, value, true );
+        }
+
+        parent.children[bitAt( node.key, common )] = node;
+
+        return parent;
+    }
+
+
+    /**
+     * Tells whether an address has the prefix of a node.
+     */
+    private static boolean matches( Node<?> node, byte[] key )
+    {
+        int bytes = node.length >>> 3;
+
+        for ( int ii = 0; ii < bytes; ii++ )
+        {
+            if ( node.key[ii] != key[ii] )
+            {
+                return false;
+            }
+        }
+
+        int bits = node.length & 7;
+
+        return bits == 0 || ( ( node.key[bytes] ^ key[bytes] ) & 0xFF & ( 0xFF00 >>> bits ) ) == 0;
+    }
+
+
+    /**
+     * Returns the number of leading bits two keys have in common, at most a limit.
+     */
+    private static int commonLength( byte[] key1, byte[] key2, int limit )
+    {
+        int common = 0;
+
+        while ( common < limit )
+        {
+            int diff = ( key1[common >>> 3] ^ key2[common >>> 3] ) & 0xFF;
+
+            if ( diff == 0 )
+            {
+                common += 8;
+                continue;
+            }
+
+            common += Integer.numberOfLeadingZeros( diff ) - 24;
+            break;
+        }
+
+        return Math.min( common, limit );
+    }
+
+
+    private static int bitAt( byte[] key, int index )
+    {
+        return ( key[index >>> 3] >>> ( 7 - ( index & 7 ) ) ) & 1;
+    }
+
+
+    /**
+     * Parses an address, which must be a literal so that it is never looked up.
+     */
+    private static InetAddress parse( String address )
+    {
+        if ( address.length() == 0 )
+        {
+            throw new IllegalArgumentException( "Missing address" );
+        }
+
+        // only IPv6 addresses have letters
+        int radix = address.indexOf( ':' ) < 0 ? 10 : 16;
+
+        for ( int ii = 0; ii < address.length(); ii++ )
+        {
+            char c = address.charAt( ii );
+
+            if ( Character.digit( c, radix ) < 0 && c != '.' && c != ':' )
+            {
+                throw new IllegalArgumentException( "Invalid address " + address );
+            }
+        }
+
+        try
+        {
+            return InetAddress.getByName( address );
+        }
+        catch ( UnknownHostException uhe )
+        {
+            throw new IllegalArgumentException( "Invalid address " + address );
+        }
+    }
+
+
+    /**
+     * Clears the bits of a key after a prefix.
+     */
+    private static void mask( byte[] key, int length )
+    {
+        for ( int ii = 0; ii < key.length; ii++ )
+        {
+            int bits = length - ii * 8;
+
+            if ( bits <= 0 )
+            {
+                key[ii] = 0;
+            }
+            else if ( bits < 8 )
+            {
+                key[ii] &= ( byte ) ( 0xFF00 >>> bits );
+            }
+        }
+    }
+
+
+    /**
+     * A prefix, with a value if one was put for it, or the fork of two
+     * longer prefixes.
+     */
+    private static final class Node<V>
+    {
+        private final byte[] key;
+
+        /** The number of bits of the prefix */
+        private final int length;
+
+        private V value;
+
+        private boolean hasValue;
+
+        /** The longer prefixes, by their bit after this one */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private final Node<V>[] children = new Node[2];
+
+
+        Node( byte[] key, int length, V value, boolean hasValue )
+        {
+            this.key = key;
+            this.length = length;
+            this.value = value;
+            this.hasValue = hasValue;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.util;
+
+
+import java.util.Arrays;
+
+
+/**
+ * A Bloom filter of strings: a set which may answer that it contains a
+ * string it does not, about once in a hundred times at its capacity, but
+ * never that it does not contain a string it does.  Strings cannot be
+ * removed, only left behind, which makes false positives more likely but
+ * never wrong.<p>
+ * 
+ * The bits are split into shards of a few kilobytes, and all the bits of a
+ * string are in the shard its hash picks.  {@link #copy()} shares the shards
+ * with the copy, which clones a shard only when it first adds a string to
+ * it, so deriving a filter with a few more strings costs the shards they
+ * fall in rather than the whole filter.<p>
+ * 
+ * A filter is filled by a single thread before being shared, and not
+ * changed afterwards; {@link #copy()} gives a filter to add more to.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public final class BloomFilter
+{
+    /** The bits per string, for about 1% of false positives with 7 hashes */
+    private static final int BITS_PER_ELEMENT = 10;
+
+    private static final int HASHES = 7;
+
+    /** The most words of a shard, 4 kilobytes */
+    private static final int SHARD_WORDS = 512;
+
+    /** The shards of bits, maybe shared with the filter this one was copied from */
+    private final long[][] shards;
+
+    /** Whether each shard belongs to this filter alone, and so may be changed */
+    private final boolean[] owned;
+
+    private final long shardBits;
+
+    private final int capacity;
+
+    /** The number of strings which set a bit when they were added */
+    private int count;
+
+
+    /**
+     * Creates a new, empty instance of BloomFilter.
+     *
+     * @param capacity the number of strings the filter is sized for
+     */
+    public BloomFilter( int capacity )
+    {
+        this.capacity = Math.max( capacity, 64 );
+
+        long words = ( ( long ) this.capacity * BITS_PER_ELEMENT + 63 ) / 64;
+        int shardWords = ( int ) Math.min( words, SHARD_WORDS );
+
+        this.shards = new long[( int ) ( ( words + shardWords - 1 ) / shardWords )][];
+        this.owned = new boolean[shards.length];
+        this.shardBits = shardWords * 64L;
+
+        for ( int ii = 0; ii < shards.length; ii++ )
+        {
+            shards[ii] = new long[shardWords];
+            owned[ii] = true;
+        }
+    }
+
+
+    private BloomFilter( BloomFilter filter )
+    {
+        this.capacity = filter.capacity;
+        this.shards = filter.shards.clone();
+        this.owned = new boolean[shards.length];
+        this.shardBits = filter.shardBits;
+        this.count = filter.count;
+    }
+
+
+    /**
+     * Returns a copy of this filter, which strings can be added to without
+     * changing this one.  The copy shares the shards of this filter until it
+     * changes them.
+     *
+     * @return The copy.
+     */
+    public BloomFilter copy()
+    {
+        // neither filter may change the shards they now share
+        Arrays.fill( owned, false );
+
+        return new BloomFilter( this );
+    }
+
+
+    /**
+     * Adds a string.
+     *
+     * @param key
+     */
+    public void add( String key )
+    {
+        long hash = hash( key );
+        int shard = getShard( hash );
+        long[] bits = shards[shard];
+        boolean changed = false;
+
+        for ( int ii = 0; ii < HASHES; ii++ )
+        {
+            long bit = getBit( hash, ii );
+            long mask = 1L << bit;
+            int word = ( int ) ( bit >>> 6 );
+
+            if ( ( bits[word] & mask ) == 0 )
+            {
+                if ( !owned[shard] )
+                {
+                    bits = bits.clone();
+                    shards[shard] = bits;
+                    owned[shard] = true;
+                }
+
+                bits[word] |= mask;
+                changed = true;
+            }
+        }
+
+        if ( changed )
+        {
+            count++;
+        }
+    }
+
+
+    /**
+     * Returns whether a string may have been added.
+     *
+     * @param key
+     * @return false if the string was never added, true if it may have been.
+     */
+    public boolean mightContain( String key )
+    {
+        long hash = hash( key );
+        long[] bits = shards[getShard( hash )];
+
+        for ( int ii = 0; ii < HASHES; ii++ )
+        {
+            long bit = getBit( hash, ii );
+
+            if ( ( bits[( int ) ( bit >>> 6 )] & ( 1L << bit ) ) == 0 )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Returns whether the filter holds as many strings as it was sized for,
+     * past which false positives quickly become more likely.
+     *
+     * @return true if the filter is full.
+     */
+    public boolean isFull()
+    {
+        return count >= capacity;
+    }
+
+
+    /**
+     * The shard of a string, from its hash mixed once more, so that it does
+     * not depend on the bits {@link #getBit(long, int)} uses.
+     */
+    private int getShard( long hash )
+    {
+        return ( int ) ( ( ( hash * 0x9E3779B97F4A7C15L ) >>> 32 ) % shards.length );
+    }
+
+
+    /**
+     * The bit within its shard of one of the hash functions, derived from two
+     * halves of the hash of the string as proposed by Kirsch and Mitzenmacher.
+     */
+    private long getBit( long hash, int index )
+    {
+        long combined = ( hash >>> 32 ) + index * ( hash & 0xFFFFFFFFL );
+
+        return combined % shardBits;
+    }
+
+
+    /**
+     * The 64 bit FNV-1a hash of the characters of a string.
+     */
+    private static long hash( String key )
+    {
+        long hash = 0xCBF29CE484222325L;
+
+        for ( int ii = 0; ii < key.length(); ii++ )
+        {
+            hash ^= key.charAt( ii );
+            hash *= 0x100000001B3L;
+        }
+
+        return hash;
+    }
+}
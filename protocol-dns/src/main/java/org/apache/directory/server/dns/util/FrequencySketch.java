@@ -0,0 +1,162 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.util;
+
+
+/**
+ * A count-min sketch estimating how often keys were seen lately, as used by
+ * the TinyLFU admission policy: each key has four 4 bit counters, one in
+ * each quarter of a 64 bit word picked by a different hash, and its
+ * frequency is the smallest of them.  Once ten increments per word went by,
+ * all the counters are halved, so the estimates follow what is popular now
+ * rather than what ever was.<p>
+ * 
+ * The sketch is not thread safe; its users guard it with their own lock.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public final class FrequencySketch
+{
+    /** The highest value of a counter */
+    public static final int MAX_FREQUENCY = 15;
+
+    private static final long[] SEEDS =
+        { 0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L };
+
+    /** Keeps the low three bits of each counter once shifted right by one */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+
+    private final int sampleSize;
+
+    /** The increments since the counters were last halved */
+    private int size;
+
+
+    /**
+     * Creates a new instance of FrequencySketch.
+     *
+     * @param maximumSize the number of keys expected, at most
+     */
+    public FrequencySketch( int maximumSize )
+    {
+        int length = 16;
+
+        while ( length < maximumSize && length < ( 1 << 30 ) )
+        {
+            length <<= 1;
+        }
+
+        table = new long[length];
+        sampleSize = 10 * length;
+    }
+
+
+    /**
+     * Returns the estimated frequency of a key.
+     *
+     * @param hash the hash code of the key
+     * @return The frequency, from 0 to {@link #MAX_FREQUENCY}.
+     */
+    public int frequency( int hash )
+    {
+        hash = spread( hash );
+        int start = ( hash & 3 ) << 2;
+        int frequency = MAX_FREQUENCY;
+
+        for ( int ii = 0; ii < 4; ii++ )
+        {
+            int index = indexOf( hash, ii );
+            int count = ( int ) ( ( table[index] >>> ( ( start + ii ) << 2 ) ) & 0x0F );
+            frequency = Math.min( frequency, count );
+        }
+
+        return frequency;
+    }
+
+
+    /**
+     * Counts one more occurrence of a key.
+     *
+     * @param hash the hash code of the key
+     */
+    public void increment( int hash )
+    {
+        hash = spread( hash );
+        int start = ( hash & 3 ) << 2;
+        boolean added = false;
+
+        for ( int ii = 0; ii < 4; ii++ )
+        {
+            int index = indexOf( hash, ii );
+            int offset = ( start + ii ) << 2;
+            long mask = 0x0FL << offset;
+
+            if ( ( table[index] & mask ) != mask )
+            {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+
+        if ( added && ++size == sampleSize )
+        {
+            reset();
+        }
+    }
+
+
+    /**
+     * Halves all the counters.
+     */
+    private void reset()
+    {
+        for ( int ii = 0; ii < table.length; ii++ )
+        {
+            table[ii] = ( table[ii] >>> 1 ) & RESET_MASK;
+        }
+
+        size /= 2;
+    }
+
+
+    /**
+     * Returns the word holding the counter of a key for one of the hashes.
+     */
+    private int indexOf( int hash, int depth )
+    {
+        long index = ( hash + SEEDS[depth] ) * SEEDS[depth];
+        index += index >>> 32;
+
+        return ( int ) index & ( table.length - 1 );
+    }
+
+
+    private static int spread( int hash )
+    {
+        hash = ( ( hash >>> 16 ) ^ hash ) * 0x45D9F3B;
+        hash = ( ( hash >>> 16 ) ^ hash ) * 0x45D9F3B;
+
+        return ( hash >>> 16 ) ^ hash;
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.util;
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * An immutable set of domain names, kept compact enough to hold tens of
+ * millions of them.  Each name is turned into a key of its labels in
+ * reverse order, so that the names of a domain sort together, and the
+ * sorted keys are front coded: each key is kept as the number of bytes it
+ * shares with the key before it and the bytes after those.  Every
+ * {@value #BLOCK_SIZE}th key is kept whole, so a lookup is a binary search
+ * over those, then a scan of at most {@value #BLOCK_SIZE} keys compared in
+ * place.<p>
+ * 
+ * A name of the set starting with a "*" label, such as *.example.com,
+ * matches the names under the rest of it, as a wildcard does.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public final class NameSet
+{
+    /** The number of keys between two whole keys */
+    private static final int BLOCK_SIZE = 16;
+
+    /** The order of unsigned bytes, which the keys are sorted in */
+    private static final Comparator<byte[]> KEY_ORDER = new Comparator<byte[]>()
+    {
+        public int compare( byte[] key1, byte[] key2 )
+        {
+            int length = Math.min( key1.length, key2.length );
+
+            for ( int ii = 0; ii < length; ii++ )
+            {
+                int diff = ( key1[ii] & 0xFF ) - ( key2[ii] & 0xFF );
+
+                if ( diff != 0 )
+                {
+                    return diff;
+                }
+            }
+
+            return key1.length - key2.length;
+        }
+    };
+
+    /** The front coded keys */
+    private final byte[] data;
+
+    /** The offset of the whole key starting each block */
+    private final int[] blocks;
+
+    private final int size;
+
+
+    /**
+     * Creates a new instance of NameSet.
+     *
+     * @param names the names, in any order, in any case, with or without the trailing dot
+     */
+    public NameSet( Collection<String> names )
+    {
+        byte[][] keys = new byte[names.size()][];
+        int count = 0;
+
+        for ( String name : names )
+        {
+            keys[count++] = getKey( name );
+        }
+
+        Arrays.sort( keys, KEY_ORDER );
+
+        ByteBuilder out = new ByteBuilder();
+        List<Integer> offsets = new ArrayList<Integer>();
+        byte[] previous = null;
+        count = 0;
+
+        for ( byte[] key : keys )
+        {
+            if ( previous != null && KEY_ORDER.compare( previous, key ) == 0 )
+            {
+                continue;
+            }
+
+            if ( count % BLOCK_SIZE == 0 )
+            {
+                offsets.add( out.length );
+                out.putLength( key.length );
+                out.put( key, 0, key.length );
+            }
+            else
+            {
+                int shared = 0;
+
+                while ( shared < previous.length && shared < key.length && previous[shared] == key[shared] )
+                {
+                    shared++;
+                }
+
+                out.putLength( shared );
+                out.putLength( key.length - shared );
+                out.put( key, shared, key.length - shared );
+            }
+
+            previous = key;
+            count++;
+        }
+
+        this.data = Arrays.copyOf( out.bytes, out.length );
+        this.blocks = new int[offsets.size()];
+        this.size = count;
+
+        for ( int ii = 0; ii < blocks.length; ii++ )
+        {
+            blocks[ii] = offsets.get( ii );
+        }
+    }
+
+
+    /**
+     * Reads a set of names, one per line.  Blank lines and the lines
+     * starting with a '#' are skipped, as is anything after the first
+     * blank of a line.
+     *
+     * @param reader the names
+     * @return The set of the names read.
+     * @throws IOException if the names cannot be read
+     */
+    public static NameSet read( Reader reader ) throws IOException
+    {
+        BufferedReader in = new BufferedReader( reader );
+        List<String> names = new ArrayList<String>();
+        String line;
+
+        while ( ( line = in.readLine() ) != null )
+        {
+            line = line.trim();
+
+            if ( line.length() == 0 || line.charAt( 0 ) == '#' )
+            {
+                continue;
+            }
+
+            int blank = line.indexOf( ' ' );
+            int tab = line.indexOf( '\t' );
+            int end = blank < 0 ? tab : ( tab < 0 ? blank : Math.min( blank, tab ) );
+
+            names.add( end < 0 ? line : line.substring( 0, end ) );
+        }
+
+        return new NameSet( names );
+    }
+
+
+    /**
+     * Tells whether a name is in the set, as it is rather than by a wildcard.
+     *
+     * @param name the name, in any case
+     * @return true if the name is in the set.
+     */
+    public boolean contains( String name )
+    {
+        byte[] key = getKey( name );
+
+        return contains( key, key.length );
+    }
+
+
+    /**
+     * Tells whether a name is in the set, or under one of its wildcards.
+     * Besides the name, only the wildcards of its ancestors are looked up,
+     * one per label.
+     *
+     * @param name the name, in any case
+     * @return true if the name or one of its wildcards is in the set.
+     */
+    public boolean matches( String name )
+    {
+        byte[] key = getKey( name );
+
+        if ( contains( key, key.length ) )
+        {
+            return true;
+        }
+
+        // the key of the wildcard of an ancestor is its key, then ".*", made in place from the right
+        for ( int ii = key.length - 1; ii > 0; ii-- )
+        {
+            if ( key[ii - 1] == '.' )
+            {
+                key[ii] = '*';
+
+                if ( contains( key, ii + 1 ) )
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * @return Returns the number of names in the set.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return Returns the number of bytes the names take, front coded.
+     */
+    public long getByteSize()
+    {
+        return data.length + blocks.length * 4L;
+    }
+
+
+    /**
+     * Tells whether the first bytes of a key are one of the keys of the set.
+     */
+    private boolean contains( byte[] key, int length )
+    {
+        // the last block whose whole key is not after the key
+        int low = 0;
+        int high = blocks.length - 1;
+        int block = -1;
+
+        while ( low <= high )
+        {
+            int mid = ( low + high ) >>> 1;
+
+            if ( compareWhole( blocks[mid], key, length ) <= 0 )
+            {
+                block = mid;
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+
+        if ( block < 0 )
+        {
+            return false;
+        }
+
+        int[] position = { blocks[block] };
+        int wholeLength = getLength( position );
+
+        // the number of bytes the key shares with the last key scanned, which is before it
+        int matched = 0;
+
+        while ( matched < wholeLength && matched < length && data[position[0] + matched] == key[matched] )
+        {
+            matched++;
+        }
+
+        if ( matched == wholeLength && matched == length )
+        {
+            return true;
+        }
+
+        position[0] += wholeLength;
+        int end = block + 1 < blocks.length ? blocks[block + 1] : data.length;
+
+        while ( position[0] < end )
+        {
+            int shared = getLength( position );
+            int suffixLength = getLength( position );
+            int suffix = position[0];
+            position[0] += suffixLength;
+
+            if ( shared > matched )
+            {
+                // the same byte as the last key, before the key still
+                continue;
+            }
+
+            if ( shared < matched )
+            {
+                // a byte after that of the last key, which the key has: after the key
+                return false;
+            }
+
+            int ii = 0;
+
+            while ( ii < suffixLength && matched < length && data[suffix + ii] == key[matched] )
+            {
+                ii++;
+                matched++;
+            }
+
+            if ( ii == suffixLength && matched == length )
+            {
+                return true;
+            }
+
+            if ( ii == suffixLength || ( matched < length && ( data[suffix + ii] & 0xFF ) < ( key[matched] & 0xFF ) ) )
+            {
+                // a prefix of the key, or smaller at the first difference
+                continue;
+            }
+
+            return false;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Compares the whole key at an offset to the first bytes of a key.
+     */
+    private int compareWhole( int offset, byte[] key, int length )
+    {
+        int[] position = { offset };
+        int wholeLength = getLength( position );
+        int common = Math.min( wholeLength, length );
+
+        for ( int ii = 0; ii < common; ii++ )
+        {
+            int diff = ( data[position[0] + ii] & 0xFF ) - ( key[ii] & 0xFF );
+
+            if ( diff != 0 )
+            {
+                return diff;
+            }
+        }
+
+        return wholeLength - length;
+    }
+
+
+    /**
+     * Reads a length, in 7 bit groups, moving the position past it.
+     */
+    private int getLength( int[] position )
+    {
+        int length = 0;
+        int shift = 0;
+        int b;
+
+        do
+        {
+            b = data[position[0]++];
+            length |= ( b & 0x7F ) << shift;
+            shift += 7;
+        }
+        while ( ( b & 0x80 ) != 0 );
+
+        return length;
+    }
+
+
+    /**
+     * Returns the key of a name: its labels in reverse order, in lower case.
+     */
+    private static byte[] getKey( String name )
+    {
+        int end = name.endsWith( "." ) ? name.length() - 1 : name.length();
+        byte[] key = new byte[end];
+        int position = 0;
+
+        while ( end > 0 )
+        {
+            int start = name.lastIndexOf( '.', end - 1 ) + 1;
+
+            if ( position > 0 )
+            {
+                key[position++] = '.';
+            }
+
+            for ( int ii = start; ii < end; ii++ )
+            {
+                key[position++] = ( byte ) Character.toLowerCase( name.charAt( ii ) );
+            }
+
+            end = start - 1;
+        }
+
+        return position == key.length ? key : Arrays.copyOf( key, position );
+    }
+
+
+    /**
+     * A growing array of bytes, as the keys are front coded.
+     */
+    private static final class ByteBuilder
+    {
+        private byte[] bytes = new byte[1024];
+
+        private int length;
+
+
+        private void put( byte[] source, int offset, int count )
+        {
+            ensure( count );
+            System.arraycopy( source, offset, bytes, length, count );
+            length += count;
+        }
+
+
+        private void putLength( int value )
+        {
+            ensure( 5 );
+
+            while ( value >= 0x80 )
+            {
+                bytes[length++] = ( byte ) ( value | 0x80 );
+                value >>>= 7;
+            }
+
+            bytes[length++] = ( byte ) value;
+        }
+
+
+        private void ensure( int count )
+        {
+            if ( length + count > bytes.length )
+            {
+                bytes = Arrays.copyOf( bytes, Math.max( bytes.length * 2, length + count ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,524 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.util;
+
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+
+/**
+ * An immutable hash map which is updated by creating a new map, which shares
+ * all but a handful of its nodes with the old one.  It is a hash array mapped
+ * trie: each node holds up to 32 slots, indexed by five bits of the key hash,
+ * so a lookup is a few array reads and {@link #plus(Object, Object)} and
+ * {@link #minus(Object)} copy only the nodes on the path to the key.<p>
+ * 
+ * This lets a writer derive a new version of a large map at the cost of the
+ * change alone, while readers keep using the version they hold without any
+ * locking.  The {@link Map} mutators are not supported.
+ * 
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V>
+{
+    /** The number of hash bits used by each level of the trie */
+    private static final int BITS = 5;
+
+    /** The deepest a trie can be, once all the hash bits are used */
+    private static final int MAX_DEPTH = 32 / BITS + 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentHashMap EMPTY = new PersistentHashMap( new Node( 0, new Object[0] ), 0 );
+
+    private final Node root;
+
+    private final int size;
+
+
+    private PersistentHashMap( Node root, int size )
+    {
+        this.root = root;
+        this.size = size;
+    }
+
+
+    /**
+     * Returns the empty map.
+     *
+     * @return The empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty()
+    {
+        return EMPTY;
+    }
+
+
+    /**
+     * Returns a map with the mappings of another map.
+     *
+     * @param map
+     * @return The persistent map.
+     */
+    public static <K, V> PersistentHashMap<K, V> copyOf( Map<? extends K, ? extends V> map )
+    {
+        PersistentHashMap<K, V> copy = empty();
+
+        for ( Map.Entry<? extends K, ? extends V> entry : map.entrySet() )
+        {
+            copy = copy.plus( entry.getKey(), entry.getValue() );
+        }
+
+        return copy;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public V get( Object key )
+    {
+        Leaf leaf = find( key );
+
+        return leaf == null ? null : ( V ) leaf.value;
+    }
+
+
+    public boolean containsKey( Object key )
+    {
+        return find( key ) != null;
+    }
+
+
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * Returns a map with the mappings of this one, and the key mapped to the
+     * value.
+     *
+     * @param key
+     * @param value
+     * @return The new map, or this map if the key was already mapped to the
+     * same value.
+     */
+    public PersistentHashMap<K, V> plus( K key, V value )
+    {
+        int[] added = new int[1];
+        Node newRoot = plus( root, 0, hash( key ), key, value, added );
+
+        return newRoot == root ? this : new PersistentHashMap<K, V>( newRoot, size + added[0] );
+    }
+
+
+    /**
+     * Returns a map with the mappings of this one, but for the key.
+     *
+     * @param key
+     * @return The new map, or this map if the key was not mapped.
+     */
+    public PersistentHashMap<K, V> minus( Object key )
+    {
+        Node newRoot = minus( root, 0, hash( key ), key );
+
+        if ( newRoot == root )
+        {
+            return this;
+        }
+
+        return new PersistentHashMap<K, V>( newRoot == null ? EMPTY.root : newRoot, size - 1 );
+    }
+
+
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<K, V>>()
+        {
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                return new EntryIterator<K, V>( root );
+            }
+
+
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+
+    private Leaf find( Object key )
+    {
+        int hash = hash( key );
+        Object slot = root;
+
+        for ( int shift = 0; slot instanceof Node; shift += BITS )
+        {
+            Node node = ( Node ) slot;
+            int bit = bit( hash, shift );
+
+            if ( ( node.bitmap & bit ) == 0 )
+            {
+                return null;
+            }
+
+            slot = node.slots[node.index( bit )];
+        }
+
+        for ( Leaf leaf = ( Leaf ) slot; leaf != null; leaf = leaf.next )
+        {
+            if ( leaf.hash == hash && equal( leaf.key, key ) )
+            {
+                return leaf;
+            }
+        }
+
+        return null;
+    }
+
+
+    private static Node plus( Node node, int shift, int hash, Object key, Object value, int[] added )
+    {
+        int bit = bit( hash, shift );
+        int index = node.index( bit );
+
+        if ( ( node.bitmap & bit ) == 0 )
+        {
+            added[0] = 1;
+            return node.insert( bit, index, new Leaf( hash, key, value, null ) );
+        }
+
+        Object slot = node.slots[index];
+        Object newSlot;
+
+        if ( slot instanceof Node )
+        {
+            newSlot = plus( ( Node ) slot, shift + BITS, hash, key, value, added );
+        }
+        else
+        {
+            Leaf leaf = ( Leaf ) slot;
+
+            if ( leaf.hash == hash )
+            {
+                newSlot = leaf.plus( key, value, added );
+            }
+            else
+            {
+                added[0] = 1;
+                newSlot = split( leaf, new Leaf( hash, key, value, null ), shift + BITS );
+            }
+        }
+
+        return newSlot == slot ? node : node.replace( index, newSlot );
+    }
+
+
+    /**
+     * Returns a node holding two leaves of different hashes.
+     */
+    private static Node split( Leaf leaf1, Leaf leaf2, int shift )
+    {
+        int bit1 = bit( leaf1.hash, shift );
+        int bit2 = bit( leaf2.hash, shift );
+
+        if ( bit1 == bit2 )
+        {
+            return new Node( bit1, new Object[]
+                { split( leaf1, leaf2, shift + BITS ) } );
+        }
+
+        // the bits compare unsigned, as the slots are in the order of the bitmap
+        return new Node( bit1 | bit2, ( ( bit1 - 1 ) & bit2 ) == 0 ? new Object[]
+            { leaf1, leaf2 } : new Object[]
+            { leaf2, leaf1 } );
+    }
+
+
+    /**
+     * Returns the node without the key, or null if nothing is left of it.
+     */
+    private static Node minus( Node node, int shift, int hash, Object key )
+    {
+        int bit = bit( hash, shift );
+
+        if ( ( node.bitmap & bit ) == 0 )
+        {
+            return node;
+        }
+
+        int index = node.index( bit );
+        Object slot = node.slots[index];
+        Object newSlot;
+
+        if ( slot instanceof Node )
+        {
+            Node child = minus( ( Node ) slot, shift + BITS, hash, key );
+
+            if ( child == slot )
+            {
+                return node;
+            }
+
+            // a node left with a single leaf collapses into it
+            newSlot = child != null && child.slots.length == 1 && child.slots[0] instanceof Leaf ? child.slots[0]
+                : child;
+        }
+        else
+        {
+            newSlot = ( ( Leaf ) slot ).minus( hash, key );
+        }
+
+        if ( newSlot == slot )
+        {
+            return node;
+        }
+
+        if ( newSlot != null )
+        {
+            return node.replace( index, newSlot );
+        }
+
+        return node.slots.length == 1 ? null : node.remove( bit, index );
+    }
+
+
+    private static int hash( Object key )
+    {
+        int hash = key == null ? 0 : key.hashCode();
+
+        return hash ^ ( hash >>> 16 );
+    }
+
+
+    private static int bit( int hash, int shift )
+    {
+        return 1 << ( ( hash >>> shift ) & 0x1F );
+    }
+
+
+    private static boolean equal( Object key1, Object key2 )
+    {
+        return key1 == null ? key2 == null : key1.equals( key2 );
+    }
+
+    /**
+     * An inner node of the trie.  Its slots hold either nodes or leaves, and
+     * are in the order of the bits set in the bitmap.
+     */
+    private static final class Node
+    {
+        private final int bitmap;
+        private final Object[] slots;
+
+
+        Node( int bitmap, Object[] slots )
+        {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+
+        int index( int bit )
+        {
+            return Integer.bitCount( bitmap & ( bit - 1 ) );
+        }
+
+
+        Node insert( int bit, int index, Object slot )
+        {
+            Object[] newSlots = new Object[slots.length + 1];
+            System.arraycopy( slots, 0, newSlots, 0, index );
+            newSlots[index] = slot;
+            System.arraycopy( slots, index, newSlots, index + 1, slots.length - index );
+
+            return new Node( bitmap | bit, newSlots );
+        }
+
+
+        Node replace( int index, Object slot )
+        {
+            Object[] newSlots = slots.clone();
+            newSlots[index] = slot;
+
+            return new Node( bitmap, newSlots );
+        }
+
+
+        Node remove( int bit, int index )
+        {
+            Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy( slots, 0, newSlots, 0, index );
+            System.arraycopy( slots, index + 1, newSlots, index, newSlots.length - index );
+
+            return new Node( bitmap & ~bit, newSlots );
+        }
+    }
+
+    /**
+     * A mapping, chained to the other mappings with the same hash.
+     */
+    private static final class Leaf
+    {
+        private final int hash;
+        private final Object key;
+        private final Object value;
+        private final Leaf next;
+
+
+        Leaf( int hash, Object key, Object value, Leaf next )
+        {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+
+        Leaf plus( Object key, Object value, int[] added )
+        {
+            if ( equal( this.key, key ) )
+            {
+                return this.value == value ? this : new Leaf( hash, key, value, next );
+            }
+
+            if ( next == null )
+            {
+                added[0] = 1;
+                return new Leaf( hash, this.key, this.value, new Leaf( hash, key, value, null ) );
+            }
+
+            Leaf newNext = next.plus( key, value, added );
+
+            return newNext == next ? this : new Leaf( hash, this.key, this.value, newNext );
+        }
+
+
+        Leaf minus( int hash, Object key )
+        {
+            if ( this.hash != hash )
+            {
+                return this;
+            }
+
+            if ( equal( this.key, key ) )
+            {
+                return next;
+            }
+
+            if ( next == null )
+            {
+                return this;
+            }
+
+            Leaf newNext = next.minus( hash, key );
+
+            return newNext == next ? this : new Leaf( hash, this.key, this.value, newNext );
+        }
+    }
+
+    /**
+     * Walks the trie depth first.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>>
+    {
+        private final Object[][] stack = new Object[MAX_DEPTH + 1][];
+        private final int[] positions = new int[MAX_DEPTH + 1];
+        private int depth;
+        private Leaf leaf;
+
+
+        EntryIterator( Node root )
+        {
+            stack[0] = root.slots;
+            advance();
+        }
+
+
+        public boolean hasNext()
+        {
+            return leaf != null;
+        }
+
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next()
+        {
+            if ( leaf == null )
+            {
+                throw new NoSuchElementException();
+            }
+
+            Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<K, V>( ( K ) leaf.key, ( V ) leaf.value );
+            leaf = leaf.next;
+
+            if ( leaf == null )
+            {
+                advance();
+            }
+
+            return entry;
+        }
+
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+
+        private void advance()
+        {
+            while ( depth >= 0 )
+            {
+                if ( positions[depth] == stack[depth].length )
+                {
+                    depth--;
+                    continue;
+                }
+
+                Object slot = stack[depth][positions[depth]++];
+
+                if ( slot instanceof Node )
+                {
+                    depth++;
+                    stack[depth] = ( ( Node ) slot ).slots;
+                    positions[depth] = 0;
+                }
+                else
+                {
+                    leaf = ( Leaf ) slot;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -21,8 +21,7 @@
 package org.apache.directory.server.dns.util;
 
 
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.reflect.Array;
 
 import org.apache.directory.server.i18n.I18n;
 
@@ -30,16 +29,25 @@ import org.apache.directory.server.i18n.I18n;
 /**
  * A map to easily get the actual Enum instance from it's value as seen in the
  * <a href="http://www.javaspecialists.co.za/archive/newsletter.do?issue=113">
- * The JavaSpecialists newsletter</a>.
+ * The JavaSpecialists newsletter</a>.<p>
+ * 
+ * The DNS enums all convert to small unsigned codes, so the reverse mapping is
+ * kept in an array indexed by the code rather than in a hashed map.  Lookups
+ * are then a bounds check and an array read, and the primitive {@link #get(int)}
+ * does not need the code to be boxed first.
  * 
  * @param <K> 
  * @param <E> 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  * @version $Rev$, $Date$
  */
-public class ReverseEnumMap<K, E extends Enum<E> & EnumConverter<K>>
+public class ReverseEnumMap<K extends Number, E extends Enum<E> & EnumConverter<K>>
 {
-    private Map<K, E> reverseMap = new HashMap<K, E>();
+    /** The enum constants, indexed by their unsigned 16 bit value */
+    private final E[] reverseMap;
+
+    /** The constant returned for values without a mapping, or null to reject them */
+    private final E unknown;
 
 
     /**
@@ -49,10 +57,43 @@ public class ReverseEnumMap<K, E extends Enum<E> & EnumConverter<K>>
      */
     public ReverseEnumMap( Class<E> enumType )
     {
-        for ( E e : enumType.getEnumConstants() )
+        this( enumType, null );
+    }
+
+
+    /**
+     * Creates a new instance of ReverseEnumMap which maps every value that
+     * has no constant of its own to the given one, instead of rejecting it.
+     *
+     * @param enumType
+     * @param unknown the constant to return for unmapped values, which
+     * needs no value of its own
+     */
+    @SuppressWarnings("unchecked")
+    public ReverseEnumMap( Class<E> enumType, E unknown )
+    {
+        E[] constants = enumType.getEnumConstants();
+        int max = 0;
+
+        for ( E e : constants )
+        {
+            if ( e != unknown )
+            {
+                max = Math.max( max, index( e.convert().intValue() ) );
+            }
+        }
+
+        reverseMap = ( E[] ) Array.newInstance( enumType, max + 1 );
+
+        for ( E e : constants )
         {
-            reverseMap.put( e.convert(), e );
+            if ( e != unknown )
+            {
+                reverseMap[index( e.convert().intValue() )] = e;
+            }
         }
+
+        this.unknown = unknown;
     }
 
 
@@ -62,13 +103,43 @@ public class ReverseEnumMap<K, E extends Enum<E> & EnumConverter<K>>
      * @param value
      * @return The enum.
      */
-    public E get( K value )
+    public E get( int value )
     {
-        E e = reverseMap.get( value );
-        if ( e == null )
+        int index = index( value );
+
+        if ( index < reverseMap.length )
+        {
+            E e = reverseMap[index];
+
+            if ( e != null )
+            {
+                return e;
+            }
+        }
+
+        if ( unknown == null )
         {
             throw new IllegalArgumentException( I18n.err( I18n.ERR_650, value ) );
         }
-        return e;
+
+        return unknown;
+    }
+
+
+    /**
+     * Return the enum given an ordinal value.
+     *
+     * @param value
+     * @return The enum.
+     */
+    public E get( K value )
+    {
+        return get( value.intValue() );
+    }
+
+
+    private static int index( int value )
+    {
+        return value & 0xFFFF;
     }
 }
@@ -75,6 +75,27 @@ public abstract class AbstractDnsTestCase
     }
 
 
+    /**
+     * Returns an IN record with a TTL of an hour, with the given attribute ids
+     * and values in turn.
+     */
+    protected ResourceRecord getRecord( String name, RecordType type, String... attributes )
+    {
+        ResourceRecordModifier modifier = new ResourceRecordModifier();
+        modifier.setDnsName( name );
+        modifier.setDnsType( type );
+        modifier.setDnsClass( RecordClass.IN );
+        modifier.setDnsTtl( 3600 );
+
+        for ( int ii = 0; ii < attributes.length; ii += 2 )
+        {
+            modifier.put( attributes[ii], attributes[ii + 1] );
+        }
+
+        return modifier.getEntry();
+    }
+
+
     protected IoBuffer getByteBufferFromFile( String file ) throws IOException
     {
         InputStream is = getClass().getResourceAsStream( file );
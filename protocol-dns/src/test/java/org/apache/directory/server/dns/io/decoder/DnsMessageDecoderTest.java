@@ -0,0 +1,203 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.io.decoder;
+
+
+import java.util.List;
+
+import org.apache.directory.server.dns.io.encoder.DnsMessageEncoder;
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the DNS message decoder with record types that used to have no
+ * decoder.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class DnsMessageDecoderTest
+{
+    /**
+     * A response for www.example.com with a CNAME to host.example.com, and
+     * an answer of type 65 which has no RecordType constant.
+     */
+    private static final byte[] RESPONSE = new byte[]
+        {
+            0x12, 0x34, ( byte ) 0x81, ( byte ) 0x80, 0x00, 0x01, 0x00, 0x02, 0x00, 0x00, 0x00, 0x00,
+            // www.example.com A IN
+            0x03, 'w', 'w', 'w', 0x07, 'e', 'x', 'a', 'm', 'p', 'l', 'e', 0x03, 'c', 'o', 'm', 0x00,
+            0x00, 0x01, 0x00, 0x01,
+            // www.example.com CNAME IN 300 host.example.com, compressed
+            ( byte ) 0xc0, 0x0c, 0x00, 0x05, 0x00, 0x01, 0x00, 0x00, 0x01, 0x2c, 0x00, 0x07,
+            0x04, 'h', 'o', 's', 't', ( byte ) 0xc0, 0x10,
+            // host.example.com TYPE65 IN 300 \# 3 0001ff
+            ( byte ) 0xc0, 0x2d, 0x00, 0x41, 0x00, 0x01, 0x00, 0x00, 0x01, 0x2c, 0x00, 0x03,
+            0x00, 0x01, ( byte ) 0xff
+        };
+
+
+    /**
+     * A query for example.com A with an EDNS OPT record advertising a 4096
+     * byte UDP payload.
+     */
+    private static final byte[] EDNS_QUERY = new byte[]
+        {
+            0x12, 0x34, 0x01, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01,
+            0x07, 'e', 'x', 'a', 'm', 'p', 'l', 'e', 0x03, 'c', 'o', 'm', 0x00, 0x00, 0x01, 0x00, 0x01,
+            // . OPT 4096 0 0
+            0x00, 0x00, 0x29, 0x10, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00
+        };
+
+
+    /**
+     * A response for example.com MINFO with both mailbox names compressed
+     * against the question, and a question of type 65.
+     */
+    private static final byte[] MINFO_RESPONSE = new byte[]
+        {
+            0x12, 0x34, ( byte ) 0x81, ( byte ) 0x80, 0x00, 0x02, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00,
+            // example.com MINFO IN
+            0x07, 'e', 'x', 'a', 'm', 'p', 'l', 'e', 0x03, 'c', 'o', 'm', 0x00, 0x00, 0x0e, 0x00, 0x01,
+            // example.com TYPE65 IN
+            ( byte ) 0xc0, 0x0c, 0x00, 0x41, 0x00, 0x01,
+            // example.com MINFO IN 300 a.example.com example.com
+            ( byte ) 0xc0, 0x0c, 0x00, 0x0e, 0x00, 0x01, 0x00, 0x00, 0x01, 0x2c, 0x00, 0x06,
+            0x01, 'a', ( byte ) 0xc0, 0x0c, ( byte ) 0xc0, 0x0c
+        };
+
+
+    @Test
+    public void testDecodeCanonicalName() throws Exception
+    {
+        DnsMessage message = new DnsMessageDecoder().decode( IoBuffer.wrap( RESPONSE ) );
+        ResourceRecord cname = message.getAnswerRecords().get( 0 );
+
+        assertEquals( RecordType.CNAME, cname.getRecordType() );
+        assertEquals( "www.example.com", cname.getDomainName() );
+        assertEquals( "host.example.com", cname.get( DnsAttribute.DOMAIN_NAME ) );
+    }
+
+
+    @Test
+    public void testDecodeUnknownType() throws Exception
+    {
+        DnsMessage message = new DnsMessageDecoder().decode( IoBuffer.wrap( RESPONSE ) );
+        ResourceRecord unknown = message.getAnswerRecords().get( 1 );
+
+        assertEquals( RecordType.UNKNOWN, unknown.getRecordType() );
+        assertEquals( "host.example.com", unknown.getDomainName() );
+        assertEquals( "65", unknown.get( DnsAttribute.TYPE ) );
+        assertEquals( "0001ff", unknown.get( DnsAttribute.RDATA ) );
+    }
+
+
+    @Test
+    public void testUnknownTypeRoundTrip() throws Exception
+    {
+        DnsMessage message = new DnsMessageDecoder().decode( IoBuffer.wrap( RESPONSE ) );
+
+        IoBuffer out = IoBuffer.allocate( 128 );
+        new DnsMessageEncoder().encode( out, message );
+        out.flip();
+
+        List<ResourceRecord> answers = new DnsMessageDecoder().decode( out ).getAnswerRecords();
+
+        assertEquals( 2, answers.size() );
+        assertEquals( "host.example.com", answers.get( 0 ).get( DnsAttribute.DOMAIN_NAME ) );
+        assertEquals( "65", answers.get( 1 ).get( DnsAttribute.TYPE ) );
+        assertEquals( "0001ff", answers.get( 1 ).get( DnsAttribute.RDATA ) );
+    }
+
+
+    @Test
+    public void testDecodeEdns() throws Exception
+    {
+        DnsMessage message = new DnsMessageDecoder().decode( IoBuffer.wrap( EDNS_QUERY ) );
+
+        ResourceRecord opt = message.getAdditionalRecords().get( 0 );
+        assertEquals( RecordType.OPT, opt.getRecordType() );
+        assertEquals( "4096", opt.get( DnsAttribute.UDP_PAYLOAD_SIZE ) );
+    }
+
+
+    @Test
+    public void testDecodeCompressedNames() throws Exception
+    {
+        DnsMessage message = new DnsMessageDecoder().decode( IoBuffer.wrap( MINFO_RESPONSE ) );
+        ResourceRecord minfo = message.getAnswerRecords().get( 0 );
+
+        assertEquals( RecordType.MINFO, minfo.getRecordType() );
+        assertEquals( "0161076578616d706c6503636f6d00" + "076578616d706c6503636f6d00",
+            minfo.get( DnsAttribute.RDATA ) );
+
+        // the expanded names no longer point into the original message
+        IoBuffer out = IoBuffer.allocate( 128 );
+        new DnsMessageEncoder().encode( out, message );
+        out.flip();
+
+        ResourceRecord copy = new DnsMessageDecoder().decode( out ).getAnswerRecords().get( 0 );
+        assertEquals( minfo.get( DnsAttribute.RDATA ), copy.get( DnsAttribute.RDATA ) );
+    }
+
+
+    @Test
+    public void testUnknownQuestionType() throws Exception
+    {
+        DnsMessage message = new DnsMessageDecoder().decode( IoBuffer.wrap( MINFO_RESPONSE ) );
+        QuestionRecord question = message.getQuestionRecords().get( 1 );
+
+        assertEquals( RecordType.UNKNOWN, question.getRecordType() );
+        assertEquals( 65, question.getTypeCode() );
+
+        IoBuffer out = IoBuffer.allocate( 128 );
+        new DnsMessageEncoder().encode( out, message );
+        out.flip();
+
+        question = new DnsMessageDecoder().decode( out ).getQuestionRecords().get( 1 );
+        assertEquals( 65, question.getTypeCode() );
+    }
+
+
+    @Test
+    public void testOptQuestion() throws Exception
+    {
+        // a question of type OPT is a question like any other, its CLASS is not a payload size
+        byte[] query = new byte[]
+            {
+                0x12, 0x34, 0x01, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x07, 'e', 'x', 'a', 'm', 'p', 'l', 'e', 0x03, 'c', 'o', 'm', 0x00, 0x00, 0x29, 0x00, 0x03
+            };
+
+        QuestionRecord question = new DnsMessageDecoder().decode( IoBuffer.wrap( query ) ).getQuestionRecords()
+            .get( 0 );
+
+        assertEquals( RecordType.OPT, question.getRecordType() );
+        assertEquals( RecordClass.CH, question.getRecordClass() );
+    }
+}
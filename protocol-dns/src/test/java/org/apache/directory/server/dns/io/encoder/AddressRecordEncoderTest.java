@@ -21,13 +21,19 @@
 package org.apache.directory.server.dns.io.encoder;
 
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecordImpl;
 import org.apache.directory.server.dns.store.DnsAttribute;
 import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import static org.junit.Assert.fail;
 
 
 /**
@@ -73,4 +79,52 @@ public class AddressRecordEncoderTest extends AbstractResourceRecordEncoderTest
         expectedData.put( ( byte ) address.getAddress().length );
         expectedData.put( address.getAddress() );
     }
+
+
+    @Test
+    public void testInvalidAddress()
+    {
+        String[] invalid = { "999.1.1.1", "10.0.0", "example.com", "::1" };
+
+        for ( String address : invalid )
+        {
+            Map attributes = new HashMap();
+            attributes.put( DnsAttribute.IP_ADDRESS, address );
+
+            try
+            {
+                getEncoder().put( IoBuffer.allocate( 128 ),
+                    new ResourceRecordImpl( domainName, RecordType.A, RecordClass.IN, timeToLive, attributes ) );
+                fail( "Encoded " + address );
+            }
+            catch ( IOException ioe )
+            {
+                // expected
+            }
+        }
+    }
+
+
+    @Test
+    public void testInvalidInet6Address()
+    {
+        String[] invalid = { "example.com", "2001:db8::g", "127.0.0.1" };
+
+        for ( String address : invalid )
+        {
+            Map attributes = new HashMap();
+            attributes.put( DnsAttribute.IP_ADDRESS, address );
+
+            try
+            {
+                new Inet6AddressRecordEncoder().put( IoBuffer.allocate( 128 ), new ResourceRecordImpl( domainName,
+                    RecordType.AAAA, RecordClass.IN, timeToLive, attributes ) );
+                fail( "Encoded " + address );
+            }
+            catch ( IOException ioe )
+            {
+                // expected
+            }
+        }
+    }
 }
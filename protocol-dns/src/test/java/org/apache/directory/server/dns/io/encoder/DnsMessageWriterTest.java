@@ -0,0 +1,180 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.io.encoder;
+
+
+import java.util.Collections;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.io.decoder.DnsMessageDecoder;
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the streaming DNS message writer.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class DnsMessageWriterTest extends AbstractDnsTestCase
+{
+    @Test
+    public void testSectionCounts() throws Exception
+    {
+        IoBuffer out = IoBuffer.allocate( 512 );
+        out.setAutoExpand( true );
+
+        DnsMessageWriter writer = new DnsMessageWriter( out );
+        writer.putHeader( 51511, MessageType.RESPONSE, OpCode.QUERY, true, false, true, false,
+            ResponseCode.NO_ERROR );
+        writer.putQuestion( getTestMxQuestionRecord() );
+        writer.putAnswers( getTestMxAnswerRecords() );
+        writer.putAuthority( getTestMxAuthorityRecords().get( 0 ) );
+        writer.finish();
+        out.flip();
+
+        DnsMessage message = new DnsMessageDecoder().decode( out );
+
+        assertEquals( 51511, message.getTransactionId() );
+        assertTrue( message.isAuthoritativeAnswer() );
+        assertEquals( 1, message.getQuestionRecords().size() );
+        assertEquals( 2, message.getAnswerRecords().size() );
+        assertEquals( 1, message.getAuthorityRecords().size() );
+        assertEquals( 0, message.getAdditionalRecords().size() );
+        assertEquals( "mail.apache.org", message.getAnswerRecords().get( 1 ).get( "apacheDnsDomainName" ) );
+    }
+
+
+    @Test
+    public void testEncoderMatchesWriter() throws Exception
+    {
+        DnsMessage query = getTestMxQuery();
+
+        IoBuffer encoded = IoBuffer.allocate( 512 );
+        new DnsMessageEncoder().encode( encoded, query );
+        encoded.flip();
+
+        IoBuffer expected = getByteBufferFromFile( "/org/apache/directory/server/dns/protocol/MX-QUERY.pdu" );
+        assertEquals( expected.limit( encoded.remaining() ), encoded );
+    }
+
+
+    @Test
+    public void testRawQuestionEchoedAndCompressed() throws Exception
+    {
+        // a 0x20 randomised question, as a resolver would send it
+        QuestionRecord question = new QuestionRecord( "aPaChE.oRg", RecordType.MX, RecordClass.IN );
+        IoBuffer raw = IoBuffer.allocate( 32 );
+        new QuestionRecordEncoder().put( raw, question );
+        raw.flip();
+        byte[] questionBytes = new byte[raw.remaining()];
+        raw.get( questionBytes );
+
+        IoBuffer out = IoBuffer.allocate( 512 );
+        out.setAutoExpand( true );
+
+        DnsMessageWriter writer = new DnsMessageWriter( out );
+        writer.putHeader( 51511, MessageType.RESPONSE, OpCode.QUERY, false, false, true, false,
+            ResponseCode.NO_ERROR );
+        writer.putQuestions( questionBytes, Collections.singletonList( getTestMxQuestionRecord() ) );
+        writer.putAnswers( getTestMxAnswerRecords() );
+        writer.finish();
+        out.flip();
+
+        // the owner name of each answer is a pointer to the question name
+        assertEquals( ( short ) 0xC00C, out.getShort( 12 + questionBytes.length ) );
+
+        DnsMessage message = new DnsMessageDecoder().decode( out );
+
+        assertEquals( "aPaChE.oRg", message.getQuestionRecords().get( 0 ).getDomainName() );
+        assertEquals( 2, message.getAnswerRecords().size() );
+        assertEquals( "aPaChE.oRg", message.getAnswerRecords().get( 1 ).getDomainName() );
+        assertEquals( "mail.apache.org", message.getAnswerRecords().get( 1 ).get( "apacheDnsDomainName" ) );
+    }
+
+
+    @Test
+    public void testTruncatedAtRecordSetBoundary() throws Exception
+    {
+        IoBuffer out = IoBuffer.allocate( 512 );
+        out.setAutoExpand( true );
+
+        // room for the header, the question and one MX record, but not both
+        DnsMessageWriter writer = new DnsMessageWriter( out );
+        writer.setMaxLength( 64 );
+        writer.putHeader( 51511, MessageType.RESPONSE, OpCode.QUERY, true, false, true, false,
+            ResponseCode.NO_ERROR );
+        writer.putQuestion( getTestMxQuestionRecord() );
+        writer.putAnswers( getTestMxAnswerRecords() );
+        writer.putAdditional( getTestMxAdditionalRecords().get( 0 ) );
+        writer.finish();
+        out.flip();
+
+        assertTrue( writer.isTruncated() );
+        assertTrue( out.remaining() <= 64 );
+
+        DnsMessage message = new DnsMessageDecoder().decode( out );
+
+        assertTrue( message.isTruncated() );
+        assertEquals( 1, message.getQuestionRecords().size() );
+        assertEquals( 0, message.getAnswerRecords().size() );
+        assertEquals( 0, message.getAdditionalRecords().size() );
+    }
+
+
+    @Test
+    public void testAdditionalDroppedWithoutTruncation() throws Exception
+    {
+        IoBuffer out = IoBuffer.allocate( 512 );
+        out.setAutoExpand( true );
+
+        // room for the answers, but not for the additional records
+        DnsMessageWriter writer = new DnsMessageWriter( out );
+        writer.setMaxLength( 100 );
+        writer.putHeader( 51511, MessageType.RESPONSE, OpCode.QUERY, true, false, true, false,
+            ResponseCode.NO_ERROR );
+        writer.putQuestion( getTestMxQuestionRecord() );
+        writer.putAnswers( getTestMxAnswerRecords() );
+        writer.putAdditionals( getTestMxAdditionalRecords() );
+        writer.putEdns( 4096 );
+        writer.finish();
+        out.flip();
+
+        assertFalse( writer.isTruncated() );
+
+        DnsMessage message = new DnsMessageDecoder().decode( out );
+
+        assertFalse( message.isTruncated() );
+        assertEquals( 2, message.getAnswerRecords().size() );
+        assertEquals( 1, message.getAdditionalRecords().size() );
+        assertEquals( RecordType.OPT, message.getAdditionalRecords().get( 0 ).getRecordType() );
+    }
+}
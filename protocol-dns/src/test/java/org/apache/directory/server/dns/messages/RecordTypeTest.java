@@ -0,0 +1,104 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.dns.messages;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Test case for the RecordType class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class RecordTypeTest
+{
+    /**
+     * Tests conversion of ordinals to RecordType enums.
+     */
+    @Test
+    public void testRecordTypeConversion()
+    {
+        assertEquals( RecordType.A, RecordType.convert( ( short ) 1 ) );
+        assertEquals( RecordType.CNAME, RecordType.convert( ( short ) 5 ) );
+        assertEquals( RecordType.ATMA, RecordType.convert( ( short ) 34 ) );
+        assertEquals( RecordType.CERT, RecordType.convert( ( short ) 37 ) );
+        assertEquals( RecordType.ANY, RecordType.convert( ( short ) 255 ) );
+    }
+
+
+    /**
+     * Tests that type codes without a constant convert to UNKNOWN.
+     */
+    @Test
+    public void testUnknownRecordTypeConversion()
+    {
+        assertEquals( RecordType.UNKNOWN, RecordType.convert( ( short ) 65 ) );
+        assertEquals( RecordType.UNKNOWN, RecordType.convert( ( short ) 0xFF00 ) );
+        assertEquals( RecordType.UNKNOWN, RecordType.convert( ( short ) 0 ) );
+    }
+
+
+    /**
+     * Tests that UNKNOWN does not claim a type code of its own.
+     */
+    @Test
+    public void testUnknownHasNoCode()
+    {
+        assertNull( RecordType.UNKNOWN.convert() );
+    }
+
+
+    /**
+     * Tests that a question of an unknown type is made from its type code.
+     */
+    @Test
+    public void testUnknownQuestion()
+    {
+        QuestionRecord question = new QuestionRecord( "example.com", 65, RecordClass.IN );
+        assertEquals( RecordType.UNKNOWN, question.getRecordType() );
+        assertEquals( 65, question.getTypeCode() );
+
+        try
+        {
+            new QuestionRecord( "example.com", RecordType.UNKNOWN, RecordClass.IN );
+            fail();
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            // expected
+        }
+    }
+
+
+    /**
+     * Tests that the boxed value is not reallocated on every conversion.
+     */
+    @Test
+    public void testConvertIsCached()
+    {
+        assertSame( RecordType.ANY.convert(), RecordType.ANY.convert() );
+        assertSame( RecordType.AXFR.convert(), RecordType.AXFR.convert() );
+    }
+}
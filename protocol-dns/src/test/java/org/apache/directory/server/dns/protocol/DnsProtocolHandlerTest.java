@@ -0,0 +1,155 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.dns.protocol;
+
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.io.decoder.DnsMessageDecoder;
+import org.apache.directory.server.dns.io.encoder.DnsMessageEncoder;
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.DnsMessageModifier;
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.zone.ZoneModifier;
+import org.apache.directory.server.dns.store.zone.ZoneRecordStore;
+import org.apache.directory.server.dns.store.zone.ZoneRegistry;
+import org.apache.directory.server.protocol.shared.TimingWheel;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for the handling of the TCP connections.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class DnsProtocolHandlerTest extends AbstractDnsTestCase
+{
+    /** The time a connection may stay idle, in milliseconds */
+    private static final long IDLE_TIMEOUT = 300;
+
+
+    @Test
+    public void testIdleTimeout() throws Exception
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "example.com" );
+        modifier.add( getRecord( "www.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+
+        ZoneRegistry registry = new ZoneRegistry();
+        registry.put( modifier.getZone() );
+
+        TimingWheel timers = new TimingWheel( 10, TimeUnit.MILLISECONDS, 64, null );
+        timers.start();
+
+        DnsProtocolHandler handler = new DnsProtocolHandler( new ZoneRecordStore( registry ) );
+        handler.setIdleTimeout( timers, IDLE_TIMEOUT, TimeUnit.MILLISECONDS );
+
+        NioSocketAcceptor acceptor = new NioSocketAcceptor();
+        acceptor.setHandler( handler );
+        acceptor.bind( new InetSocketAddress( InetAddress.getByName( "127.0.0.1" ), 0 ) );
+
+        Socket socket = new Socket( acceptor.getLocalAddress().getAddress(), acceptor.getLocalAddress().getPort() );
+        socket.setSoTimeout( 5000 );
+
+        try
+        {
+            // a query half way through the timeout puts the closing off
+            Thread.sleep( IDLE_TIMEOUT / 2 );
+
+            OutputStream out = socket.getOutputStream();
+            out.write( frame( getQuery() ) );
+            out.flush();
+
+            DataInputStream in = new DataInputStream( socket.getInputStream() );
+            byte[] bytes = new byte[in.readUnsignedShort()];
+            in.readFully( bytes );
+            long answered = System.currentTimeMillis();
+
+            DnsMessage reply = new DnsMessageDecoder().decode( IoBuffer.wrap( bytes ) );
+            assertEquals( ResponseCode.NO_ERROR, reply.getResponseCode() );
+
+            // then the connection is closed once it was idle for the whole timeout
+            assertEquals( -1, in.read() );
+            assertTrue( System.currentTimeMillis() - answered >= IDLE_TIMEOUT - 20 );
+            assertEquals( 0, timers.getPendingCount() );
+        }
+        finally
+        {
+            socket.close();
+            acceptor.dispose();
+            timers.stop();
+        }
+    }
+
+
+    /**
+     * Returns a message prefixed with its length, as sent over TCP.
+     */
+    private byte[] frame( DnsMessage message ) throws Exception
+    {
+        IoBuffer buffer = IoBuffer.allocate( 512 );
+        new DnsMessageEncoder().encode( buffer, message );
+        buffer.flip();
+
+        byte[] bytes = new byte[2 + buffer.remaining()];
+        bytes[0] = ( byte ) ( buffer.remaining() >> 8 );
+        bytes[1] = ( byte ) buffer.remaining();
+        buffer.get( bytes, 2, buffer.remaining() );
+
+        return bytes;
+    }
+
+
+    private DnsMessage getQuery()
+    {
+        DnsMessageModifier modifier = new DnsMessageModifier();
+        modifier.setTransactionId( 4711 );
+        modifier.setMessageType( MessageType.QUERY );
+        modifier.setOpCode( OpCode.QUERY );
+        modifier.setResponseCode( ResponseCode.NO_ERROR );
+        modifier.setQuestionRecords( Collections.singletonList( new QuestionRecord( "www.example.com",
+            RecordType.A, RecordClass.IN ) ) );
+        modifier.setAnswerRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAuthorityRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+
+        return modifier.getDnsMessage();
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.dns.protocol;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.DnsMessageModifier;
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResourceRecordImpl;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.service.DomainNameService;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.AbstractProtocolDecoderOutput;
+import org.apache.mina.filter.codec.AbstractProtocolEncoderOutput;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests that the UDP codec encodes a reply for the payload size the client
+ * advertised in its request, which the reply carries along.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class DnsUdpCodecTest
+{
+    /** A query for example.com A, the EDNS OPT record is appended when wanted */
+    private static final byte[] QUERY = new byte[]
+        {
+            0x12, 0x34, 0x01, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+            0x07, 'e', 'x', 'a', 'm', 'p', 'l', 'e', 0x03, 'c', 'o', 'm', 0x00, 0x00, 0x01, 0x00, 0x01
+        };
+
+    /** . OPT 4096 0 0 */
+    private static final byte[] OPT = new byte[]
+        { 0x00, 0x00, 0x29, 0x10, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00 };
+
+
+    @Test
+    public void testPlainQuery() throws Exception
+    {
+        IoBuffer reply = roundTrip( QUERY );
+
+        assertTrue( reply.limit() <= 512 );
+        assertTrue( isTruncated( reply ) );
+    }
+
+
+    @Test
+    public void testEdnsQuery() throws Exception
+    {
+        IoBuffer reply = roundTrip( getEdnsQuery() );
+
+        assertTrue( reply.limit() > 512 );
+        assertFalse( isTruncated( reply ) );
+    }
+
+
+    /**
+     * Tests that the clients sharing a UDP session each get replies of their
+     * own payload size, whatever order their requests come in.
+     */
+    @Test
+    public void testSharedSession() throws Exception
+    {
+        IoSession session = new DummySession();
+        DnsMessage ednsRequest = decode( session, getEdnsQuery() );
+        DnsMessage plainRequest = decode( session, QUERY );
+
+        IoBuffer ednsReply = encode( session, ednsRequest );
+        IoBuffer plainReply = encode( session, plainRequest );
+
+        assertTrue( ednsReply.limit() > 512 );
+        assertFalse( isTruncated( ednsReply ) );
+        assertTrue( plainReply.limit() <= 512 );
+        assertTrue( isTruncated( plainReply ) );
+
+        // a bare message is held to the size every client can receive
+        assertTrue( encode( session, ednsRequest, false ).limit() <= 512 );
+    }
+
+
+    private static byte[] getEdnsQuery()
+    {
+        byte[] query = new byte[QUERY.length + OPT.length];
+        System.arraycopy( QUERY, 0, query, 0, QUERY.length );
+        System.arraycopy( OPT, 0, query, QUERY.length, OPT.length );
+        query[11] = 1;
+
+        return query;
+    }
+
+
+    /**
+     * Decodes a query, then encodes a reply of 40 A records for it on the
+     * same session.
+     */
+    private IoBuffer roundTrip( byte[] query ) throws Exception
+    {
+        IoSession session = new DummySession();
+
+        return encode( session, decode( session, query ) );
+    }
+
+
+    private DnsMessage decode( IoSession session, byte[] query ) throws Exception
+    {
+        AbstractProtocolDecoderOutput decoderOut = new AbstractProtocolDecoderOutput()
+        {
+            public void flush( IoFilter.NextFilter nextFilter, IoSession session )
+            {
+            }
+        };
+        new DnsUdpDecoder().decode( session, IoBuffer.wrap( query ), decoderOut );
+
+        return ( DnsMessage ) decoderOut.getMessageQueue().poll();
+    }
+
+
+    private IoBuffer encode( IoSession session, DnsMessage request ) throws Exception
+    {
+        return encode( session, request, true );
+    }
+
+
+    /**
+     * Encodes a reply of 40 A records to a request, as a {@link UdpReply}
+     * carrying the payload size of the request or as a bare message.
+     */
+    private IoBuffer encode( IoSession session, DnsMessage request, boolean sized ) throws Exception
+    {
+        List<ResourceRecord> answers = new ArrayList<ResourceRecord>();
+
+        for ( int ii = 0; ii < 40; ii++ )
+        {
+            Map<String, Object> attributes = new HashMap<String, Object>();
+            attributes.put( DnsAttribute.IP_ADDRESS, "10.0.0." + ii );
+            answers.add( new ResourceRecordImpl( "example.com", RecordType.A, RecordClass.IN, 3600, attributes ) );
+        }
+
+        DnsMessageModifier modifier = new DnsMessageModifier();
+        modifier.setTransactionId( request.getTransactionId() );
+        modifier.setMessageType( MessageType.RESPONSE );
+        modifier.setOpCode( OpCode.QUERY );
+        modifier.setResponseCode( ResponseCode.NO_ERROR );
+        modifier.setQuestionRecords( request.getQuestionRecords() );
+        modifier.setAnswerRecords( answers );
+        modifier.setAuthorityRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+
+        AbstractProtocolEncoderOutput encoderOut = new AbstractProtocolEncoderOutput()
+        {
+            public WriteFuture flush()
+            {
+                return null;
+            }
+        };
+        DnsMessage reply = modifier.getDnsMessage();
+        new DnsUdpEncoder().encode( session, sized ? new UdpReply( reply, DomainNameService
+            .getUdpPayloadSize( request ) ) : reply, encoderOut );
+
+        return ( IoBuffer ) encoderOut.getMessageQueue().poll();
+    }
+
+
+    private boolean isTruncated( IoBuffer reply )
+    {
+        return ( reply.get( 2 ) & 0x02 ) != 0;
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.io.decoder.DnsMessageDecoder;
+import org.apache.directory.server.dns.io.encoder.DnsMessageEncoder;
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.DnsMessageModifier;
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.protocol.DnsProtocolHandler;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.zone.ZoneModifier;
+import org.apache.directory.server.dns.store.zone.ZoneRecordStore;
+import org.apache.directory.server.dns.store.zone.ZoneRegistry;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for the clients allowed to query, transfer and update.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class AccessControlTest extends AbstractDnsTestCase
+{
+    @Test
+    public void testAccessList() throws Exception
+    {
+        AccessList list = new AccessList( "10.0.0.0/8", "!10.1.0.0/16", "10.1.2.3", "fd00::/8" );
+
+        assertTrue( list.isAllowed( InetAddress.getByName( "10.2.0.1" ) ) );
+        assertFalse( list.isAllowed( InetAddress.getByName( "10.1.0.1" ) ) );
+        assertTrue( list.isAllowed( InetAddress.getByName( "10.1.2.3" ) ) );
+        assertTrue( list.isAllowed( InetAddress.getByName( "fd00::1" ) ) );
+        assertFalse( list.isAllowed( InetAddress.getByName( "192.168.1.1" ) ) );
+        assertFalse( list.isAllowed( InetAddress.getByName( "2001:db8::1" ) ) );
+
+        assertTrue( AccessList.ANY.isAllowed( InetAddress.getByName( "2001:db8::1" ) ) );
+        assertFalse( AccessList.NONE.isAllowed( InetAddress.getByName( "127.0.0.1" ) ) );
+    }
+
+
+    @Test
+    public void testRequests() throws Exception
+    {
+        AccessControl control = new AccessControl( AccessList.ANY, new AccessList( "10.0.0.0/8" ), AccessList.NONE );
+        byte[] internal = InetAddress.getByName( "10.0.0.1" ).getAddress();
+        byte[] external = InetAddress.getByName( "192.168.1.1" ).getAddress();
+
+        IoBuffer query = encode( getRequest( OpCode.QUERY, RecordType.A ) );
+        IoBuffer axfr = encode( getRequest( OpCode.QUERY, RecordType.AXFR ) );
+        IoBuffer ixfr = encode( getRequest( OpCode.QUERY, RecordType.IXFR ) );
+        IoBuffer update = encode( getRequest( OpCode.UPDATE, RecordType.SOA ) );
+        IoBuffer notify = encode( getRequest( OpCode.NOTIFY, RecordType.SOA ) );
+
+        assertTrue( control.isAllowed( external, query ) );
+        assertTrue( control.isAllowed( internal, axfr ) );
+        assertFalse( control.isAllowed( external, axfr ) );
+        assertFalse( control.isAllowed( external, ixfr ) );
+        assertFalse( control.isAllowed( internal, update ) );
+        assertTrue( control.isAllowed( external, notify ) );
+
+        // the message is left as it was, to be decoded
+        assertEquals( 0, axfr.position() );
+
+        // too short to tell
+        assertTrue( control.isAllowed( external, IoBuffer.wrap( new byte[4] ) ) );
+    }
+
+
+    @Test
+    public void testRefused() throws Exception
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "example.com" );
+        modifier.add( getRecord( "www.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+
+        ZoneRegistry registry = new ZoneRegistry();
+        registry.put( modifier.getZone() );
+
+        DnsProtocolHandler handler = new DnsProtocolHandler( new ZoneRecordStore( registry ) );
+        handler.setAccessControl( new AccessControl( new AccessList( "!127.0.0.0/8", "0.0.0.0/0" ), AccessList.ANY,
+            AccessList.ANY ) );
+
+        NioDatagramAcceptor acceptor = new NioDatagramAcceptor();
+        acceptor.setHandler( handler );
+        acceptor.bind( new InetSocketAddress( InetAddress.getByName( "127.0.0.1" ), 0 ) );
+
+        DatagramSocket socket = new DatagramSocket();
+        socket.setSoTimeout( 5000 );
+
+        try
+        {
+            DnsMessage reply = exchange( socket, acceptor.getLocalAddress() );
+            assertEquals( 4711, reply.getTransactionId() );
+            assertEquals( MessageType.RESPONSE, reply.getMessageType() );
+            assertEquals( ResponseCode.REFUSED, reply.getResponseCode() );
+            assertTrue( reply.isRecursionDesired() );
+            assertEquals( 0, reply.getAnswerRecords().size() );
+
+            // the clients allowed are swapped while the server runs
+            handler.setAccessControl( AccessControl.ANY );
+
+            reply = exchange( socket, acceptor.getLocalAddress() );
+            assertEquals( ResponseCode.NO_ERROR, reply.getResponseCode() );
+            assertEquals( 1, reply.getAnswerRecords().size() );
+        }
+        finally
+        {
+            socket.close();
+            acceptor.dispose();
+        }
+    }
+
+
+    @Test
+    public void testRefusedOverTcp() throws Exception
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "example.com" );
+        modifier.add( getRecord( "www.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+
+        ZoneRegistry registry = new ZoneRegistry();
+        registry.put( modifier.getZone() );
+
+        DnsProtocolHandler handler = new DnsProtocolHandler( new ZoneRecordStore( registry ) );
+        handler.setAccessControl( new AccessControl( AccessList.ANY, AccessList.NONE, AccessList.ANY ) );
+
+        NioSocketAcceptor acceptor = new NioSocketAcceptor();
+        acceptor.setHandler( handler );
+        acceptor.bind( new InetSocketAddress( InetAddress.getByName( "127.0.0.1" ), 0 ) );
+
+        Socket socket = new Socket( acceptor.getLocalAddress().getAddress(), acceptor.getLocalAddress().getPort() );
+        socket.setSoTimeout( 5000 );
+        socket.setTcpNoDelay( true );
+
+        try
+        {
+            // a transfer refused between two queries, the stream split within the messages
+            byte[] stream = concat( frame( 1, RecordType.A ), frame( 2, RecordType.AXFR ), frame( 3, RecordType.A ) );
+            OutputStream out = socket.getOutputStream();
+
+            for ( int ii = 0; ii < stream.length; ii += 7 )
+            {
+                out.write( stream, ii, Math.min( 7, stream.length - ii ) );
+                out.flush();
+                Thread.sleep( 10 );
+            }
+
+            DataInputStream in = new DataInputStream( socket.getInputStream() );
+            int refused = 0;
+            int answered = 0;
+
+            for ( int ii = 0; ii < 3; ii++ )
+            {
+                byte[] bytes = new byte[in.readUnsignedShort()];
+                in.readFully( bytes );
+                DnsMessage reply = new DnsMessageDecoder().decode( IoBuffer.wrap( bytes ) );
+
+                if ( reply.getTransactionId() == 2 )
+                {
+                    assertEquals( ResponseCode.REFUSED, reply.getResponseCode() );
+                    refused++;
+                }
+                else
+                {
+                    assertEquals( ResponseCode.NO_ERROR, reply.getResponseCode() );
+                    assertEquals( 1, reply.getAnswerRecords().size() );
+                    answered++;
+                }
+            }
+
+            assertEquals( 1, refused );
+            assertEquals( 2, answered );
+        }
+        finally
+        {
+            socket.close();
+            acceptor.dispose();
+        }
+    }
+
+
+    /**
+     * Returns a request prefixed with its length, as sent over TCP.
+     */
+    private byte[] frame( int id, RecordType type ) throws Exception
+    {
+        IoBuffer request = encode( getRequest( OpCode.QUERY, type ) );
+        request.putShort( 0, ( short ) id );
+
+        byte[] bytes = new byte[2 + request.remaining()];
+        bytes[0] = ( byte ) ( request.remaining() >> 8 );
+        bytes[1] = ( byte ) request.remaining();
+        request.get( bytes, 2, request.remaining() );
+
+        return bytes;
+    }
+
+
+    private static byte[] concat( byte[]... arrays )
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for ( byte[] array : arrays )
+        {
+            out.write( array, 0, array.length );
+        }
+
+        return out.toByteArray();
+    }
+
+
+    private DnsMessage exchange( DatagramSocket socket, InetSocketAddress server ) throws Exception
+    {
+        IoBuffer request = encode( getRequest( OpCode.QUERY, RecordType.A ) );
+        byte[] bytes = new byte[request.remaining()];
+        request.get( bytes );
+        socket.send( new DatagramPacket( bytes, bytes.length, server ) );
+
+        DatagramPacket packet = new DatagramPacket( new byte[512], 512 );
+        socket.receive( packet );
+
+        return new DnsMessageDecoder().decode( IoBuffer.wrap( packet.getData(), 0, packet.getLength() ) );
+    }
+
+
+    private IoBuffer encode( DnsMessage message ) throws Exception
+    {
+        IoBuffer buffer = IoBuffer.allocate( 512 );
+        new DnsMessageEncoder().encode( buffer, message );
+        buffer.flip();
+
+        return buffer;
+    }
+
+
+    private DnsMessage getRequest( OpCode opCode, RecordType type )
+    {
+        DnsMessageModifier modifier = new DnsMessageModifier();
+        modifier.setTransactionId( 4711 );
+        modifier.setMessageType( MessageType.QUERY );
+        modifier.setOpCode( opCode );
+        modifier.setRecursionDesired( true );
+        modifier.setResponseCode( ResponseCode.NO_ERROR );
+        modifier.setQuestionRecords( Collections.singletonList( new QuestionRecord( "www.example.com", type,
+            RecordClass.IN ) ) );
+        modifier.setAnswerRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAuthorityRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+
+        return modifier.getDnsMessage();
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.io.decoder.DnsMessageDecoder;
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.DnsMessageModifier;
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.store.AsyncRecordStore;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.ExecutorRecordStore;
+import org.apache.directory.server.dns.store.zone.ZoneModifier;
+import org.apache.directory.server.dns.store.zone.ZoneRecordStore;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Tests for the replies of the DNS service, answered from a zone.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class DomainNameServiceTest extends AbstractDnsTestCase
+{
+    private DnsContext dnsContext;
+
+
+    @Before
+    public void setUp()
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "example.com" );
+        modifier.add( getRecord( "example.com", RecordType.SOA, DnsAttribute.SOA_M_NAME, "ns.example.com",
+            DnsAttribute.SOA_R_NAME, "admin.example.com", DnsAttribute.SOA_SERIAL, "1",
+            DnsAttribute.SOA_REFRESH, "3600", DnsAttribute.SOA_RETRY, "600", DnsAttribute.SOA_EXPIRE, "86400",
+            DnsAttribute.SOA_MINIMUM, "300" ) );
+        modifier.add( getRecord( "example.com", RecordType.MX, DnsAttribute.MX_PREFERENCE, "10",
+            DnsAttribute.DOMAIN_NAME, "mail.example.com" ) );
+        modifier.add( getRecord( "mail.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.2" ) );
+        modifier.add( getRecord( "mail.example.com", RecordType.AAAA, DnsAttribute.IP_ADDRESS, "fe80::2" ) );
+        modifier.add( getRecord( "child.example.com", RecordType.NS,
+            DnsAttribute.DOMAIN_NAME, "ns.child.example.com" ) );
+        modifier.add( getRecord( "ns.child.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.1.1" ) );
+
+        dnsContext = new DnsContext();
+        dnsContext.setStore( new ZoneRecordStore( Collections.singleton( modifier.getZone() ) ) );
+    }
+
+
+    @Test
+    public void testWriteAdditionalSection() throws Exception
+    {
+        DnsMessage reply = query( "example.com", RecordType.MX );
+
+        assertEquals( ResponseCode.NO_ERROR, reply.getResponseCode() );
+        assertTrue( reply.isAuthoritativeAnswer() );
+        assertEquals( 1, reply.getAnswerRecords().size() );
+        assertEquals( 2, reply.getAdditionalRecords().size() );
+        assertEquals( "mail.example.com", reply.getAdditionalRecords().get( 0 ).getDomainName() );
+    }
+
+
+    @Test
+    public void testExecuteAdditionalSection() throws Exception
+    {
+        DomainNameService.execute( dnsContext, getRequest( "example.com", RecordType.MX ) );
+
+        assertEquals( 2, dnsContext.getReply().getAdditionalRecords().size() );
+    }
+
+
+    @Test
+    public void testWriteReferral() throws Exception
+    {
+        DnsMessage reply = query( "www.child.example.com", RecordType.A );
+
+        assertEquals( ResponseCode.NO_ERROR, reply.getResponseCode() );
+        assertFalse( reply.isAuthoritativeAnswer() );
+        assertEquals( 0, reply.getAnswerRecords().size() );
+        assertEquals( 1, reply.getAuthorityRecords().size() );
+        assertEquals( RecordType.NS, reply.getAuthorityRecords().get( 0 ).getRecordType() );
+        assertEquals( 1, reply.getAdditionalRecords().size() );
+        assertEquals( "ns.child.example.com", reply.getAdditionalRecords().get( 0 ).getDomainName() );
+    }
+
+
+    @Test
+    public void testExecuteReferral() throws Exception
+    {
+        DomainNameService.execute( dnsContext, getRequest( "www.child.example.com", RecordType.A ) );
+
+        assertFalse( dnsContext.getReply().isAuthoritativeAnswer() );
+        assertEquals( 1, dnsContext.getReply().getAuthorityRecords().size() );
+    }
+
+
+    @Test
+    public void testWriteNameError() throws Exception
+    {
+        DnsMessage reply = query( "x1f3c9.example.com", RecordType.A );
+
+        assertEquals( ResponseCode.NAME_ERROR, reply.getResponseCode() );
+        assertEquals( 1, reply.getQuestionRecords().size() );
+        assertEquals( 0, reply.getAnswerRecords().size() );
+
+        // authoritative, with the SOA of the zone for negative caching
+        assertTrue( reply.isAuthoritativeAnswer() );
+        assertEquals( 1, reply.getAuthorityRecords().size() );
+        assertEquals( RecordType.SOA, reply.getAuthorityRecords().get( 0 ).getRecordType() );
+        assertEquals( "example.com", reply.getAuthorityRecords().get( 0 ).getDomainName() );
+
+        // copied from the octets the zone encoded once
+        assertEquals( "300", reply.getAuthorityRecords().get( 0 ).get( DnsAttribute.SOA_MINIMUM ) );
+    }
+
+
+    @Test
+    public void testWriteNoData() throws Exception
+    {
+        DnsMessage reply = query( "mail.example.com", RecordType.MX );
+
+        assertEquals( ResponseCode.NO_ERROR, reply.getResponseCode() );
+        assertTrue( reply.isAuthoritativeAnswer() );
+        assertEquals( 0, reply.getAnswerRecords().size() );
+        assertEquals( 1, reply.getAuthorityRecords().size() );
+        assertEquals( RecordType.SOA, reply.getAuthorityRecords().get( 0 ).getRecordType() );
+    }
+
+
+    @Test
+    public void testExecuteNoData() throws Exception
+    {
+        DomainNameService.execute( dnsContext, getRequest( "mail.example.com", RecordType.MX ) );
+
+        assertEquals( ResponseCode.NO_ERROR, dnsContext.getReply().getResponseCode() );
+        assertEquals( 0, dnsContext.getReply().getAnswerRecords().size() );
+    }
+
+
+    @Test
+    public void testAsyncLookup() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try
+        {
+            AsyncRecordStore store = new ExecutorRecordStore( dnsContext.getStore(), executor );
+            DnsMessage request = getRequest( "example.com", RecordType.MX );
+            List<Set<ResourceRecord>> answers = DomainNameService.lookup( store, request ).toCompletableFuture()
+                .get();
+
+            IoBuffer out = IoBuffer.allocate( 512 );
+            out.setAutoExpand( true );
+            DomainNameService.write( request, answers, out, false );
+            out.flip();
+
+            DnsMessage reply = new DnsMessageDecoder().decode( out );
+            assertEquals( 1, reply.getAnswerRecords().size() );
+            assertEquals( 2, reply.getAdditionalRecords().size() );
+
+            // the lookups are rejected once the executor is gone
+            executor.shutdown();
+
+            try
+            {
+                DomainNameService.lookup( store, request ).toCompletableFuture().get();
+                fail();
+            }
+            catch ( ExecutionException ee )
+            {
+                assertTrue( ee.getCause() instanceof DnsException );
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * Writes the reply to a query as it would go out over TCP, and decodes it.
+     */
+    protected DnsMessage query( String name, RecordType type ) throws Exception
+    {
+        IoBuffer out = IoBuffer.allocate( 512 );
+        out.setAutoExpand( true );
+
+        DomainNameService.write( dnsContext, getRequest( name, type ), out, false );
+        out.flip();
+
+        return new DnsMessageDecoder().decode( out );
+    }
+
+
+    protected DnsMessage getRequest( String name, RecordType type )
+    {
+        DnsMessageModifier modifier = new DnsMessageModifier();
+        modifier.setTransactionId( 4711 );
+        modifier.setMessageType( MessageType.QUERY );
+        modifier.setOpCode( OpCode.QUERY );
+        modifier.setResponseCode( ResponseCode.NO_ERROR );
+        modifier.setQuestionRecords( Collections.singletonList( new QuestionRecord( name, type, RecordClass.IN ) ) );
+        modifier.setAnswerRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAuthorityRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+
+        return modifier.getDnsMessage();
+    }
+}
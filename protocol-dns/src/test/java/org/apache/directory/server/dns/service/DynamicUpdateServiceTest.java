@@ -0,0 +1,267 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.DnsMessageModifier;
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResourceRecordModifier;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.directory.server.dns.store.zone.Zone;
+import org.apache.directory.server.dns.store.zone.ZoneJournal;
+import org.apache.directory.server.dns.store.zone.ZoneModifier;
+import org.apache.directory.server.dns.store.zone.ZoneRecordStore;
+import org.apache.directory.server.dns.store.zone.ZoneRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for dynamic updates of a zone.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class DynamicUpdateServiceTest extends AbstractDnsTestCase
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ZoneRegistry registry;
+
+    private DnsContext dnsContext;
+
+
+    @Before
+    public void setUp()
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "example.com" );
+        modifier.add( getRecord( "example.com", RecordType.SOA, DnsAttribute.SOA_M_NAME, "ns.example.com",
+            DnsAttribute.SOA_R_NAME, "admin.example.com", DnsAttribute.SOA_SERIAL, "1", DnsAttribute.SOA_REFRESH,
+            "3600", DnsAttribute.SOA_RETRY, "600", DnsAttribute.SOA_EXPIRE, "86400", DnsAttribute.SOA_MINIMUM, "60" ) );
+        modifier.add( getRecord( "example.com", RecordType.NS, DnsAttribute.DOMAIN_NAME, "ns.example.com" ) );
+        modifier.add( getRecord( "example.com", RecordType.MX, DnsAttribute.MX_PREFERENCE, "10",
+            DnsAttribute.DOMAIN_NAME, "mail.example.com" ) );
+        modifier.add( getRecord( "www.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+
+        registry = new ZoneRegistry();
+        registry.put( modifier.getZone() );
+
+        dnsContext = new DnsContext();
+        dnsContext.setStore( new ZoneRecordStore( registry ) );
+    }
+
+
+    @Test
+    public void testAdd() throws Exception
+    {
+        Zone before = registry.getZone( "example.com" );
+
+        assertEquals( ResponseCode.NO_ERROR, update( Collections.<ResourceRecord> emptyList(), Arrays.asList( getRecord(
+            "mail.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.2" ) ) ) );
+
+        Zone after = registry.getZone( "example.com" );
+        assertEquals( 2, after.getSerial() );
+
+        // the MX RRset is linked to its new address
+        RecordSet mx = after.getRecordSet( "example.com", RecordType.MX );
+        assertEquals( 1, mx.getAdditionalRecordSets().size() );
+
+        // the queries running on the old version still see it as it was
+        assertEquals( 1, before.getSerial() );
+        assertNull( before.getRecordSet( "mail.example.com", RecordType.A ) );
+        assertTrue( before.getRecordSet( "example.com", RecordType.MX ).getAdditionalRecordSets().isEmpty() );
+
+        // the names which were not changed are shared
+        assertSame( before.getRecordSet( "www.example.com", RecordType.A ), after.getRecordSet( "www.example.com",
+            RecordType.A ) );
+    }
+
+
+    @Test
+    public void testPrerequisiteFailed() throws Exception
+    {
+        Zone before = registry.getZone( "example.com" );
+
+        // the RRset must exist
+        List<ResourceRecord> prerequisites = Arrays.asList( getRecord( "mail.example.com", RecordType.A,
+            RecordClass.ANY ) );
+
+        assertEquals( ResponseCode.NXRRSET, update( prerequisites, Arrays.asList( getRecord( "mail.example.com",
+            RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.2" ) ) ) );
+        assertSame( before, registry.getZone( "example.com" ) );
+
+        // the name must not be in use
+        prerequisites = Arrays.asList( getRecord( "www.example.com", RecordType.ANY, RecordClass.NONE ) );
+
+        assertEquals( ResponseCode.YXDOMAIN, update( prerequisites, Collections.<ResourceRecord> emptyList() ) );
+    }
+
+
+    @Test
+    public void testDelete() throws Exception
+    {
+        List<ResourceRecord> prerequisites = Arrays.asList( getRecord( "www.example.com", RecordType.A,
+            DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+
+        assertEquals( ResponseCode.NO_ERROR, update( prerequisites, Arrays.asList( getRecord( "www.example.com",
+            RecordType.ANY, RecordClass.ANY ), getRecord( "example.com", RecordType.ANY, RecordClass.ANY ) ) ) );
+
+        Zone zone = registry.getZone( "example.com" );
+        assertFalse( zone.hasName( "www.example.com" ) );
+
+        // the SOA and NS RRsets of the apex stay
+        assertEquals( 2, zone.getRecordSets( "example.com" ).size() );
+        assertEquals( 2, zone.getSerial() );
+    }
+
+
+    @Test
+    public void testNotZone() throws Exception
+    {
+        assertEquals( ResponseCode.NOTZONE, update( Collections.<ResourceRecord> emptyList(), Arrays.asList(
+            getRecord( "www.example.org", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.1" ) ) ) );
+    }
+
+
+    @Test
+    public void testJournalFailure() throws Exception
+    {
+        ZoneJournal journal = new ZoneJournal( folder.newFolder( "journal" ) );
+        journal.recover( new ZoneRegistry() );
+        ( ( ZoneRecordStore ) dnsContext.getStore() ).setJournal( journal );
+        Zone before = registry.getZone( "example.com" );
+
+        // an update which cannot be journaled is taken back
+        journal.close();
+
+        assertEquals( ResponseCode.SERVER_FAILURE, update( Collections.<ResourceRecord> emptyList(), Arrays.asList(
+            getRecord( "mail.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.2" ) ) ) );
+        assertSame( before, registry.getZone( "example.com" ) );
+    }
+
+
+    @Test
+    public void testSoaSerial() throws Exception
+    {
+        Zone before = registry.getZone( "example.com" );
+
+        // an SOA which does not move the serial number forward is ignored
+        assertEquals( ResponseCode.NO_ERROR, update( Collections.<ResourceRecord> emptyList(), Arrays.asList(
+            getSoa( "1" ), getSoa( "0" ) ) ) );
+        assertSame( before, registry.getZone( "example.com" ) );
+
+        assertEquals( ResponseCode.NO_ERROR, update( Collections.<ResourceRecord> emptyList(), Arrays.asList(
+            getSoa( "5" ) ) ) );
+        assertEquals( 5, registry.getZone( "example.com" ).getSerial() );
+    }
+
+
+    @Test
+    public void testCnameConflict() throws Exception
+    {
+        Zone before = registry.getZone( "example.com" );
+
+        // a CNAME is ignored where the name has other data
+        assertEquals( ResponseCode.NO_ERROR, update( Collections.<ResourceRecord> emptyList(), Arrays.asList(
+            getRecord( "www.example.com", RecordType.CNAME, DnsAttribute.DOMAIN_NAME, "web.example.com" ) ) ) );
+        assertSame( before, registry.getZone( "example.com" ) );
+
+        assertEquals( ResponseCode.NO_ERROR, update( Collections.<ResourceRecord> emptyList(), Arrays.asList(
+            getRecord( "ftp.example.com", RecordType.CNAME, DnsAttribute.DOMAIN_NAME, "www.example.com" ) ) ) );
+        Zone zone = registry.getZone( "example.com" );
+        assertEquals( 1, zone.getRecordSet( "ftp.example.com", RecordType.CNAME ).size() );
+
+        // and other data where the name has a CNAME
+        assertEquals( ResponseCode.NO_ERROR, update( Collections.<ResourceRecord> emptyList(), Arrays.asList(
+            getRecord( "ftp.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.3" ) ) ) );
+        assertSame( zone, registry.getZone( "example.com" ) );
+        assertEquals( 1, zone.getRecordSets( "ftp.example.com" ).size() );
+    }
+
+
+    private ResourceRecord getSoa( String serial )
+    {
+        return getRecord( "example.com", RecordType.SOA, DnsAttribute.SOA_M_NAME, "ns.example.com",
+            DnsAttribute.SOA_R_NAME, "admin.example.com", DnsAttribute.SOA_SERIAL, serial, DnsAttribute.SOA_REFRESH,
+            "3600", DnsAttribute.SOA_RETRY, "600", DnsAttribute.SOA_EXPIRE, "86400", DnsAttribute.SOA_MINIMUM, "60" );
+    }
+
+
+    private ResponseCode update( List<ResourceRecord> prerequisites, List<ResourceRecord> updates )
+        throws Exception
+    {
+        DnsMessageModifier modifier = new DnsMessageModifier();
+        modifier.setTransactionId( 4711 );
+        modifier.setMessageType( MessageType.QUERY );
+        modifier.setOpCode( OpCode.UPDATE );
+        modifier.setResponseCode( ResponseCode.NO_ERROR );
+        modifier.setQuestionRecords( Collections.singletonList( new QuestionRecord( "example.com", RecordType.SOA,
+            RecordClass.IN ) ) );
+        modifier.setAnswerRecords( prerequisites );
+        modifier.setAuthorityRecords( updates );
+        modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+
+        DynamicUpdateService.execute( dnsContext, modifier.getDnsMessage() );
+
+        DnsMessage reply = dnsContext.getReply();
+        assertEquals( OpCode.UPDATE, reply.getOpCode() );
+
+        return reply.getResponseCode();
+    }
+
+
+    /**
+     * Returns a record without RDATA, as prerequisites and deletions use.
+     */
+    private ResourceRecord getRecord( String name, RecordType type, RecordClass recordClass )
+    {
+        ResourceRecordModifier modifier = new ResourceRecordModifier();
+        modifier.setDnsName( name );
+        modifier.setDnsType( type );
+        modifier.setDnsClass( recordClass );
+        modifier.setDnsTtl( 0 );
+
+        return modifier.getEntry();
+    }
+}
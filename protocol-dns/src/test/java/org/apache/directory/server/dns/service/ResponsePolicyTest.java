@@ -0,0 +1,191 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.DnsMessageModifier;
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.apache.directory.server.dns.store.zone.ZoneModifier;
+import org.apache.directory.server.dns.store.zone.ZoneRecordStore;
+import org.apache.directory.server.dns.store.zone.ZoneRegistry;
+import org.apache.directory.server.dns.util.NameSet;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Tests for answering the names of a blocklist from a response policy.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ResponsePolicyTest extends AbstractDnsTestCase
+{
+    private final NameSet names = new NameSet( Arrays.asList( "bad.example.com", "*.evil.org" ) );
+
+
+    @Test
+    public void testNameError() throws Exception
+    {
+        ResponsePolicy policy = new ResponsePolicy( names );
+
+        assertNull( policy.apply( getQuestion( "www.example.com", RecordType.A ) ) );
+
+        RecordSet answer = policy.apply( getQuestion( "bad.example.com", RecordType.A ) );
+        assertTrue( answer.isEmpty() );
+        assertFalse( answer.isReferral() );
+        assertFalse( answer.isAuthoritative() );
+    }
+
+
+    @Test
+    public void testWalledGarden() throws Exception
+    {
+        ResponsePolicy policy = new ResponsePolicy( names, 60, InetAddress.getByName( "10.0.0.99" ), InetAddress
+            .getByName( "fd00::99" ) );
+
+        RecordSet answer = policy.apply( getQuestion( "www.evil.org", RecordType.A ) );
+        assertEquals( 1, answer.size() );
+
+        ResourceRecord record = answer.iterator().next();
+        assertEquals( "www.evil.org", record.getDomainName() );
+        assertEquals( "10.0.0.99", record.get( DnsAttribute.IP_ADDRESS ) );
+        assertEquals( 60, record.getTimeToLive() );
+
+        assertEquals( RecordType.AAAA, policy.apply( getQuestion( "www.evil.org", RecordType.AAAA ) ).iterator()
+            .next().getRecordType() );
+        assertEquals( 2, policy.apply( getQuestion( "www.evil.org", RecordType.ANY ) ).size() );
+
+        // the name exists in the walled garden, without records of the type
+        RecordSet noData = policy.apply( getQuestion( "www.evil.org", RecordType.MX ) );
+        assertTrue( noData.isEmpty() );
+        assertTrue( noData.isNoData() );
+        assertFalse( noData.isNameError() );
+        assertFalse( noData.isAuthoritative() );
+    }
+
+
+    @Test
+    public void testWalledGardenNoData() throws Exception
+    {
+        ResponsePolicy policy = new ResponsePolicy( names, 60, InetAddress.getByName( "10.0.0.99" ) );
+        DnsContext dnsContext = new DnsContext();
+        dnsContext.setStore( new ZoneRecordStore( new ZoneRegistry() ) );
+        dnsContext.setPolicy( policy );
+
+        DomainNameService.execute( dnsContext, getQuery( RecordType.AAAA, "www.evil.org" ) );
+        assertEquals( ResponseCode.NO_ERROR, dnsContext.getReply().getResponseCode() );
+        assertEquals( 0, dnsContext.getReply().getAnswerRecords().size() );
+
+        // without a walled garden, the name does not exist
+        dnsContext.setPolicy( new ResponsePolicy( names ) );
+
+        try
+        {
+            DomainNameService.execute( dnsContext, getQuery( RecordType.AAAA, "www.evil.org" ) );
+            fail( "Expected a DnsException" );
+        }
+        catch ( DnsException de )
+        {
+            assertEquals( ResponseCode.NAME_ERROR.convert().intValue(), de.getResponseCode() );
+        }
+    }
+
+
+    @Test
+    public void testLookup() throws Exception
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "example.com" );
+        modifier.add( getRecord( "www.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+        modifier.add( getRecord( "bad.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.2" ) );
+
+        ZoneRegistry registry = new ZoneRegistry();
+        registry.put( modifier.getZone() );
+        ZoneRecordStore store = new ZoneRecordStore( registry );
+        ResponsePolicy policy = new ResponsePolicy( names, 60, InetAddress.getByName( "10.0.0.99" ) );
+
+        List<Set<ResourceRecord>> answers = DomainNameService.lookup( store, policy, getQuery( "www.example.com",
+            "bad.example.com" ) );
+        assertEquals( "10.0.0.1", answers.get( 0 ).iterator().next().get( DnsAttribute.IP_ADDRESS ) );
+        assertEquals( "10.0.0.99", answers.get( 1 ).iterator().next().get( DnsAttribute.IP_ADDRESS ) );
+
+        // the store is answered from without a policy
+        answers = DomainNameService.lookup( store, getQuery( "bad.example.com" ) );
+        assertEquals( "10.0.0.2", answers.get( 0 ).iterator().next().get( DnsAttribute.IP_ADDRESS ) );
+    }
+
+
+    private QuestionRecord getQuestion( String name, RecordType type )
+    {
+        return new QuestionRecord( name, type, RecordClass.IN );
+    }
+
+
+    private DnsMessage getQuery( String... names )
+    {
+        return getQuery( RecordType.A, names );
+    }
+
+
+    private DnsMessage getQuery( RecordType type, String... names )
+    {
+        List<QuestionRecord> questions = new ArrayList<QuestionRecord>();
+
+        for ( String name : names )
+        {
+            questions.add( getQuestion( name, type ) );
+        }
+
+        DnsMessageModifier modifier = new DnsMessageModifier();
+        modifier.setTransactionId( 4711 );
+        modifier.setMessageType( MessageType.QUERY );
+        modifier.setOpCode( OpCode.QUERY );
+        modifier.setResponseCode( ResponseCode.NO_ERROR );
+        modifier.setQuestionRecords( questions );
+        modifier.setAnswerRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAuthorityRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+
+        return modifier.getDnsMessage();
+    }
+}
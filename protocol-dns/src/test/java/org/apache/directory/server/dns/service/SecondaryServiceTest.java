@@ -0,0 +1,266 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.io.decoder.DnsMessageDecoder;
+import org.apache.directory.server.dns.io.encoder.DnsMessageEncoder;
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.DnsMessageModifier;
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.protocol.DnsProtocolHandler;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.zone.Zone;
+import org.apache.directory.server.dns.store.zone.ZoneJournal;
+import org.apache.directory.server.dns.store.zone.ZoneModifier;
+import org.apache.directory.server.dns.store.zone.ZoneRecordStore;
+import org.apache.directory.server.dns.store.zone.ZoneRegistry;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for the secondary zones, transferred from a primary server running
+ * in the same process.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class SecondaryServiceTest extends AbstractDnsTestCase
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ZoneRecordStore primaryStore;
+
+    private ZoneJournal journal;
+
+    private NioSocketAcceptor acceptor;
+
+    private ZoneRegistry registry;
+
+    private SecondaryService secondary;
+
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "example.com" );
+        modifier.add( getSoa( 1 ) );
+        modifier.add( getRecord( "example.com", RecordType.NS, DnsAttribute.DOMAIN_NAME, "ns.example.com" ) );
+        modifier.add( getRecord( "www.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+
+        ZoneRegistry primaryRegistry = new ZoneRegistry();
+        primaryRegistry.put( modifier.getZone() );
+        primaryStore = new ZoneRecordStore( primaryRegistry );
+
+        acceptor = new NioSocketAcceptor();
+        acceptor.setHandler( new DnsProtocolHandler( primaryStore ) );
+        acceptor.bind( new InetSocketAddress( InetAddress.getByName( "127.0.0.1" ), 0 ) );
+
+        registry = new ZoneRegistry();
+        secondary = new SecondaryService( registry );
+        secondary.addZone( "example.com", acceptor.getLocalAddress() );
+    }
+
+
+    @After
+    public void tearDown() throws Exception
+    {
+        acceptor.dispose();
+
+        if ( journal != null )
+        {
+            journal.close();
+        }
+    }
+
+
+    @Test
+    public void testTransfers() throws Exception
+    {
+        journal = new ZoneJournal( folder.newFolder( "journal" ) );
+        journal.recover( primaryStore.getRegistry() );
+        primaryStore.setJournal( journal );
+
+        // the first transfer is a full one
+        assertTrue( secondary.refresh( "example.com" ) );
+
+        Zone zone = registry.getZone( "example.com" );
+        assertEquals( 1, zone.getSerial() );
+        assertNotNull( zone.getRecordSet( "www.example.com", RecordType.A ) );
+        assertFalse( secondary.refresh( "example.com" ) );
+
+        Zone primary = primaryStore.getZone( "example.com" );
+        ZoneModifier modifier = new ZoneModifier( primary );
+        modifier.removeRecordSet( "www.example.com", RecordType.A );
+        modifier.add( getRecord( "mail.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.2" ) );
+        modifier.removeRecordSet( "example.com", RecordType.SOA );
+        modifier.add( getSoa( 2 ) );
+        primaryStore.getRegistry().replace( primary, modifier.getZone() );
+        journal.sync( journal.append( modifier.getChange() ) );
+
+        // then only the changes come over
+        assertTrue( secondary.refresh( "example.com" ) );
+
+        zone = registry.getZone( "example.com" );
+        assertEquals( 2, zone.getSerial() );
+        assertNull( zone.getRecordSet( "www.example.com", RecordType.A ) );
+        assertNotNull( zone.getRecordSet( "mail.example.com", RecordType.A ) );
+        assertNotNull( zone.getRecordSet( "example.com", RecordType.NS ) );
+    }
+
+
+    @Test
+    public void testExpire() throws Exception
+    {
+        long start = System.currentTimeMillis();
+
+        // a zone never transferred has nothing to expire
+        assertFalse( secondary.expire( "example.com", start ) );
+        assertTrue( secondary.refresh( "example.com" ) );
+
+        // the zone is served for the expire interval of its SOA record
+        assertFalse( secondary.expire( "example.com", start ) );
+        assertNotNull( registry.getZone( "example.com" ) );
+
+        acceptor.unbind();
+        assertTrue( secondary.expire( "example.com", System.currentTimeMillis() + 86401000L ) );
+        assertNull( registry.getZone( "example.com" ) );
+        assertFalse( secondary.expire( "example.com", System.currentTimeMillis() + 86401000L ) );
+    }
+
+
+    @Test
+    public void testNotify() throws Exception
+    {
+        DnsContext dnsContext = new DnsContext();
+
+        secondary.execute( dnsContext, getNotify( "example.com" ), InetAddress.getByName( "127.0.0.1" ) );
+        assertEquals( ResponseCode.NO_ERROR, dnsContext.getReply().getResponseCode() );
+        assertEquals( OpCode.NOTIFY, dnsContext.getReply().getOpCode() );
+
+        // only the primary server can tell about changes
+        secondary.execute( dnsContext, getNotify( "example.com" ), InetAddress.getByName( "10.0.0.1" ) );
+        assertEquals( ResponseCode.NOTAUTH, dnsContext.getReply().getResponseCode() );
+
+        secondary.execute( dnsContext, getNotify( "example.org" ), InetAddress.getByName( "127.0.0.1" ) );
+        assertEquals( ResponseCode.NOTAUTH, dnsContext.getReply().getResponseCode() );
+    }
+
+
+    @Test
+    public void testUpdateRefused() throws Exception
+    {
+        assertTrue( secondary.refresh( "example.com" ) );
+
+        DnsProtocolHandler handler = new DnsProtocolHandler( new ZoneRecordStore( registry ) );
+        handler.setSecondaryService( secondary );
+
+        NioDatagramAcceptor server = new NioDatagramAcceptor();
+        server.setHandler( handler );
+        server.bind( new InetSocketAddress( InetAddress.getByName( "127.0.0.1" ), 0 ) );
+
+        DatagramSocket socket = new DatagramSocket();
+        socket.setSoTimeout( 5000 );
+
+        try
+        {
+            // only the primary server changes a secondary zone
+            IoBuffer request = IoBuffer.allocate( 512 );
+            new DnsMessageEncoder().encode( request, getRequest( "example.com", OpCode.UPDATE ) );
+            request.flip();
+            socket.send( new DatagramPacket( request.array(), request.limit(), server.getLocalAddress() ) );
+
+            DatagramPacket packet = new DatagramPacket( new byte[512], 512 );
+            socket.receive( packet );
+            DnsMessage reply = new DnsMessageDecoder().decode( IoBuffer.wrap( packet.getData(), 0, packet
+                .getLength() ) );
+
+            assertEquals( OpCode.UPDATE, reply.getOpCode() );
+            assertEquals( ResponseCode.NOTAUTH, reply.getResponseCode() );
+            assertEquals( 1, registry.getZone( "example.com" ).getSerial() );
+        }
+        finally
+        {
+            socket.close();
+            server.dispose();
+        }
+    }
+
+
+    private DnsMessage getNotify( String origin )
+    {
+        return getRequest( origin, OpCode.NOTIFY );
+    }
+
+
+    private DnsMessage getRequest( String origin, OpCode opCode )
+    {
+        DnsMessageModifier modifier = new DnsMessageModifier();
+        modifier.setTransactionId( 4711 );
+        modifier.setMessageType( MessageType.QUERY );
+        modifier.setOpCode( opCode );
+        modifier.setResponseCode( ResponseCode.NO_ERROR );
+        modifier.setQuestionRecords( Collections.singletonList( new QuestionRecord( origin, RecordType.SOA,
+            RecordClass.IN ) ) );
+        modifier.setAnswerRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAuthorityRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+
+        return modifier.getDnsMessage();
+    }
+
+
+    private ResourceRecord getSoa( long serial )
+    {
+        return getRecord( "example.com", RecordType.SOA, DnsAttribute.SOA_M_NAME, "ns.example.com",
+            DnsAttribute.SOA_R_NAME, "admin.example.com", DnsAttribute.SOA_SERIAL, String.valueOf( serial ),
+            DnsAttribute.SOA_REFRESH, "3600", DnsAttribute.SOA_RETRY, "600", DnsAttribute.SOA_EXPIRE, "86400",
+            DnsAttribute.SOA_MINIMUM, "3600" );
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.apache.directory.server.dns.store.RecordStoreStub;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Tests for choosing views by the address of the client.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ViewSelectorTest
+{
+    @Test
+    public void testSelect() throws Exception
+    {
+        View external = new View( "external", new RecordStoreStub() );
+        View internal = new View( "internal", new RecordStoreStub() );
+        View lab = new View( "lab", new RecordStoreStub() );
+
+        ViewSelector selector = new ViewSelector( external );
+        selector.add( internal, "10.0.0.0/8", "fd00::/8", "192.168.1.1" );
+        selector.add( lab, " 10.1.0.0 / 16 " );
+
+        assertSame( internal, selector.select( InetAddress.getByName( "10.2.3.4" ) ) );
+        assertSame( internal, selector.select( InetAddress.getByName( "fd00::1" ) ) );
+        assertSame( internal, selector.select( InetAddress.getByName( "192.168.1.1" ) ) );
+        assertSame( lab, selector.select( new InetSocketAddress( InetAddress.getByName( "10.1.3.4" ), 53 ) ) );
+        assertSame( external, selector.select( InetAddress.getByName( "192.168.1.2" ) ) );
+        assertSame( external, selector.select( InetSocketAddress.createUnresolved( "example.com", 53 ) ) );
+        assertSame( lab, selector.select( new byte[]
+            { 10, 1, 3, 4 } ) );
+        assertSame( external, selector.select( new byte[]
+            { ( byte ) 192, ( byte ) 168, 1, 2 } ) );
+
+        assertSame( lab, selector.getView( "lab" ) );
+        assertNull( selector.getView( "other" ) );
+        assertEquals( 3, selector.getViews().size() );
+        assertSame( external, selector.getViews().iterator().next() );
+    }
+
+
+    @Test
+    public void testInvalidNetworks()
+    {
+        ViewSelector selector = new ViewSelector( new View( "default", new RecordStoreStub() ) );
+        View view = new View( "view", new RecordStoreStub() );
+
+        for ( String network : new String[]
+            { "", "/8", "10.0.0.0/", "10.0.0.0/33", "fd00::/129", "10.0.0.0/x", "example.com", "dead.beef/16" } )
+        {
+            try
+            {
+                selector.add( view, network );
+                fail( "Accepted " + network );
+            }
+            catch ( IllegalArgumentException iae )
+            {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.service;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.io.decoder.DnsMessageDecoder;
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.directory.server.dns.messages.DnsMessageModifier;
+import org.apache.directory.server.dns.messages.MessageType;
+import org.apache.directory.server.dns.messages.OpCode;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.zone.Zone;
+import org.apache.directory.server.dns.store.zone.ZoneJournal;
+import org.apache.directory.server.dns.store.zone.ZoneModifier;
+import org.apache.directory.server.dns.store.zone.ZoneRecordStore;
+import org.apache.directory.server.dns.store.zone.ZoneRegistry;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for the zone transfers.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneTransferServiceTest extends AbstractDnsTestCase
+{
+    private static final int HOSTS = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ZoneRecordStore store;
+
+    private DnsContext dnsContext;
+
+
+    @Before
+    public void setUp()
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "example.com" );
+        modifier.add( getSoa( 1 ) );
+
+        for ( int ii = 0; ii < HOSTS; ii++ )
+        {
+            modifier.add( getRecord( "host" + ii + ".example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0."
+                + ( ii / 256 ) + "." + ( ii % 256 ) ) );
+        }
+
+        ZoneRegistry registry = new ZoneRegistry();
+        registry.put( modifier.getZone() );
+        store = new ZoneRecordStore( registry );
+
+        dnsContext = new DnsContext();
+        dnsContext.setStore( store );
+    }
+
+
+    @Test
+    public void testFullTransfer() throws Exception
+    {
+        List<DnsMessage> messages = transfer( getRequest( RecordType.AXFR, -1 ) );
+        List<ResourceRecord> records = getAnswers( messages );
+
+        assertTrue( messages.size() > 1 );
+        assertEquals( 1, messages.get( 0 ).getQuestionRecords().size() );
+        assertEquals( 0, messages.get( 1 ).getQuestionRecords().size() );
+
+        // the SOA record opens and closes the transfer
+        assertEquals( HOSTS + 2, records.size() );
+        assertEquals( RecordType.SOA, records.get( 0 ).getRecordType() );
+        assertEquals( RecordType.SOA, records.get( records.size() - 1 ).getRecordType() );
+    }
+
+
+    @Test
+    public void testIncrementalTransfer() throws Exception
+    {
+        ZoneJournal journal = new ZoneJournal( folder.newFolder( "journal" ) );
+        journal.recover( store.getRegistry() );
+        store.setJournal( journal );
+
+        Zone zone = store.getZone( "example.com" );
+        ZoneModifier modifier = new ZoneModifier( zone );
+        modifier.removeRecordSet( "host0.example.com", RecordType.A );
+        modifier.removeRecordSet( "example.com", RecordType.SOA );
+        modifier.add( getSoa( 2 ) );
+        store.getRegistry().replace( zone, modifier.getZone() );
+        journal.sync( journal.append( modifier.getChange() ) );
+
+        List<ResourceRecord> records = getAnswers( transfer( getRequest( RecordType.IXFR, 1 ) ) );
+
+        // the new SOA, the removed records after the old SOA, the added after the new one, then the new SOA
+        assertEquals( 5, records.size() );
+        assertEquals( "2", records.get( 0 ).get( DnsAttribute.SOA_SERIAL ) );
+        assertEquals( "1", records.get( 1 ).get( DnsAttribute.SOA_SERIAL ) );
+        assertEquals( "host0.example.com", records.get( 2 ).getDomainName() );
+        assertEquals( "2", records.get( 3 ).get( DnsAttribute.SOA_SERIAL ) );
+        assertEquals( "2", records.get( 4 ).get( DnsAttribute.SOA_SERIAL ) );
+
+        // a client which is up to date only gets the SOA record
+        assertEquals( 1, getAnswers( transfer( getRequest( RecordType.IXFR, 2 ) ) ).size() );
+
+        // and one the journal does not go back to gets the whole zone
+        assertEquals( HOSTS + 1, getAnswers( transfer( getRequest( RecordType.IXFR, 0 ) ) ).size() );
+
+        journal.close();
+    }
+
+
+    private List<DnsMessage> transfer( DnsMessage request ) throws Exception
+    {
+        final List<DnsMessage> messages = new ArrayList<DnsMessage>();
+
+        ZoneTransferService.transfer( dnsContext, request, new ZoneTransferService.MessageSink()
+        {
+            public void write( IoBuffer message )
+            {
+                int length = message.getUnsignedShort();
+                assertEquals( length, message.remaining() );
+                assertTrue( length <= ZoneTransferService.MESSAGE_LENGTH );
+
+                try
+                {
+                    messages.add( new DnsMessageDecoder().decode( message ) );
+                }
+                catch ( Exception e )
+                {
+                    throw new AssertionError( e );
+                }
+            }
+        }, false );
+
+        for ( DnsMessage message : messages )
+        {
+            assertEquals( ResponseCode.NO_ERROR, message.getResponseCode() );
+            assertTrue( message.isAuthoritativeAnswer() );
+        }
+
+        return messages;
+    }
+
+
+    private static List<ResourceRecord> getAnswers( List<DnsMessage> messages )
+    {
+        List<ResourceRecord> records = new ArrayList<ResourceRecord>();
+
+        for ( DnsMessage message : messages )
+        {
+            records.addAll( message.getAnswerRecords() );
+        }
+
+        return records;
+    }
+
+
+    private DnsMessage getRequest( RecordType type, long serial )
+    {
+        List<ResourceRecord> authority = new ArrayList<ResourceRecord>();
+
+        if ( serial >= 0 )
+        {
+            authority.add( getSoa( serial ) );
+        }
+
+        DnsMessageModifier modifier = new DnsMessageModifier();
+        modifier.setTransactionId( 4711 );
+        modifier.setMessageType( MessageType.QUERY );
+        modifier.setOpCode( OpCode.QUERY );
+        modifier.setResponseCode( ResponseCode.NO_ERROR );
+        modifier.setQuestionRecords( Collections.singletonList( new QuestionRecord( "example.com", type,
+            RecordClass.IN ) ) );
+        modifier.setAnswerRecords( new ArrayList<ResourceRecord>() );
+        modifier.setAuthorityRecords( authority );
+        modifier.setAdditionalRecords( new ArrayList<ResourceRecord>() );
+
+        return modifier.getDnsMessage();
+    }
+
+
+    private ResourceRecord getSoa( long serial )
+    {
+        return getRecord( "example.com", RecordType.SOA, DnsAttribute.SOA_M_NAME, "ns.example.com",
+            DnsAttribute.SOA_R_NAME, "admin.example.com", DnsAttribute.SOA_SERIAL, String.valueOf( serial ),
+            DnsAttribute.SOA_REFRESH, "3600", DnsAttribute.SOA_RETRY, "600", DnsAttribute.SOA_EXPIRE, "86400",
+            DnsAttribute.SOA_MINIMUM, "60" );
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Tests for the caching of store answers.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class CachingRecordStoreTest extends AbstractDnsTestCase
+{
+    /** The number of lookups of each name */
+    private final Map<String, Integer> lookups = new HashMap<String, Integer>();
+
+    /** The time the caches see */
+    private long now = 1000000L;
+
+    private final RecordStore backend = new RecordStore()
+    {
+        public Set<ResourceRecord> getRecords( QuestionRecord question ) throws DnsException
+        {
+            String name = question.getDomainName();
+            lookups.put( name, getLookups( name ) + 1 );
+
+            if ( name.startsWith( "fail" ) )
+            {
+                throw new DnsException( ResponseCode.SERVER_FAILURE );
+            }
+
+            if ( name.startsWith( "none" ) )
+            {
+                return Collections.emptySet();
+            }
+
+            return Collections.singleton( getRecord( name, RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+        }
+    };
+
+
+    @Test
+    public void testExpiry() throws Exception
+    {
+        CachingRecordStore store = newStore( 1 << 20, null );
+
+        Set<ResourceRecord> records = store.getRecords( getQuestion( "www.example.com" ) );
+        assertSame( records, store.getRecords( getQuestion( "WWW.example.com" ) ) );
+        assertEquals( 1, getLookups( "www.example.com" ) );
+
+        // the record lives for an hour
+        now += 3599 * 1000L;
+        store.getRecords( getQuestion( "www.example.com" ) );
+        assertEquals( 1, getLookups( "www.example.com" ) );
+
+        now += 1000L;
+        store.getRecords( getQuestion( "www.example.com" ) );
+        assertEquals( 2, getLookups( "www.example.com" ) );
+    }
+
+
+    @Test
+    public void testNegative() throws Exception
+    {
+        CachingRecordStore store = newStore( 1 << 20, null );
+        store.setNegativeTimeToLive( 10 );
+
+        assertTrue( store.getRecords( getQuestion( "none.example.com" ) ).isEmpty() );
+        store.getRecords( getQuestion( "none.example.com" ) );
+        assertEquals( 1, getLookups( "none.example.com" ) );
+
+        now += 10 * 1000L;
+        store.getRecords( getQuestion( "none.example.com" ) );
+        assertEquals( 2, getLookups( "none.example.com" ) );
+
+        // failures are asked again every time
+        for ( int ii = 0; ii < 2; ii++ )
+        {
+            try
+            {
+                store.getRecords( getQuestion( "fail.example.com" ) );
+                fail( "Expected a DnsException" );
+            }
+            catch ( DnsException de )
+            {
+                assertEquals( ResponseCode.SERVER_FAILURE.convert().intValue(), de.getResponseCode() );
+            }
+        }
+
+        assertEquals( 2, getLookups( "fail.example.com" ) );
+    }
+
+
+    @Test
+    public void testAdmission() throws Exception
+    {
+        long maxBytes = 16 * 1024;
+        CachingRecordStore store = newStore( maxBytes, null );
+
+        for ( int ii = 0; ii < 10; ii++ )
+        {
+            store.getRecords( getQuestion( "popular.example.com" ) );
+        }
+
+        // a scan of names asked for once does not flush the popular one
+        for ( int ii = 0; ii < 1000; ii++ )
+        {
+            store.getRecords( getQuestion( "host" + ii + ".example.com" ) );
+            assertTrue( store.getSize() <= maxBytes );
+        }
+
+        store.getRecords( getQuestion( "popular.example.com" ) );
+        assertEquals( 1, getLookups( "popular.example.com" ) );
+        assertTrue( store.getSize() > 0 );
+
+        store.clear();
+        assertEquals( 0, store.getSize() );
+    }
+
+
+    @Test
+    public void testRefreshAhead() throws Exception
+    {
+        CachingRecordStore store = newStore( 1 << 20, new Executor()
+        {
+            public void execute( Runnable command )
+            {
+                command.run();
+            }
+        } );
+
+        for ( int ii = 0; ii < 5; ii++ )
+        {
+            store.getRecords( getQuestion( "www.example.com" ) );
+            store.getRecords( getQuestion( "cold.example.com" ) );
+        }
+
+        // neither is refreshed before the last fifth of its life
+        now += 2000 * 1000L;
+        store.getRecords( getQuestion( "www.example.com" ) );
+        assertEquals( 1, getLookups( "www.example.com" ) );
+
+        // the answer kept is given while it is looked up again
+        now += 1000 * 1000L;
+        store.getRecords( getQuestion( "www.example.com" ) );
+        assertEquals( 2, getLookups( "www.example.com" ) );
+
+        // so it outlives the first answer
+        now += 1000 * 1000L;
+        store.getRecords( getQuestion( "www.example.com" ) );
+        assertEquals( 2, getLookups( "www.example.com" ) );
+
+        // an answer asked for once in a while just expires
+        store = newStore( 1 << 20, new Executor()
+        {
+            public void execute( Runnable command )
+            {
+                command.run();
+            }
+        } );
+        store.getRecords( getQuestion( "once.example.com" ) );
+        now += 3000 * 1000L;
+        store.getRecords( getQuestion( "once.example.com" ) );
+        assertEquals( 1, getLookups( "once.example.com" ) );
+        now += 1000 * 1000L;
+        store.getRecords( getQuestion( "once.example.com" ) );
+        assertEquals( 2, getLookups( "once.example.com" ) );
+    }
+
+
+    @Test
+    public void testBulk() throws Exception
+    {
+        CachingRecordStore store = newStore( 1 << 20, null );
+        store.getRecords( getQuestion( "www.example.com" ) );
+
+        List<Set<ResourceRecord>> answers = store.getRecords( Arrays.asList( getQuestion( "www.example.com" ),
+            getQuestion( "none.example.com" ), getQuestion( "ftp.example.com" ) ) );
+
+        // only the answers not kept are looked up
+        assertEquals( 3, answers.size() );
+        assertEquals( "www.example.com", answers.get( 0 ).iterator().next().getDomainName() );
+        assertTrue( answers.get( 1 ).isEmpty() );
+        assertEquals( "ftp.example.com", answers.get( 2 ).iterator().next().getDomainName() );
+        assertEquals( 1, getLookups( "www.example.com" ) );
+
+        store.getRecords( Arrays.asList( getQuestion( "none.example.com" ), getQuestion( "ftp.example.com" ) ) );
+        assertEquals( 1, getLookups( "none.example.com" ) );
+        assertEquals( 1, getLookups( "ftp.example.com" ) );
+    }
+
+
+    @Test
+    public void testUnknownTypes() throws Exception
+    {
+        CachingRecordStore store = newStore( 1 << 20, null );
+
+        // the types without a constant are told apart by their codes
+        Set<ResourceRecord> records = store.getRecords( new QuestionRecord( "www.example.com", 64, RecordClass.IN ) );
+        assertNotSame( records, store.getRecords( new QuestionRecord( "www.example.com", 65, RecordClass.IN ) ) );
+        assertEquals( 2, getLookups( "www.example.com" ) );
+
+        assertSame( records, store.getRecords( new QuestionRecord( "www.example.com", 64, RecordClass.IN ) ) );
+        assertEquals( 2, getLookups( "www.example.com" ) );
+    }
+
+
+    private CachingRecordStore newStore( long maxBytes, Executor executor )
+    {
+        return new CachingRecordStore( backend, maxBytes, executor )
+        {
+            long now()
+            {
+                return now;
+            }
+        };
+    }
+
+
+    private int getLookups( String name )
+    {
+        Integer count = lookups.get( name );
+
+        return count == null ? 0 : count;
+    }
+
+
+    private static QuestionRecord getQuestion( String name )
+    {
+        return new QuestionRecord( name, RecordType.A, RecordClass.IN );
+    }
+}
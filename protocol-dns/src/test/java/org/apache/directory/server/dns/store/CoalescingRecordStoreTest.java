@@ -0,0 +1,203 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for the coalescing of identical lookups.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class CoalescingRecordStoreTest extends AbstractDnsTestCase
+{
+    private static final int THREADS = 8;
+
+    private static final QuestionRecord QUESTION = new QuestionRecord( "www.example.com", RecordType.A,
+        RecordClass.IN );
+
+
+    @Test
+    public void testSynchronous() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger calls = new AtomicInteger();
+        final Set<ResourceRecord> answer = Collections.singleton( getRecord( "www.example.com", RecordType.A,
+            DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+
+        final CoalescingRecordStore store = new CoalescingRecordStore( new RecordStore()
+        {
+            public Set<ResourceRecord> getRecords( QuestionRecord question ) throws DnsException
+            {
+                calls.incrementAndGet();
+                started.countDown();
+
+                try
+                {
+                    release.await();
+                }
+                catch ( InterruptedException ie )
+                {
+                    throw new AssertionError( ie );
+                }
+
+                return answer;
+            }
+        } );
+
+        ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+        List<Future<Set<ResourceRecord>>> results = new ArrayList<Future<Set<ResourceRecord>>>();
+
+        try
+        {
+            for ( int ii = 0; ii < THREADS; ii++ )
+            {
+                results.add( executor.submit( new Callable<Set<ResourceRecord>>()
+                {
+                    public Set<ResourceRecord> call() throws Exception
+                    {
+                        return store.getRecords( QUESTION );
+                    }
+                } ) );
+            }
+
+            // let the other lookups pile up behind the first one
+            assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+            Thread.sleep( 100 );
+            release.countDown();
+
+            for ( Future<Set<ResourceRecord>> result : results )
+            {
+                assertSame( answer, result.get( 10, TimeUnit.SECONDS ) );
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertTrue( calls.get() < THREADS );
+        assertEquals( 0, store.getLookupCount() );
+    }
+
+
+    @Test
+    public void testAsynchronous() throws Exception
+    {
+        final List<CompletableFuture<Set<ResourceRecord>>> backend =
+            new ArrayList<CompletableFuture<Set<ResourceRecord>>>();
+
+        CoalescingRecordStore store = new CoalescingRecordStore( new AsyncRecordStore()
+        {
+            public Set<ResourceRecord> getRecords( QuestionRecord question )
+            {
+                throw new UnsupportedOperationException();
+            }
+
+
+            public CompletionStage<Set<ResourceRecord>> getRecordsAsync( QuestionRecord question )
+            {
+                CompletableFuture<Set<ResourceRecord>> lookup = new CompletableFuture<Set<ResourceRecord>>();
+                backend.add( lookup );
+
+                return lookup;
+            }
+        } );
+
+        CompletableFuture<Set<ResourceRecord>> first = store.getRecordsAsync( QUESTION ).toCompletableFuture();
+        CompletableFuture<Set<ResourceRecord>> second = store.getRecordsAsync(
+            new QuestionRecord( "WWW.example.com", RecordType.A, RecordClass.IN ) ).toCompletableFuture();
+        store.getRecordsAsync( new QuestionRecord( "www.example.com", RecordType.AAAA, RecordClass.IN ) );
+
+        // the same question is asked once, another type is another question
+        assertEquals( 2, backend.size() );
+        assertFalse( first.isDone() );
+
+        Set<ResourceRecord> answer = Collections.emptySet();
+        backend.get( 0 ).complete( answer );
+
+        assertSame( answer, first.get() );
+        assertSame( answer, second.get() );
+
+        // once answered, the store is asked again
+        store.getRecordsAsync( QUESTION );
+        assertEquals( 3, backend.size() );
+    }
+
+
+    @Test
+    public void testUnknownTypes() throws Exception
+    {
+        final List<QuestionRecord> asked = new ArrayList<QuestionRecord>();
+
+        CoalescingRecordStore store = new CoalescingRecordStore( new AsyncRecordStore()
+        {
+            public Set<ResourceRecord> getRecords( QuestionRecord question )
+            {
+                throw new UnsupportedOperationException();
+            }
+
+
+            public CompletionStage<Set<ResourceRecord>> getRecordsAsync( QuestionRecord question )
+            {
+                asked.add( question );
+
+                return new CompletableFuture<Set<ResourceRecord>>();
+            }
+        } );
+
+        // the types without a constant are told apart by their codes
+        store.getRecordsAsync( new QuestionRecord( "www.example.com", 64, RecordClass.IN ) );
+        store.getRecordsAsync( new QuestionRecord( "www.example.com", 65, RecordClass.IN ) );
+        store.getRecordsAsync( new QuestionRecord( "www.example.com", 64, RecordClass.IN ) );
+
+        assertEquals( 2, asked.size() );
+        assertEquals( 65, asked.get( 1 ).getTypeCode() );
+    }
+}
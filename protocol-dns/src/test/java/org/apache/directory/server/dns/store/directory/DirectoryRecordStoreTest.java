@@ -0,0 +1,258 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.directory;
+
+
+import java.util.Set;
+
+import org.apache.directory.server.core.DirectoryEntry;
+import org.apache.directory.server.core.InMemoryDirectory;
+import org.apache.directory.server.core.SearchPage;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for the store of the records of a directory.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class DirectoryRecordStoreTest
+{
+    private static final String BASE_DN = "ou=dns,dc=example,dc=com";
+
+    private static final int HOSTS = 2500;
+
+
+    @Test
+    public void testLoad()
+    {
+        InMemoryDirectory directory = new InMemoryDirectory();
+
+        for ( int ii = 0; ii < HOSTS; ii++ )
+        {
+            directory.add( getRecord( "cn=host" + ii + "," + BASE_DN, "host" + ii + ".example.com", "A",
+                DnsAttribute.IP_ADDRESS, "10.0." + ( ii / 256 ) + "." + ( ii % 256 ) ) );
+        }
+
+        directory.add( getRecord( "cn=www2," + BASE_DN, "host0.example.com", "A", DnsAttribute.IP_ADDRESS,
+            "10.1.0.1" ) );
+        directory.add( getRecord( "cn=mx," + BASE_DN, "Example.COM.", "MX", DnsAttribute.MX_PREFERENCE, "10",
+            DnsAttribute.DOMAIN_NAME, "host1.example.com" ).put( DnsAttribute.TTL, "300" ) );
+
+        // not a record, nor under the search base
+        directory.add( new DirectoryEntry( "cn=admin," + BASE_DN ).put( DirectoryEntry.OBJECT_CLASS, "person" ) );
+        directory.add( getRecord( "cn=other,dc=example,dc=com", "other.example.com", "A", DnsAttribute.IP_ADDRESS,
+            "10.2.0.1" ) );
+
+        DirectoryRecordStore store = new DirectoryRecordStore( directory, BASE_DN, false );
+        store.setPageSize( 100 );
+        store.load();
+
+        assertEquals( HOSTS + 2, store.getRecordCount() );
+        assertEquals( 2, getRecords( store, "HOST0.example.com.", RecordType.A ).size() );
+        assertEquals( "10.0.9.195", getRecords( store, "host2499.example.com", RecordType.A ).iterator().next()
+            .get( DnsAttribute.IP_ADDRESS ) );
+
+        ResourceRecord mx = getRecords( store, "example.com", RecordType.MX ).iterator().next();
+        assertEquals( 300, mx.getTimeToLive() );
+        assertEquals( "host1.example.com", mx.get( DnsAttribute.DOMAIN_NAME ) );
+
+        assertEquals( 0, getRecords( store, "host1.example.com", RecordType.MX ).size() );
+        assertEquals( 1, getRecords( store, "host1.example.com", RecordType.ANY ).size() );
+        assertNull( getRecords( store, "other.example.com", RecordType.A ) );
+    }
+
+
+    @Test
+    public void testChanges()
+    {
+        InMemoryDirectory directory = new InMemoryDirectory();
+        directory.add( getRecord( "cn=www," + BASE_DN, "www.example.com", "A", DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+
+        DirectoryRecordStore store = new DirectoryRecordStore( directory, BASE_DN, false );
+        store.load();
+
+        directory.add( getRecord( "cn=ftp," + BASE_DN, "ftp.example.com", "A", DnsAttribute.IP_ADDRESS, "10.0.0.2" ) );
+        assertEquals( 1, getRecords( store, "ftp.example.com", RecordType.A ).size() );
+
+        // a renamed record moves
+        directory.add( getRecord( "cn=www," + BASE_DN, "web.example.com", "A", DnsAttribute.IP_ADDRESS, "10.0.0.3" ) );
+        assertNull( getRecords( store, "www.example.com", RecordType.A ) );
+        assertEquals( "10.0.0.3", getRecords( store, "web.example.com", RecordType.A ).iterator().next().get(
+            DnsAttribute.IP_ADDRESS ) );
+
+        directory.delete( "CN=ftp, " + BASE_DN );
+        assertNull( getRecords( store, "ftp.example.com", RecordType.A ) );
+        assertEquals( 1, store.getRecordCount() );
+
+        // once closed, changes are not followed
+        store.close();
+        directory.delete( "cn=www," + BASE_DN );
+        assertEquals( 1, store.getRecordCount() );
+    }
+
+
+    @Test
+    public void testChangesWhileLoading()
+    {
+        InMemoryDirectory directory = new InMemoryDirectory()
+        {
+            private boolean changed;
+
+
+            @Override
+            public synchronized SearchPage search( String baseDn, String objectClass, String cookie, int pageSize )
+            {
+                SearchPage page = super.search( baseDn, objectClass, cookie, pageSize );
+
+                if ( !changed )
+                {
+                    // behind the first page, while the next ones are not read yet
+                    changed = true;
+                    delete( "cn=host0," + BASE_DN );
+                    add( getRecord( "cn=host1," + BASE_DN, "host1.example.com", "A", DnsAttribute.IP_ADDRESS,
+                        "10.1.0.1" ) );
+                    add( getRecord( "cn=new," + BASE_DN, "new.example.com", "A", DnsAttribute.IP_ADDRESS,
+                        "10.1.0.2" ) );
+                }
+
+                return page;
+            }
+        };
+
+        for ( int ii = 0; ii < 10; ii++ )
+        {
+            directory.add( getRecord( "cn=host" + ii + "," + BASE_DN, "host" + ii + ".example.com", "A",
+                DnsAttribute.IP_ADDRESS, "10.0.0." + ii ) );
+        }
+
+        DirectoryRecordStore store = new DirectoryRecordStore( directory, BASE_DN, false );
+        store.setPageSize( 3 );
+        store.load();
+
+        assertNull( getRecords( store, "host0.example.com", RecordType.A ) );
+        assertEquals( "10.1.0.1", getRecords( store, "host1.example.com", RecordType.A ).iterator().next().get(
+            DnsAttribute.IP_ADDRESS ) );
+        assertEquals( 1, getRecords( store, "new.example.com", RecordType.A ).size() );
+        assertEquals( 10, store.getRecordCount() );
+    }
+
+
+    @Test
+    public void testCatalog()
+    {
+        InMemoryDirectory directory = new InMemoryDirectory();
+        directory.add( getCatalogEntry( "example.com", "ou=example.com,ou=zones,dc=example,dc=com" ) );
+        directory.add( getRecord( "cn=apex,ou=example.com,ou=zones,dc=example,dc=com", "@", "A",
+            DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+        directory.add( getRecord( "cn=www,ou=example.com,ou=zones,dc=example,dc=com", "www", "A",
+            DnsAttribute.IP_ADDRESS, "10.0.0.2" ) );
+        directory.add( getRecord( "cn=ftp,ou=example.org,ou=zones,dc=example,dc=com", "ftp", "A",
+            DnsAttribute.IP_ADDRESS, "10.0.0.3" ) );
+
+        DirectoryRecordStore store = new DirectoryRecordStore( directory, "ou=catalog,dc=example,dc=com", true );
+        store.load();
+
+        assertEquals( 2, store.getRecordCount() );
+        assertEquals( 1, getRecords( store, "example.com", RecordType.A ).size() );
+        assertEquals( 1, getRecords( store, "www.example.com", RecordType.A ).size() );
+
+        // a zone added to the catalog is loaded, one removed is dropped
+        directory.add( getCatalogEntry( "example.org", "ou=example.org,ou=zones,dc=example,dc=com" ) );
+        assertEquals( 1, getRecords( store, "ftp.example.org", RecordType.A ).size() );
+
+        directory.delete( "cn=example.com,ou=catalog,dc=example,dc=com" );
+        assertNull( getRecords( store, "www.example.com", RecordType.A ) );
+        assertEquals( 1, store.getRecordCount() );
+    }
+
+
+    @Test
+    public void testNoData()
+    {
+        InMemoryDirectory directory = new InMemoryDirectory();
+        directory.add( getRecord( "cn=soa," + BASE_DN, "example.com", "SOA", DnsAttribute.SOA_M_NAME,
+            "ns.example.com", DnsAttribute.SOA_R_NAME, "admin.example.com", DnsAttribute.SOA_SERIAL, "1",
+            DnsAttribute.SOA_REFRESH, "3600", DnsAttribute.SOA_RETRY, "600", DnsAttribute.SOA_EXPIRE, "86400",
+            DnsAttribute.SOA_MINIMUM, "60" ) );
+        directory.add( getRecord( "cn=www," + BASE_DN, "www.example.com", "A", DnsAttribute.IP_ADDRESS,
+            "10.0.0.1" ) );
+        directory.add( getRecord( "cn=opaque," + BASE_DN, "www.example.com", "TYPE64" ) );
+
+        DirectoryRecordStore store = new DirectoryRecordStore( directory, BASE_DN, false );
+        store.load();
+
+        // the name exists without records of the type, which is not a name error
+        RecordSet noData = ( RecordSet ) getRecords( store, "www.example.com", RecordType.MX );
+        assertTrue( noData.isNoData() );
+        assertEquals( RecordType.SOA, noData.getAuthorityRecordSets().get( 0 ).iterator().next()
+            .getRecordType() );
+
+        // the types without a constant are told apart by their codes
+        assertEquals( 1, store.getRecords( new QuestionRecord( "www.example.com", 64, RecordClass.IN ) ).size() );
+        assertTrue( ( ( RecordSet ) store.getRecords( new QuestionRecord( "www.example.com", 65, RecordClass.IN ) ) )
+            .isNoData() );
+        assertEquals( 2, getRecords( store, "www.example.com", RecordType.ANY ).size() );
+    }
+
+
+    private static Set<ResourceRecord> getRecords( DirectoryRecordStore store, String name, RecordType type )
+    {
+        return store.getRecords( new QuestionRecord( name, type, RecordClass.IN ) );
+    }
+
+
+    private static DirectoryEntry getRecord( String dn, String name, String type, String... attributes )
+    {
+        DirectoryEntry entry = new DirectoryEntry( dn );
+        entry.put( DirectoryEntry.OBJECT_CLASS, "top", DirectoryRecordStore.RECORD_OBJECT_CLASS );
+        entry.put( DnsAttribute.NAME, name );
+        entry.put( DnsAttribute.TYPE, type );
+
+        for ( int ii = 0; ii < attributes.length; ii += 2 )
+        {
+            entry.put( attributes[ii], attributes[ii + 1] );
+        }
+
+        return entry;
+    }
+
+
+    private static DirectoryEntry getCatalogEntry( String zone, String baseDn )
+    {
+        DirectoryEntry entry = new DirectoryEntry( "cn=" + zone + ",ou=catalog,dc=example,dc=com" );
+        entry.put( DirectoryEntry.OBJECT_CLASS, "top", DirectoryRecordStore.CATALOG_OBJECT_CLASS );
+        entry.put( DirectoryRecordStore.CATALOG_NAME, zone );
+        entry.put( DirectoryRecordStore.CATALOG_BASE_DN, baseDn );
+
+        return entry;
+    }
+}
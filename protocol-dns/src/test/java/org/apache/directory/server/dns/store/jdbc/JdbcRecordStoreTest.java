@@ -0,0 +1,564 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.jdbc;
+
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.messages.ResponseCode;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Tests for the store of the records of a database, over a database faked
+ * in memory which understands the queries of the store, and little else.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class JdbcRecordStoreTest
+{
+    private static final int HOSTS = 100;
+
+    /** The rows of the join of the two tables, by id */
+    private final List<Object[]> rows = Collections.synchronizedList( new ArrayList<Object[]>() );
+
+    /** The statements prepared */
+    private final Set<String> queries = Collections.synchronizedSet( new HashSet<String>() );
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    private final AtomicInteger maxConnections = new AtomicInteger();
+
+    /** The number of connections taken, and of statements prepared */
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    private final AtomicInteger statementCount = new AtomicInteger();
+
+    /** The time a query takes, in milliseconds */
+    private volatile long queryTime;
+
+    /** Whether queries fail */
+    private volatile boolean failing;
+
+
+    @Test
+    public void testLookups() throws Exception
+    {
+        addRecord( 1, "www.example.com", "A", 300, DnsAttribute.IP_ADDRESS, "10.0.0.1" );
+        addRecord( 2, "www.example.com", "A", 300, DnsAttribute.IP_ADDRESS, "10.0.0.2" );
+        addRecord( 3, "example.com", "MX", null, DnsAttribute.MX_PREFERENCE, "10", DnsAttribute.DOMAIN_NAME,
+            "www.example.com" );
+        addRecord( 4, "example.com", "BOGUS", 300, DnsAttribute.IP_ADDRESS, "10.0.0.3" );
+        addRecord( 5, "opaque.example.com", "TYPE64", 300, DnsAttribute.RDATA, "0102" );
+        addRecord( 6, "opaque.example.com", "type65", 300, DnsAttribute.RDATA, "0304" );
+
+        JdbcRecordStore store = new JdbcRecordStore( getDataSource(), 1 );
+        store.start();
+
+        try
+        {
+            assertEquals( 2, getRecords( store, "WWW.example.com.", RecordType.A ).size() );
+            assertNull( getRecords( store, "ftp.example.com", RecordType.A ) );
+
+            // the name exists without records of the type, which is not a name error
+            RecordSet noData = ( RecordSet ) getRecords( store, "www.example.com", RecordType.MX );
+            assertEquals( 0, noData.size() );
+            assertTrue( noData.isNoData() );
+
+            // the types without a constant are told apart by their codes
+            Set<ResourceRecord> opaque = store.getRecords( new QuestionRecord( "opaque.example.com", 65,
+                RecordClass.IN ) );
+            assertEquals( 1, opaque.size() );
+            assertEquals( "0304", opaque.iterator().next().get( DnsAttribute.RDATA ) );
+            assertTrue( ( ( RecordSet ) store.getRecords( new QuestionRecord( "opaque.example.com", 66,
+                RecordClass.IN ) ) ).isNoData() );
+
+            Set<ResourceRecord> records = getRecords( store, "example.com", RecordType.ANY );
+            assertEquals( 1, records.size() );
+            ResourceRecord mx = records.iterator().next();
+            assertEquals( RecordType.MX, mx.getRecordType() );
+            assertEquals( 86400, mx.getTimeToLive() );
+            assertEquals( "10", mx.get( DnsAttribute.MX_PREFERENCE ) );
+            assertEquals( "www.example.com", mx.get( DnsAttribute.DOMAIN_NAME ) );
+        }
+        finally
+        {
+            store.stop();
+        }
+    }
+
+
+    @Test
+    public void testBatching() throws Exception
+    {
+        for ( int ii = 0; ii < HOSTS; ii++ )
+        {
+            addRecord( ii, "host" + ii + ".example.com", "A", 300, DnsAttribute.IP_ADDRESS, "10.0.0." + ii );
+        }
+
+        queryTime = 5;
+        JdbcRecordStore store = new JdbcRecordStore( getDataSource(), 2 );
+        store.setBatchSize( 16 );
+        store.start();
+
+        try
+        {
+            List<CompletableFuture<Set<ResourceRecord>>> lookups =
+                new ArrayList<CompletableFuture<Set<ResourceRecord>>>();
+
+            for ( int ii = 0; ii < 5 * HOSTS; ii++ )
+            {
+                QuestionRecord question = new QuestionRecord( "host" + ( ii % HOSTS ) + ".example.com",
+                    RecordType.A, RecordClass.IN );
+                lookups.add( store.getRecordsAsync( question ).toCompletableFuture() );
+            }
+
+            for ( int ii = 0; ii < lookups.size(); ii++ )
+            {
+                Set<ResourceRecord> records = lookups.get( ii ).get( 10, TimeUnit.SECONDS );
+                assertEquals( 1, records.size() );
+                assertEquals( "10.0.0." + ( ii % HOSTS ), records.iterator().next().get( DnsAttribute.IP_ADDRESS ) );
+            }
+        }
+        finally
+        {
+            store.stop();
+        }
+
+        // the lookups waiting are read together, on no more connections than workers
+        assertTrue( store.getQueryCount() < 5 * HOSTS / 4 );
+        assertTrue( maxConnections.get() <= 2 );
+        assertEquals( 0, openConnections.get() );
+
+        // with batches padded to 1, 2, 4, 8 or 16 names
+        assertTrue( queries.size() <= 5 );
+    }
+
+
+    @Test
+    public void testBulk() throws Exception
+    {
+        for ( int ii = 0; ii < HOSTS; ii++ )
+        {
+            addRecord( ii, "host" + ii + ".example.com", "A", 300, DnsAttribute.IP_ADDRESS, "10.0.0." + ii );
+        }
+
+        JdbcRecordStore store = new JdbcRecordStore( getDataSource(), 1 );
+        store.setBatchSize( HOSTS );
+        store.setWindow( 50000L );
+        store.start();
+
+        try
+        {
+            List<QuestionRecord> questions = new ArrayList<QuestionRecord>();
+
+            for ( int ii = 0; ii <= HOSTS; ii++ )
+            {
+                questions.add( new QuestionRecord( "host" + ii + ".example.com", RecordType.A, RecordClass.IN ) );
+            }
+
+            List<Set<ResourceRecord>> answers = store.getRecords( questions );
+            assertEquals( HOSTS + 1, answers.size() );
+
+            for ( int ii = 0; ii < HOSTS; ii++ )
+            {
+                assertEquals( "10.0.0." + ii, answers.get( ii ).iterator().next().get( DnsAttribute.IP_ADDRESS ) );
+            }
+
+            assertNull( answers.get( HOSTS ) );
+
+            // the questions were all there for the worker to take
+            assertTrue( store.getQueryCount() <= 3 );
+        }
+        finally
+        {
+            store.stop();
+        }
+    }
+
+
+    @Test
+    public void testFailure() throws Exception
+    {
+        failing = true;
+        JdbcRecordStore store = new JdbcRecordStore( getDataSource(), 1 );
+        store.start();
+
+        try
+        {
+            getRecords( store, "www.example.com", RecordType.A );
+            fail( "Expected a DnsException" );
+        }
+        catch ( DnsException de )
+        {
+            // expected
+        }
+        finally
+        {
+            store.stop();
+        }
+
+        assertEquals( 0, openConnections.get() );
+
+        // once stopped, lookups fail at once
+        try
+        {
+            store.getRecordsAsync( new QuestionRecord( "www.example.com", RecordType.A, RecordClass.IN ) )
+                .toCompletableFuture().get();
+            fail( "Expected an ExecutionException" );
+        }
+        catch ( ExecutionException ee )
+        {
+            assertTrue( ee.getCause() instanceof DnsException );
+        }
+    }
+
+
+    @Test
+    public void testStatements() throws Exception
+    {
+        addRecord( 1, "www.example.com", "A", 300, DnsAttribute.IP_ADDRESS, "10.0.0.1" );
+
+        JdbcRecordStore store = new JdbcRecordStore( getDataSource(), 1 );
+        store.start();
+
+        try
+        {
+            // the worker keeps its connection, and the statement prepared on it
+            for ( int ii = 0; ii < 10; ii++ )
+            {
+                assertEquals( 1, getRecords( store, "www.example.com", RecordType.A ).size() );
+            }
+
+            assertEquals( 1, connectionCount.get() );
+            assertEquals( 1, statementCount.get() );
+
+            // until a query fails on it
+            failing = true;
+
+            try
+            {
+                getRecords( store, "www.example.com", RecordType.A );
+                fail( "Expected a DnsException" );
+            }
+            catch ( DnsException de )
+            {
+                // expected
+            }
+
+            failing = false;
+            assertEquals( 0, openConnections.get() );
+            assertEquals( 1, getRecords( store, "www.example.com", RecordType.A ).size() );
+            assertEquals( 2, connectionCount.get() );
+            assertEquals( 2, statementCount.get() );
+        }
+        finally
+        {
+            store.stop();
+        }
+
+        assertEquals( 0, openConnections.get() );
+    }
+
+
+    @Test
+    public void testBrokenRecord() throws Exception
+    {
+        // a record without a type, which the store does not expect
+        addRecord( 1, "broken.example.com", null, 300, DnsAttribute.IP_ADDRESS, "10.0.0.1" );
+        addRecord( 2, "www.example.com", "A", 300, DnsAttribute.IP_ADDRESS, "10.0.0.2" );
+
+        JdbcRecordStore store = new JdbcRecordStore( getDataSource(), 1 );
+        store.start();
+
+        try
+        {
+            try
+            {
+                getRecords( store, "broken.example.com", RecordType.A );
+                fail( "Expected a DnsException" );
+            }
+            catch ( DnsException de )
+            {
+                assertEquals( ResponseCode.SERVER_FAILURE.convert().intValue(), de.getResponseCode() );
+            }
+
+            // the worker is still there
+            assertEquals( 1, getRecords( store, "www.example.com", RecordType.A ).size() );
+        }
+        finally
+        {
+            store.stop();
+        }
+
+        assertEquals( 0, openConnections.get() );
+    }
+
+
+    @Test
+    public void testQueueFull() throws Exception
+    {
+        addRecord( 1, "www.example.com", "A", 300, DnsAttribute.IP_ADDRESS, "10.0.0.1" );
+
+        queryTime = 500;
+        JdbcRecordStore store = new JdbcRecordStore( getDataSource(), 1 );
+        store.setBatchSize( 1 );
+        store.setMaxQueued( 2 );
+        store.start();
+
+        try
+        {
+            List<CompletableFuture<Set<ResourceRecord>>> lookups =
+                new ArrayList<CompletableFuture<Set<ResourceRecord>>>();
+
+            for ( int ii = 0; ii < 4; ii++ )
+            {
+                QuestionRecord question = new QuestionRecord( "www.example.com", RecordType.A, RecordClass.IN );
+                lookups.add( store.getRecordsAsync( question ).toCompletableFuture() );
+            }
+
+            // one lookup with the worker at most, two waiting, the last refused at once
+            assertTrue( lookups.get( 3 ).isCompletedExceptionally() );
+
+            try
+            {
+                lookups.get( 3 ).get();
+                fail( "Expected an ExecutionException" );
+            }
+            catch ( ExecutionException ee )
+            {
+                DnsException de = ( DnsException ) ee.getCause();
+                assertEquals( ResponseCode.SERVER_FAILURE.convert().intValue(), de.getResponseCode() );
+            }
+
+            assertEquals( 1, lookups.get( 0 ).get( 10, TimeUnit.SECONDS ).size() );
+        }
+        finally
+        {
+            store.stop();
+        }
+    }
+
+
+    private static Set<ResourceRecord> getRecords( JdbcRecordStore store, String name, RecordType type )
+        throws DnsException
+    {
+        return store.getRecords( new QuestionRecord( name, type, RecordClass.IN ) );
+    }
+
+
+    /**
+     * Adds the rows of a record, one per attribute.
+     */
+    private void addRecord( long id, String name, String type, Integer ttl, String... attributes )
+    {
+        for ( int ii = 0; ii < attributes.length; ii += 2 )
+        {
+            rows.add( new Object[]
+                { id, name, type, null, ttl, attributes[ii], attributes[ii + 1] } );
+        }
+    }
+
+
+    private DataSource getDataSource()
+    {
+        return proxy( DataSource.class, new InvocationHandler()
+        {
+            public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+            {
+                if ( !method.getName().equals( "getConnection" ) )
+                {
+                    throw new UnsupportedOperationException( method.getName() );
+                }
+
+                int open = openConnections.incrementAndGet();
+                connectionCount.incrementAndGet();
+
+                while ( maxConnections.get() < open )
+                {
+                    maxConnections.compareAndSet( maxConnections.get(), open );
+                }
+
+                return getConnection();
+            }
+        } );
+    }
+
+
+    private Connection getConnection()
+    {
+        return proxy( Connection.class, new InvocationHandler()
+        {
+            public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+            {
+                if ( method.getName().equals( "close" ) )
+                {
+                    openConnections.decrementAndGet();
+                    return null;
+                }
+
+                if ( method.getName().equals( "prepareStatement" ) && args.length == 1 )
+                {
+                    queries.add( ( String ) args[0] );
+                    statementCount.incrementAndGet();
+                    return getStatement();
+                }
+
+                throw new UnsupportedOperationException( method.getName() );
+            }
+        } );
+    }
+
+
+    private PreparedStatement getStatement()
+    {
+        final Map<Integer, String> parameters = new HashMap<Integer, String>();
+
+        return proxy( PreparedStatement.class, new InvocationHandler()
+        {
+            public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+            {
+                if ( method.getName().equals( "setString" ) )
+                {
+                    parameters.put( ( Integer ) args[0], ( String ) args[1] );
+                    return null;
+                }
+
+                if ( method.getName().equals( "close" ) )
+                {
+                    return null;
+                }
+
+                if ( !method.getName().equals( "executeQuery" ) || args != null )
+                {
+                    throw new UnsupportedOperationException( method.getName() );
+                }
+
+                if ( failing )
+                {
+                    throw new SQLException( "Failing" );
+                }
+
+                Thread.sleep( queryTime );
+                List<Object[]> found = new ArrayList<Object[]>();
+
+                synchronized ( rows )
+                {
+                    for ( Object[] row : rows )
+                    {
+                        if ( parameters.containsValue( row[1] ) )
+                        {
+                            found.add( row );
+                        }
+                    }
+                }
+
+                return getResultSet( found );
+            }
+        } );
+    }
+
+
+    private static ResultSet getResultSet( final List<Object[]> rows )
+    {
+        return proxy( ResultSet.class, new InvocationHandler()
+        {
+            private int row = -1;
+
+            private boolean wasNull;
+
+
+            public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+            {
+                String name = method.getName();
+
+                if ( name.equals( "next" ) )
+                {
+                    return ++row < rows.size();
+                }
+                else if ( name.equals( "close" ) )
+                {
+                    return null;
+                }
+                else if ( name.equals( "wasNull" ) )
+                {
+                    return wasNull;
+                }
+
+                Object value = rows.get( row )[( Integer ) args[0] - 1];
+                wasNull = value == null;
+
+                if ( name.equals( "getString" ) )
+                {
+                    return value;
+                }
+                else if ( name.equals( "getLong" ) )
+                {
+                    return wasNull ? 0L : ( ( Number ) value ).longValue();
+                }
+                else if ( name.equals( "getInt" ) )
+                {
+                    return wasNull ? 0 : ( ( Number ) value ).intValue();
+                }
+
+                throw new UnsupportedOperationException( name );
+            }
+        } );
+    }
+
+
+    private static <T> T proxy( Class<T> type, InvocationHandler handler )
+    {
+        return type.cast( Proxy.newProxyInstance( JdbcRecordStoreTest.class.getClassLoader(), new Class<?>[]
+            { type }, handler ) );
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.io.encoder.DnsMessageEncoder;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests that a compiled zone image answers as the zone it was compiled from.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneImageTest extends AbstractDnsTestCase
+{
+    private static final String[] NAMES =
+        { "example.com", "www.example.com", "web.example.com", "mail.example.com", "random.example.com",
+            "x.b.example.com", "b.example.com", "a.b.example.com", "www.old.example.com", "ping.example.com",
+            "out.example.com", "child.example.com", "ns.child.example.com", "host.sub.child.example.com",
+            "to.example.com", "example.org" };
+
+    private static final RecordType[] TYPES =
+        { RecordType.A, RecordType.CNAME, RecordType.MX, RecordType.NS, RecordType.SOA, RecordType.TXT,
+            RecordType.ANY };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Zone zone;
+
+
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "example.com" );
+        modifier.add( getRecord( "example.com", RecordType.SOA, DnsAttribute.SOA_M_NAME, "ns.example.com",
+            DnsAttribute.SOA_R_NAME, "admin.example.com", DnsAttribute.SOA_SERIAL, "7", DnsAttribute.SOA_REFRESH,
+            "3600", DnsAttribute.SOA_RETRY, "600", DnsAttribute.SOA_EXPIRE, "86400", DnsAttribute.SOA_MINIMUM,
+            "3600" ) );
+        modifier.add( getRecord( "example.com", RecordType.MX, DnsAttribute.MX_PREFERENCE, "10",
+            DnsAttribute.DOMAIN_NAME, "mail.example.com" ) );
+        modifier.add( getRecord( "mail.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.2" ) );
+        modifier.add( getRecord( "www.example.com", RecordType.CNAME, DnsAttribute.DOMAIN_NAME, "web.example.com" ) );
+        modifier.add( getRecord( "web.example.com", RecordType.CNAME, DnsAttribute.DOMAIN_NAME, "mail.example.com" ) );
+        modifier.add( getRecord( "*.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.9" ) );
+        modifier.add( getRecord( "a.b.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.3" ) );
+        modifier.add( getRecord( "old.example.com", RecordType.DNAME, DnsAttribute.DOMAIN_NAME, "example.com" ) );
+        modifier.add( getRecord( "ping.example.com", RecordType.CNAME, DnsAttribute.DOMAIN_NAME, "pong.example.com" ) );
+        modifier.add( getRecord( "pong.example.com", RecordType.CNAME, DnsAttribute.DOMAIN_NAME, "ping.example.com" ) );
+        modifier.add( getRecord( "out.example.com", RecordType.CNAME, DnsAttribute.DOMAIN_NAME, "www.example.org" ) );
+        modifier.add( getRecord( "child.example.com", RecordType.NS,
+            DnsAttribute.DOMAIN_NAME, "ns.child.example.com" ) );
+        modifier.add( getRecord( "ns.child.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.1.1" ) );
+        modifier.add( getRecord( "sub.child.example.com", RecordType.NS, DnsAttribute.DOMAIN_NAME, "ns.example.net" ) );
+        modifier.add( getRecord( "to.example.com", RecordType.CNAME,
+            DnsAttribute.DOMAIN_NAME, "ns.child.example.com" ) );
+        modifier.add( getRecord( "opaque.example.com", RecordType.UNKNOWN, DnsAttribute.TYPE, "64",
+            DnsAttribute.RDATA, "00" ) );
+        modifier.add( getRecord( "opaque.example.com", RecordType.UNKNOWN, DnsAttribute.TYPE, "65",
+            DnsAttribute.RDATA, "01" ) );
+
+        zone = modifier.getZone();
+    }
+
+
+    @Test
+    public void testHeader() throws Exception
+    {
+        ZoneImage image = compile();
+        assertEquals( "example.com", image.getOrigin() );
+        assertEquals( 7, image.getSerial() );
+        assertEquals( zone.getNames().size(), image.getNameCount() );
+        assertTrue( image.hasName( "b.example.com" ) );
+        assertFalse( image.hasName( "x.b.example.com" ) );
+    }
+
+
+    @Test
+    public void testSameAnswers() throws Exception
+    {
+        ZoneImage image = compile();
+        for ( String name : NAMES )
+        {
+            for ( RecordType type : TYPES )
+            {
+                assertSameAnswer( name + " " + type, zone.resolve( name, type ), image.resolve( name, type ) );
+            }
+        }
+    }
+
+
+    @Test
+    public void testRecordStore() throws Exception
+    {
+        ZoneImage image = compile();
+        ZoneImageRecordStore store = new ZoneImageRecordStore( Arrays.asList( image ) );
+        RecordSet answer = ( RecordSet ) store.getRecords( new QuestionRecord( "Example.COM.", RecordType.MX,
+            RecordClass.IN ) );
+
+        assertEquals( 1, answer.size() );
+        assertEquals( 1, answer.getAdditionalRecordSets().size() );
+        assertEquals( "10.0.0.2", answer.getAdditionalRecordSets().get( 0 ).iterator().next().get(
+            DnsAttribute.IP_ADDRESS ) );
+        assertNull( store.getRecords( new QuestionRecord( "www.example.org", RecordType.A, RecordClass.IN ) ) );
+    }
+
+
+    @Test
+    public void testOffHeap() throws Exception
+    {
+        ByteBuffer[] chunks = ZoneCompiler.compile( zone, true );
+
+        assertEquals( 1, chunks.length );
+        assertTrue( chunks[0].isDirect() );
+        assertEquals( chunks[0].capacity(), chunks[0].limit() );
+
+        ZoneImageRecordStore store = ZoneImageRecordStore.allocate( Arrays.asList( zone ) );
+        ZoneImage image = store.getImage( "www.example.com" );
+
+        for ( String name : NAMES )
+        {
+            for ( RecordType type : TYPES )
+            {
+                assertSameAnswer( name + " " + type, zone.resolve( name, type ), image.resolve( name, type ) );
+            }
+        }
+    }
+
+
+    @Test
+    public void testChunks() throws Exception
+    {
+        // small enough for names and records to straddle buffers
+        ByteBuffer[] chunks = ZoneCompiler.compile( zone, false, 64 );
+        long length = 0;
+
+        for ( int ii = 0; ii < chunks.length; ii++ )
+        {
+            assertTrue( ii == chunks.length - 1 || chunks[ii].limit() == 64 );
+            length += chunks[ii].limit();
+        }
+
+        assertTrue( chunks.length > 1 );
+        assertEquals( compileFile().length(), length );
+
+        ZoneImage image = new ZoneImage( chunks );
+        assertEquals( "example.com", image.getOrigin() );
+        assertEquals( 7, image.getSerial() );
+
+        for ( String name : NAMES )
+        {
+            for ( RecordType type : TYPES )
+            {
+                assertSameAnswer( name + " " + type, zone.resolve( name, type ), image.resolve( name, type ) );
+            }
+        }
+    }
+
+
+    @Test
+    public void testUnknownTypes() throws Exception
+    {
+        ZoneImage image = compile();
+
+        for ( int typeCode = 63; typeCode <= 66; typeCode++ )
+        {
+            assertSameAnswer( "opaque.example.com " + typeCode, zone.resolve( "opaque.example.com", typeCode ),
+                image.resolve( "opaque.example.com", typeCode ) );
+        }
+
+        RecordSet answer = image.resolve( "opaque.example.com", 64 );
+        assertEquals( 1, answer.size() );
+        assertEquals( "64", answer.iterator().next().get( DnsAttribute.TYPE ) );
+        assertTrue( image.resolve( "opaque.example.com", RecordType.UNKNOWN ).isNoData() );
+    }
+
+
+    @Test(timeout = 5000)
+    public void testRootZone() throws Exception
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "" );
+        modifier.add( getRecord( "org", RecordType.NS, DnsAttribute.DOMAIN_NAME, "a0.org.afilias-nst.info" ) );
+        modifier.add( getRecord( "tld", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+        Zone root = modifier.getZone();
+        ZoneImage image = new ZoneImage( ZoneCompiler.compile( root, false ) );
+
+        for ( String name : new String[]
+            { "tld", "www.tld", "org", "www.example.org", "com", "www.example.com" } )
+        {
+            for ( RecordType type : TYPES )
+            {
+                assertSameAnswer( name + " " + type, root.resolve( name, type ), image.resolve( name, type ) );
+            }
+        }
+    }
+
+
+    private ZoneImage compile() throws Exception
+    {
+        return ZoneImage.open( compileFile() );
+    }
+
+
+    private File compileFile() throws Exception
+    {
+        // the folder only exists once the test runs, not in setUp
+        File file = new File( folder.getRoot(), "example.com" + ZoneCompiler.EXTENSION );
+        ZoneCompiler.compile( zone, file );
+
+        return file;
+    }
+
+
+    private static void assertSameAnswer( String query, RecordSet expected, RecordSet actual ) throws Exception
+    {
+        if ( expected == null )
+        {
+            assertNull( query, actual );
+            return;
+        }
+
+        assertEquals( query, expected.size(), actual.size() );
+        assertEquals( query, expected.isReferral(), actual.isReferral() );
+        assertEquals( query, expected.isAuthoritative(), actual.isAuthoritative() );
+        assertEquals( query, expected.getAuthorityRecordSets().size(), actual.getAuthorityRecordSets().size() );
+        assertEquals( query, expected.getAdditionalRecordSets().size(), actual.getAdditionalRecordSets().size() );
+
+        Iterator<ResourceRecord> it = actual.iterator();
+
+        for ( ResourceRecord record : expected )
+        {
+            ResourceRecord other = it.next();
+
+            assertEquals( query, record.getDomainName(), other.getDomainName() );
+            assertEquals( query, record.getRecordType(), other.getRecordType() );
+            assertTrue( query, Arrays.equals( DnsMessageEncoder.getRecordData( record ), DnsMessageEncoder
+                .getRecordData( other ) ) );
+        }
+    }
+}
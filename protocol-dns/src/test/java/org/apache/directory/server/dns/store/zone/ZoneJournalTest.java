@@ -0,0 +1,222 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for recovering zones from the journal and snapshots.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneJournalTest extends AbstractDnsTestCase
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void testReplay() throws Exception
+    {
+        File directory = folder.newFolder( "journal" );
+        ZoneRegistry registry = getRegistry();
+        ZoneJournal journal = new ZoneJournal( directory );
+        journal.recover( registry );
+
+        journal.sync( change( journal, registry, getRecord( "ftp.example.com", RecordType.A,
+            DnsAttribute.IP_ADDRESS, "10.0.0.2" ) ) );
+        journal.close();
+
+        // a torn entry at the tail is cut off
+        FileOutputStream out = new FileOutputStream( directory.listFiles()[0], true );
+        out.write( new byte[]
+            { 0, 0, 1, 0, 42 } );
+        out.close();
+
+        registry = getRegistry();
+        journal = new ZoneJournal( directory );
+        journal.recover( registry );
+
+        assertNotNull( registry.getZone( "example.com" ).getRecordSet( "ftp.example.com", RecordType.A ) );
+
+        // and appending goes on after the last whole entry
+        change( journal, registry, getRecord( "mail.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.3" ) );
+        journal.close();
+
+        registry = getRegistry();
+        new ZoneJournal( directory ).recover( registry );
+
+        assertNotNull( registry.getZone( "example.com" ).getRecordSet( "mail.example.com", RecordType.A ) );
+        assertEquals( 2, new ZoneJournal( directory ).getChanges( "example.com" ).size() );
+    }
+
+
+    @Test
+    public void testSnapshot() throws Exception
+    {
+        File directory = folder.newFolder( "snapshot" );
+        ZoneRegistry registry = getRegistry();
+        ZoneJournal journal = new ZoneJournal( directory );
+        journal.recover( registry );
+
+        change( journal, registry, getRecord( "ftp.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.2" ) );
+        journal.snapshot( registry );
+        change( journal, registry, getRecord( "mail.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.3" ) );
+        journal.close();
+
+        // only the entries after the snapshot are left
+        assertEquals( 1, journal.getChanges( "example.com" ).size() );
+
+        // the snapshot brings the zone back even to an empty registry
+        registry = new ZoneRegistry();
+        new ZoneJournal( directory ).recover( registry );
+
+        Zone zone = registry.getZone( "example.com" );
+        assertNotNull( zone.getRecordSet( "www.example.com", RecordType.A ) );
+        assertNotNull( zone.getRecordSet( "ftp.example.com", RecordType.A ) );
+        assertNotNull( zone.getRecordSet( "mail.example.com", RecordType.A ) );
+        assertNull( zone.getRecordSet( "news.example.com", RecordType.A ) );
+
+        // the MX RRset is linked to its target again
+        assertEquals( 1, zone.getRecordSet( "example.com", RecordType.MX ).getAdditionalRecordSets().size() );
+    }
+
+
+    @Test
+    public void testSegmentRoll() throws Exception
+    {
+        File directory = folder.newFolder( "roll" );
+        ZoneRegistry registry = getRegistry();
+        ZoneJournal journal = new ZoneJournal( directory );
+        journal.setSegmentSize( 200 );
+        journal.recover( registry );
+
+        for ( int ii = 0; ii < 10; ii++ )
+        {
+            journal.sync( change( journal, registry, getRecord( "host" + ii + ".example.com", RecordType.A,
+                DnsAttribute.IP_ADDRESS, "10.0.1." + ii ) ) );
+        }
+
+        journal.close();
+
+        // the journal is spread over several segments, read back in order
+        assertTrue( directory.listFiles().length > 1 );
+        assertEquals( 10, journal.getChanges( "example.com" ).size() );
+
+        registry = getRegistry();
+        journal = new ZoneJournal( directory );
+        journal.recover( registry );
+
+        for ( int ii = 0; ii < 10; ii++ )
+        {
+            assertNotNull( registry.getZone( "example.com" ).getRecordSet( "host" + ii + ".example.com",
+                RecordType.A ) );
+        }
+
+        // a snapshot leaves a single, empty segment
+        journal.snapshot( registry );
+        journal.close();
+
+        assertEquals( 0, journal.getChanges( "example.com" ).size() );
+        assertEquals( 2, directory.listFiles().length );
+    }
+
+
+    @Test
+    public void testCorruptSnapshot() throws Exception
+    {
+        File directory = folder.newFolder( "corrupt" );
+        ZoneRegistry registry = getRegistry();
+        ZoneJournal journal = new ZoneJournal( directory );
+        journal.recover( registry );
+        journal.snapshot( registry );
+        journal.close();
+
+        File snapshot = null;
+
+        for ( File file : directory.listFiles() )
+        {
+            if ( file.getName().startsWith( "snapshot-" ) )
+            {
+                snapshot = file;
+            }
+        }
+
+        RandomAccessFile raf = new RandomAccessFile( snapshot, "rw" );
+        raf.seek( raf.length() - 8 );
+        raf.write( 0x55 );
+        raf.close();
+
+        // the damaged snapshot is skipped as a whole
+        registry = new ZoneRegistry();
+        new ZoneJournal( directory ).recover( registry );
+
+        assertNull( registry.getZone( "example.com" ) );
+    }
+
+
+    /**
+     * Adds a record to the zone, the way a dynamic update does.
+     */
+    private long change( ZoneJournal journal, ZoneRegistry registry, ResourceRecord record ) throws Exception
+    {
+        Zone zone = registry.getZone( "example.com" );
+        ZoneModifier modifier = new ZoneModifier( zone );
+        modifier.add( record );
+        registry.replace( zone, modifier.getZone() );
+
+        return journal.append( modifier.getChange() );
+    }
+
+
+    private ZoneRegistry getRegistry()
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "example.com" );
+        modifier.addAll( Arrays.asList( getRecord( "www.example.com", RecordType.A, DnsAttribute.IP_ADDRESS,
+            "10.0.0.1" ), getRecord( "example.com", RecordType.MX, DnsAttribute.MX_PREFERENCE, "10",
+            DnsAttribute.DOMAIN_NAME, "mail.example.com" ) ) );
+
+        ZoneRegistry registry = new ZoneRegistry();
+        registry.setZones( Collections.singleton( modifier.getZone() ) );
+
+        return registry;
+    }
+}
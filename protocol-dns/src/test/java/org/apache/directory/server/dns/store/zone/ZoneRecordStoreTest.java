@@ -0,0 +1,113 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import java.util.Collections;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for the in-memory zone store.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneRecordStoreTest extends AbstractDnsTestCase
+{
+    private ZoneRecordStore store;
+
+
+    @Before
+    public void setUp()
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "example.com." );
+        modifier.add( getRecord( "example.com", RecordType.NS, DnsAttribute.DOMAIN_NAME, "ns1.example.com" ) );
+        modifier.add( getRecord( "example.com", RecordType.MX, DnsAttribute.MX_PREFERENCE, "10",
+            DnsAttribute.DOMAIN_NAME, "mail.example.com" ) );
+        modifier.add( getRecord( "example.com", RecordType.MX, DnsAttribute.MX_PREFERENCE, "10",
+            DnsAttribute.DOMAIN_NAME, "mx.example.org" ) );
+        modifier.add( getRecord( "ns1.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+        modifier.add( getRecord( "Mail.Example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.2" ) );
+        modifier.add( getRecord( "mail.example.com", RecordType.AAAA, DnsAttribute.IP_ADDRESS, "fe80::2" ) );
+
+        store = new ZoneRecordStore( Collections.singleton( modifier.getZone() ) );
+    }
+
+
+    @Test
+    public void testGetRecords() throws Exception
+    {
+        QuestionRecord question = new QuestionRecord( "MAIL.example.com", RecordType.A, RecordClass.IN );
+
+        assertEquals( 1, store.getRecords( question ).size() );
+        assertEquals( "10.0.0.2", store.getRecords( question ).iterator().next().get( DnsAttribute.IP_ADDRESS ) );
+    }
+
+
+    @Test
+    public void testAdditionalRecordsLinked() throws Exception
+    {
+        QuestionRecord question = new QuestionRecord( "example.com", RecordType.MX, RecordClass.IN );
+        RecordSet recordSet = ( RecordSet ) store.getRecords( question );
+
+        // only the in-zone mail exchanger can be linked
+        assertEquals( 2, recordSet.size() );
+        assertEquals( 2, recordSet.getAdditionalRecordSets().size() );
+        assertEquals( RecordType.A, recordSet.getAdditionalRecordSets().get( 0 ).iterator().next().getRecordType() );
+        assertEquals( RecordType.AAAA, recordSet.getAdditionalRecordSets().get( 1 ).iterator().next()
+            .getRecordType() );
+
+        question = new QuestionRecord( "example.com.", RecordType.NS, RecordClass.IN );
+        recordSet = ( RecordSet ) store.getRecords( question );
+        assertEquals( 1, recordSet.getAdditionalRecordSets().size() );
+    }
+
+
+    @Test
+    public void testOutsideZones() throws Exception
+    {
+        assertNull( store.getRecords( new QuestionRecord( "example.org", RecordType.A, RecordClass.IN ) ) );
+
+        // a name of a zone which does not exist is a name error of that zone
+        RecordSet nameError = ( RecordSet ) store.getRecords( new QuestionRecord( "www.example.com", RecordType.A,
+            RecordClass.IN ) );
+        assertTrue( nameError.isEmpty() );
+        assertTrue( nameError.isNameError() );
+        assertTrue( nameError.isAuthoritative() );
+        assertFalse( nameError.isReferral() );
+        assertTrue( store.getZone( "www.example.com" ) != null );
+        assertNull( store.getZone( "badexample.com" ) );
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.messages.QuestionRecord;
+import org.apache.directory.server.dns.messages.RecordClass;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for swapping zones in and out of a registry.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneRegistryTest extends AbstractDnsTestCase
+{
+    @Test
+    public void testReload() throws Exception
+    {
+        ZoneRegistry registry = new ZoneRegistry();
+        ZoneRecordStore store = new ZoneRecordStore( registry );
+        QuestionRecord question = new QuestionRecord( "www.example.com", RecordType.A, RecordClass.IN );
+
+        assertNull( store.getRecords( question ) );
+
+        Zone zone = getZone( "10.0.0.1" );
+        assertNull( registry.put( zone ) );
+        assertEquals( "10.0.0.1", store.getRecords( question ).iterator().next().get( DnsAttribute.IP_ADDRESS ) );
+
+        // a reload swaps the whole zone in at once
+        assertSame( zone, registry.put( getZone( "10.0.0.2" ) ) );
+        assertEquals( "10.0.0.2", store.getRecords( question ).iterator().next().get( DnsAttribute.IP_ADDRESS ) );
+        assertEquals( 1, registry.getZones().size() );
+
+        assertEquals( "example.com", registry.remove( "Example.COM." ).getOrigin() );
+        assertNull( store.getRecords( question ) );
+    }
+
+
+    @Test
+    public void testReplaceRace()
+    {
+        ZoneRegistry registry = new ZoneRegistry();
+        Zone base = getZone( "10.0.0.1" );
+        registry.put( base );
+
+        // two changes derived from the same version, the first one to commit wins
+        Zone winner = derive( base, "10.0.0.2" );
+        Zone loser = derive( base, "10.0.0.3" );
+
+        assertTrue( registry.replace( base, winner ) );
+        assertFalse( registry.replace( base, loser ) );
+        assertSame( winner, registry.getZone( "example.com" ) );
+
+        // the loser builds its change again on top of the winner
+        assertTrue( registry.replace( winner, derive( winner, "10.0.0.3" ) ) );
+        assertEquals( 3, registry.getZone( "example.com" ).getRecordSet( "www.example.com", RecordType.A ).size() );
+
+        // a zone removed meanwhile is not brought back
+        Zone current = registry.getZone( "example.com" );
+        registry.remove( "example.com" );
+        assertFalse( registry.replace( current, derive( current, "10.0.0.4" ) ) );
+        assertNull( registry.getZone( "example.com" ) );
+    }
+
+
+    @Test
+    public void testConcurrentReplace() throws Exception
+    {
+        final ZoneRegistry registry = new ZoneRegistry();
+        registry.put( getZone( "10.0.0.0" ) );
+
+        final int threadCount = 4;
+        final int changeCount = 50;
+        Thread[] threads = new Thread[threadCount];
+
+        for ( int ii = 0; ii < threadCount; ii++ )
+        {
+            final int thread = ii;
+            threads[ii] = new Thread()
+            {
+                public void run()
+                {
+                    for ( int jj = 0; jj < changeCount; jj++ )
+                    {
+                        String address = "10." + thread + "." + ( jj / 256 ) + "." + ( jj % 256 );
+
+                        while ( true )
+                        {
+                            Zone base = registry.getZone( "example.com" );
+
+                            if ( registry.replace( base, derive( base, address ) ) )
+                            {
+                                break;
+                            }
+                        }
+                    }
+                }
+            };
+            threads[ii].start();
+        }
+
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        // no change was lost
+        assertEquals( 1 + threadCount * changeCount, registry.getZone( "example.com" ).getRecordSet(
+            "www.example.com", RecordType.A ).size() );
+    }
+
+
+    @Test
+    public void testPutIfAbsent()
+    {
+        ZoneRegistry registry = new ZoneRegistry();
+        Zone zone = getZone( "10.0.0.1" );
+
+        assertNull( registry.putIfAbsent( zone ) );
+        assertSame( zone, registry.putIfAbsent( getZone( "10.0.0.2" ) ) );
+        assertSame( zone, registry.getZone( "example.com" ) );
+    }
+
+
+    @Test
+    public void testRemove()
+    {
+        ZoneRegistry registry = new ZoneRegistry();
+        Zone zone = getZone( "10.0.0.1" );
+        Zone other = getZone( "example.org", "10.0.0.2" );
+        registry.put( zone );
+        registry.put( other );
+
+        assertNull( registry.remove( "example.net" ) );
+        assertSame( zone, registry.remove( "example.com" ) );
+        assertNull( registry.remove( "example.com" ) );
+
+        assertNull( registry.getZone( "www.example.com" ) );
+        assertSame( other, registry.getZone( "www.example.org" ) );
+        assertEquals( 1, registry.getZones().size() );
+    }
+
+
+    @Test
+    public void testNestedZones()
+    {
+        ZoneRegistry registry = new ZoneRegistry();
+        Zone parent = getZone( "10.0.0.1" );
+        Zone child = getZone( "child.example.com", "10.0.1.1" );
+        registry.put( parent );
+        registry.put( child );
+
+        // the longest origin the name is at or below wins
+        assertSame( child, registry.getZone( "child.example.com" ) );
+        assertSame( child, registry.getZone( "www.child.example.com" ) );
+        assertSame( child, registry.getZone( "a.b.child.example.com" ) );
+        assertSame( parent, registry.getZone( "example.com" ) );
+        assertSame( parent, registry.getZone( "www.example.com" ) );
+        assertSame( parent, registry.getZone( "xchild.example.com" ) );
+        assertNull( registry.getZone( "com" ) );
+        assertNull( registry.getZone( "badexample.com" ) );
+
+        // once the child is gone, its names fall back to the parent
+        registry.remove( "child.example.com" );
+        assertSame( parent, registry.getZone( "www.child.example.com" ) );
+    }
+
+
+    private Zone derive( Zone base, String address )
+    {
+        ZoneModifier modifier = new ZoneModifier( base );
+        modifier.add( getRecord( "www.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, address ) );
+
+        return modifier.getZone();
+    }
+
+
+    private Zone getZone( String address )
+    {
+        return getZone( "example.com", address );
+    }
+
+
+    private Zone getZone( String origin, String address )
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( origin );
+        modifier.add( getRecord( "www." + origin, RecordType.A, DnsAttribute.IP_ADDRESS, address ) );
+
+        return modifier.getZone();
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.store.zone;
+
+
+import java.util.Iterator;
+
+import org.apache.directory.server.dns.AbstractDnsTestCase;
+import org.apache.directory.server.dns.messages.RecordType;
+import org.apache.directory.server.dns.messages.ResourceRecord;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordSet;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for the resolution of CNAME, DNAME and wildcard records in a zone.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class ZoneTest extends AbstractDnsTestCase
+{
+    private Zone zone;
+
+
+    @Before
+    public void setUp()
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "example.com" );
+        modifier.add( getRecord( "mail.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.2" ) );
+        modifier.add( getRecord( "www.example.com", RecordType.CNAME, DnsAttribute.DOMAIN_NAME, "web.example.com" ) );
+        modifier.add( getRecord( "web.example.com", RecordType.CNAME, DnsAttribute.DOMAIN_NAME, "mail.example.com" ) );
+        modifier.add( getRecord( "*.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.9" ) );
+        modifier.add( getRecord( "a.b.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.3" ) );
+        modifier.add( getRecord( "old.example.com", RecordType.DNAME, DnsAttribute.DOMAIN_NAME, "example.com" ) );
+        modifier.add( getRecord( "ping.example.com", RecordType.CNAME, DnsAttribute.DOMAIN_NAME, "pong.example.com" ) );
+        modifier.add( getRecord( "pong.example.com", RecordType.CNAME, DnsAttribute.DOMAIN_NAME, "ping.example.com" ) );
+        modifier.add( getRecord( "out.example.com", RecordType.CNAME, DnsAttribute.DOMAIN_NAME, "www.example.org" ) );
+        modifier.add( getRecord( "child.example.com", RecordType.NS,
+            DnsAttribute.DOMAIN_NAME, "ns.child.example.com" ) );
+        modifier.add( getRecord( "ns.child.example.com", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.1.1" ) );
+        modifier.add( getRecord( "sub.child.example.com", RecordType.NS, DnsAttribute.DOMAIN_NAME, "ns.example.net" ) );
+        modifier.add( getRecord( "to.example.com", RecordType.CNAME,
+            DnsAttribute.DOMAIN_NAME, "ns.child.example.com" ) );
+
+        zone = modifier.getZone();
+    }
+
+
+    @Test
+    public void testCanonicalNameChain()
+    {
+        RecordSet answer = zone.resolve( "www.example.com", RecordType.A );
+
+        assertEquals( 3, answer.size() );
+        Iterator<ResourceRecord> it = answer.iterator();
+        assertEquals( "www.example.com", it.next().getDomainName() );
+        assertEquals( "web.example.com", it.next().getDomainName() );
+        assertEquals( "10.0.0.2", it.next().get( DnsAttribute.IP_ADDRESS ) );
+
+        // the chased answer is cached
+        assertSame( answer, zone.resolve( "www.example.com", RecordType.A ) );
+
+        // asking for the CNAME itself does not chase it
+        assertEquals( 1, zone.resolve( "www.example.com", RecordType.CNAME ).size() );
+    }
+
+
+    @Test
+    public void testCanonicalNameOutOfZone()
+    {
+        assertEquals( 1, zone.resolve( "out.example.com", RecordType.A ).size() );
+    }
+
+
+    @Test
+    public void testCanonicalNameLoop()
+    {
+        assertEquals( Zone.MAX_CHAIN_LENGTH, zone.resolve( "ping.example.com", RecordType.A ).size() );
+    }
+
+
+    @Test
+    public void testWildcard()
+    {
+        RecordSet answer = zone.resolve( "random.example.com", RecordType.A );
+
+        assertEquals( 1, answer.size() );
+        assertEquals( "random.example.com", answer.iterator().next().getDomainName() );
+        assertEquals( "10.0.0.9", answer.iterator().next().get( DnsAttribute.IP_ADDRESS ) );
+
+        // the wildcard does not cover the names below an existing name
+        assertEquals( "b.example.com", zone.getClosestEncloser( "x.b.example.com" ) );
+        assertNull( zone.resolve( "x.b.example.com", RecordType.A ) );
+    }
+
+
+    @Test
+    public void testNoData()
+    {
+        // an existing name without records of the type
+        RecordSet answer = zone.resolve( "mail.example.com", RecordType.MX );
+        assertTrue( answer.isEmpty() );
+        assertTrue( answer.isNoData() );
+        assertTrue( answer.isAuthoritative() );
+        assertFalse( answer.isReferral() );
+
+        // an empty non-terminal exists too
+        assertTrue( zone.resolve( "b.example.com", RecordType.A ).isNoData() );
+
+        // and so does a name the wildcard matches
+        assertTrue( zone.resolve( "random.example.com", RecordType.MX ).isNoData() );
+
+        // a CNAME pointing to a name without the type answers with the CNAME
+        assertEquals( 1, zone.resolve( "web.example.com", RecordType.MX ).size() );
+    }
+
+
+    @Test
+    public void testAny()
+    {
+        ZoneModifier modifier = new ZoneModifier( zone );
+        modifier.add( getRecord( "mail.example.com", RecordType.MX, DnsAttribute.MX_PREFERENCE, "10",
+            DnsAttribute.DOMAIN_NAME, "mail.example.com" ) );
+        modifier.add( getRecord( "mail.example.com", RecordType.TXT, DnsAttribute.CHARACTER_STRING, "mail" ) );
+        Zone any = modifier.getZone();
+
+        // all the RRsets of the name, with the additional RRsets of each
+        RecordSet answer = any.resolve( "mail.example.com", RecordType.ANY );
+        assertEquals( 3, answer.size() );
+        assertTrue( answer.isAuthoritative() );
+        assertEquals( 1, answer.getAdditionalRecordSets().size() );
+        assertSame( answer, any.resolve( "mail.example.com", RecordType.ANY ) );
+
+        // a CNAME is not followed
+        answer = any.resolve( "www.example.com", RecordType.ANY );
+        assertEquals( 1, answer.size() );
+        assertEquals( RecordType.CNAME, answer.iterator().next().getRecordType() );
+
+        // a wildcard answers with all its RRsets
+        answer = any.resolve( "random.example.com", RecordType.ANY );
+        assertEquals( 1, answer.size() );
+        assertEquals( "random.example.com", answer.iterator().next().getDomainName() );
+
+        assertTrue( any.resolve( "b.example.com", RecordType.ANY ).isNoData() );
+        assertNull( any.resolve( "x.b.example.com", RecordType.ANY ) );
+    }
+
+
+    @Test
+    public void testDname()
+    {
+        RecordSet answer = zone.resolve( "www.old.example.com", RecordType.A );
+
+        // DNAME, synthesised CNAME, then the chain of www.example.com
+        assertEquals( 5, answer.size() );
+        Iterator<ResourceRecord> it = answer.iterator();
+        assertEquals( RecordType.DNAME, it.next().getRecordType() );
+        ResourceRecord cname = it.next();
+        assertEquals( "www.old.example.com", cname.getDomainName() );
+        assertEquals( "www.example.com", cname.get( DnsAttribute.DOMAIN_NAME ) );
+    }
+
+
+    @Test
+    public void testReferral()
+    {
+        RecordSet answer = zone.resolve( "www.sub.child.example.com", RecordType.A );
+
+        // the cut nearest the apex applies, with its glue
+        assertTrue( answer.isReferral() );
+        assertFalse( answer.isAuthoritative() );
+        assertEquals( "child.example.com", answer.getAuthorityRecordSets().get( 0 ).iterator().next().getDomainName() );
+        assertEquals( "10.0.1.1", answer.getAdditionalRecordSets().get( 0 ).iterator().next().get(
+            DnsAttribute.IP_ADDRESS ) );
+
+        // glue is not answered authoritatively
+        assertTrue( zone.resolve( "ns.child.example.com", RecordType.A ).isReferral() );
+        assertTrue( zone.resolve( "child.example.com", RecordType.NS ).isReferral() );
+
+        assertTrue( zone.resolve( "mail.example.com", RecordType.A ).isAuthoritative() );
+    }
+
+
+    @Test
+    public void testCanonicalNameIntoDelegation()
+    {
+        // the chain stops at the zone cut
+        assertEquals( 1, zone.resolve( "to.example.com", RecordType.A ).size() );
+    }
+
+
+    @Test(timeout = 5000)
+    public void testRootZone()
+    {
+        Zone root = getRootZone();
+
+        assertEquals( "", root.getOrigin() );
+        assertEquals( 1, root.resolve( "tld", RecordType.A ).size() );
+        assertTrue( root.resolve( "tld", RecordType.MX ).isNoData() );
+        assertTrue( root.resolve( "org", RecordType.A ).isReferral() );
+        assertTrue( root.resolve( "www.example.org", RecordType.A ).isReferral() );
+        assertNull( root.resolve( "com", RecordType.A ) );
+        assertNull( root.getReferral( "com" ) );
+        assertEquals( "", root.getClosestEncloser( "com" ) );
+        assertEquals( "tld", root.getClosestEncloser( "www.tld" ) );
+
+        // and the names of a single label are removed again
+        ZoneModifier modifier = new ZoneModifier( root );
+        modifier.removeName( "tld" );
+        root = modifier.getZone();
+        assertFalse( root.hasName( "tld" ) );
+        assertNull( root.resolve( "tld", RecordType.A ) );
+    }
+
+
+    /**
+     * Returns a root zone, of origin "", delegating org and owning the
+     * address of a single label name.
+     */
+    private Zone getRootZone()
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "" );
+        modifier.add( getRecord( "", RecordType.SOA, DnsAttribute.SOA_M_NAME, "a.root-servers.net",
+            DnsAttribute.SOA_R_NAME, "nstld.verisign-grs.com", DnsAttribute.SOA_SERIAL, "1",
+            DnsAttribute.SOA_REFRESH, "1800", DnsAttribute.SOA_RETRY, "900", DnsAttribute.SOA_EXPIRE, "604800",
+            DnsAttribute.SOA_MINIMUM, "86400" ) );
+        modifier.add( getRecord( "org", RecordType.NS, DnsAttribute.DOMAIN_NAME, "a0.org.afilias-nst.info" ) );
+        modifier.add( getRecord( "tld", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+
+        return modifier.getZone();
+    }
+
+
+    @Test
+    public void testUnknownTypes()
+    {
+        ZoneModifier modifier = new ZoneModifier( zone );
+        modifier.add( getRecord( "opaque.example.com", RecordType.UNKNOWN, DnsAttribute.TYPE, "64",
+            DnsAttribute.RDATA, "00" ) );
+        modifier.add( getRecord( "opaque.example.com", RecordType.UNKNOWN, DnsAttribute.TYPE, "65",
+            DnsAttribute.RDATA, "01" ) );
+        Zone opaque = modifier.getZone();
+
+        // each type of RFC 3597 records makes an RRset of its own
+        assertEquals( 2, opaque.getRecordSets( "opaque.example.com" ).size() );
+
+        RecordSet answer = opaque.resolve( "opaque.example.com", 65 );
+        assertEquals( 1, answer.size() );
+        assertEquals( "65", answer.iterator().next().get( DnsAttribute.TYPE ) );
+
+        assertTrue( opaque.resolve( "opaque.example.com", 66 ).isNoData() );
+        assertTrue( opaque.resolve( "opaque.example.com", RecordType.UNKNOWN ).isNoData() );
+    }
+
+
+    @Test
+    public void testNameFilter() throws Exception
+    {
+        ZoneModifier modifier = new ZoneModifier();
+        modifier.setOrigin( "example.org" );
+        modifier.add( getRecord( "www.example.org", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.1" ) );
+        Zone plain = modifier.getZone();
+
+        assertTrue( plain.synthesisers.isEmpty() );
+        assertTrue( plain.filter.mightContain( "www.example.org" ) );
+        assertNull( plain.resolve( "x1f3c9.example.org", RecordType.A ) );
+
+        // the names added later and their empty non-terminals are in the filter of the new zone
+        modifier = new ZoneModifier( plain );
+        modifier.add( getRecord( "a.b.example.org", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.2" ) );
+        Zone changed = modifier.getZone();
+
+        assertTrue( changed.filter.mightContain( "a.b.example.org" ) );
+        assertTrue( changed.filter.mightContain( "b.example.org" ) );
+        assertFalse( plain.filter.mightContain( "a.b.example.org" ) );
+        assertEquals( 1, changed.resolve( "a.b.example.org", RecordType.A ).size() );
+
+        // a wildcard answers for any name below its parent, so the filter cannot tell them
+        modifier = new ZoneModifier( changed );
+        ResourceRecord record = getRecord( "*.b.example.org", RecordType.A, DnsAttribute.IP_ADDRESS, "10.0.0.9" );
+        modifier.add( record );
+        Zone wildcard = modifier.getZone();
+
+        assertEquals( 1, wildcard.synthesisers.size() );
+        assertTrue( wildcard.synthesisers.containsKey( "b.example.org" ) );
+        assertEquals( 1, wildcard.resolve( "x1f3c9.b.example.org", RecordType.A ).size() );
+        assertFalse( wildcard.filter.mightContain( "x1f3c9.example.org" ) );
+        assertNull( wildcard.resolve( "x1f3c9.example.org", RecordType.A ) );
+
+        // nor for any name once it is removed
+        modifier = new ZoneModifier( wildcard );
+        assertTrue( modifier.remove( record ) );
+        assertTrue( modifier.getZone().synthesisers.isEmpty() );
+
+        assertTrue( zone.synthesisers.containsKey( "example.com" ) );
+        assertTrue( zone.synthesisers.containsKey( "old.example.com" ) );
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.util;
+
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+/**
+ * Tests for the trie of address prefixes.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class AddressTrieTest
+{
+    @Test
+    public void testLongestPrefix() throws Exception
+    {
+        AddressTrie<String> trie = new AddressTrie<String>();
+        trie.put( InetAddress.getByName( "10.0.0.0" ), 8, "internal" );
+        trie.put( InetAddress.getByName( "10.1.2.0" ), 24, "lab" );
+        trie.put( InetAddress.getByName( "10.1.2.3" ), 32, "host" );
+        trie.put( InetAddress.getByName( "10.1.3.255" ), 23, "other" );
+        trie.put( InetAddress.getByName( "fd00::" ), 8, "internal6" );
+
+        assertEquals( 5, trie.size() );
+        assertEquals( "internal", trie.get( InetAddress.getByName( "10.200.0.1" ) ) );
+        assertEquals( "lab", trie.get( InetAddress.getByName( "10.1.2.4" ) ) );
+        assertEquals( "host", trie.get( InetAddress.getByName( "10.1.2.3" ) ) );
+        assertEquals( "other", trie.get( InetAddress.getByName( "10.1.3.1" ) ) );
+        assertEquals( "internal", trie.get( InetAddress.getByName( "10.1.4.1" ) ) );
+        assertNull( trie.get( InetAddress.getByName( "192.168.1.1" ) ) );
+
+        // the families do not mix
+        assertEquals( "internal6", trie.get( InetAddress.getByName( "fd12::1" ) ) );
+        assertNull( trie.get( InetAddress.getByName( "2001:db8::1" ) ) );
+
+        // a prefix put again has its value replaced
+        trie.put( InetAddress.getByName( "10.1.2.99" ), 24, "lab2" );
+        assertEquals( 5, trie.size() );
+        assertEquals( "lab2", trie.get( InetAddress.getByName( "10.1.2.4" ) ) );
+
+        // the empty prefix matches everything
+        trie.put( InetAddress.getByName( "0.0.0.0" ), 0, "any" );
+        assertEquals( "any", trie.get( InetAddress.getByName( "192.168.1.1" ) ) );
+    }
+
+
+    @Test
+    public void testRandomPrefixes() throws Exception
+    {
+        Random random = new Random( 42 );
+        AddressTrie<Integer> trie = new AddressTrie<Integer>();
+        List<byte[]> prefixes = new ArrayList<byte[]>();
+        List<Integer> lengths = new ArrayList<Integer>();
+
+        for ( int ii = 0; ii < 1000; ii++ )
+        {
+            byte[] prefix = new byte[4];
+            random.nextBytes( prefix );
+
+            // few leading bits, so that the prefixes nest
+            prefix[0] &= 0x03;
+            int length = 2 + random.nextInt( 31 );
+            trie.put( InetAddress.getByAddress( prefix ), length, prefixes.size() );
+            prefixes.add( prefix );
+            lengths.add( length );
+        }
+
+        for ( int ii = 0; ii < 10000; ii++ )
+        {
+            byte[] address = new byte[4];
+            random.nextBytes( address );
+            address[0] &= 0x03;
+
+            // the longest, and latest put, prefix of the address
+            Integer expected = null;
+            int longest = -1;
+
+            for ( int jj = 0; jj < prefixes.size(); jj++ )
+            {
+                if ( lengths.get( jj ) >= longest && matches( prefixes.get( jj ), lengths.get( jj ), address ) )
+                {
+                    expected = jj;
+                    longest = lengths.get( jj );
+                }
+            }
+
+            assertEquals( expected, trie.get( InetAddress.getByAddress( address ) ) );
+        }
+    }
+
+
+    private static boolean matches( byte[] prefix, int length, byte[] address )
+    {
+        BigInteger mask = BigInteger.ONE.shiftLeft( 32 ).subtract( BigInteger.ONE.shiftLeft( 32 - length ) );
+
+        return new BigInteger( 1, prefix ).and( mask ).equals( new BigInteger( 1, address ).and( mask ) );
+    }
+}
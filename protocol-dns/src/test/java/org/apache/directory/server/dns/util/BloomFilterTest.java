@@ -0,0 +1,145 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.util;
+
+
+import org.junit.Test;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for the Bloom filter.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class BloomFilterTest
+{
+    private static final int NAMES = 10000;
+
+
+    @Test
+    public void testNoFalseNegatives()
+    {
+        BloomFilter filter = new BloomFilter( NAMES );
+
+        for ( int ii = 0; ii < NAMES; ii++ )
+        {
+            filter.add( "host" + ii + ".example.com" );
+        }
+
+        for ( int ii = 0; ii < NAMES; ii++ )
+        {
+            assertTrue( filter.mightContain( "host" + ii + ".example.com" ) );
+        }
+    }
+
+
+    @Test
+    public void testFalsePositives()
+    {
+        BloomFilter filter = new BloomFilter( NAMES );
+
+        for ( int ii = 0; ii < NAMES; ii++ )
+        {
+            filter.add( "host" + ii + ".example.com" );
+        }
+
+        int falsePositives = 0;
+
+        for ( int ii = 0; ii < NAMES; ii++ )
+        {
+            if ( filter.mightContain( "random" + ii + ".example.com" ) )
+            {
+                falsePositives++;
+            }
+        }
+
+        // about 1% at capacity
+        assertTrue( "" + falsePositives, falsePositives < NAMES / 50 );
+    }
+
+
+    @Test
+    public void testCopy()
+    {
+        BloomFilter filter = new BloomFilter( NAMES );
+        filter.add( "www.example.com" );
+
+        BloomFilter copy = filter.copy();
+        copy.add( "mail.example.com" );
+
+        assertTrue( copy.mightContain( "www.example.com" ) );
+        assertTrue( copy.mightContain( "mail.example.com" ) );
+        assertFalse( filter.mightContain( "mail.example.com" ) );
+    }
+
+
+    @Test
+    public void testCopyShards()
+    {
+        // many shards, most of them shared between the copies
+        BloomFilter filter = new BloomFilter( NAMES * 10 );
+
+        for ( int ii = 0; ii < NAMES; ii++ )
+        {
+            filter.add( "host" + ii + ".example.com" );
+        }
+
+        BloomFilter copy = filter.copy();
+        copy.add( "mail.example.com" );
+        filter.add( "ftp.example.com" );
+
+        for ( int ii = 0; ii < NAMES; ii++ )
+        {
+            assertTrue( copy.mightContain( "host" + ii + ".example.com" ) );
+        }
+
+        assertTrue( copy.mightContain( "mail.example.com" ) );
+        assertFalse( copy.mightContain( "ftp.example.com" ) );
+        assertTrue( filter.mightContain( "ftp.example.com" ) );
+        assertFalse( filter.mightContain( "mail.example.com" ) );
+    }
+
+
+    @Test
+    public void testFull()
+    {
+        BloomFilter filter = new BloomFilter( NAMES );
+
+        for ( int ii = 0; ii < NAMES; ii++ )
+        {
+            filter.add( "host" + ii + ".example.com" );
+            filter.add( "host" + ii + ".example.com" );
+        }
+
+        // adding a string again does not count
+        assertFalse( filter.isFull() );
+
+        for ( int ii = 0; ii < NAMES; ii++ )
+        {
+            filter.add( "mail" + ii + ".example.com" );
+        }
+
+        assertTrue( filter.isFull() );
+    }
+}
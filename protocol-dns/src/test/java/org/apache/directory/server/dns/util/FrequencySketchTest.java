@@ -0,0 +1,81 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.util;
+
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for the frequency sketch.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class FrequencySketchTest
+{
+    @Test
+    public void testFrequency()
+    {
+        FrequencySketch sketch = new FrequencySketch( 1024 );
+        int hash = "www.example.com".hashCode();
+
+        assertEquals( 0, sketch.frequency( hash ) );
+
+        for ( int ii = 0; ii < 5; ii++ )
+        {
+            sketch.increment( hash );
+        }
+
+        assertEquals( 5, sketch.frequency( hash ) );
+
+        // the counters saturate
+        for ( int ii = 0; ii < 100; ii++ )
+        {
+            sketch.increment( hash );
+        }
+
+        assertEquals( FrequencySketch.MAX_FREQUENCY, sketch.frequency( hash ) );
+    }
+
+
+    @Test
+    public void testAging()
+    {
+        FrequencySketch sketch = new FrequencySketch( 1024 );
+        int hash = "www.example.com".hashCode();
+
+        for ( int ii = 0; ii < 8; ii++ )
+        {
+            sketch.increment( hash );
+        }
+
+        // once enough other keys went by, the old ones count for less
+        for ( int ii = 0; ii < 10 * 1024; ii++ )
+        {
+            sketch.increment( ( "host" + ii + ".example.com" ).hashCode() );
+        }
+
+        assertTrue( sketch.frequency( hash ) < 8 );
+    }
+}
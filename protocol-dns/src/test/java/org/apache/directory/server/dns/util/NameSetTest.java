@@ -0,0 +1,149 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.util;
+
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for the front coded set of domain names.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class NameSetTest
+{
+    @Test
+    public void testMatches()
+    {
+        NameSet set = new NameSet( Arrays.asList( "bad.example.com", "*.evil.org", "Tracker.NET.", "*.ads.example.com",
+            "bad.example.com" ) );
+
+        assertEquals( 4, set.size() );
+        assertTrue( set.matches( "bad.example.com" ) );
+        assertTrue( set.matches( "BAD.example.com." ) );
+        assertFalse( set.matches( "www.bad.example.com" ) );
+        assertFalse( set.matches( "example.com" ) );
+
+        // a wildcard matches the names under it, not its own
+        assertTrue( set.matches( "www.evil.org" ) );
+        assertTrue( set.matches( "a.b.evil.org" ) );
+        assertFalse( set.matches( "evil.org" ) );
+        assertFalse( set.matches( "notevil.org" ) );
+        assertTrue( set.matches( "x.ads.example.com" ) );
+        assertFalse( set.matches( "ads.example.com" ) );
+
+        assertTrue( set.matches( "tracker.net" ) );
+        assertTrue( set.contains( "*.evil.org" ) );
+        assertFalse( set.contains( "www.evil.org" ) );
+        assertFalse( new NameSet( new ArrayList<String>() ).matches( "example.com" ) );
+    }
+
+
+    @Test
+    public void testRandomNames()
+    {
+        Random random = new Random( 42 );
+        Set<String> names = new HashSet<String>();
+        List<String> others = new ArrayList<String>();
+
+        for ( int ii = 0; ii < 20000; ii++ )
+        {
+            String name = getName( random );
+
+            if ( ii % 2 == 0 )
+            {
+                names.add( name );
+            }
+            else
+            {
+                others.add( name );
+            }
+        }
+
+        NameSet set = new NameSet( names );
+        assertEquals( names.size(), set.size() );
+
+        for ( String name : names )
+        {
+            assertTrue( name, set.contains( name ) );
+        }
+
+        for ( String name : others )
+        {
+            assertEquals( name, names.contains( name ), set.contains( name ) );
+        }
+
+        // the names of a domain share the bytes of its labels
+        long textSize = 0;
+
+        for ( String name : names )
+        {
+            textSize += name.length();
+        }
+
+        assertTrue( set.getByteSize() < textSize );
+    }
+
+
+    @Test
+    public void testRead() throws Exception
+    {
+        NameSet set = NameSet.read( new StringReader( "# blocklist\n\nbad.example.com\n  *.evil.org  CNAME .\n" ) );
+
+        assertEquals( 2, set.size() );
+        assertTrue( set.matches( "bad.example.com" ) );
+        assertTrue( set.matches( "www.evil.org" ) );
+    }
+
+
+    private static String getName( Random random )
+    {
+        StringBuilder name = new StringBuilder();
+        int labels = 1 + random.nextInt( 3 );
+
+        for ( int ii = 0; ii < labels; ii++ )
+        {
+            int length = 1 + random.nextInt( 3 );
+
+            for ( int jj = 0; jj < length; jj++ )
+            {
+                name.append( ( char ) ( 'a' + random.nextInt( 3 ) ) );
+            }
+
+            name.append( '.' );
+        }
+
+        return name.append( random.nextBoolean() ? "com" : "org" ).toString();
+    }
+}
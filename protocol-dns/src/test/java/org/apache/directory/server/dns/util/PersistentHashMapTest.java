@@ -0,0 +1,100 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.dns.util;
+
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for the persistent hash map.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class PersistentHashMapTest
+{
+    @Test
+    public void testPlusAndMinus()
+    {
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+
+        for ( int ii = 0; ii < 5000; ii++ )
+        {
+            map = map.plus( "name" + ii, ii );
+            expected.put( "name" + ii, ii );
+        }
+
+        PersistentHashMap<String, Integer> full = map;
+
+        for ( int ii = 0; ii < 5000; ii += 2 )
+        {
+            map = map.minus( "name" + ii );
+            expected.remove( "name" + ii );
+        }
+
+        assertEquals( expected, map );
+        assertEquals( 2500, map.size() );
+        assertNull( map.get( "name0" ) );
+        assertEquals( Integer.valueOf( 1 ), map.get( "name1" ) );
+
+        // the older version is left untouched
+        assertEquals( 5000, full.size() );
+        assertEquals( Integer.valueOf( 0 ), full.get( "name0" ) );
+    }
+
+
+    @Test
+    public void testCollisions()
+    {
+        // "Aa" and "BB" have the same hash code
+        PersistentHashMap<String, String> map = PersistentHashMap.<String, String> empty().plus( "Aa", "a" ).plus(
+            "BB", "b" );
+
+        assertEquals( 2, map.size() );
+        assertEquals( "a", map.get( "Aa" ) );
+        assertEquals( "b", map.get( "BB" ) );
+
+        map = map.minus( "Aa" );
+
+        assertEquals( 1, map.size() );
+        assertFalse( map.containsKey( "Aa" ) );
+        assertTrue( map.containsKey( "BB" ) );
+    }
+
+
+    @Test
+    public void testUnchanged()
+    {
+        PersistentHashMap<String, String> map = PersistentHashMap.<String, String> empty().plus( "a", "1" );
+
+        assertSame( map, map.minus( "b" ) );
+    }
+}
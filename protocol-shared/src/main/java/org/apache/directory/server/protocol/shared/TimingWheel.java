@@ -0,0 +1,530 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.protocol.shared;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A hashed hierarchical timing wheel, for the many timers a protocol needs:
+ * expiry of cached and leased records, idle connections, queries which got
+ * no answer.  Scheduling and cancelling take constant time, whatever the
+ * number of timers, and a single ticker thread runs them all.<p>
+ * 
+ * Time goes by in ticks.  The first wheel has a slot for each of the next
+ * ticks; each following wheel has as many slots, each as long as a turn of
+ * the wheel before it.  A timer is put in the slot of the finest wheel its
+ * deadline fits in, and is moved down into a finer wheel once the one it is
+ * in turns to its slot, until it is due.  Timers are thus never early, and
+ * late by at most a tick.<p>
+ * 
+ * Threads scheduling and cancelling timers do not touch the wheels, which
+ * only the ticker does: they hand the timers over through queues, which the
+ * ticker drains at each tick.  The timers due at a tick are run together,
+ * on the ticker thread or as a single task of an executor.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class TimingWheel
+{
+    /** the log for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( TimingWheel.class );
+
+    /** The default length of a tick, in milliseconds */
+    private static final long DEFAULT_TICK_DURATION = 100L;
+
+    /** The default number of slots of a wheel, as a power of two */
+    private static final int DEFAULT_WHEEL_BITS = 9;
+
+    private final long tickNanos;
+
+    private final int wheelBits;
+
+    private final int wheelMask;
+
+    /** The wheels, finest first, enough to hold any deadline */
+    private final Slot[][] wheels;
+
+    /** The executor to run the timers due on, or null to run them on the ticker */
+    private final Executor executor;
+
+    /** The timers scheduled, which the ticker has yet to put in the wheels */
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+
+    /** The timers cancelled, which the ticker has yet to take out of the wheels */
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    /** The time of tick 0, in nanoseconds */
+    private final long startTime;
+
+    /** The last tick gone by, only used by the ticker */
+    private long tick;
+
+    private volatile Thread ticker;
+
+
+    /**
+     * Creates a new instance of TimingWheel, with ticks of 100 ms and 512
+     * slots to a wheel, which runs the timers on its ticker thread.
+     */
+    public TimingWheel()
+    {
+        this( DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS, 1 << DEFAULT_WHEEL_BITS, null );
+    }
+
+
+    /**
+     * Creates a new instance of TimingWheel.
+     *
+     * @param tickDuration the length of a tick, the precision of the timers
+     * @param unit the unit of the tick duration
+     * @param wheelSize the number of slots of a wheel, rounded up to a power of two
+     * @param executor the executor to run the timers due on, or null to run
+     * them on the ticker thread, in which case they must be short
+     */
+    public TimingWheel( long tickDuration, TimeUnit unit, int wheelSize, Executor executor )
+    {
+        if ( tickDuration <= 0 || wheelSize <= 1 )
+        {
+            throw new IllegalArgumentException( "Invalid tick duration or wheel size" );
+        }
+
+        this.tickNanos = unit.toNanos( tickDuration );
+        this.executor = executor;
+
+        int bits = 1;
+
+        while ( ( 1 << bits ) < wheelSize && bits < 16 )
+        {
+            bits++;
+        }
+
+        wheelBits = bits;
+        wheelMask = ( 1 << bits ) - 1;
+        wheels = new Slot[( 63 + bits - 1 ) / bits][1 << bits];
+
+        for ( Slot[] wheel : wheels )
+        {
+            for ( int ii = 0; ii < wheel.length; ii++ )
+            {
+                wheel[ii] = new Slot();
+            }
+        }
+
+        startTime = now();
+    }
+
+
+    /**
+     * Starts the ticker thread.
+     */
+    public synchronized void start()
+    {
+        if ( ticker != null )
+        {
+            return;
+        }
+
+        ticker = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                while ( ticker == Thread.currentThread() )
+                {
+                    long wait = startTime + ( tick + 1 ) * tickNanos - now();
+
+                    if ( wait > 0 )
+                    {
+                        LockSupport.parkNanos( wait );
+                        continue;
+                    }
+
+                    tick();
+                }
+            }
+        }, "timing-wheel" );
+        ticker.setDaemon( true );
+        ticker.start();
+    }
+
+
+    /**
+     * Stops the ticker thread.  The timers pending do not run, unless the
+     * wheel is started again.
+     */
+    public void stop()
+    {
+        Thread thread;
+
+        synchronized ( this )
+        {
+            thread = ticker;
+            ticker = null;
+        }
+
+        if ( thread != null && thread != Thread.currentThread() )
+        {
+            LockSupport.unpark( thread );
+
+            try
+            {
+                thread.join();
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * Schedules a task to run once a delay went by.
+     *
+     * @param task the task to run
+     * @param delay the delay, at most about a hundred years
+     * @param unit the unit of the delay
+     * @return The timer of the task, to cancel it.
+     */
+    public Timeout schedule( Runnable task, long delay, TimeUnit unit )
+    {
+        long nanos = Math.min( Math.max( unit.toNanos( delay ), 0L ), Long.MAX_VALUE / 4 );
+        long elapsed = now() - startTime + nanos;
+
+        // round up, so that the timer is never early
+        Timeout timeout = new Timeout( task, ( elapsed + tickNanos - 1 ) / tickNanos );
+        pendingCount.incrementAndGet();
+        scheduled.add( timeout );
+
+        return timeout;
+    }
+
+
+    /**
+     * @return Returns the number of timers which neither ran nor were cancelled.
+     */
+    public long getPendingCount()
+    {
+        return pendingCount.get();
+    }
+
+
+    /**
+     * Returns the current time, in nanoseconds.
+     */
+    long now()
+    {
+        return System.nanoTime();
+    }
+
+
+    /**
+     * Moves on by a tick, running the timers due.
+     */
+    void tick()
+    {
+        List<Timeout> expired = new ArrayList<Timeout>();
+        tick++;
+
+        for ( Timeout timeout = cancelled.poll(); timeout != null; timeout = cancelled.poll() )
+        {
+            if ( timeout.slot != null )
+            {
+                timeout.slot.remove( timeout );
+            }
+        }
+
+        for ( Timeout timeout = scheduled.poll(); timeout != null; timeout = scheduled.poll() )
+        {
+            add( timeout, expired );
+        }
+
+        // a turn of a wheel moves the timers of the next slot of the coarser one down
+        for ( int level = 1; level < wheels.length; level++ )
+        {
+            if ( ( tick & ( ( 1L << ( wheelBits * level ) ) - 1 ) ) != 0 )
+            {
+                break;
+            }
+
+            Slot slot = wheels[level][( int ) ( tick >>> ( wheelBits * level ) ) & wheelMask];
+
+            for ( Timeout timeout = slot.clear(); timeout != null; )
+            {
+                Timeout next = timeout.next;
+                timeout.next = null;
+                add( timeout, expired );
+                timeout = next;
+            }
+        }
+
+        Slot slot = wheels[0][( int ) tick & wheelMask];
+
+        for ( Timeout timeout = slot.clear(); timeout != null; )
+        {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            expired.add( timeout );
+            timeout = next;
+        }
+
+        if ( !expired.isEmpty() )
+        {
+            expire( expired );
+        }
+    }
+
+
+    /**
+     * Puts a timer in the slot of the finest wheel its deadline fits in, or
+     * with the timers due now, unless it was cancelled.
+     */
+    private void add( Timeout timeout, List<Timeout> expired )
+    {
+        if ( timeout.isCancelled() )
+        {
+            return;
+        }
+
+        long delta = timeout.deadline - tick;
+
+        if ( delta <= 0 )
+        {
+            expired.add( timeout );
+            return;
+        }
+
+        int level = 0;
+
+        while ( level < wheels.length - 1 && ( delta >>> ( wheelBits * ( level + 1 ) ) ) != 0 )
+        {
+            level++;
+        }
+
+        wheels[level][( int ) ( timeout.deadline >>> ( wheelBits * level ) ) & wheelMask].add( timeout );
+    }
+
+
+    /**
+     * Runs the timers due, at once.
+     */
+    private void expire( final List<Timeout> expired )
+    {
+        Runnable batch = new Runnable()
+        {
+            public void run()
+            {
+                for ( Timeout timeout : expired )
+                {
+                    timeout.expire();
+                }
+            }
+        };
+
+        if ( executor == null )
+        {
+            batch.run();
+            return;
+        }
+
+        try
+        {
+            executor.execute( batch );
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            LOG.warn( "Could not run {} timers: {}", expired.size(), ree.getMessage() );
+        }
+    }
+
+
+    /**
+     * A timer, in a slot of a wheel once the ticker put it there.
+     */
+    public final class Timeout
+    {
+        private static final int PENDING = 0;
+
+        private static final int CANCELLED = 1;
+
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+
+        /** The tick the timer is due at */
+        private final long deadline;
+
+        private final AtomicInteger state = new AtomicInteger( PENDING );
+
+        /** The slot holding the timer and its neighbours there, only used by the ticker */
+        private Slot slot;
+
+        private Timeout previous;
+
+        private Timeout next;
+
+
+        private Timeout( Runnable task, long deadline )
+        {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+
+        /**
+         * Cancels the timer, unless it ran or is running.
+         *
+         * @return true if the timer was cancelled, false if it ran or was
+         * cancelled already
+         */
+        public boolean cancel()
+        {
+            if ( !state.compareAndSet( PENDING, CANCELLED ) )
+            {
+                return false;
+            }
+
+            pendingCount.decrementAndGet();
+            cancelled.add( this );
+
+            return true;
+        }
+
+
+        /**
+         * @return Returns true if the timer was cancelled.
+         */
+        public boolean isCancelled()
+        {
+            return state.get() == CANCELLED;
+        }
+
+
+        /**
+         * @return Returns true if the timer ran, or is running.
+         */
+        public boolean isExpired()
+        {
+            return state.get() == EXPIRED;
+        }
+
+
+        private void expire()
+        {
+            if ( !state.compareAndSet( PENDING, EXPIRED ) )
+            {
+                return;
+            }
+
+            pendingCount.decrementAndGet();
+
+            try
+            {
+                task.run();
+            }
+            catch ( Throwable t )
+            {
+                LOG.warn( "A timer failed", t );
+            }
+        }
+    }
+
+
+    /**
+     * The timers of a slot of a wheel, in a doubly linked list so that any
+     * of them is taken out at once.
+     */
+    private static final class Slot
+    {
+        private Timeout head;
+
+
+        void add( Timeout timeout )
+        {
+            timeout.slot = this;
+            timeout.previous = null;
+            timeout.next = head;
+
+            if ( head != null )
+            {
+                head.previous = timeout;
+            }
+
+            head = timeout;
+        }
+
+
+        void remove( Timeout timeout )
+        {
+            if ( timeout.previous != null )
+            {
+                timeout.previous.next = timeout.next;
+            }
+            else
+            {
+                head = timeout.next;
+            }
+
+            if ( timeout.next != null )
+            {
+                timeout.next.previous = timeout.previous;
+            }
+
+            timeout.slot = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+
+        /**
+         * Empties the slot, returning its timers, linked through their next.
+         */
+        Timeout clear()
+        {
+            Timeout timeout = head;
+            head = null;
+
+            for ( Timeout each = timeout; each != null; each = each.next )
+            {
+                each.slot = null;
+                each.previous = null;
+            }
+
+            return timeout;
+        }
+    }
+}
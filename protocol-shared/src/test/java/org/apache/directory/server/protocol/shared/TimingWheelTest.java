@@ -0,0 +1,278 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+
+package org.apache.directory.server.protocol.shared;
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for the timing wheel.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @version $Rev$, $Date$
+ */
+public class TimingWheelTest
+{
+    private static final int TIMERS = 2000;
+
+    /** The time the wheels see, in nanoseconds */
+    private long now = 1000000000L;
+
+    /** The ticks gone by */
+    private int ticks;
+
+
+    @Test
+    public void testDeadlines()
+    {
+        // a small wheel, so that most timers go through the coarser ones
+        TimingWheel wheel = newWheel( 4 );
+        final int[] ran = new int[TIMERS];
+
+        for ( int ii = 0; ii < TIMERS; ii++ )
+        {
+            final int timer = ii;
+            wheel.schedule( new Runnable()
+            {
+                public void run()
+                {
+                    ran[timer] = ticks;
+                }
+            }, ii, TimeUnit.MILLISECONDS );
+        }
+
+        assertEquals( TIMERS, wheel.getPendingCount() );
+        tick( wheel, TIMERS );
+        assertEquals( 0, wheel.getPendingCount() );
+
+        // each timer ran at its tick, the first one at the first tick
+        assertEquals( 1, ran[0] );
+
+        for ( int ii = 1; ii < TIMERS; ii++ )
+        {
+            assertEquals( ii, ran[ii] );
+        }
+    }
+
+
+    @Test
+    public void testLateSchedule()
+    {
+        TimingWheel wheel = newWheel( 8 );
+        tick( wheel, 100 );
+
+        final int[] ran = new int[1];
+        now += 500000L;
+        wheel.schedule( new Runnable()
+        {
+            public void run()
+            {
+                ran[0] = ticks;
+            }
+        }, 50, TimeUnit.MILLISECONDS );
+
+        // half a tick in, the timer is rounded up rather than early
+        tick( wheel, 100 );
+        assertEquals( 151, ran[0] );
+    }
+
+
+    @Test
+    public void testCancel()
+    {
+        TimingWheel wheel = newWheel( 8 );
+        final int[] ran = new int[1];
+        Runnable task = new Runnable()
+        {
+            public void run()
+            {
+                ran[0]++;
+            }
+        };
+
+        // cancelled before and after the ticker put them in the wheels
+        TimingWheel.Timeout early = wheel.schedule( task, 100, TimeUnit.MILLISECONDS );
+        TimingWheel.Timeout late = wheel.schedule( task, 100, TimeUnit.MILLISECONDS );
+        TimingWheel.Timeout kept = wheel.schedule( task, 100, TimeUnit.MILLISECONDS );
+        assertTrue( early.cancel() );
+        assertFalse( early.cancel() );
+        tick( wheel, 10 );
+        assertTrue( late.cancel() );
+        assertEquals( 1, wheel.getPendingCount() );
+
+        tick( wheel, 100 );
+        assertEquals( 1, ran[0] );
+        assertTrue( early.isCancelled() );
+        assertTrue( kept.isExpired() );
+        assertFalse( kept.cancel() );
+        assertEquals( 0, wheel.getPendingCount() );
+    }
+
+
+    @Test
+    public void testCascade()
+    {
+        // two slots to a wheel, so that a timer goes down through a level per bit of its delay
+        TimingWheel wheel = newWheel( 2 );
+        final int levels = 20;
+        final int[] ran = new int[levels * 3];
+
+        for ( int ii = 0; ii < levels; ii++ )
+        {
+            for ( int jj = 0; jj < 3; jj++ )
+            {
+                final int timer = ii * 3 + jj;
+                wheel.schedule( new Runnable()
+                {
+                    public void run()
+                    {
+                        ran[timer] = ticks;
+                    }
+                }, ( 2L << ii ) + jj - 1, TimeUnit.MILLISECONDS );
+            }
+        }
+
+        // the longest delay there is goes in the coarsest wheel, and stays there
+        TimingWheel.Timeout longest = wheel.schedule( new Runnable()
+        {
+            public void run()
+            {
+            }
+        }, Long.MAX_VALUE, TimeUnit.MILLISECONDS );
+
+        tick( wheel, ( 2 << levels ) + 2 );
+
+        for ( int ii = 0; ii < levels; ii++ )
+        {
+            for ( int jj = 0; jj < 3; jj++ )
+            {
+                assertEquals( ( 2 << ii ) + jj - 1, ran[ii * 3 + jj] );
+            }
+        }
+
+        assertEquals( 1, wheel.getPendingCount() );
+        assertFalse( longest.isExpired() );
+    }
+
+
+    @Test
+    public void testCancelWhileRunning()
+    {
+        TimingWheel wheel = newWheel( 8 );
+        final int[] ran = new int[3];
+        final TimingWheel.Timeout[] timeouts = new TimingWheel.Timeout[3];
+
+        // the two timers due together each cancel the other, and the one due later
+        for ( int ii = 0; ii < 2; ii++ )
+        {
+            final int timer = ii;
+            timeouts[ii] = wheel.schedule( new Runnable()
+            {
+                public void run()
+                {
+                    ran[timer]++;
+                    assertFalse( timeouts[timer].cancel() );
+                    assertTrue( timeouts[1 - timer].cancel() );
+                    assertTrue( timeouts[2].cancel() );
+                }
+            }, 10, TimeUnit.MILLISECONDS );
+        }
+
+        timeouts[2] = wheel.schedule( new Runnable()
+        {
+            public void run()
+            {
+                ran[2]++;
+            }
+        }, 20, TimeUnit.MILLISECONDS );
+
+        tick( wheel, 50 );
+
+        // the batch skips the timer cancelled in it
+        assertEquals( 1, ran[0] + ran[1] );
+        assertEquals( 0, ran[2] );
+        assertTrue( timeouts[0].isExpired() ^ timeouts[1].isExpired() );
+        assertTrue( timeouts[2].isCancelled() );
+        assertEquals( 0, wheel.getPendingCount() );
+    }
+
+
+    @Test
+    public void testTicker() throws Exception
+    {
+        TimingWheel wheel = new TimingWheel( 1, TimeUnit.MILLISECONDS, 16, null );
+        final CountDownLatch latch = new CountDownLatch( 2 );
+        Runnable task = new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        };
+
+        wheel.schedule( task, 5, TimeUnit.MILLISECONDS );
+        wheel.schedule( task, 50, TimeUnit.MILLISECONDS );
+        wheel.start();
+
+        try
+        {
+            assertTrue( latch.await( 10, TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            wheel.stop();
+        }
+    }
+
+
+    /**
+     * Returns a wheel with ticks of a millisecond which only moves on when
+     * asked.
+     */
+    private TimingWheel newWheel( int wheelSize )
+    {
+        return new TimingWheel( 1, TimeUnit.MILLISECONDS, wheelSize, null )
+        {
+            long now()
+            {
+                return now;
+            }
+        };
+    }
+
+
+    private void tick( TimingWheel wheel, int count )
+    {
+        for ( int ii = 0; ii < count; ii++ )
+        {
+            now += 1000000L;
+            ticks++;
+            wheel.tick();
+        }
+    }
+}